@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mockito.Mockito;
 
@@ -53,6 +55,12 @@ public class MockCommand implements Command {
     // OUTPUTS
     public List<String> outputLines;
     public List<String> errorLines;
+    // the exit code returned by run(), a mock can set it to simulate a failed command
+    public int exitCode = 0;
+
+    // if set, run() blocks until the latch is released, to simulate a long running command
+    public CountDownLatch runGate;
+    public AtomicInteger heldCommandCount;
 
     public MockCommand(List<String> commandTokens, Map<String, String> testOptions,
             TestBazelWorkspaceFactory testWorkspaceFactory) {
@@ -79,7 +87,15 @@ public class MockCommand implements Command {
 
     @Override
     public int run() throws IOException, InterruptedException {
-        return 0;
+        if (runGate != null) {
+            heldCommandCount.incrementAndGet();
+            try {
+                runGate.await();
+            } finally {
+                heldCommandCount.decrementAndGet();
+            }
+        }
+        return exitCode;
     }
 
     @Override
@@ -132,7 +148,7 @@ public class MockCommand implements Command {
     protected boolean isValidBazelTarget(String target) {
 
         if (target == null) {
-            returnFalseOrThrow(target);
+            return returnFalseOrThrow(target);
         }
         if (target.endsWith(":")) {
             // bug in a mock or the test itself
@@ -156,12 +172,12 @@ public class MockCommand implements Command {
         }
 
         if (testWorkspaceFactory.workspaceDescriptor.getCreatedPackageByName(packageLabel) == null) {
-            returnFalseOrThrow(target);
+            return returnFalseOrThrow(target);
         }
         if (!ruleName.equals(BazelPathHelper.BAZEL_WILDCARD_ALLTARGETS_STAR)) {
             // * ruleName is always valid, but if there is a specific rule we need to check
             if (testWorkspaceFactory.workspaceDescriptor.createdTargets.get(target) == null) {
-                returnFalseOrThrow(target);
+                return returnFalseOrThrow(target);
             }
         }
 
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.salesforce.bazel.sdk.command.Command;
 import com.salesforce.bazel.sdk.command.CommandBuilder;
@@ -78,6 +80,15 @@ public class MockCommandBuilder extends CommandBuilder {
      */
     public List<MockCommandSimulatedOutput> simulatedOutputLines = new ArrayList<>();
 
+    // commands with this verb (e.g. 'build') block in run() until the latch is released
+    private String heldVerb;
+    private CountDownLatch heldRelease;
+
+    /**
+     * The number of commands that are currently blocked in run(), see holdCommands().
+     */
+    public final AtomicInteger heldCommandCount = new AtomicInteger();
+
     /**
      * If an aspect build command is run, we need to know the list of aspect file paths for the workspace to be able to
      * create the specific output.
@@ -98,6 +109,15 @@ public class MockCommandBuilder extends CommandBuilder {
         return this;
     }
 
+    /**
+     * Simulates long running commands: Bazel commands with the passed verb (e.g. 'build') will block in run() until
+     * the release latch is counted down. Useful for testing that other commands can run in the meantime.
+     */
+    public void holdCommands(String verb, CountDownLatch release) {
+        heldVerb = verb;
+        heldRelease = release;
+    }
+
     // OUTPUT LINES FOR CUSTOM OR LAUNCHER COMMANDS
     // For use cases in which arbitrary non-standard commands are run, or for use cases in which a launcher
     // script is run ("bazel run //a/b/c") you will need to provide the output.
@@ -173,6 +193,11 @@ public class MockCommandBuilder extends CommandBuilder {
             mockCommand = new MockCustomCommand(args, testOptions, testWorkspaceFactory, simulatedOutputLines);
         }
 
+        if ((heldVerb != null) && (args.size() > 1) && heldVerb.equals(args.get(1))) {
+            mockCommand.runGate = heldRelease;
+            mockCommand.heldCommandCount = heldCommandCount;
+        }
+
         return mockCommand;
     }
 
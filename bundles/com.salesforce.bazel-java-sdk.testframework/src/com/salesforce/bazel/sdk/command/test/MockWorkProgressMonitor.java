@@ -61,6 +61,6 @@ public class MockWorkProgressMonitor implements WorkProgressMonitor {
 
     @Override
     public void worked(int work) {
-        this.worked = work;
+        this.worked += work;
     }
 }
@@ -2,13 +2,13 @@ package com.salesforce.bazel.sdk.command.test.type;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.salesforce.bazel.sdk.command.test.MockCommand;
 import com.salesforce.bazel.sdk.command.test.MockCommandSimulatedOutput;
-import com.salesforce.bazel.sdk.command.test.MockCommandSimulatedOutputMatcher;
 import com.salesforce.bazel.sdk.path.BazelPathHelper;
 import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceFactory;
 
@@ -57,42 +57,31 @@ public class MockBuildCommand extends MockCommand {
      * packages, so we need to make sure we only list each once
      */
     void createAspectBuildCommand() {
-        List<MockCommandSimulatedOutput> simulatedOutputLines = new ArrayList<>();
-        // TODO this aspect code here is indirect, it should just populate out/err lines directly
         // TODO clean up "Problem adding jar to project" errors seen when running tests from Eclipse, seems to be during aspect phase
         // stderr is a line per path to an aspect json file
 
-        // build command looks like: bazel build --override_repository=bazeljavasdk_aspect=/tmp/bef/bazelws/bazel-workspace/tools/aspect ...
-        MockCommandSimulatedOutputMatcher aspectCommandMatcher1 = new MockCommandSimulatedOutputMatcher(1, "build");
-        MockCommandSimulatedOutputMatcher aspectCommandMatcher2 =
-                new MockCommandSimulatedOutputMatcher(2, ".*bazeljavasdk_aspect.*");
-
-        for (String packagePath : testWorkspaceFactory.workspaceDescriptor.aspectFileSets.keySet()) {
-            // the last arg is the package path with the wildcard target (//projects/libs/javalib0:*)
-            // TODO this is returning the same set of aspects for each target in a package
-            String wildcardTarget =
-                    BazelPathHelper.BAZEL_ROOT_SLASHES + packagePath + BazelPathHelper.BAZEL_COLON + ".*";
-            MockCommandSimulatedOutputMatcher aspectCommandMatcher3 =
-                    new MockCommandSimulatedOutputMatcher(7, wildcardTarget);
-
-            List<MockCommandSimulatedOutputMatcher> matchers = new ArrayList<>();
-            Collections.addAll(matchers, aspectCommandMatcher1, aspectCommandMatcher2, aspectCommandMatcher3);
-
-            List<String> aspectFilePathsList = new ArrayList<>();
-            aspectFilePathsList.addAll(testWorkspaceFactory.workspaceDescriptor.aspectFileSets.get(packagePath));
-            String nameForLog = "Aspect file set for target: " + wildcardTarget;
-            MockCommandSimulatedOutput aspectOutput =
-                    new MockCommandSimulatedOutput(nameForLog, outputLines, aspectFilePathsList, matchers);
-            simulatedOutputLines.add(aspectOutput);
-        }
-        for (MockCommandSimulatedOutput candidateOutput : simulatedOutputLines) {
-            if (candidateOutput.doesMatch(commandTokens)) {
-                // the output is targeted to this command
-                outputLines = candidateOutput.outputLines;
-                errorLines = candidateOutput.errorLines;
-                break;
+        // build command looks like: bazel build --override_repository=bazeljavasdk_aspect=/tmp/bef/bazelws/bazel-workspace/tools/aspect ... //a:* //b:*
+        // the aspect is run for many targets in a single invocation, so the output is the union of the aspect files
+        // of all the requested packages
+        // TODO this is returning the same set of aspects for each target in a package
+        Set<String> aspectFilePaths = new LinkedHashSet<>();
+        for (int i = 2; i < commandTokens.size(); i++) {
+            String token = commandTokens.get(i);
+            if (token.startsWith("-")) {
+                continue;
+            }
+            for (String packagePath : testWorkspaceFactory.workspaceDescriptor.aspectFileSets.keySet()) {
+                // the target is the package path with the wildcard target (//projects/libs/javalib0:*)
+                String wildcardTarget =
+                        BazelPathHelper.BAZEL_ROOT_SLASHES + packagePath + BazelPathHelper.BAZEL_COLON + ".*";
+                if (token.matches(wildcardTarget)) {
+                    aspectFilePaths.addAll(testWorkspaceFactory.workspaceDescriptor.aspectFileSets.get(packagePath));
+                }
             }
         }
+        if (!aspectFilePaths.isEmpty()) {
+            errorLines = new ArrayList<>(aspectFilePaths);
+        }
     }
 
     void createCodeBuildCommand() {
@@ -1,5 +1,6 @@
 package com.salesforce.bazel.sdk.command.test.type;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -30,33 +31,41 @@ public class MockQueryCommand extends MockCommand {
         if (queryArg.startsWith("kind(rule, set(//")) {
             // QUERY:
             //    kind(rule, set(//projects/libs/javalib0:*))
-            // RESPONSE: for each target in the package, a line is written to stdout such as:
+            //    kind(rule, set(//projects/libs/javalib0:* //projects/libs/javalib1:*))
+            // RESPONSE: for each target in each package, a line is written to stdout such as:
             //    java_library rule //projects/libs/javalib0:javalib0
             //    java_test rule //projects/libs/javalib0:javalib0Test
 
-            // strip target to be just '//projects/libs/javalib0'
-            String queryPackage = queryArg.substring(17, queryArg.length() - 4);
+            // strip each target to be just '//projects/libs/javalib0'
+            String[] queryTargets = queryArg.substring(15, queryArg.length() - 2).split(" ");
+            List<String> outputLines = new ArrayList<>();
+            for (String queryTarget : queryTargets) {
+                int colonIndex = queryTarget.indexOf(':');
+                String queryPackage = colonIndex >= 0 ? queryTarget.substring(2, colonIndex) : queryTarget.substring(2);
 
-            if (!isValidBazelTarget(queryPackage)) {
-                // by default, isValidBazelTarget() will throw an exception if the package is missing, but the test may configure it to return false instead
-                errorLines = Arrays.asList(new String[] { "ERROR: no such package '" + queryPackage
-                        + "': BUILD file not found in any of the following directories. Add a BUILD file to a directory to mark it as a package.",
-                        "- /fake/abs/path/" + queryPackage }); // $SLASH_OK: bazel path
-                return;
-            }
+                if (!isValidBazelTarget(queryPackage)) {
+                    // by default, isValidBazelTarget() will throw an exception if the package is missing, but the test may configure it to return false instead
+                    // like Bazel (without --keep_going), the whole query fails
+                    errorLines = Arrays.asList(new String[] { "ERROR: no such package '" + queryPackage
+                            + "': BUILD file not found in any of the following directories. Add a BUILD file to a directory to mark it as a package.",
+                            "- /fake/abs/path/" + queryPackage }); // $SLASH_OK: bazel path
+                    exitCode = 7;
+                    return;
+                }
 
-            TestBazelPackageDescriptor queryPackageDescriptor =
-                    testWorkspaceFactory.workspaceDescriptor.createdPackages.get(queryPackage);
-            if (queryPackageDescriptor == null) {
-                throw new IllegalStateException("The mock package descriptor is missing for package [" + queryPackage
-                        + "]. This is a bug in the mock testing framework.");
-            }
+                TestBazelPackageDescriptor queryPackageDescriptor =
+                        testWorkspaceFactory.workspaceDescriptor.createdPackages.get(queryPackage);
+                if (queryPackageDescriptor == null) {
+                    throw new IllegalStateException("The mock package descriptor is missing for package ["
+                            + queryPackage + "]. This is a bug in the mock testing framework.");
+                }
 
-            // the query is for :* which means all targets, so iterate through the package's targets and write a line per target to stdout
-            for (TestBazelTargetDescriptor target : queryPackageDescriptor.targets.values()) {
-                String outputString = target.targetType + " rule //" + target.targetPath;
-                addSimulatedOutputToCommandStdOut(outputString);
+                // the query is for :* which means all targets, so iterate through the package's targets and write a line per target to stdout
+                for (TestBazelTargetDescriptor target : queryPackageDescriptor.targets.values()) {
+                    outputLines.add(target.targetType + " rule //" + target.targetPath);
+                }
             }
+            addSimulatedOutputToCommandStdOut(outputLines.toArray(new String[outputLines.size()]));
         } else {
             throw new IllegalArgumentException(
                     "The plugin issued the command 'bazel query' with an unknown type of query. "
@@ -3,6 +3,8 @@ package com.salesforce.bazel.sdk.model.test;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandOptions;
 import com.salesforce.bazel.sdk.workspace.BazelWorkspaceMetadataStrategy;
@@ -69,6 +71,16 @@ public class MockBazelWorkspaceMetadataStrategy implements BazelWorkspaceMetadat
         return wb;
     }
 
+    @Override
+    public Map<String, String> computeBazelInfo() {
+        Map<String, String> info = new TreeMap<>();
+        info.put("bazel-bin", computeBazelWorkspaceBin().getAbsolutePath());
+        info.put("execution_root", computeBazelWorkspaceExecRoot().getAbsolutePath());
+        info.put("output_base", computeBazelWorkspaceOutputBase().getAbsolutePath());
+        info.put("workspace", workspaceRootDir.getAbsolutePath());
+        return info;
+    }
+
     private List<String> optionLines;
 
     public void mockCommandLineOptionOutput(List<String> optionLines) {
@@ -2,6 +2,7 @@ package com.salesforce.bazel.sdk.aspect;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.salesforce.bazel.sdk.graph.BazelDependencyGraph;
 import com.salesforce.bazel.sdk.graph.BazelDependencyGraphFactory;
@@ -21,7 +22,17 @@ public class AspectDependencyGraphFactory {
      * edge in between two packages if any target in package A depends on any target in package B.
      */
     public static BazelDependencyGraph build(AspectTargetInfos aspects, boolean includeTarget) {
-        BazelDependencyGraph graph = BazelDependencyGraphFactory.build("AspectDependencyGraphFactory", new HashMap<>());
+        return build(aspects, includeTarget, new HashMap<>());
+    }
+
+    /**
+     * Builds the dependency graph using the data collected by running aspects, passing the options to the
+     * BazelDependencyGraphFactory. This allows a workspace to choose the graph implementation, for example
+     * BazelDependencyGraphFactory.OPTION_GRAPH_IMPL=compact for very large workspaces.
+     */
+    public static BazelDependencyGraph build(AspectTargetInfos aspects, boolean includeTarget,
+            Map<String, String> graphOptions) {
+        BazelDependencyGraph graph = BazelDependencyGraphFactory.build("AspectDependencyGraphFactory", graphOptions);
 
         // TODO the stripTargetFromLabel invocations here need to be removed in order for us to solve the
         // the cyclical dependency problems tracked by https://github.com/salesforce/bazel-java-sdk/issues/23
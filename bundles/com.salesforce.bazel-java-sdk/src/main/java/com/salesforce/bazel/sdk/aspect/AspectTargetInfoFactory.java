@@ -5,15 +5,17 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
 import com.salesforce.bazel.sdk.aspect.jvm.JVMAspectTargetInfoFactoryProvider;
 import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.util.JsonStreamReader;
 
 /**
  * Factory for AspectTargetInfo instances, using the JSON emitted from the aspect. Each rule type will have a different
@@ -71,17 +73,14 @@ public class AspectTargetInfoFactory {
      */
     public static AspectTargetInfo loadAspectFile(File aspectFile) {
         AspectTargetInfo buildInfo = null;
-        JSONParser jsonParser = new JSONParser();
 
         if (aspectFile.exists()) {
-            JSONObject jsonObject = null;
-            try {
-                jsonObject = (JSONObject) jsonParser.parse(new FileReader(aspectFile));
-            } catch (Exception je) {
+            try (JsonStreamReader reader = new JsonStreamReader(new FileReader(aspectFile))) {
+                buildInfo = loadAspectFromJson(aspectFile, reader, new JSONParser());
+            } catch (IOException je) {
                 System.err.println("JSON file has illegal characters: " + aspectFile.getAbsolutePath()); // TODO log
                 throw new IllegalArgumentException(je);
             }
-            buildInfo = loadAspectFromJson(aspectFile, jsonObject, jsonParser);
         } else {
             System.err.println("Aspect JSON file is missing: " + aspectFile.getAbsolutePath()); // TODO log
         }
@@ -90,17 +89,42 @@ public class AspectTargetInfoFactory {
 
     // INTERNAL
 
-    static AspectTargetInfo loadAspectFromJson(File aspectDataFile, JSONObject jsonObject, JSONParser jsonParser) {
-        AspectTargetInfo info = null;
+    /**
+     * Reads the aspect json from the stream. The fields common to all rule kinds are read directly, and only the other
+     * fields that a provider asked for (see {@link AspectTargetInfoFactoryProvider#getJsonFieldNames()}) are kept in
+     * the JSONObject passed to the providers; the rest of the document is skipped.
+     */
+    static AspectTargetInfo loadAspectFromJson(File aspectDataFile, JsonStreamReader reader, JSONParser jsonParser)
+            throws IOException {
+        Set<String> providerFields = getProviderJsonFieldNames();
+        List<String> deps = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        String kind = null;
+        String label = null;
+        JSONObject jsonObject = new JSONObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("dependencies".equals(name)) {
+                deps = readStringList(reader);
+            } else if ("sources".equals(name)) {
+                sources = readStringList(reader);
+            } else if ("kind".equals(name)) {
+                kind = readString(reader);
+            } else if ("label".equals(name)) {
+                label = readString(reader);
+            } else if ((providerFields == null) || providerFields.contains(name)) {
+                jsonObject.put(name, reader.readValue());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
+        AspectTargetInfo info = null;
         try {
-            List<String> deps = jsonArrayToStringArray(jsonObject.get("dependencies"));
-            List<String> sources = jsonArrayToStringArray(jsonObject.get("sources"));
-
             String build_file_artifact_location = null; // object.getString("build_file_artifact_location");
-            String kind = (String) jsonObject.get("kind");
-            String label = (String) jsonObject.get("label");
-
             for (AspectTargetInfoFactoryProvider provider : providers) {
                 info = provider.buildAspectTargetInfo(aspectDataFile, jsonObject, jsonParser,
                     build_file_artifact_location, kind, label, deps, sources);
@@ -118,23 +142,48 @@ public class AspectTargetInfoFactory {
         return info;
     }
 
-    private static List<String> jsonArrayToStringArray(Object arrayAsObject) throws Exception {
-        List<String> list = new ArrayList<>();
-        if (arrayAsObject == null) {
-            return list;
+    /**
+     * The union of the json fields needed by the providers, or null if any provider needs all of them.
+     */
+    private static Set<String> getProviderJsonFieldNames() {
+        Set<String> fields = new HashSet<>();
+        for (AspectTargetInfoFactoryProvider provider : providers) {
+            Set<String> providerFields = provider.getJsonFieldNames();
+            if (providerFields == null) {
+                return null;
+            }
+            fields.addAll(providerFields);
         }
+        return fields;
+    }
 
-        JSONArray array = null;
-        if (arrayAsObject instanceof JSONArray) {
-            array = (JSONArray) arrayAsObject;
-        } else {
+    /**
+     * Reads an array of values as strings, like the JSONArray conversion did; a value that is not an array gives an
+     * empty list.
+     */
+    private static List<String> readStringList(JsonStreamReader reader) throws IOException {
+        List<String> list = new ArrayList<>();
+        if (reader.peek() != JsonStreamReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
             return list;
         }
-
-        for (Object o : array) {
-            list.add(o.toString());
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Object value = reader.readValue();
+            if (value != null) {
+                list.add(value.toString());
+            }
         }
+        reader.endArray();
         return list;
     }
 
+    private static String readString(JsonStreamReader reader) throws IOException {
+        if (reader.peek() != JsonStreamReader.Token.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
 }
@@ -2,6 +2,7 @@ package com.salesforce.bazel.sdk.aspect;
 
 import java.io.File;
 import java.util.List;
+import java.util.Set;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -14,4 +15,13 @@ public interface AspectTargetInfoFactoryProvider {
     AspectTargetInfo buildAspectTargetInfo(File aspectDataFile, JSONObject jsonObject, JSONParser jsonParser,
             String workspaceRelativePath, String kind, String label, List<String> deps, List<String> sources);
 
+    /**
+     * The names of the top level json fields that this provider reads from the jsonObject passed to
+     * buildAspectTargetInfo(). The other fields are skipped when an aspect file is parsed. The kind, label, dependencies
+     * and sources are always passed as parameters. Returns null if the provider needs every field.
+     */
+    default Set<String> getJsonFieldNames() {
+        return null;
+    }
+
 }
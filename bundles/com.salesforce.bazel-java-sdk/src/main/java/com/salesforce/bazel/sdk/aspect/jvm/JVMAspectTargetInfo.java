@@ -85,7 +85,9 @@ public class JVMAspectTargetInfo extends AspectTargetInfo {
 
         JSONArray array = (JSONArray) arrayObject;
         for (Object jarSet : array) {
-            JSONObject jarSetObject = (JSONObject) jsonParser.parse(jarSet.toString());
+            // the jar sets are already parsed as part of the document, no need to serialize and parse them again
+            JSONObject jarSetObject = jarSet instanceof JSONObject ? (JSONObject) jarSet
+                    : (JSONObject) jsonParser.parse(jarSet.toString());
             jarList.add(new JVMAspectOutputJarSet(jarSetObject));
         }
         return jarList;
@@ -1,7 +1,11 @@
 package com.salesforce.bazel.sdk.aspect.jvm;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -16,6 +20,9 @@ import com.salesforce.bazel.sdk.logging.LogHelper;
 public class JVMAspectTargetInfoFactoryProvider implements AspectTargetInfoFactoryProvider {
     private static final LogHelper LOG = LogHelper.log(JVMAspectTargetInfoFactoryProvider.class);
 
+    private static final Set<String> JSON_FIELD_NAMES =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("jars", "generated_jars", "main_class")));
+
     @Override
     public AspectTargetInfo buildAspectTargetInfo(File aspectDataFile, JSONObject jsonObject, JSONParser jsonParser,
             String workspaceRelativePath, String kind, String label, List<String> deps, List<String> sources) {
@@ -34,4 +41,9 @@ public class JVMAspectTargetInfoFactoryProvider implements AspectTargetInfoFacto
         return info;
     }
 
+    @Override
+    public Set<String> getJsonFieldNames() {
+        return JSON_FIELD_NAMES;
+    }
+
 }
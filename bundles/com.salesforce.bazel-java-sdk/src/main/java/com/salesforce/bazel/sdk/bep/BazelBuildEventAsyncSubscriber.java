@@ -0,0 +1,254 @@
+package com.salesforce.bazel.sdk.bep;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+
+/**
+ * Subscriber that delivers the events to another subscriber asynchronously. Events are put on a bounded queue, and
+ * delivered in order by a task running on the executor, so that a slow subscriber (for example one that updates the
+ * UI) does not stall the stream that publishes the events, or the other subscribers of the stream.
+ * <p>
+ * When the queue is full, the {@link OverflowPolicy} decides what happens: block the publishing stream until there is
+ * room (backpressure), or drop an event. The last message of a build is never dropped; it is always queued, blocking
+ * if necessary, because subscribers commonly use it to finish their work.
+ * <p>
+ * Metrics about the queue and the dispatch latency (time between the event being queued and the delivery of the event
+ * starting) are kept for monitoring slow subscribers.
+ * <p>
+ * Subscribe it to a stream like any other subscriber, or use
+ * {@link BazelBuildEventStream#subscribeAsync(BazelBuildEventSubscriber, java.util.Set, boolean)}.
+ */
+public class BazelBuildEventAsyncSubscriber implements BazelBuildEventSubscriber {
+    private static final LogHelper LOG = LogHelper.log(BazelBuildEventAsyncSubscriber.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * What to do with a new event when the queue of the subscriber is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the subscriber has consumed an event. This slows down the stream, but no event is lost.
+         */
+        BLOCK,
+        /**
+         * Discard the new event.
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest queued event, and queue the new event. A queued last message is skipped, the next oldest
+         * event is discarded instead.
+         */
+        DROP_OLDEST
+    }
+
+    // shared by all async subscribers that do not provide their own executor; each subscriber has at most one task
+    // running at a time
+    private static ExecutorService defaultExecutor;
+
+    private final BazelBuildEventSubscriber subscriber;
+    private final Executor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<QueuedEvent> queue;
+
+    // true while a delivery task is scheduled or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    // METRICS
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public BazelBuildEventAsyncSubscriber(BazelBuildEventSubscriber subscriber) {
+        this(subscriber, null, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * @param executor
+     *            runs the delivery of the events, null to use a shared pool of daemon threads
+     */
+    public BazelBuildEventAsyncSubscriber(BazelBuildEventSubscriber subscriber, Executor executor, int queueCapacity,
+            OverflowPolicy overflowPolicy) {
+        this.subscriber = subscriber;
+        this.executor = executor != null ? executor : getDefaultExecutor();
+        this.overflowPolicy = overflowPolicy;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    // PUBLIC API
+
+    @Override
+    public void onEvent(BEPEvent event) {
+        QueuedEvent queued = new QueuedEvent(event);
+        try {
+            if (!enqueue(queued)) {
+                droppedCount.incrementAndGet();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            droppedCount.incrementAndGet();
+            LOG.warn("Interrupted while queuing event [{}] for a subscriber, the event was dropped.", event.getIndex());
+            return;
+        }
+        updateMax(maxQueueDepth, queue.size());
+        scheduleDrain();
+    }
+
+    /**
+     * The subscriber that receives the events.
+     */
+    public BazelBuildEventSubscriber getSubscriber() {
+        return subscriber;
+    }
+
+    /**
+     * The number of events waiting to be delivered.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * The largest number of events that have been waiting to be delivered at the same time.
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * The number of events delivered to the subscriber.
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * The number of events dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * The average time in nanoseconds between queuing an event and starting its delivery.
+     */
+    public long getAverageDispatchLatencyNanos() {
+        long delivered = deliveredCount.get();
+        return delivered == 0 ? 0L : totalLatencyNanos.get() / delivered;
+    }
+
+    /**
+     * The longest time in nanoseconds between queuing an event and starting its delivery.
+     */
+    public long getMaxDispatchLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    // INTERNALS
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "bep-subscriber-dispatch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    private boolean enqueue(QueuedEvent queued) throws InterruptedException {
+        if ((overflowPolicy == OverflowPolicy.BLOCK) || queued.event.isLastMessage()) {
+            queue.put(queued);
+            return true;
+        }
+        if (queue.offer(queued)) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+            return false;
+        }
+        // DROP_OLDEST: make room, the consumer may be taking events at the same time so loop
+        while (!queue.offer(queued)) {
+            QueuedEvent oldest = findOldestDroppable();
+            if (oldest == null) {
+                // only last messages are queued, which are never dropped
+                queue.put(queued);
+                return true;
+            }
+            if (queue.remove(oldest)) {
+                droppedCount.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    // the oldest queued event that is not the last message of a build
+    private QueuedEvent findOldestDroppable() {
+        for (QueuedEvent queued : queue) {
+            if (!queued.event.isLastMessage()) {
+                return queued;
+            }
+        }
+        return null;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            QueuedEvent queued;
+            while ((queued = queue.poll()) != null) {
+                deliver(queued);
+            }
+            draining.set(false);
+
+            // an event may have been queued after the last poll, but before the flag was cleared
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void deliver(QueuedEvent queued) {
+        long latency = System.nanoTime() - queued.queuedNanos;
+        totalLatencyNanos.addAndGet(latency);
+        updateMax(maxLatencyNanos, latency);
+        deliveredCount.incrementAndGet();
+        try {
+            subscriber.onEvent(queued.event);
+        } catch (Exception anyE) {
+            LOG.error("Subscriber failed to process BEP event [{}]", anyE, queued.event.getIndex());
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while ((value > (current = max.get())) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private static class QueuedEvent {
+        final BEPEvent event;
+        final long queuedNanos = System.nanoTime();
+
+        QueuedEvent(BEPEvent event) {
+            this.event = event;
+        }
+    }
+}
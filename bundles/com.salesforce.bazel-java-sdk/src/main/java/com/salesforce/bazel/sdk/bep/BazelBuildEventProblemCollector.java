@@ -0,0 +1,221 @@
+package com.salesforce.bazel.sdk.bep;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.salesforce.bazel.sdk.bep.event.BEPBuildFinishedEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPProgressEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPTargetCompletedEvent;
+import com.salesforce.bazel.sdk.command.BazelOutputParser;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+import com.salesforce.bazel.sdk.model.BazelProblem;
+
+/**
+ * Subscriber that derives the problems and the result of each target of a build from its build events, instead of
+ * scraping the console output of Bazel.
+ * <p>
+ * Compiler errors are parsed from the stderr of the progress events; a line that is split across two events is parsed
+ * once it is complete. The targetCompleted events tell exactly which targets failed; a failed target that has no
+ * compiler error in its package gets a problem on its BUILD file, with the failure message from Bazel. Problems are
+ * passed to the listener as soon as they are found.
+ * <p>
+ * Subscribe it to a stream with {@link #getEventTypes()}, or pass it to BEPFileParser.readNewEvents().
+ */
+public class BazelBuildEventProblemCollector implements BazelBuildEventSubscriber {
+
+    private final File workspaceRootDirectory;
+    private final Consumer<BazelProblem> problemListener;
+    private final BazelOutputParser outputParser = new BazelOutputParser();
+
+    private final List<BazelProblem> problems = new ArrayList<>();
+    // label -> true if the target was built successfully, in completion order
+    private final Map<String, Boolean> targetResults = new LinkedHashMap<>();
+    private BEPBuildFinishedEvent buildFinishedEvent;
+    // the start of a stderr line that continues in the next progress event
+    private String partialStderrLine = "";
+    // source directory -> the package that contains it, "" for the root package, null if there is no BUILD file
+    private final Map<String, String> directoryPackages = new HashMap<>();
+
+    /**
+     * @param workspaceRootDirectory
+     *            used to find the BUILD files of failed targets, can be null
+     * @param problemListener
+     *            called for each problem as it is found, can be null
+     */
+    public BazelBuildEventProblemCollector(File workspaceRootDirectory, Consumer<BazelProblem> problemListener) {
+        this.workspaceRootDirectory = workspaceRootDirectory;
+        this.problemListener = problemListener;
+    }
+
+    // PUBLIC API
+
+    /**
+     * The event types this subscriber needs.
+     */
+    public static Set<String> getEventTypes() {
+        return new HashSet<>(
+                Arrays.asList(BEPProgressEvent.NAME, BEPTargetCompletedEvent.NAME, BEPBuildFinishedEvent.NAME));
+    }
+
+    @Override
+    public synchronized void onEvent(BEPEvent event) {
+        if (event instanceof BEPProgressEvent) {
+            String stderr = ((BEPProgressEvent) event).getStderrText();
+            if (stderr != null) {
+                String text = partialStderrLine + stderr;
+                int lineStart = 0;
+                for (int lineEnd = text.indexOf('\n'); lineEnd >= 0; lineEnd = text.indexOf('\n', lineStart)) {
+                    parseStderrLine(text.substring(lineStart, lineEnd));
+                    lineStart = lineEnd + 1;
+                }
+                partialStderrLine = text.substring(lineStart);
+            }
+        } else if (event instanceof BEPTargetCompletedEvent) {
+            BEPTargetCompletedEvent completed = (BEPTargetCompletedEvent) event;
+            String label = completed.getTargetLabel();
+            if (label != null) {
+                targetResults.put(label, completed.isSuccess());
+                if (!completed.isSuccess()) {
+                    addTargetProblem(label, completed.getFailureMessage());
+                }
+            }
+        } else if (event instanceof BEPBuildFinishedEvent) {
+            buildFinishedEvent = (BEPBuildFinishedEvent) event;
+            // the build will not write the rest of the last line, and an empty line ends the error being parsed
+            parseStderrLine(partialStderrLine);
+            partialStderrLine = "";
+            addProblems(outputParser.getErrorBazelMarkerDetails(""));
+        }
+    }
+
+    /**
+     * Returns the problems found so far.
+     */
+    public synchronized List<BazelProblem> getProblems() {
+        return new ArrayList<>(problems);
+    }
+
+    /**
+     * Returns the result of each target completed so far: true if the target was built successfully.
+     */
+    public synchronized Map<String, Boolean> getTargetResults() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(targetResults));
+    }
+
+    /**
+     * Returns true once the buildFinished event has been seen.
+     */
+    public synchronized boolean isBuildFinished() {
+        return buildFinishedEvent != null;
+    }
+
+    /**
+     * Returns true if the build finished, and Bazel reported it as successful.
+     */
+    public synchronized boolean isBuildSuccessful() {
+        return (buildFinishedEvent != null) && buildFinishedEvent.isOverallSuccess();
+    }
+
+    // INTERNALS
+
+    private void parseStderrLine(String line) {
+        // a carriage return moves the cursor back to overwrite the progress message, each part is a line of its own
+        for (String part : line.split("\r")) {
+            addProblems(outputParser.getErrorBazelMarkerDetails(BEPProgressEvent.cleanLine(part)));
+        }
+    }
+
+    private void addProblems(List<BazelProblem> newProblems) {
+        for (BazelProblem problem : newProblems) {
+            problems.add(problem);
+            if (problemListener != null) {
+                problemListener.accept(problem);
+            }
+        }
+    }
+
+    private void addTargetProblem(String label, String failureMessage) {
+        String description = "Target " + label + " failed to build";
+        if ((failureMessage != null) && !failureMessage.isEmpty()) {
+            description += ": " + failureMessage;
+        }
+
+        BazelLabel bazelLabel;
+        try {
+            bazelLabel = new BazelLabel(label);
+        } catch (RuntimeException anyE) {
+            addProblems(Collections.singletonList(BazelProblem.createError(label, 1, description)));
+            return;
+        }
+        if (bazelLabel.getRepositoryName() != null) {
+            // not in this workspace, there is no file to put the problem on
+            addProblems(Collections.singletonList(BazelProblem.createError(label, 1, description)));
+            return;
+        }
+
+        String packagePath = bazelLabel.getPackagePath();
+        String packagePrefix = packagePath.isEmpty() ? "" : packagePath + "/";
+        for (BazelProblem problem : problems) {
+            String problemPackage = getPackagePath(problem.getResourcePath());
+            boolean inPackage = (problemPackage != null) ? problemPackage.equals(packagePath)
+                    : problem.getResourcePath().startsWith(packagePrefix);
+            if (inPackage) {
+                // the compiler errors already explain the failure
+                return;
+            }
+        }
+        addProblems(Collections.singletonList(BazelProblem.createError(getBuildFilePath(packagePath), 1, description)));
+    }
+
+    /**
+     * Returns the package of a workspace relative file: the closest directory above it with a BUILD file. Returns null
+     * if that cannot be determined, in which case the caller falls back to comparing path prefixes.
+     */
+    private String getPackagePath(String resourcePath) {
+        if (workspaceRootDirectory == null) {
+            return null;
+        }
+        int slash = resourcePath.lastIndexOf('/');
+        return getDirectoryPackage(slash < 0 ? "" : resourcePath.substring(0, slash));
+    }
+
+    private String getDirectoryPackage(String directory) {
+        if (directoryPackages.containsKey(directory)) {
+            return directoryPackages.get(directory);
+        }
+        String packagePath;
+        File dir = new File(workspaceRootDirectory, directory);
+        if (new File(dir, "BUILD").isFile() || new File(dir, "BUILD.bazel").isFile()) {
+            packagePath = directory;
+        } else if (directory.isEmpty()) {
+            packagePath = null;
+        } else {
+            int slash = directory.lastIndexOf('/');
+            packagePath = getDirectoryPackage(slash < 0 ? "" : directory.substring(0, slash));
+        }
+        directoryPackages.put(directory, packagePath);
+        return packagePath;
+    }
+
+    private String getBuildFilePath(String packagePath) {
+        String packagePrefix = packagePath.isEmpty() ? "" : packagePath + "/";
+        if (workspaceRootDirectory == null) {
+            return packagePrefix + "BUILD";
+        }
+        File packageDirectory = new File(workspaceRootDirectory, packagePath);
+        if (!new File(packageDirectory, "BUILD").exists() && new File(packageDirectory, "BUILD.bazel").exists()) {
+            return packagePrefix + "BUILD.bazel";
+        }
+        return packagePrefix + "BUILD";
+    }
+}
@@ -1,24 +1,36 @@
 package com.salesforce.bazel.sdk.bep;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import com.salesforce.bazel.sdk.bep.event.BEPEvent;
 
 /**
  * Abstraction for a Bazel Build Event Protocol event stream. See docs/buildeventprotocol.md for details.
+ * <p>
+ * Subscribers may be added and removed from any thread, also while events are being published. Subscribers are called
+ * on the thread that publishes the events; use subscribeAsync() for subscribers that may be slow.
  */
 public abstract class BazelBuildEventStream {
 
-    List<BazelBuildEventSubscriber> subscribeAll = new ArrayList<>();
+    // copy on write, because subscribers change rarely and events are published often
+    List<BazelBuildEventSubscriber> subscribeAll = new CopyOnWriteArrayList<>();
 
-    Map<String, List<BazelBuildEventSubscriber>> subscribeFiltered = new HashMap<>();
-    List<BazelBuildEventSubscriber> subscribeLastMessage = new ArrayList<>();
+    Map<String, List<BazelBuildEventSubscriber>> subscribeFiltered = new ConcurrentHashMap<>();
+    List<BazelBuildEventSubscriber> subscribeLastMessage = new CopyOnWriteArrayList<>();
 
-    boolean paused = false;
+    volatile boolean paused = false;
+
+    // used by subscribeAsync(), null to use the shared default executor
+    private Executor dispatchExecutor;
+    private int dispatchQueueCapacity = BazelBuildEventAsyncSubscriber.DEFAULT_QUEUE_CAPACITY;
+    private BazelBuildEventAsyncSubscriber.OverflowPolicy dispatchOverflowPolicy =
+            BazelBuildEventAsyncSubscriber.OverflowPolicy.BLOCK;
 
     // PUBLIC API
 
@@ -46,12 +58,7 @@ public abstract class BazelBuildEventStream {
             subscribeAll.add(subscriber);
         } else {
             for (String eventType : eventTypes) {
-                List<BazelBuildEventSubscriber> subscribers = subscribeFiltered.get(eventType);
-                if (subscribers == null) {
-                    subscribers = new ArrayList<>();
-                    subscribeFiltered.put(eventType, subscribers);
-                }
-                subscribers.add(subscriber);
+                subscribeFiltered.computeIfAbsent(eventType, t -> new CopyOnWriteArrayList<>()).add(subscriber);
             }
 
             if (matchLastMessage) {
@@ -60,6 +67,50 @@ public abstract class BazelBuildEventStream {
         }
     }
 
+    /**
+     * Subscribe to particular BEP events, like subscribe(), but the events are delivered to the subscriber on another
+     * thread so that a slow subscriber does not hold up the stream. The executor, queue capacity and overflow policy
+     * configured on this stream are used.
+     * <p>
+     * The returned subscriber is the one registered with the stream (pass it to unsubscribe()), and provides the
+     * queue depth and dispatch latency metrics.
+     */
+    public BazelBuildEventAsyncSubscriber subscribeAsync(BazelBuildEventSubscriber subscriber, Set<String> eventTypes,
+            boolean matchLastMessage) {
+        BazelBuildEventAsyncSubscriber asyncSubscriber = new BazelBuildEventAsyncSubscriber(subscriber,
+                dispatchExecutor, dispatchQueueCapacity, dispatchOverflowPolicy);
+        subscribe(asyncSubscriber, eventTypes, matchLastMessage);
+        return asyncSubscriber;
+    }
+
+    /**
+     * Removes the subscriber from all of its subscriptions.
+     */
+    public void unsubscribe(BazelBuildEventSubscriber subscriber) {
+        subscribeAll.remove(subscriber);
+        subscribeLastMessage.remove(subscriber);
+        for (List<BazelBuildEventSubscriber> subscribers : subscribeFiltered.values()) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Configures how subscribeAsync() subscribers receive their events.
+     *
+     * @param executor
+     *            runs the delivery of the events, null to use a shared pool of daemon threads
+     * @param queueCapacity
+     *            the number of events that can be waiting for each subscriber
+     * @param overflowPolicy
+     *            what to do with new events when a subscriber's queue is full
+     */
+    public void setAsyncDispatch(Executor executor, int queueCapacity,
+            BazelBuildEventAsyncSubscriber.OverflowPolicy overflowPolicy) {
+        dispatchExecutor = executor;
+        dispatchQueueCapacity = queueCapacity;
+        dispatchOverflowPolicy = overflowPolicy;
+    }
+
     /**
      * API to pause monitoring the Bazel build.
      */
@@ -0,0 +1,380 @@
+package com.salesforce.bazel.sdk.bep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPStartedEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPTestResultEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPTestSummaryEvent;
+
+/**
+ * Subscriber that aggregates the test results of a build as the events stream in. For each test label it keeps running
+ * totals (attempts, the status of each attempt of each shard, p50/p95 attempt duration) and the outcome of the label
+ * (passed, failed, flaky). Totals across all labels are kept as well.
+ * <p>
+ * The summaries are immutable snapshots that are replaced as events arrive, so they can be queried from any thread at
+ * any time (for example by a dashboard polling a long running CI build) without scanning the events, and without
+ * blocking the stream. A started event of a new build clears the results.
+ * <p>
+ * Subscribe it to a stream with {@link #getEventTypes()}.
+ */
+public class BazelBuildEventTestAggregator implements BazelBuildEventSubscriber {
+
+    public static final String STATUS_PASSED = "PASSED";
+    public static final String STATUS_FLAKY = "FLAKY";
+
+    /**
+     * The outcome of a test label.
+     */
+    public enum TestOutcome {
+        /**
+         * No attempt has failed so far.
+         */
+        PASSED,
+        /**
+         * Some attempts failed, but every shard passed in the end.
+         */
+        FLAKY,
+        /**
+         * A shard failed all of its attempts (or the test failed with another status, like TIMEOUT).
+         */
+        FAILED
+    }
+
+    private final Map<String, LabelState> states = new ConcurrentHashMap<>();
+    private final Map<String, TestLabelSummary> summaries = new ConcurrentHashMap<>();
+    private volatile TestTotals totals = new TestTotals(0, 0, 0, 0, 0, 0);
+
+    // PUBLIC API
+
+    /**
+     * The event types this subscriber needs.
+     */
+    public static Set<String> getEventTypes() {
+        return new HashSet<>(Arrays.asList(BEPStartedEvent.NAME, BEPTestResultEvent.NAME, BEPTestSummaryEvent.NAME));
+    }
+
+    @Override
+    public synchronized void onEvent(BEPEvent event) {
+        if (event instanceof BEPStartedEvent) {
+            reset();
+        } else if (event instanceof BEPTestResultEvent) {
+            BEPTestResultEvent result = (BEPTestResultEvent) event;
+            if (result.getTestLabel() != null) {
+                LabelState state = states.computeIfAbsent(result.getTestLabel(), LabelState::new);
+                state.addAttempt(result);
+                publish(state);
+            }
+        } else if (event instanceof BEPTestSummaryEvent) {
+            BEPTestSummaryEvent summary = (BEPTestSummaryEvent) event;
+            if (summary.getTestLabel() != null) {
+                LabelState state = states.computeIfAbsent(summary.getTestLabel(), LabelState::new);
+                state.complete(summary);
+                publish(state);
+            }
+        }
+    }
+
+    /**
+     * Returns the summary for the test label, or null if no result has been seen for it.
+     */
+    public TestLabelSummary getLabelSummary(String label) {
+        return summaries.get(label);
+    }
+
+    /**
+     * Returns a live, unmodifiable view of the summaries of all test labels.
+     */
+    public Collection<TestLabelSummary> getLabelSummaries() {
+        return Collections.unmodifiableCollection(summaries.values());
+    }
+
+    /**
+     * Returns the totals across all the test labels.
+     */
+    public TestTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * Forgets all results.
+     */
+    public synchronized void reset() {
+        states.clear();
+        summaries.clear();
+        totals = new TestTotals(0, 0, 0, 0, 0, 0);
+    }
+
+    // SNAPSHOTS
+
+    /**
+     * Snapshot of the results of one test label.
+     */
+    public static class TestLabelSummary {
+        private final String label;
+        private final TestOutcome outcome;
+        private final boolean complete;
+        private final int attemptCount;
+        private final int failedAttemptCount;
+        private final Map<Integer, List<String>> shardAttemptStatus;
+        private final long totalDurationMs;
+        private final int p50DurationMs;
+        private final int p95DurationMs;
+
+        TestLabelSummary(String label, TestOutcome outcome, boolean complete, int attemptCount,
+                int failedAttemptCount, Map<Integer, List<String>> shardAttemptStatus, long totalDurationMs,
+                int p50DurationMs, int p95DurationMs) {
+            this.label = label;
+            this.outcome = outcome;
+            this.complete = complete;
+            this.attemptCount = attemptCount;
+            this.failedAttemptCount = failedAttemptCount;
+            this.shardAttemptStatus = shardAttemptStatus;
+            this.totalDurationMs = totalDurationMs;
+            this.p50DurationMs = p50DurationMs;
+            this.p95DurationMs = p95DurationMs;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * The outcome so far. Final once isComplete() is true.
+         */
+        public TestOutcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * True once Bazel has published the test summary of the label.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public int getAttemptCount() {
+            return attemptCount;
+        }
+
+        public int getFailedAttemptCount() {
+            return failedAttemptCount;
+        }
+
+        /**
+         * The status of each attempt (PASSED, FAILED, ...) of each shard, in attempt order. Shard numbers start at 0
+         * for unsharded tests. If the test ran more than once (--runs_per_test), the attempts of all runs of a shard
+         * are included.
+         */
+        public Map<Integer, List<String>> getShardAttemptStatus() {
+            return shardAttemptStatus;
+        }
+
+        public long getTotalDurationMs() {
+            return totalDurationMs;
+        }
+
+        /**
+         * The median duration of the attempts.
+         */
+        public int getP50DurationMs() {
+            return p50DurationMs;
+        }
+
+        /**
+         * The 95th percentile duration of the attempts.
+         */
+        public int getP95DurationMs() {
+            return p95DurationMs;
+        }
+
+        @Override
+        public String toString() {
+            return "TestLabelSummary [label=" + label + ", outcome=" + outcome + ", complete=" + complete
+                    + ", attemptCount=" + attemptCount + ", failedAttemptCount=" + failedAttemptCount
+                    + ", shardAttemptStatus=" + shardAttemptStatus + ", p50DurationMs=" + p50DurationMs
+                    + ", p95DurationMs=" + p95DurationMs + "]";
+        }
+    }
+
+    /**
+     * Snapshot of the totals across all test labels. Labels are counted by their current outcome, also while they are
+     * still running.
+     */
+    public static class TestTotals {
+        private final int labelCount;
+        private final int completeCount;
+        private final int passedCount;
+        private final int failedCount;
+        private final int flakyCount;
+        private final int attemptCount;
+
+        TestTotals(int labelCount, int completeCount, int passedCount, int failedCount, int flakyCount,
+                int attemptCount) {
+            this.labelCount = labelCount;
+            this.completeCount = completeCount;
+            this.passedCount = passedCount;
+            this.failedCount = failedCount;
+            this.flakyCount = flakyCount;
+            this.attemptCount = attemptCount;
+        }
+
+        public int getLabelCount() {
+            return labelCount;
+        }
+
+        public int getCompleteCount() {
+            return completeCount;
+        }
+
+        public int getPassedCount() {
+            return passedCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        public int getFlakyCount() {
+            return flakyCount;
+        }
+
+        public int getAttemptCount() {
+            return attemptCount;
+        }
+
+        @Override
+        public String toString() {
+            return "TestTotals [labelCount=" + labelCount + ", completeCount=" + completeCount + ", passedCount="
+                    + passedCount + ", failedCount=" + failedCount + ", flakyCount=" + flakyCount + ", attemptCount="
+                    + attemptCount + "]";
+        }
+    }
+
+    // INTERNALS
+
+    private void publish(LabelState state) {
+        TestLabelSummary previous = summaries.get(state.label);
+        TestLabelSummary current = state.toSummary();
+        summaries.put(state.label, current);
+
+        // adjust the totals by the difference between the old and new snapshot of the label
+        TestTotals t = totals;
+        int labelCount = t.labelCount;
+        int completeCount = t.completeCount;
+        int[] outcomeCounts = { t.passedCount, t.failedCount, t.flakyCount };
+        int attemptCount = t.attemptCount;
+        if (previous == null) {
+            labelCount++;
+        } else {
+            completeCount -= previous.complete ? 1 : 0;
+            outcomeCounts[outcomeSlot(previous.outcome)]--;
+            attemptCount -= previous.attemptCount;
+        }
+        completeCount += current.complete ? 1 : 0;
+        outcomeCounts[outcomeSlot(current.outcome)]++;
+        attemptCount += current.attemptCount;
+        totals = new TestTotals(labelCount, completeCount, outcomeCounts[0], outcomeCounts[1], outcomeCounts[2],
+                attemptCount);
+    }
+
+    private static int outcomeSlot(TestOutcome outcome) {
+        switch (outcome) {
+        case PASSED:
+            return 0;
+        case FAILED:
+            return 1;
+        default:
+            return 2;
+        }
+    }
+
+    /**
+     * Running state of a test label, only accessed by the thread delivering the events.
+     */
+    private static class LabelState {
+        final String label;
+
+        // shard -> status of each attempt
+        final Map<Integer, List<String>> shardAttempts = new TreeMap<>();
+        // shard -> status of the latest attempt of each run (a shard passes if every run passed in the end)
+        final Map<Integer, Map<Integer, String>> shardRunStatus = new TreeMap<>();
+        int attemptCount = 0;
+        int failedAttemptCount = 0;
+        long totalDurationMs = 0L;
+        int[] durations = new int[4];
+
+        // the overall status reported by the test summary, null until it arrives
+        String summaryStatus;
+
+        LabelState(String label) {
+            this.label = label;
+        }
+
+        void addAttempt(BEPTestResultEvent result) {
+            String status = result.getTestStatus() != null ? result.getTestStatus() : "NO_STATUS";
+            shardAttempts.computeIfAbsent(result.getTestShard(), s -> new ArrayList<>()).add(status);
+            shardRunStatus.computeIfAbsent(result.getTestShard(), s -> new TreeMap<>()).put(result.getTestRun(),
+                status);
+            if (!STATUS_PASSED.equals(status)) {
+                failedAttemptCount++;
+            }
+            if (attemptCount == durations.length) {
+                durations = Arrays.copyOf(durations, attemptCount * 2);
+            }
+            durations[attemptCount++] = result.getTestDurationMs();
+            totalDurationMs += result.getTestDurationMs();
+        }
+
+        void complete(BEPTestSummaryEvent summary) {
+            summaryStatus = summary.getTestStatus() != null ? summary.getTestStatus() : "NO_STATUS";
+        }
+
+        TestOutcome outcome() {
+            if (summaryStatus != null) {
+                if (STATUS_PASSED.equals(summaryStatus)) {
+                    return TestOutcome.PASSED;
+                }
+                return STATUS_FLAKY.equals(summaryStatus) ? TestOutcome.FLAKY : TestOutcome.FAILED;
+            }
+            for (Map<Integer, String> runStatus : shardRunStatus.values()) {
+                for (String status : runStatus.values()) {
+                    if (!STATUS_PASSED.equals(status)) {
+                        return TestOutcome.FAILED;
+                    }
+                }
+            }
+            return failedAttemptCount > 0 ? TestOutcome.FLAKY : TestOutcome.PASSED;
+        }
+
+        TestLabelSummary toSummary() {
+            Map<Integer, List<String>> matrix = new TreeMap<>();
+            for (Map.Entry<Integer, List<String>> shard : shardAttempts.entrySet()) {
+                matrix.put(shard.getKey(), Collections.unmodifiableList(new ArrayList<>(shard.getValue())));
+            }
+            int[] sorted = Arrays.copyOf(durations, attemptCount);
+            Arrays.sort(sorted);
+            return new TestLabelSummary(label, outcome(), summaryStatus != null, attemptCount, failedAttemptCount,
+                    Collections.unmodifiableMap(matrix), totalDurationMs, percentile(sorted, 50),
+                    percentile(sorted, 95));
+        }
+
+        // nearest rank percentile
+        static int percentile(int[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil((percent / 100.0) * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
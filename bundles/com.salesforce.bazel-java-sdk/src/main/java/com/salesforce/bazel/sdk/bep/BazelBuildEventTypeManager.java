@@ -1,12 +1,12 @@
 package com.salesforce.bazel.sdk.bep;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 import com.salesforce.bazel.sdk.bep.event.BEPBuildFinishedEvent;
 import com.salesforce.bazel.sdk.bep.event.BEPBuildMetricsEvent;
@@ -23,6 +23,7 @@ import com.salesforce.bazel.sdk.bep.event.BEPTestResultEvent;
 import com.salesforce.bazel.sdk.bep.event.BEPTestSummaryEvent;
 import com.salesforce.bazel.sdk.bep.event.BEPUnstructuredCommandLineEvent;
 import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.util.JsonStreamReader;
 
 public class BazelBuildEventTypeManager {
     private static final LogHelper LOG = LogHelper.log(BazelBuildEventTypeManager.class);
@@ -60,6 +61,17 @@ public class BazelBuildEventTypeManager {
         eventTypes.add(BEPUnstructuredCommandLineEvent.NAME);
     }
 
+    /**
+     * The SDK event types that do not read the children of the event, which can be a long list of event ids (e.g. for
+     * namedSetOfFiles). The children of these events are skipped when the json is read, unless the json object is kept
+     * for the SDK user. Event types added with addEventType() always get the children.
+     */
+    private static Set<String> eventTypesWithoutChildren = new HashSet<>(eventTypes);
+    static {
+        eventTypesWithoutChildren.remove(BEPPatternEvent.NAME);
+        eventTypesWithoutChildren.remove("buildToolLogs");
+    }
+
     /**
      * Add a new event type to the supported list. Requires that you also register a BazelBuildEventTypeResolver.
      */
@@ -77,25 +89,20 @@ public class BazelBuildEventTypeManager {
 
     /**
      * Normally called by a BazelBuildEventsStream while loading an event json.
+     * <p>
+     * The json is read in a single pass. Bazel writes the id first, so for events of types that are not registered only
+     * a few characters are read, and they are returned as EVENTTYPE_IGNORED placeholders. For the other events, only
+     * the fields that the event classes use are decoded.
      */
     public static BEPEvent parseEvent(String json, int index) {
         BEPEvent event = null;
 
         try {
-            JSONObject eventObject = (JSONObject) new JSONParser().parse(json);
-            JSONObject id = (JSONObject) eventObject.get("id");
-
-            if (id != null) {
-                // it is a little awkward to determine the event type, since the type is expressed
-                // as a key name, not a key value. So we iterate through the type we care about and
-                // look for a key match.
-                for (String eventType : eventTypes) {
-                    Object type = id.get(eventType);
-                    if (type != null) {
-                        // this is a supported type in the SDK
-                        event = createEvent(eventType, json, index, eventObject);
-                    }
-                }
+            JSONObject eventObject = readEventObject(json);
+            if (eventObject != null) {
+                // this is a supported type in the SDK
+                String eventType = getEventType(eventObject.get("id"));
+                event = createEvent(eventType, json, index, eventObject);
             }
             if (event == null) {
                 // placeholder event, having this in the list makes it possible to skip reparsing
@@ -111,6 +118,55 @@ public class BazelBuildEventTypeManager {
         return event;
     }
 
+    /**
+     * Reads the json of an event of a registered type as a JSONObject. The reading stops as soon as the id shows that
+     * the type is not registered, and null is returned; null is also returned if the event has no id. The children are
+     * skipped for the event types that do not use them.
+     */
+    static JSONObject readEventObject(String json) throws IOException {
+        JSONObject eventObject = new JSONObject();
+        String eventType = null;
+        try (JsonStreamReader reader = new JsonStreamReader(json)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id".equals(name)) {
+                    Object id = reader.readValue();
+                    eventType = getEventType(id);
+                    if ((eventType == null) || !eventTypes.contains(eventType)) {
+                        return null;
+                    }
+                    eventObject.put(name, id);
+                } else if ("children".equals(name) && (eventType != null) && skipsChildren(eventType)) {
+                    reader.skipValue();
+                } else {
+                    eventObject.put(name, reader.readValue());
+                }
+            }
+            reader.endObject();
+        }
+        if (eventType == null) {
+            return null;
+        }
+        if (skipsChildren(eventType)) {
+            // the id came after the children
+            eventObject.remove("children");
+        }
+        return eventObject;
+    }
+
+    private static boolean skipsChildren(String eventType) {
+        return eventTypesWithoutChildren.contains(eventType) && !BEPEvent.isKeepEventJsonObject();
+    }
+
+    // the type of an event is the first (and only) key of its id object
+    private static String getEventType(Object id) {
+        if (!(id instanceof JSONObject) || ((JSONObject) id).isEmpty()) {
+            return null;
+        }
+        return String.valueOf(((JSONObject) id).keySet().iterator().next());
+    }
+
     /**
      * Used by a BazelBuildEventStream to create an event object when it receives the json event.
      */
@@ -5,9 +5,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.salesforce.bazel.sdk.bep.event.BEPEvent;
-import com.salesforce.bazel.sdk.bep.file.BEPMonitoredFile;
-import com.salesforce.bazel.sdk.bep.file.BEPFileContents;
+import com.salesforce.bazel.sdk.bep.file.BEPEventRetentionPolicy;
 import com.salesforce.bazel.sdk.bep.file.BEPFileParser;
+import com.salesforce.bazel.sdk.bep.file.BEPMonitoredFile;
+import com.salesforce.bazel.sdk.bep.file.BEPFileTailReader;
 import com.salesforce.bazel.sdk.logging.LogHelper;
 
 /**
@@ -32,6 +33,8 @@ public class BazelBuildEventsFileStream extends BazelBuildEventStream {
 
     protected final List<BEPMonitoredFile> monitoredFiles = new ArrayList<>();
 
+    private BEPEventRetentionPolicy retentionPolicy = BEPEventRetentionPolicy.keepAll();
+
     public BazelBuildEventsFileStream() {}
 
     // PUBLIC API
@@ -46,6 +49,17 @@ public class BazelBuildEventsFileStream extends BazelBuildEventStream {
         addFileToMonitor_Internal(bepFile);
     }
 
+    /**
+     * Sets how many events of the current build are kept in memory for each monitored file, see
+     * BEPEventRetentionPolicy. By default all events are kept. Applies to files added later as well.
+     */
+    public void setRetentionPolicy(BEPEventRetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        for (BEPMonitoredFile monitoredFile : monitoredFiles) {
+            monitoredFile.bepFile.setRetentionPolicy(retentionPolicy);
+        }
+    }
+
     @Override
     public void activateStream() {
         super.activateStream();
@@ -64,8 +78,10 @@ public class BazelBuildEventsFileStream extends BazelBuildEventStream {
         // set last mod to zero so we will parse the file on the first run
         monitoredFile.fileLastModifiedMS = 0L;
 
-        // create the parser object
+        // create the parser object, and the reader that tracks how much of the file we have consumed
         monitoredFile.bepFile = new BEPFileParser(bepFile);
+        monitoredFile.bepFile.setRetentionPolicy(retentionPolicy);
+        monitoredFile.tailReader = new BEPFileTailReader(bepFile);
 
         monitoredFiles.add(monitoredFile);
 
@@ -79,20 +95,19 @@ public class BazelBuildEventsFileStream extends BazelBuildEventStream {
             return;
         }
 
-        // parse the file, but use the previous results (if this file has been scanned before) as a cache, 
-        // to avoid reparsing lines we have already parsed
-        BEPFileContents previousContent = monitoredFile.previousResults;
+        // parse only the events appended since the last pass, and add them to the previous results (if this file
+        // has been scanned before); each new event is published as soon as it is parsed, so that the retention
+        // policy can drop it from memory afterwards
         BEPFileParser bepFile = monitoredFile.bepFile;
-        BEPFileContents newContent = bepFile.readEvents("BazelBuildEventsFileStream", previousContent);
-        monitoredFile.previousResults = newContent;
-
-        // iterate through the newly found lines and send them to the subscribers
-        for (BEPEvent event : newContent.events) {
-            if (event.isProcessed()) {
-                continue;
-            }
-            event.processed();
-            publishEventToSubscribers(event);
+        monitoredFile.previousResults = bepFile.readNewEvents("BazelBuildEventsFileStream",
+            monitoredFile.previousResults, monitoredFile.tailReader, this::publishNewEvent);
+    }
+
+    private void publishNewEvent(BEPEvent event) {
+        if (event.isProcessed()) {
+            return;
         }
+        event.processed();
+        publishEventToSubscribers(event);
     }
 }
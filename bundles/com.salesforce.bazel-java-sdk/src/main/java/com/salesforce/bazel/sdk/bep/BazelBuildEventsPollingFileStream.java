@@ -10,6 +10,9 @@ import com.salesforce.bazel.sdk.logging.LogHelper;
  * events emitted from Bazel. This implementation spawns a thread and actively polls one or more BEP files for new
  * events. It is intelligent and will only reparse a file if the file modification time has changed.
  * <p>
+ * Events are seen up to <i>filePollerIntervalSeconds</i> after Bazel writes them. Prefer
+ * {@link BazelBuildEventsWatchingFileStream}, which is notified by the file system instead of polling.
+ * <p>
  * Because this stream integrates with your builds with Bazel using BEP, this stream will work with command line builds
  * but also with IDE builds.
  * <p>
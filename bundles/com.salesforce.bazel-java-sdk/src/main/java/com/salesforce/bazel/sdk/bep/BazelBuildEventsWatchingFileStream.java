@@ -0,0 +1,111 @@
+package com.salesforce.bazel.sdk.bep;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.salesforce.bazel.sdk.bep.file.BEPFileWatcher;
+import com.salesforce.bazel.sdk.bep.file.BEPMonitoredFile;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+
+/**
+ * Bazel build event protocol stream (BEP) for a Bazel workspace. A BEP stream allows you to monitor and react to build
+ * events emitted from Bazel. This implementation is notified by the file system when Bazel writes to a BEP file, and
+ * then publishes the events that were appended to it. Events reach the subscribers shortly after Bazel writes them,
+ * and nothing runs while the files are not changing.
+ * <p>
+ * The file system notifications come from a {@link BEPFileWatcher}, which is shared by default by all the watching
+ * streams in the JVM. See that class for the debounce behavior.
+ * <p>
+ * After creation, you must start the stream by calling activateStream(). Call close() when the stream is no longer
+ * needed, to stop watching the files.
+ * <p>
+ * <b>NOTE:</b> This feature requires a configuration change to your Bazel workspace: you must add the following lines
+ * to your .bazelrc file to enable BEP:<br/>
+ * build --build_event_json_file bep_build.json<br/>
+ * test --build_event_json_file bep_test.json<br/>
+ * <p>
+ * In the above example, you must call addFileToMonitor() for each configured json file (bep_build.json and
+ * bep_test.json).
+ */
+public class BazelBuildEventsWatchingFileStream extends BazelBuildEventsFileStream implements AutoCloseable {
+    private static final LogHelper LOG = LogHelper.log(BazelBuildEventsWatchingFileStream.class);
+
+    private final BEPFileWatcher watcher;
+    private final List<BEPFileWatcher.Registration> registrations = new ArrayList<>();
+
+    public BazelBuildEventsWatchingFileStream() {
+        this(BEPFileWatcher.getSharedInstance());
+    }
+
+    public BazelBuildEventsWatchingFileStream(BEPFileWatcher watcher) {
+        this.watcher = watcher;
+    }
+
+    // PUBLIC API
+
+    /**
+     * Bazel supports output of BEP events to one or more files. For each BEP file you have configured for your
+     * workspace, add it here. The file does not need to exist, but the directory that will contain it must.
+     * <p>
+     * You must decide if the stream should publish the events already in the BEP file when this stream is activated.
+     * If it would be odd for your app to react to build events that are many days old, set <i>parseOnStart</i> to
+     * false, and only the events written after this call will be published.
+     */
+    public synchronized void addFileToMonitor(File bepFile, boolean parseOnStart) {
+        BEPMonitoredFile monitoredFile = addFileToMonitor_Internal(bepFile);
+
+        if (!parseOnStart) {
+            try {
+                monitoredFile.tailReader.skipToEnd();
+            } catch (IOException ioe) {
+                LOG.error("Could not read BEP file [{}]", ioe, bepFile.getAbsolutePath());
+            }
+        }
+        if (!registrations.isEmpty()) {
+            // the stream is already active
+            watch(monitoredFile);
+        }
+    }
+
+    @Override
+    public synchronized void activateStream() {
+        if (registrations.isEmpty()) {
+            for (BEPMonitoredFile monitoredFile : monitoredFiles) {
+                watch(monitoredFile);
+            }
+        }
+        // publishes anything written while the stream was paused (or before it was started)
+        super.activateStream();
+    }
+
+    /**
+     * Stops watching the BEP files. The stream can be activated again later.
+     */
+    @Override
+    public synchronized void close() {
+        for (BEPFileWatcher.Registration registration : registrations) {
+            registration.close();
+        }
+        registrations.clear();
+    }
+
+    // INTERNAL
+
+    private void watch(BEPMonitoredFile monitoredFile) {
+        try {
+            registrations.add(watcher.watch(monitoredFile.file, () -> fileChanged(monitoredFile)));
+        } catch (IOException ioe) {
+            LOG.error("Could not watch BEP file [{}]", ioe, monitoredFile.file.getAbsolutePath());
+        }
+    }
+
+    private synchronized void fileChanged(BEPMonitoredFile monitoredFile) {
+        if (paused) {
+            // activateStream() will catch up on the changes
+            return;
+        }
+        processFile(monitoredFile);
+    }
+}
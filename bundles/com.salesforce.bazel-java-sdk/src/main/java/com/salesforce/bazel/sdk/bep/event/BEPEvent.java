@@ -141,6 +141,13 @@ public class BEPEvent {
         keepJsonObject = keep;
     }
 
+    /**
+     * Returns true if the JSON object of each event is kept, see {@link #keepEventJsonObject(boolean)}.
+     */
+    public static boolean isKeepEventJsonObject() {
+        return keepJsonObject;
+    }
+
     // INTERNALS
 
     /**
@@ -14,6 +14,7 @@ public class BEPProgressEvent extends BEPEvent {
 
     protected List<String> stdout;
     protected List<String> stderr;
+    protected String stderrText;
 
     public BEPProgressEvent(String rawEvent, int index, JSONObject eventObj) {
         super(NAME, rawEvent, index, eventObj);
@@ -34,6 +35,21 @@ public class BEPProgressEvent extends BEPEvent {
         return stderr;
     }
 
+    /**
+     * The stderr of this event as Bazel wrote it. Unlike getStderr(), the text is not split, cleaned or deduped, so it
+     * may end with a partial line that continues in the next progress event.
+     */
+    public String getStderrText() {
+        return stderrText;
+    }
+
+    /**
+     * Removes the terminal control characters from a line of the stderr text, and trims it.
+     */
+    public static String cleanLine(String line) {
+        return stripControlCharacters(line).trim();
+    }
+
     // FEATURE TOGGLES
 
     /**
@@ -54,6 +70,7 @@ public class BEPProgressEvent extends BEPEvent {
         Object stderrObj = progressDetail.get("stderr");
         if (stderrObj != null) {
             String stderrStr = stderrObj.toString();
+            stderrText = stderrStr;
             if (stderrStr.startsWith("ERROR:") || stderrStr.contains("FAILED")) {
                 isError = true;
             }
@@ -13,6 +13,7 @@ public class BEPTargetCompletedEvent extends BEPEvent {
 
     public static final String NAME = "targetCompleted";
 
+    private String targetLabel;
     private String failureMessage;
     private String failureSpawnCode;
     private int failureSpawnExitCode;
@@ -22,14 +23,30 @@ public class BEPTargetCompletedEvent extends BEPEvent {
     public BEPTargetCompletedEvent(String rawEvent, int index, JSONObject eventObj) {
         super(NAME, rawEvent, index, eventObj);
 
+        JSONObject idDetail = (JSONObject) eventObj.get("id");
+        if (idDetail != null) {
+            parseId(idDetail);
+        }
+
         JSONObject completedDetail = (JSONObject) eventObj.get("completed");
         if (completedDetail != null) {
             parseDetails(completedDetail);
         }
+        JSONObject abortedDetail = (JSONObject) eventObj.get("aborted");
+        if (abortedDetail != null) {
+            parseAborted(abortedDetail);
+        }
     }
 
     // GETTERS
 
+    /**
+     * The Bazel label of the target.
+     */
+    public String getTargetLabel() {
+        return targetLabel;
+    }
+
     public String getFailureMessage() {
         return failureMessage;
     }
@@ -56,6 +73,36 @@ public class BEPTargetCompletedEvent extends BEPEvent {
 
     // PARSER
 
+    /*
+       "id": {
+        "targetCompleted": {
+          "label": "//foo:foo",
+          "configuration": { "id": "63cc040ed2b86a512099924e698df6e0b9848625e6ca33d9556c5993dccbc2fb" }
+        }
+      },
+     */
+    void parseId(JSONObject idDetail) {
+        JSONObject targetId = (JSONObject) idDetail.get("targetCompleted");
+        if (targetId != null) {
+            targetLabel = decodeStringFromJsonObject(targetId.get("label"));
+        }
+    }
+
+    /*
+     ABORTED (the target was not built, because of an analysis failure or a failed dependency for example):
+       "aborted": {
+         "reason": "ANALYSIS_FAILURE",
+         "description": "Analysis of target '//foo:foo' failed"
+       }
+     */
+    void parseAborted(JSONObject abortedDetail) {
+        this.isError = true;
+        failureMessage = this.decodeStringFromJsonObject(abortedDetail.get("description"));
+        if ((failureMessage == null) || failureMessage.isEmpty()) {
+            failureMessage = this.decodeStringFromJsonObject(abortedDetail.get("reason"));
+        }
+    }
+
     /*
      FAILURE:
        "completed": {
@@ -122,10 +169,11 @@ public class BEPTargetCompletedEvent extends BEPEvent {
 
     @Override
     public String toString() {
-        return "BEPTargetCompletedEvent [failureMessage=" + failureMessage + ", failureSpawnCode=" + failureSpawnCode
-                + ", failureSpawnExitCode=" + failureSpawnExitCode + ", success=" + success + ", importantOutput="
-                + importantOutput + ", index=" + index + ", eventType=" + eventType + ", isProcessed=" + isProcessed
-                + ", isLastMessage=" + isLastMessage + ", isError=" + isError + "]";
+        return "BEPTargetCompletedEvent [targetLabel=" + targetLabel + ", failureMessage=" + failureMessage
+                + ", failureSpawnCode=" + failureSpawnCode + ", failureSpawnExitCode=" + failureSpawnExitCode
+                + ", success=" + success + ", importantOutput=" + importantOutput + ", index=" + index + ", eventType="
+                + eventType + ", isProcessed=" + isProcessed + ", isLastMessage=" + isLastMessage + ", isError="
+                + isError + "]";
     }
 
 }
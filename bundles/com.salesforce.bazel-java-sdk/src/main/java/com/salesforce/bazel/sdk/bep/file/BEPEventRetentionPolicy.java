@@ -0,0 +1,83 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import java.io.File;
+
+/**
+ * Decides how much of a BEP file is kept in memory after its events have been published. A large build can write
+ * hundreds of thousands of events, and keeping all of them as objects takes a lot of heap.
+ * <p>
+ * The summary fields of BEPFileContents (started event, last event flag, event count) are always kept. Beyond that,
+ * only the most recent <i>maxInMemoryEvents</i> events are kept in the events list. If a spill directory is set, every
+ * event line is also written to an indexed file in that directory, so older events can still be retrieved by index with
+ * BEPFileContents.getEvent() (they are parsed again when asked for). Without a spill directory older events are
+ * discarded. The events list is trimmed in batches rather than on every event, so it can briefly hold up to a quarter
+ * more than maxInMemoryEvents.
+ * <p>
+ * Note that the memory used by each event also depends on BEPEvent.keepEventJsonString() and
+ * BEPEvent.keepEventJsonObject(), which are disabled by default.
+ */
+public class BEPEventRetentionPolicy {
+
+    private final int maxInMemoryEvents;
+    private final int maxErrorEvents;
+    private final File spillDirectory;
+
+    /**
+     * @param maxInMemoryEvents
+     *            the number of recent events kept in BEPFileContents.events; this is a soft limit, the list is trimmed
+     *            back to it once it holds a quarter more, so it can briefly hold up to maxInMemoryEvents * 5/4 events
+     * @param maxErrorEvents
+     *            the number of error events of the current build kept by the parser
+     * @param spillDirectory
+     *            the directory for the files that hold the events of the current build, or null to discard events that
+     *            do not fit in memory
+     */
+    public BEPEventRetentionPolicy(int maxInMemoryEvents, int maxErrorEvents, File spillDirectory) {
+        if ((maxInMemoryEvents < 0) || (maxErrorEvents < 0)) {
+            throw new IllegalArgumentException("Event limits must not be negative.");
+        }
+        this.maxInMemoryEvents = maxInMemoryEvents;
+        this.maxErrorEvents = maxErrorEvents;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Keeps every event of the current build in memory. This is the default.
+     */
+    public static BEPEventRetentionPolicy keepAll() {
+        return new BEPEventRetentionPolicy(Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Keeps no events in memory, only the summary fields and the error events. Events are still published to the
+     * subscribers of a stream as they are read.
+     */
+    public static BEPEventRetentionPolicy summaryOnly(int maxErrorEvents) {
+        return new BEPEventRetentionPolicy(0, maxErrorEvents, null);
+    }
+
+    /**
+     * Keeps the most recent events in memory, and the rest in a file in the spill directory.
+     */
+    public static BEPEventRetentionPolicy spillToDisk(int maxInMemoryEvents, int maxErrorEvents, File spillDirectory) {
+        return new BEPEventRetentionPolicy(maxInMemoryEvents, maxErrorEvents, spillDirectory);
+    }
+
+    public int getMaxInMemoryEvents() {
+        return maxInMemoryEvents;
+    }
+
+    public int getMaxErrorEvents() {
+        return maxErrorEvents;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    @Override
+    public String toString() {
+        return "BEPEventRetentionPolicy [maxInMemoryEvents=" + maxInMemoryEvents + ", maxErrorEvents=" + maxErrorEvents
+                + ", spillDirectory=" + spillDirectory + "]";
+    }
+}
@@ -0,0 +1,102 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append only file that holds the json lines of the events of one build, indexed by event index, so that events that
+ * are not kept in memory can be read back. The index is an array of file offsets (8 bytes per event).
+ * <p>
+ * The file is deleted when this object is closed; the owner closes it in a finally block, or when the build it holds is
+ * replaced by a new one (BEPFileContents.releaseSpillFile()).
+ * <p>
+ * This class is not thread safe.
+ */
+class BEPEventSpillFile implements Closeable {
+
+    private final File file;
+    private final OutputStream out;
+    private RandomAccessFile in;
+
+    // offsets[i] is the position of the line of event i; the line ends at the offset of the next event
+    private long[] offsets = new long[1024];
+    private int count = 0;
+    private long position = 0L;
+    private boolean flushed = true;
+
+    BEPEventSpillFile(File directory) throws IOException {
+        directory.mkdirs();
+        file = File.createTempFile("bep-events-", ".json", directory);
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        } catch (IOException ioe) {
+            file.delete();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Appends the json of the next event. Events must be appended in index order.
+     */
+    void append(String eventJson) throws IOException {
+        byte[] bytes = eventJson.getBytes(StandardCharsets.UTF_8);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = position;
+        out.write(bytes);
+        out.write('\n');
+        position += bytes.length + 1;
+        flushed = false;
+    }
+
+    /**
+     * Reads the json of the event with the index, or null if no such event was appended.
+     */
+    String read(int index) throws IOException {
+        if ((index < 0) || (index >= count)) {
+            return null;
+        }
+        if (!flushed) {
+            out.flush();
+            flushed = true;
+        }
+        if (in == null) {
+            in = new RandomAccessFile(file, "r");
+        }
+        long start = offsets[index];
+        long end = (index + 1) < count ? offsets[index + 1] : position;
+        // the line without its newline
+        byte[] bytes = new byte[(int) (end - start - 1)];
+        in.seek(start);
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return count;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+            if (in != null) {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -1,20 +1,107 @@
 package com.salesforce.bazel.sdk.bep.file;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.salesforce.bazel.sdk.bep.event.BEPStartedEvent;
+import com.salesforce.bazel.sdk.bep.BazelBuildEventTypeManager;
 import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPStartedEvent;
+import com.salesforce.bazel.sdk.logging.LogHelper;
 
 /**
  * Contents of a single pass parsing of a BEP json file.
+ * <p>
+ * Depending on the BEPEventRetentionPolicy of the parser, the events list may only hold the most recent events of the
+ * build. Use getEvent() to look up an event by index; it also finds events that were spilled to disk.
  */
 public class BEPFileContents {
+    private static final LogHelper LOG = LogHelper.log(BEPFileContents.class);
+
     public List<BEPEvent> events = new ArrayList<>();
 
+    // the number of events in the build so far, including those no longer in the events list
+    public int eventCount = 0;
+
     // commonly needed quick lookups, if any event has these fields set, we set the flag on the result
     public BEPStartedEvent startedEvent = null;
     public boolean hasLastEvent = false;
     public boolean hasBuildError = false;
     public boolean hasTestError = false;
+
+    // holds all the events of the build, if the retention policy has a spill directory
+    BEPEventSpillFile spillFile;
+
+    // the number of lines of the BEP file that were read by BEPFileParser.readEvents()
+    int lineCount = 0;
+
+    /**
+     * The index of the oldest event still in the events list.
+     */
+    public int getFirstInMemoryIndex() {
+        return eventCount - events.size();
+    }
+
+    /**
+     * Returns the event with the index, from memory or from the spill file. Returns null if the event was discarded
+     * by the retention policy, or if there is no such event.
+     */
+    public BEPEvent getEvent(int index) {
+        int firstInMemory = getFirstInMemoryIndex();
+        if ((index >= firstInMemory) && (index < eventCount)) {
+            return events.get(index - firstInMemory);
+        }
+        if (spillFile == null) {
+            return null;
+        }
+        try {
+            String json = spillFile.read(index);
+            return json != null ? BazelBuildEventTypeManager.parseEvent(json, index) : null;
+        } catch (IOException ioe) {
+            LOG.error("Could not read BEP event [{}] from [{}]", ioe, index, spillFile.getFile().getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the spill file, if any. Events no longer in memory cannot be retrieved after this.
+     */
+    public void releaseSpillFile() {
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException ioe) {
+                LOG.error("Could not delete BEP spill file [{}]", ioe, spillFile.getFile().getAbsolutePath());
+            }
+            spillFile = null;
+        }
+    }
+
+    // INTERNALS
+
+    /**
+     * Adds the next event of the build, and drops old events from memory as required by the policy. Events are
+     * dropped in chunks, so that the cost of shifting the list is spread over many events.
+     */
+    void addEvent(BEPEvent event, String eventJson, BEPEventRetentionPolicy policy) {
+        eventCount++;
+        if (spillFile != null) {
+            try {
+                spillFile.append(eventJson);
+            } catch (IOException ioe) {
+                LOG.error("Could not write BEP event to [{}], older events will not be available", ioe,
+                    spillFile.getFile().getAbsolutePath());
+                releaseSpillFile();
+            }
+        }
+
+        int max = policy.getMaxInMemoryEvents();
+        if (max == 0) {
+            return;
+        }
+        events.add(event);
+        if ((events.size() - max) > Math.max(1, max / 4)) {
+            events.subList(0, events.size() - max).clear();
+        }
+    }
 }
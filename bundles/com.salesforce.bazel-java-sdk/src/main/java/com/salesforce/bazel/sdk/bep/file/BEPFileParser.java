@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.salesforce.bazel.sdk.bep.BazelBuildEventSubscriber;
 import com.salesforce.bazel.sdk.bep.BazelBuildEventTypeManager;
 import com.salesforce.bazel.sdk.bep.event.BEPEvent;
 import com.salesforce.bazel.sdk.bep.event.BEPStartedEvent;
@@ -29,9 +30,11 @@ public class BEPFileParser {
 
     private final File bepFile;
 
-    // since it is common to want to see the errors in a build, we always populate the list
+    // since it is common to want to see the errors in a build, we always populate the list (for the current build)
     private final List<BEPEvent> errorEvents = new ArrayList<>();
 
+    private BEPEventRetentionPolicy retentionPolicy = BEPEventRetentionPolicy.keepAll();
+
     /**
      * Creates the BazelBuildEventsFile for a File. Note that the File may not exist. This can happen if this
      * configuration happens prior to a build with the configuration setting enabled.
@@ -41,15 +44,31 @@ public class BEPFileParser {
     }
 
     /**
-     * Reads the BEP json file, and returns a results object with the parsed events.
+     * Sets how many of the events of the current build are kept. Applies to the builds read after this call.
+     */
+    public void setRetentionPolicy(BEPEventRetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    public BEPEventRetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Reads the BEP json file, and returns a results object with the parsed events. The events are kept as the
+     * retention policy says.
+     * <p>
+     * If the file still holds the build of the previous contents, only the lines after the previously read ones are
+     * parsed, and they are added to the previous contents, which are returned. Otherwise the spill file of the previous
+     * contents (if any) is released, and new contents are returned.
      */
     public BEPFileContents readEvents(String callerForLog, BEPFileContents previousContents) {
 
         BEPFileContents result = new BEPFileContents();
-        int eventIndex = 0;
 
         if (!bepFile.exists()) {
             LOG.debug(callerForLog + ": BEP file " + bepFile.getAbsolutePath() + " does not exist.");
+            releaseSpillFile(previousContents);
             return result;
         }
 
@@ -59,75 +78,188 @@ public class BEPFileParser {
             // so just cut off our processing early
             LOG.debug(callerForLog + ": Halting processing of BEP file " + bepFile.getAbsolutePath()
                     + " because it has a short length of [" + bepFile.length() + "] bytes.");
+            releaseSpillFile(previousContents);
             return result;
         }
 
         // we will determine if this is the same build as the last polling interval; if so we will
         // build on the work there, and not resend same events to subscribers
         boolean isContinuation = false;
+        result = null;
+        int lineCount = 0;
+        // the lines up to the last one that was parsed; an unterminated last line that does not parse yet is read
+        // again by the next pass
+        int parsedLineCount = 0;
 
         try (BufferedReader b = new BufferedReader(new FileReader(bepFile))) {
             String eventString = "";
-            BEPEvent event = null;
 
             LOG.info(callerForLog + ": Reading " + bepFile.getAbsolutePath());
 
             while ((eventString = b.readLine()) != null) {
+                lineCount++;
+                if (isContinuation && (lineCount <= previousContents.lineCount)) {
+                    // parsed in the previous pass
+                    parsedLineCount = lineCount;
+                    continue;
+                }
                 LOG.debug("BEP EVENT: {}", eventString);
 
-                if (isContinuation && (eventIndex < previousContents.events.size())) {
-                    event = previousContents.events.get(eventIndex);
-
-                    result.events.add(event);
-                    eventIndex++;
+                BEPEvent event =
+                        BazelBuildEventTypeManager.parseEvent(eventString, result != null ? result.eventCount : 0);
+                if (event == null) {
                     continue;
                 }
-
-                event = BazelBuildEventTypeManager.parseEvent(eventString, eventIndex);
-                if (event != null) {
-
-                    if (BEPStartedEvent.NAME.equals(event.getEventType())) {
-                        // started event is handled differently
-                        BEPStartedEvent currentStartEvent = (BEPStartedEvent) event;
-                        BEPStartedEvent previousStartEvent =
-                                previousContents != null ? previousContents.startedEvent : null;
-                        if ((previousStartEvent != null) && (previousContents.startedEvent
-                                .getStartTimeMillis() == currentStartEvent.getStartTimeMillis())) {
-                            // this is the same build we were looking at last time, this will enable us to optimize parsing
-                            // and retain the history so we don't resend the same event more than once to subscribers
-                            isContinuation = true;
-                            result.startedEvent = previousStartEvent;
-                            result.events.add(previousStartEvent);
-                        } else {
-                            // this is a new build, so ignore previous state
-                            result.startedEvent = currentStartEvent;
-                            result.events.add(currentStartEvent);
-                        }
-                    } else {
-                        // otherwise all other events are just added
-                        result.events.add(event);
+                parsedLineCount = lineCount;
+                if ((result == null) && BEPStartedEvent.NAME.equals(event.getEventType())) {
+                    // started event is handled differently
+                    BEPStartedEvent currentStartEvent = (BEPStartedEvent) event;
+                    BEPStartedEvent previousStartEvent =
+                            previousContents != null ? previousContents.startedEvent : null;
+                    if ((previousStartEvent != null)
+                            && (previousStartEvent.getStartTimeMillis() == currentStartEvent.getStartTimeMillis())) {
+                        // this is the same build we were looking at last time, this will enable us to optimize parsing
+                        // and retain the history so we don't resend the same event more than once to subscribers
+                        isContinuation = true;
+                        result = previousContents;
+                        continue;
                     }
-                    eventIndex++;
+                }
+                if (result == null) {
+                    // this is a new build, so ignore previous state
+                    releaseSpillFile(previousContents);
+                    errorEvents.clear();
+                    result = newContents();
+                }
+                if (BEPStartedEvent.NAME.equals(event.getEventType())) {
+                    result.startedEvent = (BEPStartedEvent) event;
+                }
+                result.addEvent(event, eventString, retentionPolicy);
 
-                    if (event.isError()) {
-                        errorEvents.add(event);
-                    }
-                    if (event.isLastMessage()) {
-                        result.hasLastEvent = true;
-                    }
+                if (event.isError()) {
+                    addErrorEvent(event);
+                }
+                if (event.isLastMessage()) {
+                    result.hasLastEvent = true;
                 }
             }
         } catch (IOException e) {
             LOG.error("error reading BEP events file [{}]", e, bepFile.getAbsolutePath());
+        }
+        if (result == null) {
+            // no started event yet, the previous build is gone
+            releaseSpillFile(previousContents);
+            result = new BEPFileContents();
+        }
+        result.lineCount = parsedLineCount;
+        return result;
+    }
+
+    /**
+     * Reads the events that were appended to the BEP json file since the previous pass, and adds them to the previous
+     * results. Only the new lines are read and parsed. If the tail reader detects that a new build has truncated the
+     * file, a fresh results object is returned with the events of the new build.
+     */
+    public BEPFileContents readNewEvents(String callerForLog, BEPFileContents previousContents,
+            BEPFileTailReader tailReader) {
+        return readNewEvents(callerForLog, previousContents, tailReader, null);
+    }
+
+    /**
+     * Reads the events that were appended to the BEP json file since the previous pass, like
+     * {@link #readNewEvents(String, BEPFileContents, BEPFileTailReader)}, and passes each new event to the listener as
+     * it is read. The listener sees every event, even if the retention policy does not keep it in the results.
+     */
+    public BEPFileContents readNewEvents(String callerForLog, BEPFileContents previousContents,
+            BEPFileTailReader tailReader, BazelBuildEventSubscriber newEventListener) {
+        List<String> eventStrings;
+        try {
+            eventStrings = tailReader.readAppendedLines();
+        } catch (IOException e) {
+            LOG.error("error reading BEP events file [{}]", e, bepFile.getAbsolutePath());
+            return previousContents != null ? previousContents : new BEPFileContents();
+        }
+
+        BEPFileContents result = previousContents;
+        if ((result == null) || tailReader.wasTruncated()) {
+            // first pass, or a new build has started
+            if (result != null) {
+                result.releaseSpillFile();
+            }
+            result = newContents();
+            errorEvents.clear();
+        }
+        if (eventStrings.isEmpty()) {
             return result;
         }
+        LOG.info(callerForLog + ": Read " + eventStrings.size() + " new events from " + bepFile.getAbsolutePath());
+
+        for (String eventString : eventStrings) {
+            LOG.debug("BEP EVENT: {}", eventString);
+
+            BEPEvent event = BazelBuildEventTypeManager.parseEvent(eventString, result.eventCount);
+            if (event == null) {
+                continue;
+            }
+            if (BEPStartedEvent.NAME.equals(event.getEventType())) {
+                result.startedEvent = (BEPStartedEvent) event;
+            }
+            result.addEvent(event, eventString, retentionPolicy);
+
+            if (event.isError()) {
+                addErrorEvent(event);
+            }
+            if (event.isLastMessage()) {
+                result.hasLastEvent = true;
+            }
+            if (newEventListener != null) {
+                newEventListener.onEvent(event);
+            }
+        }
         return result;
     }
 
+    /**
+     * The error events of the current build (the most recent ones, if the retention policy limits them).
+     */
     public List<BEPEvent> getBuildErrorEvents() {
         return errorEvents;
     }
 
+    // INTERNALS
+
+    private BEPFileContents newContents() {
+        BEPFileContents contents = new BEPFileContents();
+        File spillDirectory = retentionPolicy.getSpillDirectory();
+        if (spillDirectory != null) {
+            try {
+                contents.spillFile = new BEPEventSpillFile(spillDirectory);
+            } catch (IOException ioe) {
+                LOG.error("Could not create a BEP spill file in [{}], older events will not be available", ioe,
+                    spillDirectory.getAbsolutePath());
+            }
+        }
+        return contents;
+    }
+
+    // the caller replaces the previous contents with the returned ones, so their spill file is no longer needed
+    private static void releaseSpillFile(BEPFileContents previousContents) {
+        if (previousContents != null) {
+            previousContents.releaseSpillFile();
+        }
+    }
+
+    private void addErrorEvent(BEPEvent event) {
+        int max = retentionPolicy.getMaxErrorEvents();
+        if (max == 0) {
+            return;
+        }
+        if (errorEvents.size() >= max) {
+            errorEvents.remove(0);
+        }
+        errorEvents.add(event);
+    }
+
     // simple manual test client
     public static void main(String[] args) {
         File bepFile = new File("/tmp/bep_build_success.json");
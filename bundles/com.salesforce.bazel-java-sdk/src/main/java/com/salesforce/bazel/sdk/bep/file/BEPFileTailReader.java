@@ -0,0 +1,195 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the lines appended to a BEP json file since the previous read. Bazel writes one json event per line, and
+ * appends events as the build progresses, so after the first read each call only costs as much as the new data.
+ * <p>
+ * The reader remembers the byte offset of the data it has consumed. A line that is still being written (no trailing
+ * newline yet) is held back until it is complete.
+ * <p>
+ * When a new build starts, Bazel truncates the file and starts writing it again. The reader detects this when the file
+ * is shorter than the consumed offset, or when the beginning of the file no longer matches what was read before (the
+ * new build may already have written more than the old one by the time we look). In that case it starts over from the
+ * beginning of the file, and {@link #wasTruncated()} returns true until the next read.
+ * <p>
+ * This class is not thread safe.
+ */
+public class BEPFileTailReader {
+
+    // number of bytes at the start of the file that are used to recognize the build that wrote it
+    static final int FINGERPRINT_LENGTH = 512;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    // the number of bytes of the file that have been consumed, including the held back partial line
+    private long offset = 0L;
+
+    // bytes of an incomplete last line
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    // true if the partial line ends with a \r, which is dropped if the next read starts with the \n of a \r\n
+    private boolean pendingCarriageReturn = false;
+
+    // the first bytes of the file, as seen by the last read
+    private byte[] fingerprint = new byte[0];
+
+    private boolean truncated = false;
+
+    public BEPFileTailReader(File file) {
+        this.file = file;
+    }
+
+    // PUBLIC API
+
+    /**
+     * Returns the complete lines that were appended to the file since the last call. If the file was truncated since
+     * the last call, the lines are read from the beginning of the file. Returns an empty list if the file does not
+     * exist.
+     */
+    public List<String> readAppendedLines() throws IOException {
+        truncated = false;
+        List<String> lines = new ArrayList<>();
+        if (!file.exists()) {
+            if (offset > 0) {
+                reset();
+                truncated = true;
+            }
+            return lines;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if ((size < offset) || !fingerprintMatches(channel, size)) {
+                // a new build has started writing the file
+                reset();
+                truncated = true;
+            }
+            if (size == offset) {
+                return lines;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, size - offset));
+            channel.position(offset);
+            int read;
+            while ((read = channel.read(buffer)) > 0) {
+                offset += read;
+                splitLines(buffer.array(), read, lines);
+                buffer.clear();
+            }
+            updateFingerprint(channel);
+        }
+        return lines;
+    }
+
+    /**
+     * True if the last call to {@link #readAppendedLines()} found that the file had been truncated (or deleted), which
+     * means a new build has started.
+     */
+    public boolean wasTruncated() {
+        return truncated;
+    }
+
+    /**
+     * The number of bytes of the file that have been consumed.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Marks the current content of the file as consumed, so that the next read only returns lines appended after this
+     * call (or the whole file, if a new build truncates it).
+     */
+    public void skipToEnd() throws IOException {
+        reset();
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            offset = channel.size();
+            updateFingerprint(channel);
+        }
+    }
+
+    /**
+     * Forgets the consumed offset, so that the next read starts from the beginning of the file.
+     */
+    public void reset() {
+        offset = 0L;
+        partialLine.reset();
+        pendingCarriageReturn = false;
+        fingerprint = new byte[0];
+    }
+
+    // INTERNALS
+
+    private void splitLines(byte[] bytes, int length, List<String> lines) {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                int end = ((i > start) && (bytes[i - 1] == '\r')) ? i - 1 : i;
+                String line;
+                if (partialLine.size() > 0) {
+                    partialLine.write(bytes, start, end - start);
+                    byte[] lineBytes = partialLine.toByteArray();
+                    // the \r of a \r\n that was split between two reads
+                    int lineLength = ((i == start) && pendingCarriageReturn) ? lineBytes.length - 1 : lineBytes.length;
+                    line = new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8);
+                    partialLine.reset();
+                    pendingCarriageReturn = false;
+                } else {
+                    line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                }
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            partialLine.write(bytes, start, length - start);
+            pendingCarriageReturn = bytes[length - 1] == '\r';
+        }
+    }
+
+    private boolean fingerprintMatches(FileChannel channel, long size) throws IOException {
+        if (fingerprint.length == 0) {
+            return true;
+        }
+        if (size < fingerprint.length) {
+            return false;
+        }
+        return Arrays.equals(fingerprint, readHead(channel, fingerprint.length));
+    }
+
+    private void updateFingerprint(FileChannel channel) throws IOException {
+        if (fingerprint.length < FINGERPRINT_LENGTH) {
+            fingerprint = readHead(channel, (int) Math.min(FINGERPRINT_LENGTH, offset));
+        }
+    }
+
+    private static byte[] readHead(FileChannel channel, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        long position = 0L;
+        while (head.hasRemaining()) {
+            int read = channel.read(head, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+        }
+        return Arrays.copyOf(head.array(), head.position());
+    }
+}
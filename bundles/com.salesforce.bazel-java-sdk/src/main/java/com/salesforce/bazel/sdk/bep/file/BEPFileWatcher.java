@@ -0,0 +1,263 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.salesforce.bazel.sdk.logging.LogHelper;
+
+/**
+ * Watches BEP files for changes using a java.nio WatchService, and notifies a callback when a watched file is created
+ * or written to. One watcher (one WatchService and one thread) is shared by all watched files; the directory of each
+ * file is registered once, no matter how many files in it are watched.
+ * <p>
+ * Bazel appends to the BEP file many times per second during a build. Change notifications for a file are coalesced:
+ * once a change is seen, the callback is run after <i>debounceMS</i>, and all changes seen before it runs are covered
+ * by that one invocation. A change that arrives while the callback is running schedules another invocation, so no
+ * change is missed. Callbacks run on a single dispatcher thread, so the callback for a given file never runs
+ * concurrently with itself.
+ * <p>
+ * The watcher thread starts with the first registration, and the watcher shuts down when the last registration is
+ * closed. A registration may be closed from its own callback; the callback then runs to completion, it is not
+ * interrupted.
+ * <p>
+ * Note that on some platforms (macOS in particular) the JDK WatchService is itself implemented by polling, so there
+ * change notifications arrive with a delay of a few seconds.
+ */
+public class BEPFileWatcher {
+    private static final LogHelper LOG = LogHelper.log(BEPFileWatcher.class);
+
+    public static final long DEFAULT_DEBOUNCE_MS = 50L;
+
+    private static BEPFileWatcher sharedInstance;
+
+    private final long debounceMS;
+
+    // the registrations for each watched directory
+    private final Map<Path, List<Registration>> registrations = new HashMap<>();
+
+    private WatchService watchService;
+    private ScheduledExecutorService dispatcher;
+    private Thread dispatcherThread;
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+    public BEPFileWatcher() {
+        this(DEFAULT_DEBOUNCE_MS);
+    }
+
+    public BEPFileWatcher(long debounceMS) {
+        this.debounceMS = debounceMS;
+    }
+
+    /**
+     * The watcher that is shared by all the BEP streams in this JVM.
+     */
+    public static synchronized BEPFileWatcher getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new BEPFileWatcher();
+        }
+        return sharedInstance;
+    }
+
+    // PUBLIC API
+
+    /**
+     * Starts watching the file, and runs the callback after the file has been created or changed. The directory that
+     * contains the file must exist, but the file does not need to. Call {@link Registration#close()} to stop watching
+     * the file.
+     */
+    public synchronized Registration watch(File file, Runnable callback) throws IOException {
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        Path dir = path.getParent();
+
+        if (watchService == null) {
+            start();
+        }
+        if (!watchKeys.containsKey(dir)) {
+            try {
+                watchKeys.put(dir, dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY));
+            } catch (IOException ioe) {
+                if (registrations.isEmpty()) {
+                    stop();
+                }
+                throw ioe;
+            }
+        }
+        Registration registration = new Registration(path, callback);
+        registrations.computeIfAbsent(dir, d -> new ArrayList<>()).add(registration);
+        return registration;
+    }
+
+    /**
+     * The number of files currently being watched.
+     */
+    public synchronized int getWatchedFileCount() {
+        int count = 0;
+        for (List<Registration> dirRegistrations : registrations.values()) {
+            count += dirRegistrations.size();
+        }
+        return count;
+    }
+
+    /**
+     * Watch of a single file. Closing it stops the notifications for the file.
+     */
+    public class Registration implements AutoCloseable {
+        private final Path path;
+        private final Runnable callback;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile boolean closed = false;
+
+        Registration(Path path, Runnable callback) {
+            this.path = path;
+            this.callback = callback;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            unregister(this);
+        }
+
+        // called by the watcher thread, with the watcher lock held
+        void fileChanged() {
+            if (closed || !pending.compareAndSet(false, true)) {
+                // an invocation is already scheduled, and will see this change
+                return;
+            }
+            dispatcher.schedule(this::dispatch, debounceMS, TimeUnit.MILLISECONDS);
+        }
+
+        private void dispatch() {
+            // clear the flag before running, so that changes made while the callback runs schedule another pass
+            pending.set(false);
+            if (closed) {
+                return;
+            }
+            try {
+                callback.run();
+            } catch (Exception anyE) {
+                LOG.error("Failure processing change to BEP file [{}]", anyE, path);
+            }
+        }
+    }
+
+    // INTERNALS
+
+    private void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "bep-file-dispatcher");
+            t.setDaemon(true);
+            synchronized (this) {
+                dispatcherThread = t;
+            }
+            return t;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        dispatcher = executor;
+
+        WatchService service = watchService;
+        Thread watcherThread = new Thread(() -> watchLoop(service), "bep-file-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private synchronized void unregister(Registration registration) {
+        Path dir = registration.path.getParent();
+        List<Registration> dirRegistrations = registrations.get(dir);
+        if ((dirRegistrations == null) || !dirRegistrations.remove(registration)) {
+            return;
+        }
+        if (dirRegistrations.isEmpty()) {
+            registrations.remove(dir);
+            WatchKey key = watchKeys.remove(dir);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+        if (registrations.isEmpty()) {
+            stop();
+        }
+    }
+
+    private void stop() {
+        // closing the WatchService wakes up the watcher thread, which then exits
+        try {
+            watchService.close();
+        } catch (IOException ioe) {
+            LOG.error("Failure closing the BEP file watch service", ioe);
+        }
+        if (Thread.currentThread() == dispatcherThread) {
+            // the last registration was closed by its callback (e.g. a subscriber that stops watching at the end of
+            // the build); do not interrupt it, the pending invocations are discarded by the shutdown policy
+            dispatcher.shutdown();
+        } else {
+            dispatcher.shutdownNow();
+        }
+        watchService = null;
+        dispatcher = null;
+        dispatcherThread = null;
+        watchKeys.clear();
+    }
+
+    private void watchLoop(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (ClosedWatchServiceException | InterruptedException stopE) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            List<WatchEvent<?>> events = key.pollEvents();
+            synchronized (this) {
+                List<Registration> dirRegistrations = registrations.get(dir);
+                if (dirRegistrations != null) {
+                    for (WatchEvent<?> event : events) {
+                        notifyRegistrations(dir, dirRegistrations, event);
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private static void notifyRegistrations(Path dir, List<Registration> dirRegistrations, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            // events were lost, so any of the files could have changed
+            for (Registration registration : dirRegistrations) {
+                registration.fileChanged();
+            }
+            return;
+        }
+        Path changed = dir.resolve((Path) event.context());
+        for (Registration registration : dirRegistrations) {
+            if (registration.path.equals(changed)) {
+                registration.fileChanged();
+            }
+        }
+    }
+}
@@ -10,4 +10,9 @@ public class BEPMonitoredFile {
     public long fileLastModifiedMS = 0L;
     public BEPFileParser bepFile;
     public BEPFileContents previousResults;
+
+    /**
+     * Tracks how much of the file has been consumed, so that each pass only parses the appended events.
+     */
+    public BEPFileTailReader tailReader;
 }
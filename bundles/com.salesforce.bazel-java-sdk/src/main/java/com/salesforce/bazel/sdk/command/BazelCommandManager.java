@@ -55,6 +55,11 @@ public class BazelCommandManager {
     private final CommandBuilder commandBuilder;
     private final CommandConsoleFactory consoleFactory;
 
+    /**
+     * Results of bazel info/query commands, shared by all the command runners.
+     */
+    private final BazelCommandResultCache resultCache = new BazelCommandResultCache();
+
     /**
      * BazelWorkspaceCommandRunner instance that is not tied to a workspace. Used to check the Bazel version, and to do
      * a workspace lookup given a random file system directory (since we don't know the workspace in advance, we can't
@@ -82,7 +87,7 @@ public class BazelCommandManager {
         this.consoleFactory = consoleFactory;
 
         BazelWorkspaceCommandRunner.setBazelExecutablePath(bazelExecutablePath.getAbsolutePath());
-        genericCommandRunner = new BazelWorkspaceCommandRunner(bazelExecutablePath, commandBuilder);
+        genericCommandRunner = new BazelWorkspaceCommandRunner(bazelExecutablePath, commandBuilder, resultCache);
     }
 
     // COMMAND RUNNERS
@@ -117,12 +122,20 @@ public class BazelCommandManager {
             }
 
             workspaceCommandRunner = new BazelWorkspaceCommandRunner(bazelExecutable, aspectLocation, commandBuilder,
-                    consoleFactory, bazelWorkspaceRootDirectory);
+                    consoleFactory, bazelWorkspaceRootDirectory, resultCache);
             workspaceCommandRunners.put(bazelWorkspaceRootDirectory, workspaceCommandRunner);
         }
         return workspaceCommandRunner;
     }
 
+    /**
+     * Returns the cache of bazel info/query results shared by all the command runners. Report changes to BUILD,
+     * WORKSPACE and .bazelrc files to it.
+     */
+    public BazelCommandResultCache getResultCache() {
+        return resultCache;
+    }
+
     // BAZEL EXECUTABLE
 
     /**
@@ -130,6 +143,8 @@ public class BazelCommandManager {
      */
     public synchronized void setBazelExecutablePath(String bazelExectuablePath) {
         BazelWorkspaceCommandRunner.setBazelExecutablePath(bazelExectuablePath);
+        // another Bazel version may give other answers
+        resultCache.invalidateAll();
     }
 
     /**
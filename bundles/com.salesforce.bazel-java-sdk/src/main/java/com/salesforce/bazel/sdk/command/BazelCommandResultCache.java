@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.salesforce.bazel.sdk.logging.LogHelper;
+
+/**
+ * Cache for the results of idempotent Bazel commands (bazel info, bazel query). The import flow issues the same info
+ * commands and package queries over and over, and each one costs a round trip to the Bazel server. Launch flows get
+ * the cached bazel info, but not the tests(...) queries that compute the test classpath: those are not cacheable, see
+ * below.
+ * <p>
+ * Entries are keyed by workspace and normalized arguments, and the cache is LRU bounded. An entry is dropped when a
+ * file it depends on changes:
+ * <ul>
+ * <li>all entries depend on the WORKSPACE and .bazelrc files of the workspace, and on the user's ~/.bazelrc</li>
+ * <li>query entries also depend on the BUILD files of the packages named in the query expression, and on the .bzl
+ * files those BUILD files load (directly or through other .bzl files of the workspace)</li>
+ * </ul>
+ * These files are checked (timestamp and size) on every lookup. Changes the cache cannot see, like a BUILD file of a
+ * package matched by a wildcard, must be reported with notifyFileChanged(), which drops all the query entries of the
+ * workspace for any BUILD or .bzl file.
+ * <p>
+ * Queries whose result depends on packages that are not named in the expression are not cached at all: transitive
+ * functions (deps, rdeps, tests, ...) follow the dependency graph into other packages, and recursive wildcards
+ * (//a/...) match packages that may be added or removed.
+ * <p>
+ * One cache can be shared by all the command runners, see BazelCommandManager.
+ */
+public class BazelCommandResultCache {
+    private static final LogHelper LOG = LogHelper.log(BazelCommandResultCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private static final String[] WORKSPACE_FILE_NAMES =
+            { "WORKSPACE", "WORKSPACE.bazel", ".bazelrc", "user.bazelrc", ".bazelversion" };
+    private static final String[] BUILD_FILE_NAMES = { "BUILD", "BUILD.bazel" };
+
+    // the package of each absolute label in a query expression (//a/b:c -> a/b, //a/b -> a/b)
+    private static final Pattern QUERY_PUNCTUATION_SPACE = Pattern.compile("\\s*([(),])\\s*");
+
+    private static final Pattern LABEL_PACKAGE = Pattern.compile("//([^:\\s\"')(,+]*)");
+
+    // query functions whose result depends on packages other than the ones named in the expression
+    private static final Pattern TRANSITIVE_QUERY_FUNCTION =
+            Pattern.compile("\\b(deps|rdeps|allrdeps|tests|allpaths|somepath|buildfiles|rbuildfiles|loadfiles|siblings"
+                    + "|visible)\\s*\\(");
+
+    // the label in a load() statement of a BUILD or .bzl file
+    private static final Pattern LOAD_LABEL = Pattern.compile("\\bload\\s*\\(\\s*[\"']([^\"']+)[\"']");
+
+    /**
+     * Computes the result of a command on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<String> load() throws IOException, InterruptedException, BazelCommandLineToolConfigurationException;
+    }
+
+    private final int maxEntries;
+    private final File userBazelrc;
+    private final Map<String, CachedResult> entries;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public BazelCommandResultCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public BazelCommandResultCache(int maxEntries) {
+        this(maxEntries, new File(System.getProperty("user.home", ""), ".bazelrc"));
+    }
+
+    BazelCommandResultCache(int maxEntries, File userBazelrc) {
+        this.maxEntries = maxEntries;
+        this.userBazelrc = userBazelrc;
+        entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > BazelCommandResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    // PUBLIC API
+
+    /**
+     * True if the result of the Bazel command (the arguments after the Bazel executable) can be cached. Queries are
+     * only cacheable if they do not use transitive functions or recursive wildcards.
+     */
+    public static boolean isCacheable(List<String> args) {
+        if (args.isEmpty()) {
+            return false;
+        }
+        String verb = args.get(0);
+        if ("info".equals(verb)) {
+            return true;
+        }
+        if (!"query".equals(verb)) {
+            return false;
+        }
+        for (int i = 1; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.startsWith("-")) {
+                continue;
+            }
+            if (arg.contains("...") || TRANSITIVE_QUERY_FUNCTION.matcher(arg).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached result of the command, or null if it is not cached or no longer valid.
+     */
+    public synchronized List<String> get(File workspaceRoot, List<String> args) {
+        String key = key(workspaceRoot, args);
+        CachedResult entry = entries.get(key);
+        if ((entry != null) && !entry.isValid()) {
+            LOG.debug("Dropping cached result of [{}], a file it depends on changed.", key);
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.result;
+    }
+
+    /**
+     * Caches the result of the command, if it is cacheable. The dependencies are stamped now, so the result should have
+     * been computed just before.
+     */
+    public void put(File workspaceRoot, List<String> args, List<String> result) {
+        if (!isCacheable(args)) {
+            return;
+        }
+        List<FileStamp> dependencies = computeDependencies(workspaceRoot, args);
+        CachedResult entry = new CachedResult(workspaceRoot, args.get(0),
+                Collections.unmodifiableList(new ArrayList<>(result)), dependencies);
+        synchronized (this) {
+            entries.put(key(workspaceRoot, args), entry);
+        }
+    }
+
+    /**
+     * Returns the cached result of the command, or loads and caches it. The loader runs without holding the lock of the
+     * cache, so two threads can load the same result at the same time. Commands that are not cacheable are always
+     * loaded.
+     */
+    public List<String> computeIfAbsent(File workspaceRoot, List<String> args, Loader loader)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        if (!isCacheable(args)) {
+            return loader.load();
+        }
+        List<String> result = get(workspaceRoot, args);
+        if (result == null) {
+            // stamp the files before running the command, so a change during the command invalidates the result
+            List<FileStamp> dependencies = computeDependencies(workspaceRoot, args);
+            result = Collections.unmodifiableList(new ArrayList<>(loader.load()));
+            CachedResult entry = new CachedResult(workspaceRoot, args.get(0), result, dependencies);
+            synchronized (this) {
+                entries.put(key(workspaceRoot, args), entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports a changed file. A WORKSPACE or .bazelrc file drops all entries of the workspaces that contain it, a BUILD
+     * or .bzl file drops the query entries of those workspaces.
+     */
+    public synchronized void notifyFileChanged(File file) {
+        String name = file.getName();
+        boolean workspaceFile = isWorkspaceFile(name);
+        boolean buildFile = isBuildFile(name) || name.endsWith(".bzl");
+        if (!workspaceFile && !buildFile) {
+            return;
+        }
+        String path = file.getAbsolutePath();
+        Iterator<CachedResult> iter = entries.values().iterator();
+        while (iter.hasNext()) {
+            CachedResult entry = iter.next();
+            if (!isInWorkspace(path, entry.workspaceRoot)) {
+                continue;
+            }
+            if (workspaceFile || "query".equals(entry.verb)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the entries of the workspace.
+     */
+    public synchronized void invalidate(File workspaceRoot) {
+        entries.values().removeIf(entry -> Objects.equals(entry.workspaceRoot, workspaceRoot));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    // INTERNALS
+
+    /**
+     * Arguments are trimmed, runs of whitespace are collapsed and whitespace around parentheses and commas is dropped,
+     * so that the same query written differently maps to the same entry.
+     */
+    static String key(File workspaceRoot, List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(workspaceRoot == null ? "" : workspaceRoot.getAbsolutePath());
+        for (String arg : args) {
+            String normalized = arg.trim().replaceAll("\\s+", " ");
+            if (!normalized.startsWith("-")) {
+                normalized = QUERY_PUNCTUATION_SPACE.matcher(normalized).replaceAll("$1");
+            }
+            if (!normalized.isEmpty()) {
+                sb.append('\u0000').append(normalized);
+            }
+        }
+        return sb.toString();
+    }
+
+    private List<FileStamp> computeDependencies(File workspaceRoot, List<String> args) {
+        List<FileStamp> dependencies = new ArrayList<>();
+        if (userBazelrc != null) {
+            dependencies.add(new FileStamp(userBazelrc));
+        }
+        if (workspaceRoot == null) {
+            return dependencies;
+        }
+        for (String name : WORKSPACE_FILE_NAMES) {
+            dependencies.add(new FileStamp(new File(workspaceRoot, name)));
+        }
+        if ("query".equals(args.get(0))) {
+            Set<File> visitedFiles = new HashSet<>();
+            for (int i = 1; i < args.size(); i++) {
+                Matcher matcher = LABEL_PACKAGE.matcher(args.get(i));
+                while (matcher.find()) {
+                    String packagePath = matcher.group(1);
+                    if (packagePath.endsWith("...")) {
+                        // wildcard, depends on packages we cannot enumerate cheaply
+                        continue;
+                    }
+                    File packageDir = new File(workspaceRoot, packagePath);
+                    for (String name : BUILD_FILE_NAMES) {
+                        File buildFile = new File(packageDir, name);
+                        dependencies.add(new FileStamp(buildFile));
+                        addLoadedFiles(workspaceRoot, packageDir, buildFile, dependencies, visitedFiles);
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Adds the .bzl files of the workspace loaded by the passed BUILD or .bzl file, and the files they load. Files of
+     * external repositories (@repo//...) are not followed, they only change with the WORKSPACE file.
+     */
+    private static void addLoadedFiles(File workspaceRoot, File packageDir, File file, List<FileStamp> dependencies,
+            Set<File> visitedFiles) {
+        if (!file.isFile() || !visitedFiles.add(file)) {
+            return;
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            LOG.debug("Could not read [{}] to find the files it loads.", file.getAbsolutePath());
+            return;
+        }
+        Matcher matcher = LOAD_LABEL.matcher(content);
+        while (matcher.find()) {
+            String label = matcher.group(1);
+            File loadedPackageDir;
+            String target;
+            if (label.startsWith("//")) {
+                int colon = label.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                loadedPackageDir = new File(workspaceRoot, label.substring(2, colon));
+                target = label.substring(colon + 1);
+            } else if (label.startsWith("@")) {
+                continue;
+            } else {
+                loadedPackageDir = packageDir;
+                target = label.startsWith(":") ? label.substring(1) : label;
+            }
+            File loadedFile = new File(loadedPackageDir, target);
+            dependencies.add(new FileStamp(loadedFile));
+            addLoadedFiles(workspaceRoot, loadedPackageDir, loadedFile, dependencies, visitedFiles);
+        }
+    }
+
+    private static boolean isWorkspaceFile(String name) {
+        for (String workspaceName : WORKSPACE_FILE_NAMES) {
+            if (workspaceName.equals(name)) {
+                return true;
+            }
+        }
+        return name.endsWith(".bazelrc");
+    }
+
+    private static boolean isBuildFile(String name) {
+        return BUILD_FILE_NAMES[0].equals(name) || BUILD_FILE_NAMES[1].equals(name);
+    }
+
+    private static boolean isInWorkspace(String path, File workspaceRoot) {
+        if (workspaceRoot == null) {
+            // the global runner, its results do not depend on a workspace
+            return false;
+        }
+        String rootPath = workspaceRoot.getAbsolutePath();
+        return path.equals(rootPath) || path.startsWith(rootPath + File.separator);
+    }
+
+    private static class CachedResult {
+        final File workspaceRoot;
+        final String verb;
+        final List<String> result;
+        final List<FileStamp> dependencies;
+
+        CachedResult(File workspaceRoot, String verb, List<String> result, List<FileStamp> dependencies) {
+            this.workspaceRoot = workspaceRoot;
+            this.verb = verb;
+            this.result = result;
+            this.dependencies = dependencies;
+        }
+
+        boolean isValid() {
+            for (FileStamp dependency : dependencies) {
+                if (dependency.hasChanged()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The state of a file when an entry was cached. A missing file has a timestamp of 0.
+     */
+    private static class FileStamp {
+        final File file;
+        final long lastModified;
+        final long length;
+
+        FileStamp(File file) {
+            this.file = file;
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+
+        boolean hasChanged() {
+            return (file.lastModified() != lastModified) || (file.length() != length);
+        }
+    }
+}
@@ -164,8 +164,11 @@ public class BazelLauncherBuilder {
 
         String consoleName = ConsoleType.WORKSPACE.getConsoleName(workspaceDirectory);
 
-        return commandBuilder.setConsoleName(consoleName).setDirectory(workspaceDirectory)
-                .addArguments(Collections.unmodifiableList(args)).setProgressMonitor(progressMonitor).build();
+        // the builder is shared with the command runner, which may be building a command on another thread
+        synchronized (commandBuilder) {
+            return commandBuilder.setConsoleName(consoleName).setDirectory(workspaceDirectory)
+                    .addArguments(Collections.unmodifiableList(args)).setProgressMonitor(progressMonitor).build();
+        }
     }
 
     /**
@@ -199,9 +202,11 @@ public class BazelLauncherBuilder {
         File workspaceDirectory = bazelCommandRunner.getBazelWorkspaceRootDirectory();
         String consoleName = ConsoleType.WORKSPACE.getConsoleName(workspaceDirectory);
 
-        return commandBuilder.setConsoleName(consoleName).setDirectory(workspaceDirectory)
-                .addArguments(BazelWorkspaceCommandRunner.getBazelExecutablePath())
-                .addArguments(Collections.unmodifiableList(args)).setProgressMonitor(progressMonitor).build();
+        synchronized (commandBuilder) {
+            return commandBuilder.setConsoleName(consoleName).setDirectory(workspaceDirectory)
+                    .addArguments(BazelWorkspaceCommandRunner.getBazelExecutablePath())
+                    .addArguments(Collections.unmodifiableList(args)).setProgressMonitor(progressMonitor).build();
+        }
     }
 
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.salesforce.bazel.sdk.model.BazelProblem;
+
+/**
+ * Output selector that turns the stderr lines of a Bazel build into BazelProblem instances while the build is running,
+ * using the line at a time BazelOutputParser. Each problem is passed to the listener as soon as it is parsed, so that
+ * it can be reported long before the build finishes.
+ * <p>
+ * The selector does not select any lines, so the output of the build is not kept in memory. The selector (and the
+ * listener) is called by the thread that reads the output of the command.
+ */
+public class BazelProblemOutputSelector implements Function<String, String> {
+
+    private final BazelOutputParser outputParser = new BazelOutputParser();
+    private final Consumer<BazelProblem> problemListener;
+    private final List<BazelProblem> problems = new ArrayList<>();
+
+    /**
+     * @param problemListener
+     *            called for each problem as it is parsed, can be null
+     */
+    public BazelProblemOutputSelector(Consumer<BazelProblem> problemListener) {
+        this.problemListener = problemListener;
+    }
+
+    @Override
+    public String apply(String line) {
+        List<BazelProblem> lineProblems = outputParser.getErrorBazelMarkerDetails(line);
+        if (!lineProblems.isEmpty()) {
+            synchronized (problems) {
+                problems.addAll(lineProblems);
+            }
+            if (problemListener != null) {
+                lineProblems.forEach(problemListener);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the problems parsed so far.
+     */
+    public List<BazelProblem> getProblems() {
+        synchronized (problems) {
+            return new ArrayList<>(problems);
+        }
+    }
+}
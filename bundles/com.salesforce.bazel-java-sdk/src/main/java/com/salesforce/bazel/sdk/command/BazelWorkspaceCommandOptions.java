@@ -16,7 +16,8 @@ import com.salesforce.bazel.sdk.model.BazelWorkspace;
  * To see the list of options used for your workspace, run this command: bazel test --announce_rc It probably seems odd
  * to use 'test' as the verb, but that provides the most visibility into the set options.
  * <p>
- * This gets populated at runtime by BazelWorkspaceMetadataStrategy.populateBazelWorkspaceCommandOptions()
+ * This gets populated at runtime by BazelWorkspaceMetadataStrategy.populateBazelWorkspaceCommandOptions(), either by
+ * reading the .bazelrc files directly (see BazelrcParser) or from the output of the command above.
  */
 public class BazelWorkspaceCommandOptions {
 
@@ -137,16 +138,22 @@ public class BazelWorkspaceCommandOptions {
                     continue;
                 } else if (optionTokens.length == 1) {
                     // if only the option name is provided, the value is implied to be 'true' (e.g. --stamp is interpreted as --stamp=true)
-                    this.allExplicitOptions.put(optionTokens[0], "true");
-                    getContextualMap(optionsContext).put(optionTokens[0], "true");
+                    addOption(optionsContext, optionTokens[0], "true");
                 } else {
-                    this.allExplicitOptions.put(optionTokens[0], optionTokens[1]);
-                    getContextualMap(optionsContext).put(optionTokens[0], optionTokens[1]);
+                    addOption(optionsContext, optionTokens[0], optionTokens[1]);
                 }
             }
         }
     }
 
+    /**
+     * Records an explicitly set option for the context (e.g. test, build). Options added later win.
+     */
+    public void addOption(String context, String optionName, String optionValue) {
+        this.allExplicitOptions.put(optionName, optionValue);
+        getContextualMap(context).put(optionName, optionValue);
+    }
+
     private Map<String, String> getContextualMap(String context) {
         Map<String, String> contextualMap = this.contextualExplicitOptions.get(context);
         if (contextualMap == null) {
@@ -44,11 +44,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
 import com.salesforce.bazel.sdk.aspect.BazelAspectLocation;
+import com.salesforce.bazel.sdk.bep.BazelBuildEventProblemCollector;
+import com.salesforce.bazel.sdk.bep.file.BEPEventRetentionPolicy;
+import com.salesforce.bazel.sdk.bep.file.BEPFileContents;
+import com.salesforce.bazel.sdk.bep.file.BEPFileParser;
+import com.salesforce.bazel.sdk.bep.file.BEPFileTailReader;
 import com.salesforce.bazel.sdk.command.internal.BazelCommandExecutor;
 import com.salesforce.bazel.sdk.command.internal.BazelQueryHelper;
 import com.salesforce.bazel.sdk.command.internal.BazelVersionChecker;
@@ -80,30 +90,6 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      */
     private final File bazelWorkspaceRootDirectory;
 
-    /**
-     * The internal location on disk for Bazel's 'execroot' for this workspace. E.g.
-     * <i>/private/var/tmp/_bazel_plaird/edb34c7f4bfffeb66012c4fc6aaab239/execroot/bazel_demo_simplejava</i>
-     * <p>
-     * Determined by running this command line: <i>bazel info execution_root</i>
-     */
-    private File bazelExecRootDirectory;
-
-    /**
-     * The internal location on disk for Bazel's 'output base' for this workspace. E.g.
-     * <i>/private/var/tmp/_bazel_plaird/edb34c7f4bfffeb66012c4fc6aaab239</i>
-     * <p>
-     * Determined by running this command line: <i>bazel info output_base</i>
-     */
-    private File bazelOutputBaseDirectory;
-
-    /**
-     * The internal location on disk for Bazel's 'bazel-bin' for this workspace. E.g.
-     * <i>/private/var/tmp/_bazel_plaird/f521799c9882dcc6330b57416b13ba81/execroot/bazel_feature/bazel-out/darwin-fastbuild/bin</i>
-     * <p>
-     * Determined by running this command line: <i>bazel info bazel-bin</i>
-     */
-    private File bazelBinDirectory;
-
     // GLOBAL CONFIG
 
     /**
@@ -145,14 +131,33 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      */
     private List<String> buildOptions = Collections.emptyList();
 
+    /**
+     * If true, builds write a build event protocol (BEP) json file, and the problems are read from the events in that
+     * file instead of from the console output of Bazel.
+     */
+    private boolean buildWithBuildEvents = false;
+
+    /**
+     * How often the BEP file of a running build is read.
+     */
+    static final long BEP_READ_INTERVAL_MS = 500L;
+
     // CACHES
 
     /**
-     * This is to cache the last query and return the query result without actually computing it. This is required
-     * because computeUnresolvedPath tries to compute the bazel query multiple time
+     * Results of bazel info and bazel query commands. The cache can be shared with other runners, and it notices
+     * changes to the WORKSPACE, .bazelrc and BUILD files the results depend on.
+     */
+    private final BazelCommandResultCache resultCache;
+
+    // LOCKS
+
+    /**
+     * Commands are not serialized on this runner: a query can run while a build is running (see
+     * BazelCommandScheduler). This lock only protects the cache of the aspect helper. The query helper synchronizes
+     * itself, so that it can merge the queries of concurrent callers.
      */
-    private String query;
-    private List<String> queryResults;
+    private final Object aspectLock = new Object();
 
     // CTORS
 
@@ -161,8 +166,17 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      * context of a workspace, such as version check. Hint: you don't want this one.
      */
     public BazelWorkspaceCommandRunner(File bazelExecutable, CommandBuilder commandBuilder) {
+        this(bazelExecutable, commandBuilder, new BazelCommandResultCache());
+    }
+
+    /**
+     * Creates the 'global' runner, sharing the result cache with other runners.
+     */
+    public BazelWorkspaceCommandRunner(File bazelExecutable, CommandBuilder commandBuilder,
+            BazelCommandResultCache resultCache) {
 
         this.commandBuilder = commandBuilder;
+        this.resultCache = resultCache;
         bazelCommandExecutor = new BazelCommandExecutor(bazelExecutable, commandBuilder);
         bazelVersionChecker = new BazelVersionChecker(this.commandBuilder);
 
@@ -177,12 +191,23 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      */
     public BazelWorkspaceCommandRunner(File bazelExecutable, BazelAspectLocation aspectLocation,
             CommandBuilder commandBuilder, CommandConsoleFactory consoleFactory, File bazelWorkspaceRoot) {
+        this(bazelExecutable, aspectLocation, commandBuilder, consoleFactory, bazelWorkspaceRoot,
+                new BazelCommandResultCache());
+    }
+
+    /**
+     * Command runner for a specific Bazel workspace, sharing the result cache with other runners.
+     */
+    public BazelWorkspaceCommandRunner(File bazelExecutable, BazelAspectLocation aspectLocation,
+            CommandBuilder commandBuilder, CommandConsoleFactory consoleFactory, File bazelWorkspaceRoot,
+            BazelCommandResultCache resultCache) {
 
         if ((bazelWorkspaceRoot == null) || !bazelWorkspaceRoot.exists()) {
             throw new IllegalArgumentException("Bazel workspace root directory cannot be null, and must exist.");
         }
         bazelWorkspaceRootDirectory = bazelWorkspaceRoot;
         this.commandBuilder = commandBuilder;
+        this.resultCache = resultCache;
         bazelCommandExecutor = new BazelCommandExecutor(bazelExecutable, commandBuilder);
 
         aspectHelper = new BazelWorkspaceAspectProcessor(this, aspectLocation, bazelCommandExecutor);
@@ -200,116 +225,125 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
     }
 
     /**
-     * Returns the execution root of the current Bazel workspace by running <i>bazel info</i>. It caches the answer
-     * since this cannot change for a workspace.
+     * Returns the execution root of the current Bazel workspace by running <i>bazel info</i>. The answer is cached
+     * until the WORKSPACE or .bazelrc files change.
      */
     @Override
     public File computeBazelWorkspaceExecRoot() {
-
-        if (bazelExecRootDirectory == null) {
-            try {
-                List<String> argBuilder = new ArrayList<>();
-                argBuilder.add("info");
-                argBuilder.add("execution_root");
-
-                List<String> outputLines = bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory,
-                    null, argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
-                outputLines = BazelCommandExecutor.stripInfoLines(outputLines);
-                bazelExecRootDirectory = new File(String.join("", outputLines));
-                bazelExecRootDirectory = getCanonicalFileSafely(bazelExecRootDirectory);
-            } catch (Exception anyE) {
-                throw new IllegalStateException(anyE);
-            }
-        }
-        return bazelExecRootDirectory;
+        return computeBazelInfoFile("execution_root");
     }
 
     /**
-     * Returns the list of targets for the given bazel query
+     * Returns the list of targets for the given bazel query. The result is cached only if it depends on just the
+     * packages named in the query, see BazelCommandResultCache; tests(...) queries are run every time.
      *
      * @param query
      *            is a String with the bazel query
      */
     @Override
     public List<String> computeBazelQuery(String query) {
-
-        if ((this.query != null) && this.query.equals(query)) {
-            return queryResults;
-        }
-
-        List<String> results = new ArrayList<>();
+        List<String> argBuilder = new ArrayList<>();
+        argBuilder.add("query");
+        argBuilder.add(query);
         try {
-            List<String> argBuilder = new ArrayList<>();
-            argBuilder.add("query");
-            argBuilder.add(query);
-
-            results = bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory, null, argBuilder,
-                t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
-
+            return resultCache.computeIfAbsent(bazelWorkspaceRootDirectory, argBuilder,
+                () -> bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory, null, argBuilder,
+                    t -> t, BazelCommandExecutor.TIMEOUT_INFINITE));
         } catch (IOException | InterruptedException | BazelCommandLineToolConfigurationException e) {
             throw new IllegalStateException(e);
         }
-        //update cached values
-        this.query = query;
-        queryResults = results;
-
-        return results;
     }
 
     /**
-     * Returns the output base of the current Bazel workspace by running <i>bazel info</i>. It caches the answer since
-     * this cannot change for a workspace.
+     * Returns the output base of the current Bazel workspace by running <i>bazel info</i>. The answer is cached until
+     * the WORKSPACE or .bazelrc files change.
      */
     @Override
     public File computeBazelWorkspaceOutputBase() {
-        if (bazelOutputBaseDirectory == null) {
-            try {
-                List<String> argBuilder = new ArrayList<>();
-                argBuilder.add("info");
-                argBuilder.add("output_base");
-
-                List<String> outputLines = bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory,
-                    null, argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
-                outputLines = BazelCommandExecutor.stripInfoLines(outputLines);
-                bazelOutputBaseDirectory = new File(String.join("", outputLines));
-                bazelOutputBaseDirectory = getCanonicalFileSafely(bazelOutputBaseDirectory);
-            } catch (Exception anyE) {
-                throw new IllegalStateException(anyE);
-            }
-        }
-        return bazelOutputBaseDirectory;
+        return computeBazelInfoFile("output_base");
     }
 
     /**
-     * Returns the bazel-bin of the current Bazel workspace by running <i>bazel info</i>. It caches the answer since
-     * this cannot change for a workspace.
+     * Returns the bazel-bin of the current Bazel workspace by running <i>bazel info</i>. The answer is cached until
+     * the WORKSPACE or .bazelrc files change.
      */
     @Override
     public File computeBazelWorkspaceBin() {
-        if (bazelBinDirectory == null) {
-            try {
-                List<String> argBuilder = new ArrayList<>();
-                argBuilder.add("info");
-                argBuilder.add("bazel-bin");
-
-                List<String> outputLines = bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory,
-                    null, argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
-                outputLines = BazelCommandExecutor.stripInfoLines(outputLines);
-                bazelBinDirectory = new File(String.join("", outputLines));
-                bazelBinDirectory = getCanonicalFileSafely(bazelBinDirectory);
-            } catch (Exception anyE) {
-                throw new IllegalStateException(anyE);
+        return computeBazelInfoFile("bazel-bin");
+    }
+
+    /**
+     * Returns the cache of bazel info and bazel query results used by this runner.
+     */
+    public BazelCommandResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Returns all the key/value pairs reported by <i>bazel info</i>. A single command provides all of them (the
+     * execution root, output base, bazel-bin etc), and the answer is cached until the WORKSPACE or .bazelrc files
+     * change.
+     */
+    @Override
+    public Map<String, String> computeBazelInfo() {
+        List<String> argBuilder = new ArrayList<>();
+        argBuilder.add("info");
+        try {
+            List<String> outputLines = resultCache.computeIfAbsent(bazelWorkspaceRootDirectory, argBuilder, () -> {
+                long startTimeMS = System.currentTimeMillis();
+                List<String> lines = BazelCommandExecutor.stripInfoLines(bazelCommandExecutor.runBazelAndGetOutputLines(
+                    bazelWorkspaceRootDirectory, null, argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE));
+                LOG.info("Read the metadata of workspace [{}] with bazel info in {} ms", bazelWorkspaceRootDirectory,
+                    System.currentTimeMillis() - startTimeMS);
+                return lines;
+            });
+            return parseInfoOutput(outputLines);
+        } catch (Exception anyE) {
+            throw new IllegalStateException(anyE);
+        }
+    }
+
+    /**
+     * Parses the <i>key: value</i> lines of the output of <i>bazel info</i>.
+     */
+    static Map<String, String> parseInfoOutput(List<String> outputLines) {
+        Map<String, String> info = new TreeMap<>();
+        for (String line : outputLines) {
+            int separatorIndex = line.indexOf(": ");
+            if (separatorIndex > 0) {
+                info.put(line.substring(0, separatorIndex).trim(), line.substring(separatorIndex + 2).trim());
             }
         }
-        return bazelBinDirectory;
+        return info;
+    }
+
+    private File computeBazelInfoFile(String infoKey) {
+        String path = computeBazelInfo().get(infoKey);
+        if (path == null) {
+            throw new IllegalStateException("bazel info did not report [" + infoKey + "] for workspace "
+                    + bazelWorkspaceRootDirectory.getAbsolutePath());
+        }
+        return getCanonicalFileSafely(new File(path));
     }
 
     /**
-     * Returns the explicitly set options in the workspace config files (.bazelrc et al). This gathers the data from the
-     * announce_rc option in Bazel.
+     * Returns the explicitly set options in the workspace config files (.bazelrc et al). The files are parsed directly
+     * when possible; if they use something the parser cannot evaluate, this gathers the data from the announce_rc
+     * option in Bazel instead.
      */
     @Override
     public void populateBazelWorkspaceCommandOptions(BazelWorkspaceCommandOptions commandOptions) {
+        long startTimeMS = System.currentTimeMillis();
+        try {
+            new BazelrcParser(bazelWorkspaceRootDirectory).parse(commandOptions);
+            LOG.info("Read the command options of workspace [{}] from the bazelrc files in {} ms",
+                bazelWorkspaceRootDirectory, System.currentTimeMillis() - startTimeMS);
+            return;
+        } catch (IOException ioe) {
+            LOG.info("Could not read the bazelrc files of workspace [{}] directly ({}), asking Bazel for the options",
+                bazelWorkspaceRootDirectory, ioe.getMessage());
+        }
+
         try {
             List<String> argBuilder = new ArrayList<>();
             // to get the options, the verb could be info, build, test etc but 'test' gives us the most coverage of the contexts for options
@@ -319,6 +353,8 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
             List<String> outputLines = bazelCommandExecutor.runBazelAndGetErrorLines(bazelWorkspaceRootDirectory, null,
                 argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
             commandOptions.parseOptionsFromOutput(outputLines);
+            LOG.info("Read the command options of workspace [{}] with bazel test --announce_rc in {} ms",
+                bazelWorkspaceRootDirectory, System.currentTimeMillis() - startTimeMS);
         } catch (Exception anyE) {
             throw new IllegalStateException(anyE);
         }
@@ -331,6 +367,26 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
         this.buildOptions = buildOptions;
     }
 
+    /**
+     * If true, runBazelBuild() reads the problems of the build from the build event protocol, see
+     * {@link #runBazelBuildWithBuildEvents(Set, List, WorkProgressMonitor, BazelBuildEventProblemCollector)}.
+     */
+    public void setBuildWithBuildEvents(boolean buildWithBuildEvents) {
+        this.buildWithBuildEvents = buildWithBuildEvents;
+    }
+
+    public boolean isBuildWithBuildEvents() {
+        return buildWithBuildEvents;
+    }
+
+    /**
+     * Spools the console output of builds, tests and aspect builds to rotating files in the directory, instead of only
+     * passing it through to the console, see {@link BazelCommandExecutor#setOutputSpool(File, long)}.
+     */
+    public void setOutputSpool(File directory, long maxBytes) {
+        bazelCommandExecutor.setOutputSpool(directory, maxBytes);
+    }
+
     // GLOBAL CONFIG
 
     /**
@@ -366,7 +422,7 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      * @param labels
      *            the labels to query
      */
-    public synchronized Collection<BazelBuildFile> queryBazelTargetsInBuildFile(Collection<BazelLabel> labels)
+    public Collection<BazelBuildFile> queryBazelTargetsInBuildFile(Collection<BazelLabel> labels)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
         return bazelQueryHelper.queryBazelTargetsInBuildFile(bazelWorkspaceRootDirectory, labels);
     }
@@ -375,8 +431,10 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      * @param bazelPackageName
      *            the label path that identifies the package where the BUILD file lives (//projects/libs/foo)
      */
-    public synchronized void flushQueryCache(BazelLabel bazelPackageLabel) {
+    public void flushQueryCache(BazelLabel bazelPackageLabel) {
         bazelQueryHelper.flushCache(bazelPackageLabel);
+        File packageDirectory = new File(bazelWorkspaceRootDirectory, bazelPackageLabel.getPackagePath());
+        resultCache.notifyFileChanged(new File(packageDirectory, "BUILD"));
     }
 
     /**
@@ -388,7 +446,7 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      * @throws BazelCommandLineToolConfigurationException
      */
     @Deprecated
-    public synchronized List<String> listBazelTargetsInBuildFiles(WorkProgressMonitor progressMonitor,
+    public List<String> listBazelTargetsInBuildFiles(WorkProgressMonitor progressMonitor,
             File... directories) throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
         return bazelQueryHelper.listBazelTargetsInBuildFiles(bazelWorkspaceRootDirectory, progressMonitor, directories);
     }
@@ -398,7 +456,7 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      *
      * @return a List of error details, this list is empty if the build was successful
      */
-    public synchronized List<BazelProblem> runBazelBuild(Set<String> bazelTargets, List<String> extraArgs)
+    public List<BazelProblem> runBazelBuild(Set<String> bazelTargets, List<String> extraArgs)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
         return runBazelBuild(bazelTargets, extraArgs, null);
     }
@@ -408,9 +466,28 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      *
      * @return a List of error details, this list is empty if the build was successful
      */
-    public synchronized List<BazelProblem> runBazelBuild(Set<String> bazelTargets, List<String> extraArgs,
+    public List<BazelProblem> runBazelBuild(Set<String> bazelTargets, List<String> extraArgs,
             WorkProgressMonitor progressMonitor)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        return runBazelBuild(bazelTargets, extraArgs, progressMonitor, null);
+    }
+
+    /**
+     * Run a bazel build on a list of targets in the current workspace. The errors are parsed while the build is
+     * running, and each one is passed to the problemListener as soon as Bazel reports it. Note that the listener is
+     * called by the thread that reads the output of the build, not by the calling thread.
+     *
+     * @param problemListener
+     *            called for each error as it is found, can be null
+     * @return a List of error details, this list is empty if the build was successful
+     */
+    public List<BazelProblem> runBazelBuild(Set<String> bazelTargets, List<String> extraArgs,
+            WorkProgressMonitor progressMonitor, Consumer<BazelProblem> problemListener)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        if (buildWithBuildEvents) {
+            return runBazelBuildWithBuildEvents(bazelTargets, extraArgs, progressMonitor,
+                new BazelBuildEventProblemCollector(bazelWorkspaceRootDirectory, problemListener));
+        }
         List<String> extraArgsList = new ArrayList<String>();
         extraArgsList.add("build");
         extraArgsList.addAll(buildOptions);
@@ -418,15 +495,124 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
         extraArgsList.add("--");
         extraArgsList.addAll(bazelTargets);
 
-        List<String> output = bazelCommandExecutor.runBazelAndGetErrorLines(bazelWorkspaceRootDirectory,
-            progressMonitor, extraArgsList, new ErrorOutputSelector(), BazelCommandExecutor.TIMEOUT_INFINITE);
-        if (output.isEmpty()) {
-            return Collections.emptyList();
-        } else {
-            BazelOutputParser outputParser = new BazelOutputParser();
-            List<BazelProblem> errors = outputParser.getErrors(output);
+        BazelProblemOutputSelector problemSelector = new BazelProblemOutputSelector(problemListener);
+        List<String> unparsedLines = bazelCommandExecutor.runBazelAndGetErrorLines(bazelWorkspaceRootDirectory,
+            progressMonitor, extraArgsList, problemSelector, BazelCommandExecutor.TIMEOUT_INFINITE);
+        // a command that does not apply the selector as the output arrives (like a simulated command) returns the lines
+        for (String line : unparsedLines) {
+            problemSelector.apply(line);
+        }
+
+        List<BazelProblem> errors = problemSelector.getProblems();
+        if (!errors.isEmpty()) {
             logErrors(errors);
+        }
+        return errors;
+    }
+
+    /**
+     * Run a bazel build on a list of targets in the current workspace, and derive the problems from the build event
+     * protocol (BEP). Bazel writes the events to a temporary json file, which is read incrementally while the build is
+     * running. The collector receives every event; afterwards it also has the result of each target that was built.
+     * <p>
+     * The compiler errors still originate from the stderr of the actions, but they arrive in progress events, and the
+     * targetCompleted events tell exactly which targets failed, so a failed target gets a problem on its BUILD file even
+     * if its error message cannot be parsed.
+     *
+     * @return a List of error details, this list is empty if the build was successful
+     */
+    public List<BazelProblem> runBazelBuildWithBuildEvents(Set<String> bazelTargets, List<String> extraArgs,
+            WorkProgressMonitor progressMonitor, BazelBuildEventProblemCollector collector)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        File bepFile = File.createTempFile("bep-build-", ".json");
+        try {
+            List<String> extraArgsList = new ArrayList<String>();
+            extraArgsList.add("build");
+            extraArgsList.addAll(buildOptions);
+            extraArgsList.addAll(extraArgs);
+            extraArgsList.add("--build_event_json_file=" + bepFile.getAbsolutePath());
+            extraArgsList.add("--");
+            extraArgsList.addAll(bazelTargets);
+
+            BuildEventFileTail tail = new BuildEventFileTail(bepFile, collector);
+            tail.start();
+            try {
+                try {
+                    bazelCommandExecutor.runBazelAndGetErrorLines(bazelWorkspaceRootDirectory, progressMonitor,
+                        extraArgsList, tail, BazelCommandExecutor.TIMEOUT_INFINITE);
+                } finally {
+                    tail.stop();
+                }
+                // the events written after the last read
+                tail.readNewEvents();
+            } finally {
+                tail.release();
+            }
+
+            List<BazelProblem> errors = collector.getProblems();
+            if (!errors.isEmpty()) {
+                logErrors(errors);
+            }
             return errors;
+        } finally {
+            bepFile.delete();
+        }
+    }
+
+    /**
+     * Reads the BEP file of a running build every BEP_READ_INTERVAL_MS, on a timer, so events are also picked up while
+     * the build writes nothing to the console. The console lines themselves are dropped.
+     */
+    private static class BuildEventFileTail implements Function<String, String> {
+        private final BEPFileParser parser;
+        private final BEPFileTailReader tailReader;
+        private final BazelBuildEventProblemCollector collector;
+        private BEPFileContents contents;
+        private ScheduledExecutorService timer;
+
+        BuildEventFileTail(File bepFile, BazelBuildEventProblemCollector collector) {
+            parser = new BEPFileParser(bepFile);
+            // the collector gets every event, there is no need to keep them
+            parser.setRetentionPolicy(BEPEventRetentionPolicy.summaryOnly(0));
+            tailReader = new BEPFileTailReader(bepFile);
+            this.collector = collector;
+        }
+
+        void start() {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "bep-build-reader");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.scheduleWithFixedDelay(() -> {
+                try {
+                    readNewEvents();
+                } catch (Exception anyE) {
+                    // a failed read is retried by the next run; the final read after the build reports the error
+                    LOG.error("Failure reading the BEP file of the running build", anyE);
+                }
+            }, BEP_READ_INTERVAL_MS, BEP_READ_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        void stop() throws InterruptedException {
+            timer.shutdown();
+            // let a read that is in progress finish, so the final read does not overlap with it
+            timer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public String apply(String line) {
+            return null;
+        }
+
+        synchronized void readNewEvents() {
+            contents = parser.readNewEvents("runBazelBuild", contents, tailReader, collector);
+        }
+
+        synchronized void release() {
+            if (contents != null) {
+                contents.releaseSpillFile();
+            }
         }
     }
 
@@ -450,16 +636,18 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      *
      * @throws BazelCommandLineToolConfigurationException
      */
-    public synchronized Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfoForPackages(
+    public Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfoForPackages(
             Collection<BazelPackageLocation> targetPackages, String caller)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
-        List<BazelLabel> targetLabels = new ArrayList<>();
-        for (BazelPackageLocation pkg : targetPackages) {
-            String target = pkg.getBazelPackageFSRelativePath() + ":*";
-            targetLabels.add(new BazelLabel(target));
-        }
+        synchronized (aspectLock) {
+            List<BazelLabel> targetLabels = new ArrayList<>();
+            for (BazelPackageLocation pkg : targetPackages) {
+                String target = pkg.getBazelPackageFSRelativePath() + ":*";
+                targetLabels.add(new BazelLabel(target));
+            }
 
-        return aspectHelper.getAspectTargetInfos(targetLabels, caller);
+            return aspectHelper.getAspectTargetInfos(targetLabels, caller);
+        }
     }
 
     /**
@@ -479,44 +667,65 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
      * @return Mapping of the requested label to its AspectTargetInfo instances
      * @throws BazelCommandLineToolConfigurationException
      */
-    public synchronized Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfos(Collection<String> targetLabels,
+    public Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfos(Collection<String> targetLabels,
             String caller) throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        Collection<BazelLabel> labels = targetLabels.stream().map(BazelLabel::new).collect(Collectors.toList());
-        return aspectHelper.getAspectTargetInfos(labels, caller);
+        return getAspectTargetInfos(targetLabels, caller, null);
+    }
+
+    /**
+     * Variant of {@link #getAspectTargetInfos(Collection, String)} that reports progress (one unit of work per target)
+     * to the passed monitor, and stops running the aspect if the monitor is canceled.
+     */
+    public Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfos(Collection<String> targetLabels,
+            String caller, WorkProgressMonitor progressMonitor)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        synchronized (aspectLock) {
+
+            Collection<BazelLabel> labels = targetLabels.stream().map(BazelLabel::new).collect(Collectors.toList());
+            return aspectHelper.getAspectTargetInfos(labels, caller, progressMonitor);
+        }
     }
 
     /**
      * Clear the entire AspectTargetInfo cache. This flushes the dependency graph for the workspace.
      */
-    public synchronized void flushAspectInfoCache() {
-        aspectHelper.flushAspectInfoCache();
+    public void flushAspectInfoCache() {
+        synchronized (aspectLock) {
+            aspectHelper.flushAspectInfoCache();
+        }
     }
 
     /**
      * Clear the AspectTargetInfo cache for the passed target. This flushes the dependency graph for that target.
      */
-    public synchronized void flushAspectInfoCache(String target) {
-        aspectHelper.flushAspectInfoCache(new BazelLabel(target));
+    public void flushAspectInfoCache(String target) {
+        synchronized (aspectLock) {
+            aspectHelper.flushAspectInfoCache(new BazelLabel(target));
+        }
     }
 
     /**
      * Clear the AspectTargetInfo cache for the passed targets. This flushes the dependency graph for those targets.
      */
-    public synchronized void flushAspectInfoCache(Set<String> targets) {
-        Set<BazelLabel> labels = targets.stream().map(BazelLabel::new).collect(Collectors.toSet());
-        aspectHelper.flushAspectInfoCache(labels);
+    public void flushAspectInfoCache(Set<String> targets) {
+        synchronized (aspectLock) {
+            Set<BazelLabel> labels = targets.stream().map(BazelLabel::new).collect(Collectors.toSet());
+            aspectHelper.flushAspectInfoCache(labels);
+        }
     }
 
     /**
      * Clear the AspectTargetInfo cache for the passed package. This flushes the dependency graph for any target that
      * contains the package name.
      */
-    public synchronized Set<String> flushAspectInfoCacheForPackage(String packageName) {
-        BazelLabel packageLabel = new BazelLabel(packageName);
-        Set<BazelLabel> flushedPackages = aspectHelper.flushAspectInfoCacheForPackage(packageLabel);
-        LOG.info("Flushed aspect cache for package: " + packageLabel);
-        return flushedPackages.stream().map(BazelLabel::getPackagePath).collect(Collectors.toSet());
+    public Set<String> flushAspectInfoCacheForPackage(String packageName) {
+        synchronized (aspectLock) {
+            BazelLabel packageLabel = new BazelLabel(packageName);
+            Set<BazelLabel> flushedPackages = aspectHelper.flushAspectInfoCacheForPackage(packageLabel);
+            LOG.info("Flushed aspect cache for package: " + packageLabel);
+            return flushedPackages.stream().map(BazelLabel::getPackagePath).collect(Collectors.toSet());
+        }
     }
 
     /**
@@ -526,6 +735,13 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
         return aspectHelper;
     }
 
+    /**
+     * Access to the low level query collaborator, for its statistics. Visible for tests.
+     */
+    public BazelQueryHelper getBazelQueryHelper() {
+        return bazelQueryHelper;
+    }
+
     // CUSTOM OPERATIONS
 
     /**
@@ -575,19 +791,6 @@ public class BazelWorkspaceCommandRunner implements BazelWorkspaceMetadataStrate
 
     // HELPERS
 
-    private static class ErrorOutputSelector implements Function<String, String> {
-
-        private boolean keep = false;
-
-        @Override
-        public String apply(String line) {
-            if (line.startsWith("ERROR")) {
-                keep = true;
-            }
-            return keep ? line : null;
-        }
-    }
-
     /**
      * Resolve softlinks and other abstractions in the workspace paths.
      */
@@ -0,0 +1,319 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the explicitly set command options of a workspace straight from its .bazelrc files, so that no Bazel command
+ * (bazel test --announce_rc) is needed to learn them.
+ * <p>
+ * The files are read in the order Bazel reads them: the system rc, the workspace .bazelrc and the user's ~/.bazelrc.
+ * The SDK starts Bazel without startup options, so --bazelrc files and the options that disable the standard files do
+ * not apply. The import and try-import lines, line continuations, quoting and --config expansion are supported.
+ * Options are collected for the contexts that a 'bazel test' command would use (common, build and test), in the order
+ * of precedence Bazel applies to them.
+ * <p>
+ * https://docs.bazel.build/versions/master/guide.html#bazelrc-the-bazel-configuration-file
+ */
+public class BazelrcParser {
+
+    /**
+     * The contexts that 'bazel test' reads options from, lowest precedence first.
+     */
+    private static final List<String> TEST_CONTEXTS = Arrays.asList("always", "common", "build", "test");
+
+    private static final String WORKSPACE_PLACEHOLDER = "%workspace%";
+
+    /**
+     * Frequently used options that do not take a value, so the token after them is not their value (build --keep_going
+     * //foo). Options named --noname and the --incompatible_* flags are also treated as booleans.
+     */
+    private static final Set<String> BOOLEAN_OPTIONS = new HashSet<>(Arrays.asList("announce_rc", "build_runfile_links",
+        "build_tests_only", "check_visibility", "enable_platform_specific_config", "heap_dump_on_oom",
+        "java_header_compilation", "keep_going", "legacy_external_runfiles", "progress_in_terminal_title",
+        "remote_accept_cached", "remote_upload_local_results", "sandbox_debug", "show_progress", "show_timestamps",
+        "stamp", "subcommands", "test_verbose_timeout_warnings", "verbose_explanations", "verbose_failures"));
+
+    /**
+     * Options whose values usually look like options themselves (build --copt -O2), so the token after them is always
+     * their value.
+     */
+    private static final Set<String> VALUE_OPTIONS = new HashSet<>(Arrays.asList("conlyopt", "copt", "cxxopt",
+        "host_conlyopt", "host_copt", "host_cxxopt", "host_javacopt", "host_jvmopt", "host_linkopt", "javacopt",
+        "jvmopt", "linkopt", "run_under", "test_arg"));
+
+    private final File workspaceRoot;
+    private final List<File> rcFiles;
+
+    // context (build, or build:myconfig) -> option tokens of all the lines for the context, in file order
+    private final Map<String, List<String>> contextTokens = new HashMap<>();
+
+    // CTORS
+
+    /**
+     * Parser for the standard .bazelrc files of the workspace.
+     */
+    public BazelrcParser(File workspaceRoot) {
+        this(workspaceRoot, getDefaultRcFiles(workspaceRoot));
+    }
+
+    /**
+     * Parser for the given rc files, which are read in order. Files that do not exist are skipped.
+     */
+    public BazelrcParser(File workspaceRoot, List<File> rcFiles) {
+        this.workspaceRoot = workspaceRoot;
+        this.rcFiles = rcFiles;
+    }
+
+    // PUBLIC API
+
+    /**
+     * The rc files Bazel reads by default for the workspace, in the order it reads them.
+     */
+    public static List<File> getDefaultRcFiles(File workspaceRoot) {
+        return getRcFiles(workspaceRoot, new File(System.getProperty("user.home", "")));
+    }
+
+    /**
+     * The rc files Bazel reads by default, with the user's .bazelrc file in the given home directory.
+     */
+    static List<File> getRcFiles(File workspaceRoot, File homeDirectory) {
+        List<File> rcFiles = new ArrayList<>();
+        if (System.getProperty("os.name", "unknown").contains("Windows")) {
+            String programData = System.getenv("ProgramData");
+            if (programData != null) {
+                rcFiles.add(new File(programData, "bazel.bazelrc"));
+            }
+        } else {
+            rcFiles.add(new File("/etc/bazel.bazelrc"));
+        }
+        rcFiles.add(new File(workspaceRoot, ".bazelrc"));
+        rcFiles.add(new File(homeDirectory, ".bazelrc"));
+        return rcFiles;
+    }
+
+    /**
+     * Reads the rc files and adds the options they set to the command options.
+     *
+     * @throws IOException
+     *             if a file cannot be read, or uses a construct that cannot be evaluated without Bazel (a missing
+     *             import, an undefined or recursive config); the caller should then ask Bazel for the options
+     */
+    public void parse(BazelWorkspaceCommandOptions commandOptions) throws IOException {
+        contextTokens.clear();
+        for (File rcFile : rcFiles) {
+            if (rcFile.isFile()) {
+                readRcFile(rcFile, new HashSet<>());
+            }
+        }
+        for (String context : TEST_CONTEXTS) {
+            addOptions(commandOptions, context, contextTokens.get(context), new HashSet<>());
+        }
+    }
+
+    // INTERNALS
+
+    private void readRcFile(File rcFile, Set<File> importingFiles) throws IOException {
+        File canonicalFile = rcFile.getCanonicalFile();
+        if (!importingFiles.add(canonicalFile)) {
+            throw new IOException("Import cycle in bazelrc file " + rcFile.getAbsolutePath());
+        }
+
+        for (String line : joinContinuationLines(Files.readAllLines(rcFile.toPath(), StandardCharsets.UTF_8))) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> tokens = tokenize(line);
+            String command = tokens.get(0);
+            if ("import".equals(command) || "try-import".equals(command)) {
+                if (tokens.size() != 2) {
+                    throw new IOException("Invalid import [" + line + "] in " + rcFile.getAbsolutePath());
+                }
+                File importedFile = new File(tokens.get(1).replace(WORKSPACE_PLACEHOLDER, workspaceRoot.getPath()));
+                if (importedFile.isFile()) {
+                    readRcFile(importedFile, importingFiles);
+                } else if ("import".equals(command)) {
+                    throw new FileNotFoundException("Bazelrc file " + rcFile.getAbsolutePath()
+                            + " imports missing file " + importedFile.getAbsolutePath());
+                }
+            } else {
+                contextTokens.computeIfAbsent(command, c -> new ArrayList<>()).addAll(tokens.subList(1, tokens.size()));
+            }
+        }
+        importingFiles.remove(canonicalFile);
+    }
+
+    private void addOptions(BazelWorkspaceCommandOptions commandOptions, String context, List<String> tokens,
+            Set<String> expandingConfigs) throws IOException {
+        if (tokens == null) {
+            return;
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!token.startsWith("-")) {
+                // not an option (bazel would treat it as a target), ignore
+                continue;
+            }
+            String option = token.startsWith("--") ? token.substring(2) : token.substring(1);
+            String optionName = option;
+            String optionValue = "true";
+            int equalsIndex = option.indexOf('=');
+            if (equalsIndex != -1) {
+                optionName = option.substring(0, equalsIndex);
+                optionValue = option.substring(equalsIndex + 1);
+            } else if (((i + 1) < tokens.size()) && takesSeparateValue(optionName, tokens.get(i + 1))) {
+                // the value is the next token (--workspace_status_command tools/status.sh)
+                optionValue = tokens.get(++i);
+            }
+            commandOptions.addOption(context, optionName, optionValue);
+
+            if ("config".equals(optionName)) {
+                expandConfig(commandOptions, context, optionValue, expandingConfigs);
+            }
+        }
+    }
+
+    /**
+     * Bazel only knows from the type of an option whether it consumes the next token as its value. Without the option
+     * definitions, boolean options are recognized by name, and a target pattern is never taken as a value. The
+     * options known to take values that start with a dash always take the next token.
+     */
+    private static boolean takesSeparateValue(String optionName, String nextToken) {
+        if (VALUE_OPTIONS.contains(optionName)) {
+            return true;
+        }
+        if (nextToken.startsWith("-") || nextToken.startsWith("//") || nextToken.startsWith("@")
+                || nextToken.startsWith(":") || nextToken.endsWith("...")) {
+            return false;
+        }
+        return !BOOLEAN_OPTIONS.contains(optionName) && !optionName.startsWith("no")
+                && !optionName.startsWith("incompatible_");
+    }
+
+    /**
+     * --config=name adds the options of the name config of all the contexts of the command.
+     */
+    private void expandConfig(BazelWorkspaceCommandOptions commandOptions, String context, String config,
+            Set<String> expandingConfigs) throws IOException {
+        if (!expandingConfigs.add(config)) {
+            throw new IOException("Config [" + config + "] is expanded recursively");
+        }
+        boolean defined = false;
+        for (String configContext : TEST_CONTEXTS) {
+            List<String> tokens = contextTokens.get(configContext + ":" + config);
+            if (tokens != null) {
+                defined = true;
+                addOptions(commandOptions, context, tokens, expandingConfigs);
+            }
+        }
+        if (!defined) {
+            throw new IOException("Config [" + config + "] is not defined in any bazelrc file");
+        }
+        expandingConfigs.remove(config);
+    }
+
+    /**
+     * A line that ends with a backslash continues on the next line.
+     */
+    private static List<String> joinContinuationLines(List<String> lines) {
+        List<String> joinedLines = new ArrayList<>();
+        StringBuilder joinedLine = null;
+        for (String line : lines) {
+            boolean continued = line.endsWith("\\");
+            if (continued) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (joinedLine == null) {
+                joinedLine = new StringBuilder(line);
+            } else {
+                joinedLine.append(' ').append(line);
+            }
+            if (!continued) {
+                joinedLines.add(joinedLine.toString());
+                joinedLine = null;
+            }
+        }
+        if (joinedLine != null) {
+            joinedLines.add(joinedLine.toString());
+        }
+        return joinedLines;
+    }
+
+    /**
+     * Splits the line into shell like tokens: whitespace separates tokens, except when quoted or escaped.
+     */
+    static List<String> tokenize(String line) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if ((c == '\\') && (quote == '"') && ((i + 1) < line.length())) {
+                    token.append(line.charAt(++i));
+                } else {
+                    token.append(c);
+                }
+            } else if ((c == '"') || (c == '\'')) {
+                quote = c;
+                inToken = true;
+            } else if ((c == '\\') && ((i + 1) < line.length())) {
+                token.append(line.charAt(++i));
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IOException("Unterminated quote in bazelrc line [" + line + "]");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.salesforce.bazel.sdk.command;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.function.Function;
@@ -61,4 +62,20 @@ public interface Command {
      */
     BazelProcessBuilder getProcessBuilder();
 
+    /**
+     * Returns the spool holding the full standard output of the command, or null if the command was not built with
+     * {@link CommandBuilder#setOutputSpool(File, long)}. The caller owns the spool, and should delete it when done.
+     */
+    default CommandOutputSpool getOutputSpool() {
+        return null;
+    }
+
+    /**
+     * Returns the spool holding the full standard error of the command, or null if the command was not built with
+     * {@link CommandBuilder#setOutputSpool(File, long)}. The caller owns the spool, and should delete it when done.
+     */
+    default CommandOutputSpool getErrorSpool() {
+        return null;
+    }
+
 }
\ No newline at end of file
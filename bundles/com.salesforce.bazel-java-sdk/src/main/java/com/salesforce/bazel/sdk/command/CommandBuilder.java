@@ -57,6 +57,8 @@ public abstract class CommandBuilder {
     protected final CommandConsoleFactory consoleFactory;
     protected WorkProgressMonitor progressMonitor;
     protected long timeoutMS;
+    protected File spoolDirectory;
+    protected long spoolMaxBytes;
 
     protected CommandBuilder(final CommandConsoleFactory consoleFactory) {
         this.consoleFactory = consoleFactory;
@@ -75,6 +77,8 @@ public abstract class CommandBuilder {
         this.stdoutSelector = null;
         this.stderrSelector = null;
         this.progressMonitor = null;
+        this.spoolDirectory = null;
+        this.spoolMaxBytes = CommandOutputSpool.DEFAULT_MAX_BYTES;
 
         // TODO make Bazel command timeout configurable
         this.timeoutMS = 100000; // default timeout
@@ -188,6 +192,17 @@ public abstract class CommandBuilder {
         return this;
     }
 
+    /**
+     * Spool the raw standard output and standard error of the command to rotating temp files in the directory, keeping
+     * about the last maxBytes of each. Use this for commands with very verbose output; only the selected lines are kept
+     * in memory, the full log is available from {@link Command#getOutputSpool()} and {@link Command#getErrorSpool()}.
+     */
+    public CommandBuilder setOutputSpool(File directory, long maxBytes) {
+        this.spoolDirectory = directory;
+        this.spoolMaxBytes = maxBytes;
+        return this;
+    }
+
     /**
      * Build a Command object.
      */
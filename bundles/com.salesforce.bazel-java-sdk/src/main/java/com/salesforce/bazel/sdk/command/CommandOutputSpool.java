@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Captures the raw output of a command into temp files, so that the full output of a verbose command (a
+ * 'bazel build //...' can print hundreds of MB) does not have to be kept on the heap.
+ * <p>
+ * The spool rotates: output is written to segment files of at most maxSegmentBytes, and only the most recent
+ * maxSegments segments are kept. Consumers that need the log read it lazily with openReader().
+ * <p>
+ * Segments that rotate out are deleted right away; the retained ones are deleted by delete(). Writes are not thread
+ * safe, each stream of a command has its own spool.
+ */
+public class CommandOutputSpool implements Closeable {
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024L;
+    public static final int DEFAULT_MAX_SEGMENTS = 2;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final String prefix;
+    private final long maxSegmentBytes;
+    private final int maxSegments;
+
+    private final Deque<File> segments = new ArrayDeque<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private FileChannel channel;
+    private long segmentBytes = 0L;
+    private long totalBytes = 0L;
+    private long discardedBytes = 0L;
+    private boolean closed = false;
+
+    /**
+     * Creates a spool that keeps about the last maxBytes of output, in DEFAULT_MAX_SEGMENTS segments.
+     */
+    public CommandOutputSpool(File directory, String prefix, long maxBytes) {
+        this(directory, prefix, Math.max(1L, maxBytes / DEFAULT_MAX_SEGMENTS), DEFAULT_MAX_SEGMENTS);
+    }
+
+    public CommandOutputSpool(File directory, String prefix, long maxSegmentBytes, int maxSegments) {
+        if ((maxSegmentBytes <= 0) || (maxSegments <= 0)) {
+            throw new IllegalArgumentException("The spool needs at least one segment of at least one byte");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    // PUBLIC API
+
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if (len > buffer.remaining()) {
+            flush();
+        }
+        if (len > buffer.capacity()) {
+            writeToSegments(ByteBuffer.wrap(b, off, len));
+        } else {
+            buffer.put(b, off, len);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the segment files.
+     */
+    public void flush() throws IOException {
+        if (buffer.position() > 0) {
+            buffer.flip();
+            writeToSegments(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Flushes and closes the current segment. The spool can still be read after it is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files.
+     */
+    public void delete() throws IOException {
+        close();
+        for (File segment : segments) {
+            Files.deleteIfExists(segment.toPath());
+        }
+        segments.clear();
+    }
+
+    /**
+     * Opens a reader over the retained output, oldest segment first. The segments are opened as the reader gets to
+     * them. If the spool rotated, the first line may be partial.
+     */
+    public BufferedReader openReader() throws IOException {
+        if (!closed) {
+            flush();
+        }
+        List<InputStream> streams = new ArrayList<>();
+        try {
+            for (File segment : segments) {
+                streams.add(Files.newInputStream(segment.toPath()));
+            }
+        } catch (IOException ioe) {
+            for (InputStream stream : streams) {
+                stream.close();
+            }
+            throw ioe;
+        }
+        return new BufferedReader(new InputStreamReader(new SequenceInputStream(Collections.enumeration(streams)),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The segment files that are retained, oldest first.
+     */
+    public List<File> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * The number of bytes written to the spool.
+     */
+    public long getTotalBytes() {
+        return totalBytes + buffer.position();
+    }
+
+    /**
+     * The number of bytes that were dropped when old segments were rotated out.
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    // INTERNALS
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Attempted to write on a closed spool");
+        }
+    }
+
+    private void writeToSegments(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if ((channel == null) || (segmentBytes >= maxSegmentBytes)) {
+                rotate();
+            }
+            int chunk = (int) Math.min(bytes.remaining(), maxSegmentBytes - segmentBytes);
+            ByteBuffer slice = bytes.duplicate();
+            slice.limit(slice.position() + chunk);
+            while (slice.hasRemaining()) {
+                channel.write(slice);
+            }
+            bytes.position(bytes.position() + chunk);
+            segmentBytes += chunk;
+            totalBytes += chunk;
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        directory.mkdirs();
+        File segment = File.createTempFile(prefix, ".log", directory);
+        channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segments.addLast(segment);
+        segmentBytes = 0L;
+
+        while (segments.size() > maxSegments) {
+            File oldest = segments.removeFirst();
+            discardedBytes += oldest.length();
+            Files.deleteIfExists(oldest.toPath());
+        }
+    }
+}
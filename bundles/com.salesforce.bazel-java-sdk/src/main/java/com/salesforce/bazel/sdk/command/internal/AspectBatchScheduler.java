@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+/**
+ * Decides how to split a list of labels into the 'bazel build --aspects' invocations that compute the aspect data.
+ * <p>
+ * Each Bazel invocation carries a fixed cost (client/server handshake, option parsing, loading and analysis setup) of a
+ * few seconds, so we want as few invocations as possible. Running the invocations in parallel does not help, because
+ * the Bazel server processes only one command at a time per output base; concurrent commands just block on the server
+ * lock. Bigger batches however mean coarser progress reporting and very long command lines, so the scheduler picks the
+ * smallest number of batches that:
+ * <ul>
+ * <li>keeps each command line under the maximum argument length</li>
+ * <li>keeps the estimated invocation overhead below a fraction of the estimated total time, which gives more
+ * intermediate progress updates for large imports without making them noticeably slower</li>
+ * </ul>
+ * The overhead and per label cost estimates start with conservative defaults, and are refined from the measured
+ * duration of each invocation via {@link #recordInvocation(int, long)}.
+ */
+public class AspectBatchScheduler {
+
+    /**
+     * Initial estimate of the fixed cost of a Bazel invocation, before any invocation has been measured.
+     */
+    static final long DEFAULT_INVOCATION_OVERHEAD_MS = 3000;
+
+    /**
+     * Initial estimate of the cost of running the aspect for a single label, before any invocation has been measured.
+     */
+    static final long DEFAULT_PER_LABEL_MS = 100;
+
+    /**
+     * Maximum length of the labels in a single command. Windows limits a command line to 32k characters, this leaves
+     * room for the executable and the aspect options.
+     */
+    static final int DEFAULT_MAX_LABELS_LENGTH = 24000;
+
+    /**
+     * The fraction of the total estimated time we are willing to spend on invocation overhead.
+     */
+    static final double DEFAULT_MAX_OVERHEAD_RATIO = 0.05;
+
+    /**
+     * Number of measured invocations that are used to compute the estimates.
+     */
+    private static final int MAX_SAMPLES = 20;
+
+    private final int maxLabelsLength;
+    private final double maxOverheadRatio;
+
+    private long invocationOverheadMS = DEFAULT_INVOCATION_OVERHEAD_MS;
+    private double perLabelMS = DEFAULT_PER_LABEL_MS;
+
+    // measured invocations, as [label count, elapsed millis] pairs
+    private final List<long[]> samples = new ArrayList<>();
+
+    // CTORS
+
+    public AspectBatchScheduler() {
+        this(DEFAULT_MAX_LABELS_LENGTH, DEFAULT_MAX_OVERHEAD_RATIO);
+    }
+
+    public AspectBatchScheduler(int maxLabelsLength, double maxOverheadRatio) {
+        if (maxLabelsLength <= 0) {
+            throw new IllegalArgumentException("Parameter [maxLabelsLength] must be positive.");
+        }
+        if ((maxOverheadRatio <= 0.0) || (maxOverheadRatio > 1.0)) {
+            throw new IllegalArgumentException("Parameter [maxOverheadRatio] must be in (0, 1].");
+        }
+        this.maxLabelsLength = maxLabelsLength;
+        this.maxOverheadRatio = maxOverheadRatio;
+    }
+
+    // PLANNING
+
+    /**
+     * Splits the passed labels into batches, each batch is run as a single Bazel invocation. The order of the labels is
+     * preserved.
+     */
+    public synchronized List<List<BazelLabel>> planBatches(Collection<BazelLabel> labels) {
+        int labelCount = labels.size();
+        if (labelCount == 0) {
+            return new ArrayList<>();
+        }
+
+        // the number of invocations we can afford based on the overhead
+        double estimatedWorkMS = labelCount * perLabelMS;
+        int affordableBatches = (int) ((maxOverheadRatio * estimatedWorkMS) / Math.max(1, invocationOverheadMS));
+        int batchCount = Math.max(1, Math.min(affordableBatches, labelCount));
+        int targetBatchSize = (labelCount + batchCount - 1) / batchCount;
+
+        // the command line length may force more batches than the overhead budget allows, in that case fill each
+        // command line completely
+        List<List<BazelLabel>> lengthLimitedBatches = packBatches(labels, labelCount);
+        if (lengthLimitedBatches.size() >= batchCount) {
+            return lengthLimitedBatches;
+        }
+        List<List<BazelLabel>> batches = packBatches(labels, targetBatchSize);
+        if (batches.size() > batchCount) {
+            // some of the batches were cut short by the command line length
+            return lengthLimitedBatches;
+        }
+        return batches;
+    }
+
+    // MEASUREMENT
+
+    /**
+     * Records the measured duration of a Bazel invocation that ran the aspect for the passed number of labels. The
+     * estimates are recomputed from the recent measurements.
+     */
+    public synchronized void recordInvocation(int labelCount, long elapsedMS) {
+        if ((labelCount <= 0) || (elapsedMS < 0)) {
+            return;
+        }
+        samples.add(new long[] { labelCount, elapsedMS });
+        if (samples.size() > MAX_SAMPLES) {
+            samples.remove(0);
+        }
+        updateEstimates();
+    }
+
+    public synchronized long getInvocationOverheadMS() {
+        return invocationOverheadMS;
+    }
+
+    public synchronized double getPerLabelMS() {
+        return perLabelMS;
+    }
+
+    // INTERNALS
+
+    /**
+     * Packs the labels in order, starting a new batch when the batch size or the command line length is reached.
+     */
+    private List<List<BazelLabel>> packBatches(Collection<BazelLabel> labels, int maxBatchSize) {
+        List<List<BazelLabel>> batches = new ArrayList<>();
+        List<BazelLabel> currentBatch = new ArrayList<>();
+        int currentLength = 0;
+        for (BazelLabel label : labels) {
+            int labelLength = label.getLabel().length() + 1;
+            if (!currentBatch.isEmpty()
+                    && ((currentBatch.size() >= maxBatchSize) || ((currentLength + labelLength) > maxLabelsLength))) {
+                batches.add(currentBatch);
+                currentBatch = new ArrayList<>();
+                currentLength = 0;
+            }
+            currentBatch.add(label);
+            currentLength += labelLength;
+        }
+        batches.add(currentBatch);
+        return batches;
+    }
+
+    /**
+     * The duration of an invocation is modeled as overhead + (labels * perLabel). With measurements of at least two
+     * different batch sizes we can fit both values (least squares). Otherwise we keep the overhead estimate and
+     * attribute the remainder of the duration to the labels.
+     */
+    private void updateEstimates() {
+        int n = samples.size();
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (long[] sample : samples) {
+            sumX += sample[0];
+            sumY += sample[1];
+            sumXX += (double) sample[0] * sample[0];
+            sumXY += (double) sample[0] * sample[1];
+        }
+        double denominator = (n * sumXX) - (sumX * sumX);
+        if ((n >= 2) && (denominator > 0.0)) {
+            double slope = ((n * sumXY) - (sumX * sumY)) / denominator;
+            double intercept = (sumY - (slope * sumX)) / n;
+            if ((slope > 0.0) && (intercept >= 0.0)) {
+                perLabelMS = slope;
+                invocationOverheadMS = (long) intercept;
+                return;
+            }
+        }
+        double remainingMS = Math.max(0.0, sumY - (n * (double) invocationOverheadMS));
+        perLabelMS = Math.max(1.0, remainingMS / sumX);
+    }
+}
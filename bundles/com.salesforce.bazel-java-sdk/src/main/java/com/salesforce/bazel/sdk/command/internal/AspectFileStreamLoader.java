@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfoFactory;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+/**
+ * Parses the aspect json files while the output of the aspect command is still being read.
+ * <p>
+ * Bazel lists the paths of the aspect json files on stderr (the '>>>' lines) in the summary it prints at the end of the
+ * build, not as each file is written, so the parsing does not overlap with the build itself. It overlaps with the
+ * reading of the rest of that list, which has a line per output file and can be long, and with the exit of the
+ * command. The selector returned by {@link #createSelector()} is installed on the stderr stream of the 'bazel build'
+ * command; each discovered path is handed to a worker pool that parses the file with AspectTargetInfoFactory, and
+ * {@link #awaitResults(List)} waits for the files that are not parsed yet when the command exits.
+ * <p>
+ * The worker pool is bounded. If the workers fall behind, the stream pump thread parses the file itself, which slows
+ * down the reading of stderr instead of queueing an unbounded amount of work.
+ * <p>
+ * A new loader is used for each aspect invocation, but they all share the same worker pool.
+ */
+public class AspectFileStreamLoader {
+    private static final LogHelper LOG = LogHelper.log(AspectFileStreamLoader.class);
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static ExecutorService sharedExecutor;
+
+    private final ExecutorService executor;
+
+    /**
+     * Pending and completed parses. key=aspect file path
+     */
+    private final Map<String, Future<AspectTargetInfo>> parses = new ConcurrentHashMap<>();
+
+    // CTORS
+
+    public AspectFileStreamLoader() {
+        this(getSharedExecutor());
+    }
+
+    /**
+     * Uses the passed executor to parse the files. If null, the files are parsed on the thread that discovers them.
+     */
+    public AspectFileStreamLoader(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // PUBLIC API
+
+    /**
+     * Creates the selector to use on the stderr stream of the aspect command. Like the non streaming selector, it
+     * returns the path for aspect file lines, "" for other artifact lines, and null for all other lines. In addition,
+     * each aspect file path is submitted for parsing.
+     */
+    public Function<String, String> createSelector() {
+        return t -> {
+            if (!t.startsWith(">>>")) {
+                return null;
+            }
+            if (!t.endsWith(AspectTargetInfoFactory.ASPECT_FILENAME_SUFFIX)) {
+                return "";
+            }
+            String path = t.substring(3);
+            submit(path);
+            return path;
+        };
+    }
+
+    /**
+     * Submits the aspect file for parsing. Each path is parsed only once, subsequent submissions are ignored.
+     */
+    public void submit(String aspectFilePath) {
+        if (aspectFilePath.isEmpty() || parses.containsKey(aspectFilePath)) {
+            return;
+        }
+        FutureTask<AspectTargetInfo> task =
+                new FutureTask<>(() -> AspectTargetInfoFactory.loadAspectFile(new File(aspectFilePath)));
+        if (parses.putIfAbsent(aspectFilePath, task) != null) {
+            return;
+        }
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Waits for all the passed aspect files to be parsed, and returns the AspectTargetInfo objects keyed by label. Paths
+     * that were not seen by the selector (e.g. when the command output was not streamed) are parsed now.
+     */
+    public Map<BazelLabel, AspectTargetInfo> awaitResults(List<String> aspectFilePaths) throws InterruptedException {
+        for (String aspectFilePath : aspectFilePaths) {
+            submit(aspectFilePath);
+        }
+        Map<BazelLabel, AspectTargetInfo> results = new HashMap<>();
+        for (String aspectFilePath : aspectFilePaths) {
+            Future<AspectTargetInfo> parse = parses.get(aspectFilePath);
+            if (parse == null) {
+                continue;
+            }
+            AspectTargetInfo info;
+            try {
+                info = parse.get();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalArgumentException(cause);
+            }
+            if (info == null) {
+                LOG.warn("Aspect file [{}] could not be loaded.", aspectFilePath);
+                continue;
+            }
+            results.put(BazelLabel.intern(info.getLabel()), info);
+        }
+        return results;
+    }
+
+    // INTERNALS
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            int poolSize = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 30L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                        Thread thread = new Thread(r, "bzl-aspect-loader-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            sharedExecutor = executor;
+        }
+        return sharedExecutor;
+    }
+}
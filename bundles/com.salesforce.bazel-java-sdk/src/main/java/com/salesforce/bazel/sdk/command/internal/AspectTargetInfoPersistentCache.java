@@ -0,0 +1,535 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfoFactory;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+/**
+ * On disk store of the AspectTargetInfo sets computed by the BazelWorkspaceAspectProcessor. This allows the IDE to warm
+ * start after a restart, without running the aspect again for every package in the workspace.
+ * <p>
+ * The store does not serialize the AspectTargetInfo objects; those are already on disk as the json files written by
+ * the aspect into bazel-out. Instead, for each concrete target it records the paths of the json files of the target's
+ * transitive closure, plus a digest of the BUILD file of the target's package and of the packages of its transitive
+ * dependencies. An entry is only returned if all of those BUILD files are unchanged and all the json files still exist,
+ * so a change to a BUILD file invalidates just the entries that depend on that package.
+ * <p>
+ * A wildcard label (//a/b/c:*) is stored as the list of concrete targets of its package, plus the json files of the set
+ * that are not in the sets of those targets (typically the json files of the targets themselves) and the digest of the
+ * BUILD file of the package. Its set is the union of those json files and the sets of the targets, which is the same
+ * set that the BazelWorkspaceAspectProcessor holds in memory for the wildcard; it is only returned if all the targets
+ * are still valid. This keeps the size of an entry proportional to the target's closure, not to the aspect run.
+ * <p>
+ * The whole store is discarded if the store format version or the aspect version (a digest of the aspect files) does
+ * not match, because the json files would not be compatible.
+ * <p>
+ * This class is not thread safe, the BazelWorkspaceAspectProcessor serializes access to it.
+ */
+public class AspectTargetInfoPersistentCache {
+    private static final LogHelper LOG = LogHelper.log(AspectTargetInfoPersistentCache.class);
+
+    /**
+     * Version of the on disk format. Increment this when the format of the cache file changes.
+     */
+    static final String CACHE_FORMAT_VERSION = "3";
+
+    static final String HEADER_VERSION = "version=";
+    static final String HEADER_ASPECT = "aspect=";
+    static final String NO_BUILD_FILE_DIGEST = "none";
+
+    private static final String FIELD_DELIM = "\t";
+    private static final String LIST_DELIM = "|";
+    private static final String PAIR_DELIM = "=";
+
+    private final File cacheFile;
+    private final File bazelWorkspaceRootDirectory;
+    private final String aspectVersion;
+
+    /**
+     * Persisted entries. key=requested label, value=the json files and package digests, or for a wildcard label the
+     * package digest and the concrete targets of the package
+     */
+    private final Map<BazelLabel, CacheEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * Digest of the BUILD file for a package, memoized for the duration of a single lookup or store operation.
+     */
+    private final Map<String, String> packageDigests = new HashMap<>();
+
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    /**
+     * @param cacheDirectory
+     *            the directory in which to write the cache file; the file is named after the workspace so that
+     *            multiple workspaces can share a directory
+     * @param bazelWorkspaceRootDirectory
+     *            the workspace root, used to locate BUILD files of packages
+     * @param aspectVersion
+     *            opaque identifier of the aspect implementation, see {@link #computeAspectVersion(File, String)}
+     */
+    public AspectTargetInfoPersistentCache(File cacheDirectory, File bazelWorkspaceRootDirectory,
+            String aspectVersion) {
+        this.bazelWorkspaceRootDirectory = bazelWorkspaceRootDirectory;
+        this.aspectVersion = aspectVersion;
+        String workspaceId =
+                digest(bazelWorkspaceRootDirectory.getAbsolutePath().getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        cacheFile = new File(cacheDirectory, "aspectcache-" + workspaceId + ".txt");
+    }
+
+    // LOOKUPS
+
+    /**
+     * Loads the AspectTargetInfo sets for the passed labels from the store. Labels that are not in the store, or whose
+     * entry is stale, are not added to the returned map.
+     */
+    public Map<BazelLabel, Set<AspectTargetInfo>> get(Collection<BazelLabel> labels) {
+        load();
+        packageDigests.clear();
+
+        Map<BazelLabel, Set<String>> validEntries = new LinkedHashMap<>();
+        Set<String> allPaths = new HashSet<>();
+        for (BazelLabel label : labels) {
+            CacheEntry entry = entries.get(label);
+            if (entry == null) {
+                continue;
+            }
+            Set<String> paths = getValidAspectFilePaths(entry);
+            if (paths == null) {
+                LOG.info("Persisted aspect data is stale for: " + label);
+                entries.remove(label);
+                dirty = true;
+                continue;
+            }
+            validEntries.put(label, paths);
+            allPaths.addAll(paths);
+        }
+
+        Map<BazelLabel, Set<AspectTargetInfo>> results = new LinkedHashMap<>();
+        if (validEntries.isEmpty()) {
+            return results;
+        }
+
+        // each json file is parsed once, even if it is referenced by many entries
+        Map<String, AspectTargetInfo> pathToInfo = new HashMap<>();
+        for (String path : allPaths) {
+            try {
+                AspectTargetInfo info = AspectTargetInfoFactory.loadAspectFile(new File(path));
+                if (info != null) {
+                    pathToInfo.put(path, info);
+                }
+            } catch (Exception anyE) {
+                LOG.error("Could not load persisted aspect file [{}]", anyE, path);
+            }
+        }
+        for (Map.Entry<BazelLabel, Set<String>> validEntry : validEntries.entrySet()) {
+            Set<AspectTargetInfo> infos = new HashSet<>();
+            boolean complete = true;
+            for (String path : validEntry.getValue()) {
+                AspectTargetInfo info = pathToInfo.get(path);
+                if (info == null) {
+                    complete = false;
+                    break;
+                }
+                infos.add(info);
+            }
+            if (complete) {
+                results.put(validEntry.getKey(), infos);
+            } else {
+                entries.remove(validEntry.getKey());
+                dirty = true;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Number of entries in the store.
+     */
+    public int size() {
+        load();
+        return entries.size();
+    }
+
+    // MUTATIONS
+
+    /**
+     * Records the AspectTargetInfo set (the transitive closure) for a concrete target. Call {@link #save()} to write
+     * the changes to disk.
+     */
+    public void put(BazelLabel label, Set<AspectTargetInfo> infos) {
+        if (!label.isConcrete()) {
+            throw new IllegalArgumentException("Use putPackage() to record the wildcard label " + label);
+        }
+        load();
+        CacheEntry entry = new CacheEntry();
+        for (AspectTargetInfo info : infos) {
+            File aspectDataFile = info.getAspectDataFile();
+            if (aspectDataFile == null) {
+                // we can only persist infos that came from a json file
+                return;
+            }
+            entry.aspectFilePaths.add(aspectDataFile.getAbsolutePath());
+            addPackageDigest(entry, info.getLabel());
+        }
+        addPackageDigest(entry, label.getLabel());
+        entries.put(label, entry);
+        dirty = true;
+    }
+
+    /**
+     * Records the AspectTargetInfo set of a wildcard label as the list of concrete targets of its package, each of
+     * which must have been recorded with {@link #put(BazelLabel, Set)}, plus the infos of the set that are not in the
+     * sets of those targets. Call {@link #save()} to write the changes to disk.
+     */
+    public void putPackage(BazelLabel wildcardLabel, Collection<BazelLabel> targets, Set<AspectTargetInfo> infos) {
+        load();
+        CacheEntry entry = new CacheEntry();
+        Set<String> targetPaths = new HashSet<>();
+        for (BazelLabel target : targets) {
+            CacheEntry targetEntry = entries.get(target);
+            if (targetEntry == null) {
+                // a target that could not be persisted, so neither can the package
+                return;
+            }
+            entry.targets.add(target);
+            targetPaths.addAll(targetEntry.aspectFilePaths);
+        }
+        for (AspectTargetInfo info : infos) {
+            File aspectDataFile = info.getAspectDataFile();
+            if (aspectDataFile == null) {
+                return;
+            }
+            if (targetPaths.add(aspectDataFile.getAbsolutePath())) {
+                entry.aspectFilePaths.add(aspectDataFile.getAbsolutePath());
+                addPackageDigest(entry, info.getLabel());
+            }
+        }
+        addPackageDigest(entry, wildcardLabel.getLabel());
+        entries.put(wildcardLabel, entry);
+        dirty = true;
+    }
+
+    /**
+     * Removes the entry for a single label.
+     */
+    public void remove(BazelLabel label) {
+        load();
+        if (entries.remove(label) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes all entries for labels in the same package as the passed label.
+     */
+    public void removePackage(BazelLabel bazelPackage) {
+        load();
+        String packagePath = bazelPackage.getPackagePath();
+        Iterator<BazelLabel> iter = entries.keySet().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().getPackagePath().equals(packagePath)) {
+                iter.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Removes all entries, and deletes the file on disk.
+     */
+    public void clear() {
+        entries.clear();
+        loaded = true;
+        dirty = false;
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            LOG.error("Could not delete the aspect cache file [{}]", cacheFile.getAbsolutePath());
+        }
+    }
+
+    // PERSISTENCE
+
+    /**
+     * Writes the store to disk, if there are unsaved changes. The file is replaced atomically so that a crash while
+     * writing does not corrupt the previous version.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        File parent = cacheFile.getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tempFile = new File(parent, cacheFile.getName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER_VERSION + CACHE_FORMAT_VERSION);
+            writer.newLine();
+            writer.write(HEADER_ASPECT + aspectVersion);
+            writer.newLine();
+            for (Map.Entry<BazelLabel, CacheEntry> entry : entries.entrySet()) {
+                writer.write(entry.getKey().getLabel());
+                writer.write(FIELD_DELIM);
+                writer.write(joinDigests(entry.getValue().packageDigests));
+                writer.write(FIELD_DELIM);
+                writer.write(String.join(LIST_DELIM, entry.getValue().aspectFilePaths));
+                writer.write(FIELD_DELIM);
+                writer.write(joinLabels(entry.getValue().targets));
+                writer.newLine();
+            }
+        } catch (IOException ioe) {
+            LOG.error("Could not write the aspect cache file [{}]", ioe, tempFile.getAbsolutePath());
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException ioe) {
+            LOG.error("Could not write the aspect cache file [{}]", ioe, cacheFile.getAbsolutePath());
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            String versionLine = reader.readLine();
+            String aspectLine = reader.readLine();
+            if (!(HEADER_VERSION + CACHE_FORMAT_VERSION).equals(versionLine)
+                    || !(HEADER_ASPECT + aspectVersion).equals(aspectLine)) {
+                LOG.info("Discarding the aspect cache file [{}] because it was written by a different version.",
+                    cacheFile.getAbsolutePath());
+                dirty = true;
+                return;
+            }
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(FIELD_DELIM, -1);
+                if (fields.length != 4) {
+                    continue;
+                }
+                CacheEntry entry = new CacheEntry();
+                for (String pair : splitList(fields[1])) {
+                    int i = pair.lastIndexOf(PAIR_DELIM);
+                    if (i > 0) {
+                        entry.packageDigests.put(pair.substring(0, i), pair.substring(i + 1));
+                    }
+                }
+                entry.aspectFilePaths.addAll(splitList(fields[2]));
+                for (String target : splitList(fields[3])) {
+                    entry.targets.add(BazelLabel.intern(target));
+                }
+                entries.put(BazelLabel.intern(fields[0]), entry);
+            }
+            LOG.info("Loaded {} entries from the aspect cache file [{}]", entries.size(), cacheFile.getAbsolutePath());
+        } catch (Exception anyE) {
+            LOG.error("Could not read the aspect cache file [{}], it will be rebuilt.", anyE,
+                cacheFile.getAbsolutePath());
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    // VERSIONING
+
+    /**
+     * Computes the version of the aspect, which is a digest of the files in the aspect directory and the aspect label.
+     * If the aspect implementation changes (e.g. after an upgrade) the json files it produces may change, and the
+     * persisted entries must be discarded.
+     */
+    public static String computeAspectVersion(File aspectDirectory, String aspectLabel) {
+        MessageDigest md = newDigest();
+        md.update(String.valueOf(aspectLabel).getBytes(StandardCharsets.UTF_8));
+        if (aspectDirectory != null) {
+            File[] files = aspectDirectory.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    if (file.isFile()) {
+                        md.update(file.getName().getBytes(StandardCharsets.UTF_8));
+                        updateDigest(md, file);
+                    }
+                }
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    // INTERNALS
+
+    /**
+     * Returns the json files of a valid entry, following the targets of a wildcard entry, or null if it is stale.
+     */
+    private Set<String> getValidAspectFilePaths(CacheEntry entry) {
+        if (!isValid(entry)) {
+            return null;
+        }
+        Set<String> paths = new LinkedHashSet<>(entry.aspectFilePaths);
+        for (BazelLabel target : entry.targets) {
+            CacheEntry targetEntry = entries.get(target);
+            if ((targetEntry == null) || !isValid(targetEntry)) {
+                return null;
+            }
+            paths.addAll(targetEntry.aspectFilePaths);
+        }
+        return paths;
+    }
+
+    private boolean isValid(CacheEntry entry) {
+        for (Map.Entry<String, String> packageDigest : entry.packageDigests.entrySet()) {
+            if (!packageDigest.getValue().equals(getPackageDigest(packageDigest.getKey()))) {
+                return false;
+            }
+        }
+        for (String path : entry.aspectFilePaths) {
+            if (!new File(path).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addPackageDigest(CacheEntry entry, String label) {
+        if (label == null || label.startsWith("@")) {
+            // external repositories are not tracked, they change only when the WORKSPACE changes
+            return;
+        }
+        String packagePath = BazelLabel.intern(label).getPackagePath();
+        entry.packageDigests.put(packagePath, getPackageDigest(packagePath));
+    }
+
+    private String getPackageDigest(String packagePath) {
+        String digest = packageDigests.get(packagePath);
+        if (digest == null) {
+            digest = NO_BUILD_FILE_DIGEST;
+            File packageDir = new File(bazelWorkspaceRootDirectory, packagePath);
+            for (String buildFileName : new String[] { "BUILD.bazel", "BUILD" }) {
+                File buildFile = new File(packageDir, buildFileName);
+                if (buildFile.isFile()) {
+                    MessageDigest md = newDigest();
+                    updateDigest(md, buildFile);
+                    digest = toHex(md.digest());
+                    break;
+                }
+            }
+            packageDigests.put(packagePath, digest);
+        }
+        return digest;
+    }
+
+    private static String joinDigests(Map<String, String> digests) {
+        List<String> pairs = new ArrayList<>(digests.size());
+        for (Map.Entry<String, String> digest : digests.entrySet()) {
+            pairs.add(digest.getKey() + PAIR_DELIM + digest.getValue());
+        }
+        return String.join(LIST_DELIM, pairs);
+    }
+
+    private static String joinLabels(List<BazelLabel> labels) {
+        List<String> names = new ArrayList<>(labels.size());
+        for (BazelLabel label : labels) {
+            names.add(label.getLabel());
+        }
+        return String.join(LIST_DELIM, names);
+    }
+
+    private static List<String> splitList(String list) {
+        if (list.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return Arrays.asList(list.split("\\" + LIST_DELIM));
+    }
+
+    private static String digest(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static void updateDigest(MessageDigest md, File file) {
+        byte[] buffer = new byte[8192];
+        try (InputStream is = new FileInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                md.update(buffer, 0, read);
+            }
+        } catch (IOException ioe) {
+            LOG.error("Could not compute the digest of file [{}]", ioe, file.getAbsolutePath());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // SHA-256 is required to be supported by every JVM
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static class CacheEntry {
+        final Map<String, String> packageDigests = new LinkedHashMap<>();
+        final List<String> aspectFilePaths = new ArrayList<>();
+        // only for wildcard labels, the concrete targets of the package
+        final List<BazelLabel> targets = new ArrayList<>();
+    }
+}
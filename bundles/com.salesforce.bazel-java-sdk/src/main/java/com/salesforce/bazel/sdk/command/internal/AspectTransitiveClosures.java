@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+/**
+ * Computes the transitive closures of the targets of an aspect build, for all requested targets in a single pass.
+ * <p>
+ * The dependency labels are resolved once, into an index per target. The targets are numbered in post order (a target
+ * gets a higher number than all of its dependencies), and the closure of a target is a bitset over those numbers that
+ * is computed from the closures of its direct dependencies. Each closure is computed once, and shared by all the
+ * targets that depend on it. Targets with identical closures share the same immutable result set.
+ * <p>
+ * Dependencies that have no AspectTargetInfo (because they are not something we work with) are excluded, along with
+ * their descendants, like before. Bazel does not allow dependency cycles; if the aspect data contains one anyway, the
+ * target that closes the cycle is included but the closure is not followed around the cycle again.
+ * <p>
+ * This class is not thread safe.
+ */
+public class AspectTransitiveClosures {
+    private static final LogHelper LOG = LogHelper.log(AspectTransitiveClosures.class);
+
+    private static final int[] NO_DEPS = new int[0];
+
+    // the targets, by post order number
+    private final AspectTargetInfo[] infos;
+    private final Map<AspectTargetInfo, Integer> indexOfInfo;
+    // the numbers of the direct dependencies of each target
+    private final int[][] deps;
+    // memoized closures, null until computed
+    private final BitSet[] closures;
+    private final Map<BitSet, Set<AspectTargetInfo>> internedSets = new HashMap<>();
+
+    // CTORS
+
+    public AspectTransitiveClosures(Map<BazelLabel, AspectTargetInfo> depNameToTargetInfo) {
+        int count = depNameToTargetInfo.size();
+        AspectTargetInfo[] unordered = depNameToTargetInfo.values().toArray(new AspectTargetInfo[count]);
+        Map<AspectTargetInfo, Integer> unorderedIndex = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            unorderedIndex.put(unordered[i], i);
+        }
+
+        // resolve each distinct dependency label once
+        Map<String, Integer> resolvedLabels = new HashMap<>();
+        int[][] unorderedDeps = new int[count][];
+        for (int i = 0; i < count; i++) {
+            unorderedDeps[i] = resolveDeps(unordered[i], depNameToTargetInfo, unorderedIndex, resolvedLabels);
+        }
+
+        // renumber in post order, so that the closure bitset of a target is no longer than its own number
+        int[] order = postOrder(unorderedDeps);
+        int[] newIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            newIndex[order[i]] = i;
+        }
+        infos = new AspectTargetInfo[count];
+        deps = new int[count][];
+        indexOfInfo = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int oldIndex = order[i];
+            infos[i] = unordered[oldIndex];
+            indexOfInfo.put(infos[i], i);
+            int[] targetDeps = unorderedDeps[oldIndex];
+            for (int d = 0; d < targetDeps.length; d++) {
+                targetDeps[d] = newIndex[targetDeps[d]];
+            }
+            deps[i] = targetDeps;
+        }
+        closures = new BitSet[count];
+    }
+
+    // PUBLIC API
+
+    /**
+     * Returns the targets that the passed target depends on, directly or transitively. The target itself is not
+     * included. The returned set is immutable.
+     */
+    public Set<AspectTargetInfo> getTransitiveClosure(AspectTargetInfo aspectTargetInfo) {
+        Integer index = indexOfInfo.get(aspectTargetInfo);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown target " + aspectTargetInfo.getLabel());
+        }
+        BitSet closure = computeClosure(index);
+        return internedSets.computeIfAbsent(closure, c -> new ClosureSet(infos, indexOfInfo, c));
+    }
+
+    // INTERNALS
+
+    private static int[] resolveDeps(AspectTargetInfo info, Map<BazelLabel, AspectTargetInfo> depNameToTargetInfo,
+            Map<AspectTargetInfo, Integer> unorderedIndex, Map<String, Integer> resolvedLabels) {
+        if (info.getDeps().isEmpty()) {
+            return NO_DEPS;
+        }
+        int[] resolved = new int[info.getDeps().size()];
+        int count = 0;
+        for (String label : info.getDeps()) {
+            Integer depIndex = resolvedLabels.get(label);
+            if (depIndex == null) {
+                AspectTargetInfo dep = depNameToTargetInfo.get(BazelLabel.intern(label));
+                if (dep == null) {
+                    LOG.info("No AspectTargetInfo exists for " + label
+                            + "; it and its descendents are excluded from analysis.");
+                    depIndex = -1;
+                } else {
+                    depIndex = unorderedIndex.get(dep);
+                }
+                resolvedLabels.put(label, depIndex);
+            }
+            if (depIndex >= 0) {
+                resolved[count++] = depIndex;
+            }
+        }
+        return count == resolved.length ? resolved : Arrays.copyOf(resolved, count);
+    }
+
+    /**
+     * Returns the targets in depth first post order: each target comes after all the targets it depends on.
+     */
+    private static int[] postOrder(int[][] deps) {
+        int count = deps.length;
+        int[] order = new int[count];
+        int ordered = 0;
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        int[] nextDep = new int[count];
+        for (int root = 0; root < count; root++) {
+            if (visited[root]) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = root;
+            visited[root] = true;
+            while (top >= 0) {
+                int node = stack[top];
+                if (nextDep[node] < deps[node].length) {
+                    int dep = deps[node][nextDep[node]++];
+                    if (!visited[dep]) {
+                        visited[dep] = true;
+                        stack[++top] = dep;
+                    }
+                } else {
+                    order[ordered++] = node;
+                    top--;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Computes the closure of the target, and of all the targets it depends on that were not computed yet. Because
+     * the targets are numbered in post order, the dependencies of a target are always computed first when iterating
+     * by number, so there is no need for recursion.
+     */
+    private BitSet computeClosure(int target) {
+        if (closures[target] != null) {
+            return closures[target];
+        }
+        // all targets the closure depends on have a lower number, compute the missing ones bottom up
+        BitSet needed = new BitSet(target + 1);
+        needed.set(target);
+        for (int i = target; i >= 0; i = needed.previousSetBit(i - 1)) {
+            for (int dep : deps[i]) {
+                if ((closures[dep] == null) && (dep < i)) {
+                    needed.set(dep);
+                }
+            }
+        }
+        for (int i = needed.nextSetBit(0); i >= 0; i = needed.nextSetBit(i + 1)) {
+            BitSet closure = new BitSet();
+            for (int dep : deps[i]) {
+                closure.set(dep);
+                if ((dep < i) && (closures[dep] != null)) {
+                    closure.or(closures[dep]);
+                }
+            }
+            closures[i] = closure;
+        }
+        return closures[target];
+    }
+
+    /**
+     * Immutable set view of a closure bitset.
+     */
+    private static class ClosureSet extends AbstractSet<AspectTargetInfo> {
+        private final AspectTargetInfo[] infos;
+        private final Map<AspectTargetInfo, Integer> indexOfInfo;
+        private final BitSet members;
+        private final int size;
+
+        ClosureSet(AspectTargetInfo[] infos, Map<AspectTargetInfo, Integer> indexOfInfo, BitSet members) {
+            this.infos = infos;
+            this.indexOfInfo = indexOfInfo;
+            this.members = members;
+            this.size = members.cardinality();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer index = indexOfInfo.get(o);
+            return (index != null) && members.get(index);
+        }
+
+        @Override
+        public Iterator<AspectTargetInfo> iterator() {
+            return new Iterator<AspectTargetInfo>() {
+                private int next = members.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public AspectTargetInfo next() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    AspectTargetInfo info = infos[next];
+                    next = members.nextSetBit(next + 1);
+                    return info;
+                }
+            };
+        }
+    }
+}
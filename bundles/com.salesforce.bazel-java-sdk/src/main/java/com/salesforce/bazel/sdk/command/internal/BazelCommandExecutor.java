@@ -45,74 +45,132 @@ import java.util.function.Function;
 import com.salesforce.bazel.sdk.command.BazelCommandLineToolConfigurationException;
 import com.salesforce.bazel.sdk.command.Command;
 import com.salesforce.bazel.sdk.command.CommandBuilder;
+import com.salesforce.bazel.sdk.command.CommandOutputSpool;
+import com.salesforce.bazel.sdk.logging.LogHelper;
 import com.salesforce.bazel.sdk.util.WorkProgressMonitor;
 
 /**
  * Utility class that understands how to run Command objects and collect output from them.
+ * <p>
+ * Commands are built one at a time (the CommandBuilder is shared), but run concurrently as allowed by the
+ * BazelCommandScheduler, so that a quick info or query command does not wait behind a long build.
+ * <p>
+ * The timeout passed to the run methods is capped by the timeout of the command class (see
+ * BazelCommandScheduler.setTimeout()). A command is canceled if its progress monitor is canceled.
  */
 public class BazelCommandExecutor {
+    private static final LogHelper LOG = LogHelper.log(BazelCommandExecutor.class);
+
     private final File bazelExecutable;
     private final CommandBuilder commandBuilder;
+    private final BazelCommandScheduler scheduler;
+    // the raw output of background commands (builds, tests) is spooled to this directory, if set
+    private File spoolDirectory;
+    private long spoolMaxBytes;
+    // the spooled output of the last background command that failed, kept so its full log can be inspected
+    private final List<CommandOutputSpool> failedCommandSpools = new ArrayList<>();
+    // no timeout, other than the timeout of the command class
     public static final long TIMEOUT_INFINITE = 0L;
 
     public BazelCommandExecutor(File bazelExecutable, CommandBuilder commandBuilder) {
+        this(bazelExecutable, commandBuilder, new BazelCommandScheduler());
+    }
+
+    public BazelCommandExecutor(File bazelExecutable, CommandBuilder commandBuilder, BazelCommandScheduler scheduler) {
         this.bazelExecutable = bazelExecutable;
         this.commandBuilder = commandBuilder;
+        this.scheduler = scheduler;
+    }
+
+    public BazelCommandScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Spools the raw output of background commands (builds, tests, aspect builds) to rotating files in the directory,
+     * keeping about the last maxBytes of each stream. The console output of these commands can be hundreds of MB. The
+     * spools of a successful command are deleted when it ends; those of the last failed command are kept (and logged)
+     * until the next background command fails. Pass a null directory to stop spooling.
+     */
+    public synchronized void setOutputSpool(File directory, long maxBytes) {
+        spoolDirectory = directory;
+        spoolMaxBytes = maxBytes;
     }
 
     // WHEN INTERESTING OUTPUT IS ON STDOUT...
 
-    public synchronized List<String> runBazelAndGetOutputLines(File workingDirectory,
-            WorkProgressMonitor progressMonitor, List<String> args, Function<String, String> selector, long timeoutMS)
+    public List<String> runBazelAndGetOutputLines(File workingDirectory, WorkProgressMonitor progressMonitor,
+            List<String> args, Function<String, String> selector, long timeoutMS)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        CommandBuilder builder =
-                getConfiguredCommandBuilder(ConsoleType.WORKSPACE, workingDirectory, progressMonitor, args, timeoutMS);
-        Command command = builder.setStdoutLineSelector(selector).build();
-        command.run();
+        Command command = buildCommand(ConsoleType.WORKSPACE, workingDirectory, progressMonitor, args, timeoutMS,
+            selector, null);
+        return scheduler.run(BazelCommandScheduler.classify(args), progressMonitor, () -> {
+            runCommand(command);
+            return command.getSelectedOutputLines();
+        });
+    }
+
+    /**
+     * Like {@link #runBazelAndGetOutputLines(File, WorkProgressMonitor, List, Function, long)}, but throws an
+     * IOException if the command fails, instead of returning the output it wrote before it failed.
+     */
+    public List<String> runBazelAndGetCheckedOutputLines(File workingDirectory, WorkProgressMonitor progressMonitor,
+            List<String> args, Function<String, String> selector, long timeoutMS)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        return command.getSelectedOutputLines();
+        Command command = buildCommand(ConsoleType.WORKSPACE, workingDirectory, progressMonitor, args, timeoutMS,
+            selector, null);
+        return scheduler.run(BazelCommandScheduler.classify(args), progressMonitor, () -> {
+            int exitCode = runCommand(command);
+            if (exitCode != 0) {
+                throw new IOException("bazel " + String.join(" ", args) + " failed with exit code " + exitCode
+                        + (command.getSelectedErrorLines().isEmpty() ? ""
+                                : ": " + String.join("\n", command.getSelectedErrorLines())));
+            }
+            return command.getSelectedOutputLines();
+        });
     }
 
-    public synchronized List<String> runBazelAndGetOuputLines(ConsoleType consoleType, File workingDirectory,
+    public List<String> runBazelAndGetOuputLines(ConsoleType consoleType, File workingDirectory,
             WorkProgressMonitor progressMonitor, List<String> args, Function<String, String> selector, long timeoutMS)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        CommandBuilder builder =
-                getConfiguredCommandBuilder(consoleType, workingDirectory, progressMonitor, args, timeoutMS);
-        Command command = builder.setStdoutLineSelector(selector).build();
-
-        if (command.run() == 0) {
-            return command.getSelectedOutputLines();
-        }
-        return new ArrayList<>();
+        Command command =
+                buildCommand(consoleType, workingDirectory, progressMonitor, args, timeoutMS, selector, null);
+        return scheduler.run(BazelCommandScheduler.classify(args), progressMonitor, () -> {
+            if (runCommand(command) == 0) {
+                return command.getSelectedOutputLines();
+            }
+            return new ArrayList<>();
+        });
     }
 
     // WHEN INTERESTING OUTPUT IS ON STDERR...
 
-    public synchronized List<String> runBazelAndGetErrorLines(File directory, WorkProgressMonitor progressMonitor,
+    public List<String> runBazelAndGetErrorLines(File directory, WorkProgressMonitor progressMonitor,
             List<String> args, Function<String, String> selector, long timeoutMS)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        CommandBuilder builder =
-                getConfiguredCommandBuilder(ConsoleType.WORKSPACE, directory, progressMonitor, args, timeoutMS);
-        Command command = builder.setStderrLineSelector(selector).build();
-        command.run();
-
-        return command.getSelectedErrorLines();
+        Command command =
+                buildCommand(ConsoleType.WORKSPACE, directory, progressMonitor, args, timeoutMS, null, selector);
+        return scheduler.run(BazelCommandScheduler.classify(args), progressMonitor, () -> {
+            runCommand(command);
+            return command.getSelectedErrorLines();
+        });
     }
 
-    public synchronized List<String> runBazelAndGetErrorLines(ConsoleType consoleType, File directory,
+    public List<String> runBazelAndGetErrorLines(ConsoleType consoleType, File directory,
             WorkProgressMonitor progressMonitor, List<String> args, Function<String, String> selector, long timeoutMS)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
-        CommandBuilder builder = getConfiguredCommandBuilder(consoleType, directory, progressMonitor, args, timeoutMS);
-        Command command = builder.setStderrLineSelector(selector).build();
-        if (command.run() == 0) {
-            return command.getSelectedErrorLines();
-        }
-
-        return new ArrayList<>();
+        Command command = buildCommand(consoleType, directory, progressMonitor, args, timeoutMS, null, selector);
+        return scheduler.run(BazelCommandScheduler.classify(args), progressMonitor, () -> {
+            if (runCommand(command) == 0) {
+                return command.getSelectedErrorLines();
+            }
+            return new ArrayList<>();
+        });
     }
 
     // HELPERS
@@ -133,14 +191,76 @@ public class BazelCommandExecutor {
 
     // INTERNAL
 
-    private CommandBuilder getConfiguredCommandBuilder(ConsoleType type, File directory,
-            WorkProgressMonitor progressMonitor, List<String> args, long timeoutMS)
-            throws BazelCommandLineToolConfigurationException {
+    private int runCommand(Command command) throws IOException, InterruptedException {
+        boolean success = false;
+        try {
+            int exitCode = command.run();
+            success = exitCode == 0;
+            return exitCode;
+        } finally {
+            releaseSpools(command, success);
+        }
+    }
+
+    private synchronized void releaseSpools(Command command, boolean success) {
+        List<CommandOutputSpool> spools = new ArrayList<>();
+        for (CommandOutputSpool spool : new CommandOutputSpool[] { command.getOutputSpool(),
+                command.getErrorSpool() }) {
+            if (spool != null) {
+                spools.add(spool);
+            }
+        }
+        if (spools.isEmpty()) {
+            return;
+        }
+        if (success) {
+            deleteSpools(spools);
+            return;
+        }
+        deleteSpools(failedCommandSpools);
+        failedCommandSpools.addAll(spools);
+        for (CommandOutputSpool spool : spools) {
+            LOG.info("The output of the failed command is kept in {}", spool.getSegments());
+        }
+    }
+
+    private static void deleteSpools(List<CommandOutputSpool> spools) {
+        for (CommandOutputSpool spool : spools) {
+            try {
+                spool.delete();
+            } catch (IOException ioe) {
+                LOG.error("Could not delete the command output in {}", ioe, spool.getSegments());
+            }
+        }
+        spools.clear();
+    }
+
+    private Command buildCommand(ConsoleType type, File directory, WorkProgressMonitor progressMonitor,
+            List<String> args, long timeoutMS, Function<String, String> stdoutSelector,
+            Function<String, String> stderrSelector) throws IOException, BazelCommandLineToolConfigurationException {
 
         String consoleName = type.getConsoleName(directory);
+        long effectiveTimeoutMS = scheduler.getEffectiveTimeout(BazelCommandScheduler.classify(args), timeoutMS);
 
-        return commandBuilder.setConsoleName(consoleName).setDirectory(directory).setTimeout(timeoutMS)
-                .addArguments(bazelExecutable.getAbsolutePath()).addArguments(args).setProgressMonitor(progressMonitor);
+        // the builder holds the state of the command being built, so only one command can be built at a time
+        synchronized (commandBuilder) {
+            CommandBuilder builder = commandBuilder.setConsoleName(consoleName).setDirectory(directory)
+                    .setTimeout(effectiveTimeoutMS).addArguments(bazelExecutable.getAbsolutePath()).addArguments(args)
+                    .setProgressMonitor(progressMonitor);
+            if (stdoutSelector != null) {
+                builder.setStdoutLineSelector(stdoutSelector);
+            }
+            if (stderrSelector != null) {
+                builder.setStderrLineSelector(stderrSelector);
+            }
+            synchronized (this) {
+                if ((spoolDirectory != null)
+                        && (BazelCommandScheduler.classify(args) == BazelCommandScheduler.CommandClass.BACKGROUND)) {
+                    builder.setOutputSpool(spoolDirectory, spoolMaxBytes);
+                }
+            }
+            return builder.build();
+        }
     }
 
 }
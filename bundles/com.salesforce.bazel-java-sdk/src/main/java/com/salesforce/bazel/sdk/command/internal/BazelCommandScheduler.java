@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.salesforce.bazel.sdk.command.BazelCommandLineToolConfigurationException;
+import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.util.WorkProgressMonitor;
+
+/**
+ * Decides when a Bazel command may run. Commands are sorted into classes: interactive commands (info, query, version)
+ * are typically issued while the user waits on the UI, background commands (build, test, clean, aspect builds) can take
+ * minutes. Each class has its own concurrency limit, so a cheap interactive command never waits for a long running
+ * background command to finish.
+ * <p>
+ * Note that the Bazel server itself may still serialize some commands against each other (it holds a lock on the
+ * output base for most commands). This scheduler only removes the queueing inside the IDE, it does not bypass Bazel.
+ * <p>
+ * A command that is waiting for its turn can be canceled through its WorkProgressMonitor.
+ * <p>
+ * Each class also has a timeout, which caps how long a command of the class may run. No class has a timeout by
+ * default: the clock starts when the process is launched, which includes the time the command waits for the Bazel
+ * server lock, so a first query after a server restart or behind a long build would fail spuriously. Hung commands are
+ * canceled by the user instead; an IDE can set a timeout for a class if it needs one.
+ */
+public class BazelCommandScheduler {
+    private static final LogHelper LOG = LogHelper.log(BazelCommandScheduler.class);
+
+    public static final int DEFAULT_INTERACTIVE_LIMIT = 4;
+    public static final int DEFAULT_BACKGROUND_LIMIT = 1;
+    public static final long DEFAULT_INTERACTIVE_TIMEOUT_MS = 0L;
+    public static final long DEFAULT_BACKGROUND_TIMEOUT_MS = 0L;
+
+    // how often a waiting command checks if it has been canceled
+    static final long CANCEL_POLL_INTERVAL_MS = 100L;
+
+    /**
+     * The classes of Bazel commands.
+     */
+    public enum CommandClass {
+        INTERACTIVE, BACKGROUND
+    }
+
+    /**
+     * The work to do once the command is allowed to run.
+     */
+    @FunctionalInterface
+    public interface ScheduledCommand<T> {
+        T run() throws IOException, InterruptedException, BazelCommandLineToolConfigurationException;
+    }
+
+    private final Map<CommandClass, Semaphore> permits = new EnumMap<>(CommandClass.class);
+    private final Map<CommandClass, AtomicInteger> runningCounts = new EnumMap<>(CommandClass.class);
+    private final Map<CommandClass, AtomicInteger> waitingCounts = new EnumMap<>(CommandClass.class);
+    private final Map<CommandClass, Long> timeouts = new EnumMap<>(CommandClass.class);
+
+    public BazelCommandScheduler() {
+        this(DEFAULT_INTERACTIVE_LIMIT, DEFAULT_BACKGROUND_LIMIT);
+    }
+
+    public BazelCommandScheduler(int interactiveLimit, int backgroundLimit) {
+        permits.put(CommandClass.INTERACTIVE, new Semaphore(interactiveLimit, true));
+        permits.put(CommandClass.BACKGROUND, new Semaphore(backgroundLimit, true));
+        for (CommandClass commandClass : CommandClass.values()) {
+            runningCounts.put(commandClass, new AtomicInteger());
+            waitingCounts.put(commandClass, new AtomicInteger());
+        }
+        timeouts.put(CommandClass.INTERACTIVE, DEFAULT_INTERACTIVE_TIMEOUT_MS);
+        timeouts.put(CommandClass.BACKGROUND, DEFAULT_BACKGROUND_TIMEOUT_MS);
+    }
+
+    // PUBLIC API
+
+    /**
+     * Determines the class of a Bazel command from its arguments (the arguments after the Bazel executable).
+     */
+    public static CommandClass classify(List<String> args) {
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                // startup option
+                continue;
+            }
+            switch (arg) {
+            case "info":
+            case "query":
+            case "cquery":
+            case "aquery":
+            case "version":
+            case "help":
+                return CommandClass.INTERACTIVE;
+            default:
+                return CommandClass.BACKGROUND;
+            }
+        }
+        return CommandClass.BACKGROUND;
+    }
+
+    /**
+     * Runs the command on the calling thread once a slot of its class is free.
+     *
+     * @throws CancellationException
+     *             if the progress monitor was canceled while the command was waiting
+     */
+    public <T> T run(CommandClass commandClass, WorkProgressMonitor progressMonitor, ScheduledCommand<T> command)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        Semaphore semaphore = permits.get(commandClass);
+        acquire(commandClass, semaphore, progressMonitor);
+        AtomicInteger running = runningCounts.get(commandClass);
+        running.incrementAndGet();
+        try {
+            return command.run();
+        } finally {
+            running.decrementAndGet();
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) a command of the class may run, 0 for no limit.
+     */
+    public void setTimeout(CommandClass commandClass, long timeoutMS) {
+        synchronized (timeouts) {
+            timeouts.put(commandClass, timeoutMS);
+        }
+    }
+
+    public long getTimeout(CommandClass commandClass) {
+        synchronized (timeouts) {
+            return timeouts.get(commandClass);
+        }
+    }
+
+    /**
+     * Returns the timeout to use for a command of the class: the requested timeout, capped by the timeout of the class.
+     * A timeout of 0 means no limit.
+     */
+    public long getEffectiveTimeout(CommandClass commandClass, long requestedTimeoutMS) {
+        long classTimeoutMS = getTimeout(commandClass);
+        if (requestedTimeoutMS <= 0) {
+            return classTimeoutMS;
+        }
+        if (classTimeoutMS <= 0) {
+            return requestedTimeoutMS;
+        }
+        return Math.min(requestedTimeoutMS, classTimeoutMS);
+    }
+
+    /**
+     * The number of commands of the class that are running.
+     */
+    public int getRunningCount(CommandClass commandClass) {
+        return runningCounts.get(commandClass).get();
+    }
+
+    /**
+     * The number of commands of the class that are waiting for a free slot.
+     */
+    public int getWaitingCount(CommandClass commandClass) {
+        return waitingCounts.get(commandClass).get();
+    }
+
+    // INTERNALS
+
+    private void acquire(CommandClass commandClass, Semaphore semaphore, WorkProgressMonitor progressMonitor)
+            throws InterruptedException {
+        if (semaphore.tryAcquire()) {
+            return;
+        }
+        LOG.debug("Bazel command of class {} is waiting, {} already running.", commandClass,
+            runningCounts.get(commandClass).get());
+        AtomicInteger waiting = waitingCounts.get(commandClass);
+        waiting.incrementAndGet();
+        try {
+            while (!semaphore.tryAcquire(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if ((progressMonitor != null) && progressMonitor.isCanceled()) {
+                    throw new CancellationException("The Bazel command was canceled before it started.");
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -45,6 +46,13 @@ import com.salesforce.bazel.sdk.util.WorkProgressMonitor;
 
 /**
  * Helper that knows how to run bazel query commands.
+ * <p>
+ * Each query launches a Bazel client, which costs a few hundred milliseconds even if the server has the answer cached.
+ * The 'kind(rule, set(...))' queries of concurrent callers (for example the classpath computation of many projects)
+ * are therefore merged: while a query is running, new requests are queued, and the next query runs for all of the
+ * queued requests at once. The result is split back by package. If a merged query fails, the requests are retried one
+ * by one, so that a bad label only fails its own request. If the thread running the query is interrupted, only its own
+ * request fails; the other requests go back into the queue and are run by their own threads.
  */
 public class BazelQueryHelper {
     private static final LogHelper LOG = LogHelper.log(BazelQueryHelper.class);
@@ -54,8 +62,19 @@ public class BazelQueryHelper {
      */
     private final BazelCommandExecutor bazelCommandExecutor;
 
+    // guarded by this
     private final Map<BazelLabel, BazelBuildFile> buildFileCache = new HashMap<>();
 
+    // requests waiting for the next query, guarded by this
+    private final List<PendingQuery> pendingQueries = new ArrayList<>();
+
+    // held while a query runs, so that the requests that arrive in the meantime are merged into the next query
+    private final Object queryRunLock = new Object();
+
+    // guarded by this
+    private int queryRequestCount = 0;
+    private int queryCount = 0;
+
     public BazelQueryHelper(BazelCommandExecutor bazelCommandExecutor) {
         this.bazelCommandExecutor = bazelCommandExecutor;
     }
@@ -84,12 +103,12 @@ public class BazelQueryHelper {
 
     /**
      * Returns the list of targets, with type data, found in a BUILD files for the given package. Uses Bazel Query to
-     * build the list.
+     * build the list. Concurrent calls for packages that are not cached are merged into a single query.
      *
      * @param bazelPackageName
      *            the label path that identifies the package where the BUILD file lives (//projects/libs/foo)
      */
-    public synchronized Collection<BazelBuildFile> queryBazelTargetsInBuildFile(File bazelWorkspaceRootDirectory,
+    public Collection<BazelBuildFile> queryBazelTargetsInBuildFile(File bazelWorkspaceRootDirectory,
             Collection<BazelLabel> bazelLabels)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
@@ -101,26 +120,150 @@ public class BazelQueryHelper {
         Collection<BazelBuildFile> buildFiles = new HashSet<>();
         Map<BazelLabel, Collection<BazelLabel>> packageToLabels = BazelLabelUtil.groupByPackage(bazelLabels);
 
-        for (BazelLabel pack : packageToLabels.keySet()) {
-            BazelBuildFile buildFile = buildFileCache.get(pack);
-            if (buildFile == null) {
-                cacheMisses.addAll(packageToLabels.get(pack));
-                LOG.info("Build file cache miss, package: " + pack);
-            } else {
-                buildFiles.add(buildFile);
-                LOG.info("Build file cache hit, package: " + pack);
+        PendingQuery pendingQuery;
+        synchronized (this) {
+            for (BazelLabel pack : packageToLabels.keySet()) {
+                BazelBuildFile buildFile = buildFileCache.get(pack);
+                if (buildFile == null) {
+                    cacheMisses.addAll(packageToLabels.get(pack));
+                    LOG.info("Build file cache miss, package: " + pack);
+                } else {
+                    buildFiles.add(buildFile);
+                    LOG.info("Build file cache hit, package: " + pack);
+                }
+            }
+            if (cacheMisses.isEmpty()) {
+                return buildFiles;
             }
+            pendingQuery = new PendingQuery(cacheMisses);
+            pendingQueries.add(pendingQuery);
         }
 
-        if (!cacheMisses.isEmpty()) {
-            Collection<BazelBuildFile> loadedBuildFiles = runQuery(cacheMisses, bazelWorkspaceRootDirectory);
-            buildFiles.addAll(loadedBuildFiles);
+        synchronized (queryRunLock) {
+            // if another caller ran our request while we waited, there is nothing left to do
+            if (!pendingQuery.done) {
+                runPendingQueries(bazelWorkspaceRootDirectory, pendingQuery);
+            }
         }
+        buildFiles.addAll(pendingQuery.getBuildFiles());
         return buildFiles;
     }
 
-    // runs query and populates cache, returns loaded BazelBuildFile instances
-    private Collection<BazelBuildFile> runQuery(Collection<BazelLabel> bazelLabels, File bazelWorkspaceRootDirectory)
+    /**
+     * The number of requests that needed a query, because some of their packages were not cached.
+     */
+    public synchronized int getQueryRequestCount() {
+        return queryRequestCount;
+    }
+
+    /**
+     * The number of queries that were run for those requests.
+     */
+    public synchronized int getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * The number of Bazel client launches that were saved by merging the queries of concurrent requests.
+     */
+    public synchronized int getSavedClientLaunches() {
+        return queryRequestCount - queryCount;
+    }
+
+    /**
+     * The number of requests waiting for the next query. Visible for tests.
+     */
+    public synchronized int getPendingQueryCount() {
+        return pendingQueries.size();
+    }
+
+    // INTERNALS
+
+    // runs a single query for all the queued requests, called with queryRunLock held by the thread of callerQuery
+    private void runPendingQueries(File bazelWorkspaceRootDirectory, PendingQuery callerQuery) {
+        List<PendingQuery> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pendingQueries);
+            pendingQueries.clear();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Set<BazelLabel> labels = new LinkedHashSet<>();
+        for (PendingQuery query : batch) {
+            labels.addAll(query.labels);
+        }
+        try {
+            Map<BazelLabel, BazelBuildFile> loadedBuildFiles = runQuery(labels, bazelWorkspaceRootDirectory);
+            for (PendingQuery query : batch) {
+                query.complete(loadedBuildFiles);
+            }
+            recordQuery(batch.size());
+            if (batch.size() > 1) {
+                LOG.info("Merged {} requests into a single bazel query, saved {} client launches so far", batch.size(),
+                    getSavedClientLaunches());
+            }
+        } catch (Exception anyE) {
+            if (isInterruption(anyE)) {
+                failInterruptedCaller(batch, callerQuery, anyE);
+                return;
+            }
+            if (batch.size() == 1) {
+                batch.get(0).fail(anyE);
+                return;
+            }
+            // do not let a bad label of one request fail the others
+            LOG.info("Merged bazel query for {} requests failed, running them one by one", batch.size());
+            for (PendingQuery query : batch) {
+                try {
+                    query.complete(runQuery(query.labels, bazelWorkspaceRootDirectory));
+                    recordQuery(1);
+                } catch (Exception queryE) {
+                    if (isInterruption(queryE)) {
+                        failInterruptedCaller(batch, callerQuery, queryE);
+                        return;
+                    }
+                    query.fail(queryE);
+                }
+            }
+        }
+    }
+
+    private static boolean isInterruption(Exception anyE) {
+        return (anyE instanceof InterruptedException) || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * The thread running the query was interrupted (canceled) by its caller. That only concerns the caller's own
+     * request; the other requests of the batch that are not done are queued again, and are run by their own threads,
+     * which are waiting for queryRunLock.
+     */
+    private void failInterruptedCaller(List<PendingQuery> batch, PendingQuery callerQuery, Exception interruption) {
+        callerQuery.fail(interruption);
+        List<PendingQuery> remaining = new ArrayList<>();
+        for (PendingQuery query : batch) {
+            if (!query.done) {
+                remaining.add(query);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            LOG.info("Bazel query was interrupted, {} requests of other callers are queued again", remaining.size());
+            synchronized (this) {
+                pendingQueries.addAll(0, remaining);
+            }
+        }
+    }
+
+    private synchronized void recordQuery(int requestCount) {
+        queryRequestCount += requestCount;
+        queryCount++;
+    }
+
+    // runs query and populates cache, returns loaded BazelBuildFile instances by package; if the query fails (a bad
+    // label) it throws, and nothing is cached
+    private Map<BazelLabel, BazelBuildFile> runQuery(Collection<BazelLabel> bazelLabels,
+            File bazelWorkspaceRootDirectory)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
         String labels = bazelLabels.stream().map(BazelLabel::getLabel).collect(Collectors.joining(" "));
 
@@ -131,8 +274,8 @@ public class BazelQueryHelper {
         argBuilder.add("kind(rule, set(" + labels + "))");
         argBuilder.add("--output");
         argBuilder.add("label_kind");
-        List<String> resultLines = bazelCommandExecutor.runBazelAndGetOutputLines(bazelWorkspaceRootDirectory, null,
-            argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
+        List<String> resultLines = bazelCommandExecutor.runBazelAndGetCheckedOutputLines(bazelWorkspaceRootDirectory,
+            null, argBuilder, t -> t, BazelCommandExecutor.TIMEOUT_INFINITE);
 
         // Sample Output:  (format: rule_type 'rule' label)
         // java_binary rule //projects/libs/apple/apple-api:apple-main
@@ -147,7 +290,7 @@ public class BazelQueryHelper {
             }
             String ruleType = tokens[0];
             String targetLabel = tokens[2];
-            labelToRuleType.put(new BazelLabel(targetLabel), ruleType);
+            labelToRuleType.put(BazelLabel.intern(targetLabel), ruleType);
         }
 
         Set<BazelLabel> unprocessed = new HashSet<>(BazelLabelUtil.groupByPackage(bazelLabels).keySet());
@@ -155,30 +298,81 @@ public class BazelQueryHelper {
         Map<BazelLabel, Collection<BazelLabel>> packageToLabel =
                 BazelLabelUtil.groupByPackage(labelToRuleType.keySet());
 
-        Collection<BazelBuildFile> buildFiles = new HashSet<>();
-        for (BazelLabel pack : packageToLabel.keySet()) {
-            BazelBuildFile buildFile = new BazelBuildFile(pack.getLabel());
-            buildFileCache.put(pack, buildFile);
-            LOG.info("Build file cache put, package: " + pack);
-            buildFiles.add(buildFile);
-            unprocessed.remove(pack);
-            for (BazelLabel target : packageToLabel.get(pack)) {
-                String ruleType = Objects.requireNonNull(labelToRuleType.get(target));
-                buildFile.addTarget(ruleType, target.getLabel());
+        Map<BazelLabel, BazelBuildFile> buildFiles = new HashMap<>();
+        synchronized (this) {
+            for (BazelLabel pack : packageToLabel.keySet()) {
+                BazelBuildFile buildFile = new BazelBuildFile(pack.getLabel());
+                buildFileCache.put(pack, buildFile);
+                LOG.info("Build file cache put, package: " + pack);
+                buildFiles.put(pack, buildFile);
+                unprocessed.remove(pack);
+                for (BazelLabel target : packageToLabel.get(pack)) {
+                    String ruleType = Objects.requireNonNull(labelToRuleType.get(target));
+                    buildFile.addTarget(ruleType, target.getLabel());
+                }
             }
-        }
 
-        // some packages may not have any targets - they need to be accounted for
-        for (BazelLabel pack : unprocessed) {
-            BazelBuildFile buildFile = new BazelBuildFile(pack.getLabel());
-            buildFileCache.put(pack, buildFile);
-            LOG.info("Build file cache put (no targets) package: " + pack);
+            // some packages may not have any targets - they need to be accounted for
+            for (BazelLabel pack : unprocessed) {
+                BazelBuildFile buildFile = new BazelBuildFile(pack.getLabel());
+                buildFileCache.put(pack, buildFile);
+                LOG.info("Build file cache put (no targets) package: " + pack);
+            }
         }
 
         return buildFiles;
     }
 
-    public void flushCache(BazelLabel bazelPackageName) {
+    /**
+     * A request that is waiting for a query. It is completed by the thread that runs the query, which may be the
+     * thread of another request.
+     */
+    private static class PendingQuery {
+        final Collection<BazelLabel> labels;
+        // only accessed with queryRunLock held, or after done has been seen under that lock
+        boolean done = false;
+        Collection<BazelBuildFile> buildFiles;
+        Exception failure;
+
+        PendingQuery(Collection<BazelLabel> labels) {
+            this.labels = labels;
+        }
+
+        void complete(Map<BazelLabel, BazelBuildFile> loadedBuildFiles) {
+            // split the merged result back: the build files of the packages of this request
+            buildFiles = new HashSet<>();
+            for (BazelLabel pack : BazelLabelUtil.groupByPackage(labels).keySet()) {
+                BazelBuildFile buildFile = loadedBuildFiles.get(pack);
+                if (buildFile != null) {
+                    buildFiles.add(buildFile);
+                }
+            }
+            done = true;
+        }
+
+        void fail(Exception failure) {
+            this.failure = failure;
+            done = true;
+        }
+
+        Collection<BazelBuildFile> getBuildFiles()
+                throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            } else if (failure instanceof BazelCommandLineToolConfigurationException) {
+                throw (BazelCommandLineToolConfigurationException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return buildFiles;
+        }
+    }
+
+    public synchronized void flushCache(BazelLabel bazelPackageName) {
         BazelLabel pack = bazelPackageName.toDefaultPackageLabel();
         BazelBuildFile previousValue = buildFileCache.remove(pack);
         if (previousValue != null) {
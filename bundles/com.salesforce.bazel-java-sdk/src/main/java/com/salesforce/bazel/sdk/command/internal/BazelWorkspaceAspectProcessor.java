@@ -45,6 +45,7 @@ import com.salesforce.bazel.sdk.command.BazelCommandLineToolConfigurationExcepti
 import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandRunner;
 import com.salesforce.bazel.sdk.logging.LogHelper;
 import com.salesforce.bazel.sdk.model.BazelLabel;
+import com.salesforce.bazel.sdk.util.WorkProgressMonitor;
 
 /**
  * Manages running, collecting, and caching all of the build info aspects for a specific workspace.
@@ -54,6 +55,7 @@ public class BazelWorkspaceAspectProcessor {
 
     private final BazelWorkspaceCommandRunner bazelWorkspaceCommandRunner;
     private final BazelCommandExecutor bazelCommandExecutor;
+    private final BazelAspectLocation aspectLocation;
 
     /**
      * These arguments are added to all "bazel build" commands that run for aspect processing
@@ -80,12 +82,24 @@ public class BazelWorkspaceAspectProcessor {
      */
     int numberCacheHits = 0;
 
+    /**
+     * Decides how the cache misses are split into bazel invocations.
+     */
+    final AspectBatchScheduler batchScheduler = new AspectBatchScheduler();
+
+    /**
+     * Optional on disk cache of the Aspect data, which survives restarts of the IDE. It is consulted when a target is
+     * not found in aspectInfoCache_current. Null if persistence is not enabled.
+     */
+    AspectTargetInfoPersistentCache aspectInfoCache_persistent;
+
     // CTORS
 
     public BazelWorkspaceAspectProcessor(BazelWorkspaceCommandRunner bazelWorkspaceCommandRunner,
             BazelAspectLocation aspectLocation, BazelCommandExecutor bazelCommandExecutor) {
         this.bazelWorkspaceCommandRunner = bazelWorkspaceCommandRunner;
         this.bazelCommandExecutor = bazelCommandExecutor;
+        this.aspectLocation = aspectLocation;
 
         aspectOptions = null;
         if (aspectLocation != null) {
@@ -106,6 +120,23 @@ public class BazelWorkspaceAspectProcessor {
         this.aspectOptions = aspectOptions;
     }
 
+    /**
+     * Enables the persistent aspect cache, stored in the passed directory. The entries are validated against the
+     * digests of the BUILD files when they are read, so stale data is never returned after a restart. Pass null to
+     * disable persistence.
+     */
+    public synchronized void setAspectCacheDirectory(File cacheDirectory) {
+        if (cacheDirectory == null) {
+            aspectInfoCache_persistent = null;
+            return;
+        }
+        String aspectVersion = aspectLocation == null ? "none"
+                : AspectTargetInfoPersistentCache.computeAspectVersion(aspectLocation.getAspectDirectory(),
+                    aspectLocation.getAspectLabel());
+        aspectInfoCache_persistent = new AspectTargetInfoPersistentCache(cacheDirectory,
+                bazelWorkspaceCommandRunner.getBazelWorkspaceRootDirectory(), aspectVersion);
+    }
+
     /**
      * Runs the analysis of the given list of targets using the build information Bazel Aspect and returns a map of
      * {@link AspectTargetInfo}-s (key is the label of the target) containing the parsed form of the JSON file created
@@ -121,11 +152,26 @@ public class BazelWorkspaceAspectProcessor {
      */
     public synchronized Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfos(Collection<BazelLabel> targets,
             String caller) throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        return getAspectTargetInfos(targets, caller, null);
+    }
+
+    /**
+     * Variant of {@link #getAspectTargetInfos(Collection, String)} that reports progress to the passed monitor. One
+     * unit of work is reported for each target, cache hits are reported immediately. If the monitor is canceled, the
+     * remaining aspect invocations are skipped.
+     */
+    public synchronized Map<BazelLabel, Set<AspectTargetInfo>> getAspectTargetInfos(Collection<BazelLabel> targets,
+            String caller, WorkProgressMonitor progressMonitor)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        if (progressMonitor == null) {
+            progressMonitor = WorkProgressMonitor.NOOP;
+        }
 
         Map<BazelLabel, Set<AspectTargetInfo>> resultMap = new LinkedHashMap<>();
         Collection<BazelLabel> cacheMisses = populateFromCache(targets, resultMap, caller);
+        progressMonitor.worked(targets.size() - cacheMisses.size());
         if (!cacheMisses.isEmpty()) {
-            loadTargetInfos(cacheMisses, resultMap, caller);
+            loadTargetInfos(cacheMisses, resultMap, caller, progressMonitor);
         }
         return resultMap;
     }
@@ -135,6 +181,9 @@ public class BazelWorkspaceAspectProcessor {
      */
     public synchronized void flushAspectInfoCache() {
         aspectInfoCache_current.clear();
+        if (aspectInfoCache_persistent != null) {
+            aspectInfoCache_persistent.clear();
+        }
     }
 
     /**
@@ -144,6 +193,10 @@ public class BazelWorkspaceAspectProcessor {
         // the target may not even be in cache, that is ok, just try to remove it from both current and wildcard caches
         // if the target exists in either it will get flushed
         aspectInfoCache_current.remove(target);
+        if (aspectInfoCache_persistent != null) {
+            aspectInfoCache_persistent.remove(target);
+            aspectInfoCache_persistent.save();
+        }
     }
 
     /**
@@ -154,6 +207,12 @@ public class BazelWorkspaceAspectProcessor {
             // the target may not even be in cache, that is ok, just try to remove it from both current and wildcard caches
             // if the target exists in either it will get flushed
             aspectInfoCache_current.remove(target);
+            if (aspectInfoCache_persistent != null) {
+                aspectInfoCache_persistent.remove(target);
+            }
+        }
+        if (aspectInfoCache_persistent != null) {
+            aspectInfoCache_persistent.save();
         }
     }
 
@@ -174,6 +233,10 @@ public class BazelWorkspaceAspectProcessor {
                 iter.remove();
             }
         }
+        if (aspectInfoCache_persistent != null) {
+            aspectInfoCache_persistent.removePackage(bazelPackage);
+            aspectInfoCache_persistent.save();
+        }
         return flushedTargets;
     }
 
@@ -197,18 +260,35 @@ public class BazelWorkspaceAspectProcessor {
                 numberCacheHits++;
             }
         }
+        if (!cacheMisses.isEmpty() && aspectInfoCache_persistent != null) {
+            Map<BazelLabel, Set<AspectTargetInfo>> persisted = aspectInfoCache_persistent.get(cacheMisses);
+            for (Map.Entry<BazelLabel, Set<AspectTargetInfo>> entry : persisted.entrySet()) {
+                BazelLabel target = entry.getKey();
+                LOG.info("Aspect data found in persistent cache for: " + target + getLogStr(target, caller));
+                aspectInfoCache_current.put(target, entry.getValue());
+                aspectInfoCache_lastgood.put(target, entry.getValue());
+                resultMap.put(target, entry.getValue());
+                numberCacheHits++;
+            }
+            cacheMisses.removeAll(persisted.keySet());
+            aspectInfoCache_persistent.save();
+        }
         return cacheMisses;
     }
 
     private synchronized void loadTargetInfos(Collection<BazelLabel> cacheMisses,
-            Map<BazelLabel, Set<AspectTargetInfo>> resultMap, String caller)
+            Map<BazelLabel, Set<AspectTargetInfo>> resultMap, String caller, WorkProgressMonitor progressMonitor)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
 
+        // the aspect files are parsed as soon as bazel lists them in its end of build summary, while the rest of the
+        // output is still being read
+        AspectFileStreamLoader aspectFileLoader = new AspectFileStreamLoader();
         LOG.info("Starting generation of Aspect files for " + cacheMisses.size() + " packages.");
-        List<String> discoveredAspectFilePaths = generateAspectTargetInfoFiles(cacheMisses);
+        List<String> discoveredAspectFilePaths =
+                generateAspectTargetInfoFiles(cacheMisses, progressMonitor, aspectFileLoader);
         LOG.info("Finished generation of Aspect files for " + cacheMisses.size() + " packages.");
 
-        Map<BazelLabel, AspectTargetInfo> aspectInfos = loadAspectFilePaths(discoveredAspectFilePaths);
+        Map<BazelLabel, AspectTargetInfo> aspectInfos = aspectFileLoader.awaitResults(discoveredAspectFilePaths);
 
         if (aspectInfos.isEmpty()) {
             // We were not able to load any aspects, this generally indicates some sort of error condition;
@@ -226,16 +306,25 @@ public class BazelWorkspaceAspectProcessor {
             }
         } else {
             Map<BazelLabel, Set<AspectTargetInfo>> owningLabelToAspectInfos = new HashMap<>();
+            // the closures are computed once for all the requested labels
+            AspectTransitiveClosures closures = new AspectTransitiveClosures(aspectInfos);
             for (BazelLabel label : cacheMisses) {
-                Map<BazelLabel, Set<AspectTargetInfo>> m = assignAspectsToOwningLabel(label, aspectInfos);
+                Map<BazelLabel, Set<AspectTargetInfo>> m = assignAspectsToOwningLabel(label, aspectInfos, closures);
                 owningLabelToAspectInfos.putAll(m);
             }
             for (BazelLabel label : owningLabelToAspectInfos.keySet()) {
                 Set<AspectTargetInfo> infos = owningLabelToAspectInfos.get(label);
                 aspectInfoCache_current.put(label, infos);
                 aspectInfoCache_lastgood.put(label, infos);
+                if ((aspectInfoCache_persistent != null) && label.isConcrete()) {
+                    aspectInfoCache_persistent.put(label, infos);
+                }
                 LOG.info("Aspect data loaded for target: " + label + getLogStr(label, caller));
             }
+            if (aspectInfoCache_persistent != null) {
+                persistWildcardLabels(owningLabelToAspectInfos);
+                aspectInfoCache_persistent.save();
+            }
             for (BazelLabel label : cacheMisses) {
                 // since we just populated the caches above, we should now find results
                 // this could be done in the loop above, but this is good sanity
@@ -249,6 +338,26 @@ public class BazelWorkspaceAspectProcessor {
         }
     }
 
+    /**
+     * Wildcard labels are persisted as the concrete targets of their package, which holds the same set as the in memory
+     * entry without repeating the closures of the targets.
+     */
+    private void persistWildcardLabels(Map<BazelLabel, Set<AspectTargetInfo>> owningLabelToAspectInfos) {
+        Collection<BazelLabel> loadedLabels = owningLabelToAspectInfos.keySet();
+        for (BazelLabel label : loadedLabels) {
+            if (label.isConcrete()) {
+                continue;
+            }
+            List<BazelLabel> packageTargets = new ArrayList<>();
+            for (BazelLabel target : loadedLabels) {
+                if (target.isConcrete() && target.getPackagePath().equals(label.getPackagePath())) {
+                    packageTargets.add(target);
+                }
+            }
+            aspectInfoCache_persistent.putPackage(label, packageTargets, owningLabelToAspectInfos.get(label));
+        }
+    }
+
     /**
      * This method creates and returns a mapping of a Label to the AspectTargetInfo (ATI) instances belonging to that
      * Label. These ATI instances are the transitive closure of ATIs referenced by the mapped Label.
@@ -266,118 +375,95 @@ public class BazelWorkspaceAspectProcessor {
      * For example, with ATIs for these targets: //a/b/c:t1 and //a/b/c:t2 and a requestingLabel of //a/b/c:*, this
      * method returns:
      *
-     * //a/b/c:* -> all specified ATIs //a/b/c:t1 -> transitive closure of ATIs for t1 //a/b/c:t2 -> transitive closure
-     * of ATIs for t2
+     * //a/b/c:* -> the ATIs of t1 and t2 plus their transitive closures //a/b/c:t1 -> transitive closure of ATIs for t1
+     * //a/b/c:t2 -> transitive closure of ATIs for t2
+     *
+     * The wildcard set does not include the ATIs of other packages that were built in the same run, so that it does not
+     * depend on which labels were requested along with it; it is also the set that is persisted for the wildcard.
      */
     private static Map<BazelLabel, Set<AspectTargetInfo>> assignAspectsToOwningLabel(BazelLabel requestingLabel,
-            Map<BazelLabel, AspectTargetInfo> depNameToTargetInfo) {
+            Map<BazelLabel, AspectTargetInfo> depNameToTargetInfo, AspectTransitiveClosures closures) {
         Map<BazelLabel, Set<AspectTargetInfo>> transitivesClosures = new HashMap<>();
 
         // find starting point, based on target - this is trivial, but we also support wildcard
         // targets (so that we can run a single bazal build cmd and get all aspects)
-        for (AspectTargetInfo ati : depNameToTargetInfo.values()) {
-            BazelLabel currentLabel = new BazelLabel(ati.getLabel());
-            if (requestingLabel.isConcrete()) {
-                if (requestingLabel.equals(currentLabel)) {
-                    Set<AspectTargetInfo> allDeps = getTransitiveClosure(ati, depNameToTargetInfo);
-                    transitivesClosures.put(new BazelLabel(ati.getLabel()), allDeps);
-                }
-            } else {
-                // all targets in the requested package qualify
+        if (requestingLabel.isConcrete()) {
+            AspectTargetInfo ati = depNameToTargetInfo.get(requestingLabel);
+            if (ati != null) {
+                transitivesClosures.put(requestingLabel, closures.getTransitiveClosure(ati));
+            }
+        } else {
+            // all targets in the requested package qualify
+            Set<AspectTargetInfo> packageInfos = new HashSet<>();
+            for (Map.Entry<BazelLabel, AspectTargetInfo> entry : depNameToTargetInfo.entrySet()) {
+                BazelLabel currentLabel = entry.getKey();
                 if (currentLabel.getPackagePath().equals(requestingLabel.getPackagePath())) {
-                    Set<AspectTargetInfo> allDeps = getTransitiveClosure(ati, depNameToTargetInfo);
-                    transitivesClosures.put(new BazelLabel(ati.getLabel()), allDeps);
+                    Set<AspectTargetInfo> closure = closures.getTransitiveClosure(entry.getValue());
+                    transitivesClosures.put(currentLabel, closure);
+                    packageInfos.add(entry.getValue());
+                    packageInfos.addAll(closure);
                 }
             }
-        }
 
-        if (!requestingLabel.isConcrete()) {
-            // also return a mapping of wildcard target -> all AspectTargetInfo instances
-            transitivesClosures.put(requestingLabel, new HashSet<>(depNameToTargetInfo.values()));
+            // also return a mapping of wildcard target -> the targets of the package and their transitive closures
+            transitivesClosures.put(requestingLabel, packageInfos);
         }
 
         return transitivesClosures;
 
     }
 
-    private static Set<AspectTargetInfo> getTransitiveClosure(AspectTargetInfo aspectTargetInfo,
-            Map<BazelLabel, AspectTargetInfo> depNameToTargetInfo) {
-        Set<AspectTargetInfo> allDeps = new HashSet<>();
-        List<AspectTargetInfo> queue = new ArrayList<>();
-        Set<String> skippedLabels = new HashSet<>();
-        queue.add(aspectTargetInfo);
-        while (!queue.isEmpty()) {
-            AspectTargetInfo ati = queue.remove(0);
-            if (ati != aspectTargetInfo) {
-                allDeps.add(ati);
-            }
-            List<String> depLabels = ati.getDeps();
-            for (String label : depLabels) {
-                if (skippedLabels.contains(label)) {
-                    // this is a dep that is not something we work with, so we ignore it
-                    continue;
-                }
-                BazelLabel depLabel = new BazelLabel(label);
-                AspectTargetInfo dep = depNameToTargetInfo.get(depLabel);
-                if (dep == null) {
-                    LOG.info("No AspectTargetInfo exists for " + label
-                            + "; it and its descendents are excluded from analysis.");
-                    skippedLabels.add(label);
-                } else {
-                    queue.add(dep);
-                }
-            }
-        }
-        return Collections.unmodifiableSet(allDeps);
-    }
-
     /**
      * Runs the Aspect for the list of passed targets. Returns the list of file paths to the output artifacts created by
      * the Aspects.
      *
      * @throws BazelCommandLineToolConfigurationException
      */
-    private synchronized List<String> generateAspectTargetInfoFiles(Collection<BazelLabel> targets)
+    private synchronized List<String> generateAspectTargetInfoFiles(Collection<BazelLabel> targets,
+            WorkProgressMonitor progressMonitor, AspectFileStreamLoader aspectFileLoader)
             throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
         if (targets.isEmpty()) {
             throw new IllegalArgumentException("Parameter [targets] cannot be empty.");
         }
         File bazelWorkspaceRootDirectory = bazelWorkspaceCommandRunner.getBazelWorkspaceRootDirectory();
-
-        BazelLabel[] targetsArray = targets.toArray(new BazelLabel[] {});
-        int lastValidTargetIndex = targets.size() - 1;
-        int currentTargetIndex = 0;
         List<String> listOfGeneratedFilePaths = new ArrayList<>();
 
         // run the aspect generation for the target labels, we want to minimize the number of bazel invocations
-        // because there is a few seconds of overhead for each invocation, but we only do 25 at a time so we get 
-        // progress log messages along the way
-        while (currentTargetIndex <= lastValidTargetIndex) {
-            int startTargetIndex = currentTargetIndex;
+        // because there is a few seconds of overhead for each invocation; the scheduler decides how to batch them
+        List<List<BazelLabel>> batches = batchScheduler.planBatches(targets);
+        int completedTargets = 0;
+        for (List<BazelLabel> batch : batches) {
+            if (progressMonitor.isCanceled()) {
+                LOG.info("Aspect generation was canceled after [{}] of [{}] labels.", completedTargets,
+                    targets.size());
+                break;
+            }
             List<String> args = new ArrayList<>();
             args.add("build");
             args.addAll(aspectOptions);
-            for (int i = 0; i < 25; i++) {
-                if (currentTargetIndex > lastValidTargetIndex) {
-                    break;
-                }
-                String label = targetsArray[currentTargetIndex].toString();
-                currentTargetIndex++;
-                args.add(label);
+            for (BazelLabel label : batch) {
+                args.add(label.toString());
             }
 
             // Strip out the artifact list, keeping the xyz.bzljavasdk-data.json files (located in subdirs in the bazel-out path)
-            // Line must start with >>> and end with the aspect file suffix
-            LOG.info("Running command to generate aspect file for labels indexed [" + startTargetIndex + "] through ["
-                    + (startTargetIndex + 25) + "] out of the total [" + lastValidTargetIndex + "]");
-            Function<String, String> filter = t -> t.startsWith(">>>")
-                    ? (t.endsWith(AspectTargetInfoFactory.ASPECT_FILENAME_SUFFIX) ? t.substring(3) : "") : null;
-
+            // Line must start with >>> and end with the aspect file suffix; the loader starts parsing each file as soon
+            // as its line is read
+            LOG.info(
+                "Running command to generate aspect files for labels indexed [{}] through [{}] out of the total [{}]",
+                completedTargets, completedTargets + batch.size() - 1, targets.size());
+            progressMonitor.subTask("Computing aspects for " + batch.size() + " labels");
+            Function<String, String> filter = aspectFileLoader.createSelector();
+
+            // the command polls the monitor, so a cancel terminates the running bazel build as well
+            long startTimeMS = System.currentTimeMillis();
             List<String> partialListOfGeneratedFilePaths =
                     bazelCommandExecutor.runBazelAndGetErrorLines(ConsoleType.WORKSPACE, bazelWorkspaceRootDirectory,
-                        null, args, filter, BazelCommandExecutor.TIMEOUT_INFINITE);
+                        progressMonitor, args, filter, BazelCommandExecutor.TIMEOUT_INFINITE);
+            batchScheduler.recordInvocation(batch.size(), System.currentTimeMillis() - startTimeMS);
 
             listOfGeneratedFilePaths.addAll(partialListOfGeneratedFilePaths);
+            completedTargets += batch.size();
+            progressMonitor.worked(batch.size());
         }
         return listOfGeneratedFilePaths;
     }
@@ -391,7 +477,7 @@ public class BazelWorkspaceAspectProcessor {
         Map<String, AspectTargetInfo> lToAtis = AspectTargetInfoFactory.loadAspectFilePaths(aspectFilePaths);
         Map<BazelLabel, AspectTargetInfo> bzToAtis = new HashMap<>(lToAtis.size());
         for (Map.Entry<String, AspectTargetInfo> e : lToAtis.entrySet()) {
-            bzToAtis.put(new BazelLabel(e.getKey()), e.getValue());
+            bzToAtis.put(BazelLabel.intern(e.getKey()), e.getValue());
         }
         return bzToAtis;
     }
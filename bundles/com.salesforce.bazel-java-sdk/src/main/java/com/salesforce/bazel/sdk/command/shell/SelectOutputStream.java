@@ -36,27 +36,40 @@
 
 package com.salesforce.bazel.sdk.command.shell;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Function;
 
+import com.salesforce.bazel.sdk.command.CommandOutputSpool;
+
 /**
  * A wrapper output stream to output part of the result to a given output and extracting the other part with a selector
  * function. The other part is return as a list of string.
+ * <p>
+ * Commands like aspect builds print tens of thousands of lines, so the bulk write(byte[], int, int) path scans each
+ * chunk for newlines and works on the bytes of the chunk directly. Only a line that spans chunks is copied into the
+ * pending buffer. A line is decoded into a String only if there is a selector to apply to it, and runs of unselected
+ * lines are written to the output with a single write call.
+ * <p>
+ * Optionally, the raw output is also written to a CommandOutputSpool, so the full log can be read back without keeping
+ * it in memory.
  */
 public class SelectOutputStream extends OutputStream {
 
     private final OutputStream output;
     private final Function<String, String> selector;
+    private final CommandOutputSpool spool;
     private boolean closed = false;
-    private final List<String> lines = new LinkedList<>();
-    private final List<String> outputLines = new LinkedList<>();
-    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private final List<String> lines = new ArrayList<>();
+
+    // the start of the current line, if it began in an earlier write
+    private byte[] pending = new byte[256];
+    private int pendingLength = 0;
 
     /**
      * Create a SelectOutputStream. <code>output<code> is the output stream where non-selected lines
@@ -70,40 +83,63 @@ public class SelectOutputStream extends OutputStream {
      * will be discarded. If <code>selector</code> is null, all lines will be considered as unselected.
      */
     public SelectOutputStream(OutputStream output, Function<String, String> selector) {
+        this(output, selector, null);
+    }
+
+    /**
+     * Create a SelectOutputStream that also writes all the raw output to the spool, which is closed when this stream
+     * is closed. The spool can be null.
+     */
+    public SelectOutputStream(OutputStream output, Function<String, String> selector, CommandOutputSpool spool) {
         super();
         this.output = output;
         this.selector = selector;
+        this.spool = spool;
     }
 
     @Override
     public void write(int b) throws IOException {
-        if (closed) {
-            throw new IllegalStateException("Attempted to write on a closed stream");
+        checkOpen();
+        if (spool != null) {
+            spool.write(b);
         }
-        byte b0 = (byte) b;
-        if (b0 == '\n') {
-            select(true);
-        } else {
-            stream.write(b);
+        appendPending((byte) b);
+        if (((byte) b) == '\n') {
+            selectPending(true);
         }
     }
 
-    private void select(boolean appendNewLine) throws UnsupportedEncodingException, IOException {
-        String line = null;
-        if (selector != null) {
-            line = selector.apply(stream.toString(StandardCharsets.UTF_8.name()));
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (spool != null) {
+            spool.write(b, off, len);
         }
 
-        if (line != null) {
-            lines.add(line);
-        } else if (output != null) {
-            if (appendNewLine) {
-                stream.write('\n');
+        int end = off + len;
+        int lineStart = off;
+        // start of the unselected lines of this chunk that have not been written to the output yet
+        int unwrittenStart = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] != '\n') {
+                continue;
             }
-            output.write(stream.toByteArray());
-            outputLines.add(stream.toString(StandardCharsets.UTF_8.name()));
+            if (pendingLength > 0) {
+                // the line began in an earlier write, this can only be the first line of the chunk
+                appendPending(b, lineStart, (i + 1) - lineStart);
+                selectPending(true);
+                unwrittenStart = i + 1;
+            } else if (select(b, lineStart, i)) {
+                writeOutput(b, unwrittenStart, lineStart);
+                unwrittenStart = i + 1;
+            }
+            lineStart = i + 1;
+        }
+        writeOutput(b, unwrittenStart, lineStart);
+        if (lineStart < end) {
+            appendPending(b, lineStart, end - lineStart);
         }
-        stream.reset();
     }
 
     @Override
@@ -112,8 +148,14 @@ public class SelectOutputStream extends OutputStream {
             throw new IllegalStateException("Attempted to close a closed stream");
         }
         super.close();
-        select(false);
-        closed = true;
+        try {
+            selectPending(false);
+        } finally {
+            closed = true;
+            if (spool != null) {
+                spool.close();
+            }
+        }
     }
 
     /**
@@ -124,9 +166,64 @@ public class SelectOutputStream extends OutputStream {
     }
 
     /**
-     * Returns the list of output lines.
+     * Returns the spool with the raw output, or null.
+     */
+    CommandOutputSpool getSpool() {
+        return spool;
+    }
+
+    // INTERNALS
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Attempted to write on a closed stream");
+        }
+    }
+
+    /**
+     * Applies the selector to the line in buffer[start, end), without its newline. Returns true if the line was
+     * selected.
      */
-    List<String> getOutputLines() {
-        return outputLines;
+    private boolean select(byte[] buffer, int start, int end) {
+        if (selector == null) {
+            return false;
+        }
+        String line = selector.apply(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+        if (line != null) {
+            lines.add(line);
+            return true;
+        }
+        return false;
+    }
+
+    private void selectPending(boolean endsWithNewLine) throws IOException {
+        int lineLength = endsWithNewLine ? pendingLength - 1 : pendingLength;
+        if (!select(pending, 0, lineLength)) {
+            writeOutput(pending, 0, pendingLength);
+        }
+        pendingLength = 0;
+    }
+
+    private void writeOutput(byte[] buffer, int start, int end) throws IOException {
+        if ((output != null) && (end > start)) {
+            output.write(buffer, start, end - start);
+        }
+    }
+
+    private void appendPending(byte b) {
+        ensurePendingCapacity(1);
+        pending[pendingLength++] = b;
+    }
+
+    private void appendPending(byte[] b, int off, int len) {
+        ensurePendingCapacity(len);
+        System.arraycopy(b, off, pending, pendingLength, len);
+        pendingLength += len;
+    }
+
+    private void ensurePendingCapacity(int extra) {
+        if ((pendingLength + extra) > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + extra));
+        }
     }
 }
@@ -39,15 +39,27 @@ package com.salesforce.bazel.sdk.command.shell;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import com.salesforce.bazel.sdk.command.BazelProcessBuilder;
 import com.salesforce.bazel.sdk.command.Command;
 import com.salesforce.bazel.sdk.command.CommandBuilder;
+import com.salesforce.bazel.sdk.command.CommandOutputSpool;
 import com.salesforce.bazel.sdk.console.CommandConsole;
 import com.salesforce.bazel.sdk.console.CommandConsoleFactory;
 import com.salesforce.bazel.sdk.logging.LogHelper;
@@ -75,21 +87,45 @@ public final class ShellCommand implements Command {
      */
     public static int LOG_LEVEL_FOR_STDOUTERR = LoggerFacade.DEBUG;
 
+    /**
+     * How long to wait for the remaining output of a command once its process has exited. The output normally ends
+     * right away, but a child process that inherited the pipes can keep them open.
+     */
+    static final long STREAM_DRAIN_TIMEOUT_MS = 5000L;
+
+    /**
+     * How often a running command checks if its progress monitor has been canceled.
+     */
+    static final long CANCEL_POLL_INTERVAL_MS = 200L;
+
+    /**
+     * How long a canceled (or timed out) command gets to shut down after it was interrupted (SIGINT, like Ctrl-C in a
+     * terminal, which lets Bazel stop the build on the server and release its locks). Processes that are still alive
+     * after that are killed.
+     */
+    static final long TERMINATION_GRACE_PERIOD_MS = 5000L;
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "unknown").contains("Windows");
+
+    // Copies the stdout/stderr of the commands. Import flows run hundreds of commands, so the threads are shared
+    // instead of started per command. Idle threads are released after a minute.
+    private static final ExecutorService STREAM_PUMPS = createStreamPumpExecutor();
+
     private final File directory;
     private final List<String> args;
     private final SelectOutputStream stdout;
     private final SelectOutputStream stderr;
     private final WorkProgressMonitor progressMonitor;
 
-    // TODO ShellCommand timeouts are not usable; if a command times out subsequent commands hang, etc.
-    // https://github.com/salesforce/bazel-eclipse/issues/191
+    // 0 means no timeout; if the command runs longer, its process tree is terminated
     private long timeoutMS = 0;
 
     private boolean executed = false;
 
     ShellCommand(CommandConsole console, File directory, List<String> args, Function<String, String> stdoutSelector,
             Function<String, String> stderrSelector, OutputStream stdout, OutputStream stderr,
-            WorkProgressMonitor progressMonitor, long timeoutMS) {
+            WorkProgressMonitor progressMonitor, long timeoutMS, CommandOutputSpool stdoutSpool,
+            CommandOutputSpool stderrSpool) {
         this.directory = directory;
         this.args = args;
         if (console != null) {
@@ -100,8 +136,8 @@ public final class ShellCommand implements Command {
                 stderr = console.createErrorStream();
             }
         }
-        this.stderr = new SelectOutputStream(stderr, stderrSelector);
-        this.stdout = new SelectOutputStream(stdout, stdoutSelector);
+        this.stderr = new SelectOutputStream(stderr, stderrSelector, stderrSpool);
+        this.stdout = new SelectOutputStream(stdout, stdoutSelector, stdoutSpool);
         this.progressMonitor = progressMonitor;
         this.timeoutMS = timeoutMS;
 
@@ -125,6 +161,9 @@ public final class ShellCommand implements Command {
     /**
      * Executes the command represented by this instance, and return the exit code of the command. This method should
      * not be called twice on the same object.
+     * <p>
+     * The command is terminated if it runs longer than its timeout (an InterruptedIOException is thrown), or if its
+     * progress monitor is canceled (a CancellationException is thrown).
      *
      * @throws CoreException
      */
@@ -145,7 +184,7 @@ public final class ShellCommand implements Command {
             throw anyE;
         }
 
-        // TODO implement the progress monitor for command line invocations
+        // progress is not reported for command line invocations, but the monitor is polled for cancellation
         if (progressMonitor != null) {
             progressMonitor.worked(1);
         }
@@ -158,19 +197,17 @@ public final class ShellCommand implements Command {
         boolean success = false;
 
         try {
-            Thread err = copyStream(process.getErrorStream(), stderr);
-            Thread out = copyStream(process.getInputStream(), stdout);
-            int exitCode = process.waitFor();
-            if (err != null) {
-                err.join(timeoutMS);
-            }
-            if (out != null) {
-                out.join(timeoutMS);
+            Future<?> err = copyStream(process.getErrorStream(), stderr);
+            Future<?> out = copyStream(process.getInputStream(), stdout);
+            try {
+                int exitCode = waitFor(process, command);
+                success = exitCode == 0;
+                return exitCode;
+            } finally {
+                // the output streams are closed below, so the copying must be over by then
+                awaitCopy(err, process.getErrorStream());
+                awaitCopy(out, process.getInputStream());
             }
-            success = exitCode == 0;
-            return exitCode;
-        } catch (InterruptedException interrupted) {
-            throw interrupted;
         } finally {
             closeQuietly(stderr);
             closeQuietly(stdout);
@@ -186,35 +223,109 @@ public final class ShellCommand implements Command {
             LOG.info("Finished command ({} millis) (success={}): {}", elapsedTimeMS, success, command);
 
             if (LOG.getLevel() <= LOG_LEVEL_FOR_STDOUTERR) {
-                StringBuffer stdoutBuffer = new StringBuffer();
-                for (String line : stdout.getLines()) {
-                    if (!line.trim().isEmpty()) {
-                        stdoutBuffer.append("  >> ");
-                        stdoutBuffer.append(line);
-                        stdoutBuffer.append("\n");
-                    }
-                }
-                LOG.log(LOG_LEVEL_FOR_STDOUTERR, "\n  >> stdout:\n{}", stdoutBuffer);
-
-                StringBuffer stderrBuffer = new StringBuffer();
-                for (String line : stderr.getLines()) {
-                    if (!line.trim().isEmpty()) {
-                        stderrBuffer.append("  >> ");
-                        stderrBuffer.append(line);
-                        stderrBuffer.append("\n");
-                    }
-                }
-                LOG.log(LOG_LEVEL_FOR_STDOUTERR, "\n  >> stderr:\n{}", stderrBuffer);
+                logLines("stdout", stdout);
+                logLines("stderr", stderr);
             }
         }
     }
 
+    private static void logLines(String streamName, SelectOutputStream stream) {
+        CommandOutputSpool spool = stream.getSpool();
+        if (spool != null) {
+            // the output can be huge, do not copy it into the log
+            LOG.log(LOG_LEVEL_FOR_STDOUTERR, "\n  >> {}: {} bytes spooled to {}, {} lines selected", streamName,
+                spool.getTotalBytes(), spool.getSegments(), stream.getLines().size());
+            return;
+        }
+        StringBuffer buffer = new StringBuffer();
+        for (String line : stream.getLines()) {
+            if (!line.trim().isEmpty()) {
+                buffer.append("  >> ");
+                buffer.append(line);
+                buffer.append("\n");
+            }
+        }
+        LOG.log(LOG_LEVEL_FOR_STDOUTERR, "\n  >> " + streamName + ":\n{}", buffer);
+    }
+
     private static void closeQuietly(OutputStream os) {
         try {
             os.close();
         } catch (Exception ignore) {}
     }
 
+    /**
+     * Waits for the process to exit. While waiting, the progress monitor is polled for cancellation and the timeout
+     * is enforced; in both cases the process tree is terminated. If the calling thread is interrupted, the process tree
+     * is killed right away.
+     */
+    private int waitFor(Process process, String command) throws IOException, InterruptedException {
+        long deadlineMS = timeoutMS > 0 ? System.currentTimeMillis() + timeoutMS : Long.MAX_VALUE;
+        try {
+            while (!process.waitFor(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if ((progressMonitor != null) && progressMonitor.isCanceled()) {
+                    LOG.info("Command was canceled, terminating it: {}", command);
+                    terminateProcessTree(process);
+                    throw new CancellationException("Command was canceled: " + command);
+                }
+                if (System.currentTimeMillis() >= deadlineMS) {
+                    LOG.error("Command timed out after {} millis, terminating it: {}", timeoutMS, command);
+                    terminateProcessTree(process);
+                    throw new InterruptedIOException("Command timed out after " + timeoutMS + " millis: " + command);
+                }
+            }
+        } catch (InterruptedException interrupted) {
+            LOG.info("Interrupted while waiting for command, destroying it: {}", command);
+            destroyProcessTree(process, process.descendants().collect(Collectors.toList()));
+            throw interrupted;
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * Interrupts the process so it can clean up, then kills whatever is left of the process tree after the grace
+     * period.
+     */
+    private static void terminateProcessTree(Process process) throws InterruptedException {
+        // collect the tree first, children are reparented once their parent exits
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        interrupt(process);
+        if (!process.waitFor(TERMINATION_GRACE_PERIOD_MS, TimeUnit.MILLISECONDS)) {
+            LOG.warn("Command did not stop within {} millis of being interrupted, killing it.",
+                TERMINATION_GRACE_PERIOD_MS);
+        }
+        destroyProcessTree(process, descendants);
+    }
+
+    /**
+     * Sends SIGINT to the process. Java can only send SIGTERM and SIGKILL, so this is delegated to kill(1). On Windows
+     * there is no equivalent, the process is destroyed.
+     */
+    private static void interrupt(Process process) throws InterruptedException {
+        if (!IS_WINDOWS) {
+            try {
+                Process kill = new ProcessBuilder("kill", "-INT", Long.toString(process.pid())).start();
+                if (kill.waitFor(TERMINATION_GRACE_PERIOD_MS, TimeUnit.MILLISECONDS) && (kill.exitValue() == 0)) {
+                    return;
+                }
+            } catch (IOException ioe) {
+                LOG.warn("Could not interrupt process {}: {}", process.pid(), ioe.getMessage());
+            }
+        }
+        process.toHandle().destroy();
+    }
+
+    private static void destroyProcessTree(Process process, List<ProcessHandle> descendants) {
+        // the root goes first, so it cannot react to the death of its children (and print more output, for example)
+        // Process.destroyForcibly() would also close the output pipes and drop output that has not been copied yet
+        process.toHandle().destroyForcibly();
+        for (ProcessHandle descendant : descendants) {
+            if (descendant.isAlive()) {
+                descendant.destroyForcibly();
+            }
+        }
+    }
+
     private static class CopyStreamRunnable implements Runnable {
         private final InputStream inputStream;
         private final OutputStream outputStream;
@@ -226,7 +337,7 @@ public final class ShellCommand implements Command {
 
         @Override
         public void run() {
-            byte[] buffer = new byte[4096];
+            byte[] buffer = new byte[8192];
             int read;
             try {
                 while ((read = inputStream.read(buffer)) > 0) {
@@ -234,19 +345,48 @@ public final class ShellCommand implements Command {
                 }
             } catch (Exception ex) {
                 LOG.error("Error writing command stream to the channel.", ex);
-                // we simply terminate the thread on exceptions
+                // we simply terminate the task on exceptions
             }
         }
     }
 
-    // Launch a thread to copy all data from inputStream to outputStream
-    private static Thread copyStream(InputStream inputStream, OutputStream outputStream) {
-        if (outputStream != null) {
-            Thread t = new Thread(new CopyStreamRunnable(inputStream, outputStream), "CopyStream");
-            t.start();
-            return t;
+    // Copy all data from inputStream to outputStream on a pooled thread
+    private static Future<?> copyStream(InputStream inputStream, OutputStream outputStream) {
+        return STREAM_PUMPS.submit(new CopyStreamRunnable(inputStream, outputStream));
+    }
+
+    /**
+     * Waits for a stream copy to finish. If the stream is held open (by an orphaned child process for example), the
+     * stream is closed to unblock the copy.
+     */
+    private static void awaitCopy(Future<?> copy, InputStream inputStream) throws InterruptedException {
+        try {
+            copy.get(STREAM_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return;
+        } catch (ExecutionException unexpected) {
+            LOG.error("Error copying command stream.", unexpected.getCause());
+            return;
+        } catch (TimeoutException stillOpen) {
+            LOG.warn("Command output is still open {} millis after the command ended, closing it.",
+                STREAM_DRAIN_TIMEOUT_MS);
+        }
+        try {
+            inputStream.close();
+        } catch (IOException ignore) {}
+        try {
+            copy.get(STREAM_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            LOG.error("Could not stop copying command stream.", ex);
         }
-        return null;
+    }
+
+    private static ExecutorService createStreamPumpExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "CopyStream-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     /**
@@ -271,6 +411,16 @@ public final class ShellCommand implements Command {
         return stdout.getLines();
     }
 
+    @Override
+    public CommandOutputSpool getOutputSpool() {
+        return stdout.getSpool();
+    }
+
+    @Override
+    public CommandOutputSpool getErrorSpool() {
+        return stderr.getSpool();
+    }
+
     /**
      * Returns a {@link CommandBuilder} object to use to create a {@link ShellCommand} object.
      */
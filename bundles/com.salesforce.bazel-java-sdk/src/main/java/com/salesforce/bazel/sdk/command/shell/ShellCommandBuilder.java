@@ -26,6 +26,7 @@ package com.salesforce.bazel.sdk.command.shell;
 import java.io.IOException;
 
 import com.salesforce.bazel.sdk.command.CommandBuilder;
+import com.salesforce.bazel.sdk.command.CommandOutputSpool;
 import com.salesforce.bazel.sdk.console.CommandConsole;
 import com.salesforce.bazel.sdk.console.CommandConsoleFactory;
 
@@ -52,8 +53,14 @@ public class ShellCommandBuilder extends CommandBuilder {
         CommandConsole console = consoleName == null ? null : consoleFactory.get(consoleName,
             "Running " + String.join(" ", args) + " from " + directory.toString());
 
+        CommandOutputSpool stdoutSpool = null;
+        CommandOutputSpool stderrSpool = null;
+        if (spoolDirectory != null) {
+            stdoutSpool = new CommandOutputSpool(spoolDirectory, "stdout-", spoolMaxBytes);
+            stderrSpool = new CommandOutputSpool(spoolDirectory, "stderr-", spoolMaxBytes);
+        }
         ShellCommand command = new ShellCommand(console, directory, args, stdoutSelector, stderrSelector, stdout,
-                stderr, progressMonitor, timeoutMS);
+                stderr, progressMonitor, timeoutMS, stdoutSpool, stderrSpool);
 
         return command;
     }
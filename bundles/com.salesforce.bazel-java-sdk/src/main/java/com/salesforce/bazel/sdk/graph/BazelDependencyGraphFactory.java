@@ -6,6 +6,18 @@ import java.util.Map;
 
 public class BazelDependencyGraphFactory {
 
+    /**
+     * Option that selects the graph implementation, for builders that abstain unless they are asked for. For example,
+     * "compact" selects the CompactDependencyGraph. If no builder claims the value, the default graph is built.
+     */
+    public static final String OPTION_GRAPH_IMPL = "graph.impl";
+
+    /**
+     * Option that enables the ReachabilityIndex for isDependency() queries when set to "true". Supported by the
+     * InMemoryDependencyGraph and the CompactDependencyGraph.
+     */
+    public static final String OPTION_REACHABILITY_INDEX = "graph.reachability.index";
+
     /**
      * List of configured builders. Builders earlier in the list will take precedence over later builders.
      * <p>
@@ -14,7 +26,10 @@ public class BazelDependencyGraphFactory {
      */
     public static List<BazelDependencyGraphBuilder> builders = new ArrayList<>();
     static {
+        // the compact graph is only built when OPTION_GRAPH_IMPL asks for it
+        builders.add(new CompactDependencyGraphBuilder());
         // unless the user configures a custom graph impl, the default inmemory graph will be built 
+
         builders.add(new InMemoryDependencyGraphBuilder());
     }
 
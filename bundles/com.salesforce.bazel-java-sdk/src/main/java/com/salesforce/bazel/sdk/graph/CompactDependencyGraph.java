@@ -0,0 +1,577 @@
+package com.salesforce.bazel.sdk.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.salesforce.bazel.sdk.logging.LogHelper;
+import com.salesforce.bazel.sdk.model.BazelPackageLocation;
+
+/**
+ * A Bazel dependency graph for large workspaces. It answers the same questions as InMemoryDependencyGraph, but with a
+ * much smaller footprint and without walking string keyed maps.
+ * <p>
+ * Each label is assigned a dense int id the first time it is seen. Edges are appended to a journal of int pairs, and
+ * when the graph is queried the journal is compacted into CSR (compressed sparse row) arrays, one for the forward
+ * (depends on) and one for the reverse (used by) direction. The edges of a label are a slice of a single int array,
+ * sorted by id, so a graph with 100,000 edges costs about 1MB instead of a HashSet entry per edge. Traversals keep the
+ * visited labels in a BitSet.
+ * <p>
+ * The index is rebuilt on the first query after addDependency() was called, so fill the graph first and query it
+ * afterwards. Once filled, the graph can be queried from multiple threads.
+ * <p>
+ * Build it with the BazelDependencyGraphFactory, passing option {@link BazelDependencyGraphFactory#OPTION_GRAPH_IMPL}
+ * with value {@link CompactDependencyGraphBuilder#GRAPH_IMPL_COMPACT}.
+ * <p>
+ * <b>CAVEAT</b> like InMemoryDependencyGraph, this graph does not support cycles. They do not break the traversals,
+ * but the order of the labels of a cycle returned by orderLabels() is arbitrary.
+ */
+public class CompactDependencyGraph extends BazelDependencyGraph {
+
+    private static final LogHelper LOG = LogHelper.log(CompactDependencyGraph.class);
+
+    // label <-> id
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private String[] labels = new String[64];
+    private final BitSet externalLabels = new BitSet();
+    private int labelCount = 0;
+
+    // edge journal in the order of addDependency(), it may contain duplicate edges until it is compacted
+    private int[] edgeSources = new int[256];
+    private int[] edgeDeps = new int[256];
+    private int edgeCount = 0;
+
+    // built from the journal on the first query, dropped by addDependency()
+    private volatile Index index;
+
+    // answer isDependency() from a ReachabilityIndex, built along with the index on the first isDependency() query
+    private volatile boolean reachabilityIndexEnabled = false;
+
+    /**
+     * Callers should use the factories to construct the graph.
+     */
+    public CompactDependencyGraph() {}
+
+    // CONSTRUCTION
+
+    /**
+     * Makes a dependency from source -> dep at the package level. For some use cases, package level dependencies are
+     * sufficient (//a/b/c), but in other cases target level dependencies are needed (//a/b/c:d). The caller of this
+     * method should provide as much detail as is available.
+     *
+     * @param sourceLabel
+     *            the label for the source package (e.g. //a/b/c or //a/b/c:d)
+     * @param depLabel
+     *            the label for the depended-on package (e.g. //foo or //foo:bar)
+     */
+    @Override
+    public synchronized void addDependency(String sourceLabel, String depLabel) {
+        LOG.debug("{} depends on {}", sourceLabel, depLabel);
+        int sourceId = getOrAssignId(sourceLabel);
+        int depId = getOrAssignId(depLabel);
+
+        if (edgeCount == edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+            edgeDeps = Arrays.copyOf(edgeDeps, edgeCount * 2);
+        }
+        edgeSources[edgeCount] = sourceId;
+        edgeDeps[edgeCount] = depId;
+        edgeCount++;
+        index = null;
+    }
+
+    // LOOKUPS
+
+    /**
+     * Provides a map for tracking forward deps. The key is the label as a string, and the value is the set of
+     * dependencies (as labels) for the source.
+     * <p>
+     * The map is an unmodifiable snapshot that is built on each call, use it sparingly on large graphs.
+     */
+    @Override
+    public Map<String, Set<String>> getDependsOnMap() {
+        Index idx = getIndex();
+        return toLabelMap(idx, idx.dependsOnOffsets, idx.dependsOn);
+    }
+
+    /**
+     * Provides a map for tracking reverse deps. The key is the label as a string, and the value is the set of sources
+     * (as labels) that depend on the label.
+     * <p>
+     * The map is an unmodifiable snapshot that is built on each call, use it sparingly on large graphs.
+     */
+    @Override
+    public Map<String, Set<String>> getUsedByMap() {
+        Index idx = getIndex();
+        return toLabelMap(idx, idx.usedByOffsets, idx.usedBy);
+    }
+
+    /**
+     * Returns the set of labels that are not dependencies for other labels in the workspace. If A depends on B, which
+     * depends on C, this method will return A.
+     */
+    @Override
+    public Set<String> getRootLabels() {
+        return getIndex().rootLabels;
+    }
+
+    /**
+     * Returns the set of labels that exist as dependencies to other labels in the workspace, and do not have any
+     * dependencies on other labels. If A depends on B, which depends on C, this method will return C. If a label stands
+     * alone (i.e. it has not dependency, and is not depended on by another node, it is not included).
+     */
+    @Override
+    public Set<String> getLeafLabels() {
+        return getIndex().leafLabels;
+    }
+
+    /**
+     * Returns the set of labels that exist as dependencies to other labels in the workspace, and do not have any
+     * dependencies on other labels. If A depends on B, which depends on C, this method will return C. If a label stands
+     * alone (i.e. it has not dependency, and is not depended on by another node, it is not included).
+     * <p>
+     * If a label only depends on external deps (e.g. @maven//:com_spring_etc), it will be considered a leaf node only
+     * if the passed ignoreExternals is set to true
+     */
+    @Override
+    public Set<String> getLeafLabels(boolean ignoreExternals) {
+        Index idx = getIndex();
+        return ignoreExternals ? idx.leafLabelsIgnoreExternals : idx.leafLabels;
+    }
+
+    /**
+     * Enables the ReachabilityIndex for isDependency() queries. The index is built on the first query after the graph
+     * was changed, which costs about as much as a few hundred (small graphs) to a few thousand (large graphs) searches
+     * of the graph, and then answers each query without a search. Enable it if isDependency() will be called many
+     * times on a graph that is no longer changing.
+     */
+    public void setReachabilityIndexEnabled(boolean enabled) {
+        reachabilityIndexEnabled = enabled;
+    }
+
+    public boolean isReachabilityIndexEnabled() {
+        return reachabilityIndexEnabled;
+    }
+
+    /**
+     * The number of distinct labels in the graph.
+     */
+    public int getLabelCount() {
+        return getIndex().size;
+    }
+
+    /**
+     * The number of distinct edges in the graph.
+     */
+    public int getEdgeCount() {
+        return getIndex().dependsOn.length;
+    }
+
+    // ANALYSIS
+
+    /**
+     * Using the computed dependency graph, order the passed labels such that no label appears in the list prior to any
+     * label it depends on.
+     * <p>
+     * Note that there is almost always multiple valid solutions for any given graph+label selection.
+     */
+    @Override
+    public List<BazelPackageLocation> orderLabels(Set<BazelPackageLocation> selectedLabels) {
+        return orderLabels(new ArrayList<>(selectedLabels));
+    }
+
+    /**
+     * Using the computed dependency graph, order the passed labels such that no label appears in the list prior to any
+     * label it depends on.
+     * <p>
+     * Note that there is almost always multiple valid solutions for any given graph+label selection.
+     */
+    @Override
+    public List<BazelPackageLocation> orderLabels(List<BazelPackageLocation> selectedLabels) {
+        return orderLabels(selectedLabels, true);
+    }
+
+    /**
+     * Using the computed dependency graph, order the passed labels such that no label appears in the list prior to any
+     * label it depends on.
+     * <p>
+     * Note that there is almost always multiple valid solutions for any given graph+label selection. This
+     * implementation returns the selected labels in the post order of a depth first search started from each selected
+     * label in turn, so the result only depends on the graph and the order of the passed labels. Each label reachable
+     * from the selection is visited once.
+     * <p>
+     * Since this method is mostly used to order packages within the active Bazel workspace, you most often will not
+     * want to navigate into the dependency graph of the external dependencies (e.g. maven) while building the
+     * dependency graph. Pass false to followExternalTransitives to trigger this performance optimization.
+     */
+    @Override
+    public List<BazelPackageLocation> orderLabels(List<BazelPackageLocation> selectedLabels,
+            boolean followExternalTransitives) {
+        Index idx = getIndex();
+
+        // the same package may be selected more than once, keep all of them
+        Map<String, List<BazelPackageLocation>> selectedByLabel = new LinkedHashMap<>();
+        BitSet selectedIds = new BitSet(idx.size);
+        for (BazelPackageLocation selectedLabel : selectedLabels) {
+            String label = selectedLabel.getBazelPackageName();
+            selectedByLabel.computeIfAbsent(label, l -> new ArrayList<>(1)).add(selectedLabel);
+            Integer id = getId(label, idx);
+            if (id != null) {
+                selectedIds.set(id);
+            }
+        }
+
+        List<BazelPackageLocation> orderedLabels = new ArrayList<>(selectedLabels.size());
+        BitSet visited = new BitSet(idx.size);
+        int[] stack = new int[16];
+        int[] cursors = new int[16];
+        for (Map.Entry<String, List<BazelPackageLocation>> selected : selectedByLabel.entrySet()) {
+            Integer startId = getId(selected.getKey(), idx);
+            if (startId == null) {
+                // not in the graph, so it has no deps
+                orderedLabels.addAll(selected.getValue());
+                continue;
+            }
+            if (visited.get(startId)) {
+                // already emitted while searching from a label that depends on it
+                continue;
+            }
+
+            // iterative depth first search, a label is emitted once all of its deps have been
+            int depth = 0;
+            visited.set(startId);
+            stack[depth] = startId;
+            cursors[depth] = idx.dependsOnOffsets[startId];
+            depth++;
+            while (depth > 0) {
+                int id = stack[depth - 1];
+                boolean expand = followExternalTransitives || !externalLabels.get(id);
+                if (expand && (cursors[depth - 1] < idx.dependsOnOffsets[id + 1])) {
+                    int depId = idx.dependsOn[cursors[depth - 1]++];
+                    if (!visited.get(depId)) {
+                        visited.set(depId);
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, depth * 2);
+                            cursors = Arrays.copyOf(cursors, depth * 2);
+                        }
+                        stack[depth] = depId;
+                        cursors[depth] = idx.dependsOnOffsets[depId];
+                        depth++;
+                    }
+                } else {
+                    depth--;
+                    if (selectedIds.get(id)) {
+                        orderedLabels.addAll(selectedByLabel.get(idx.labels[id]));
+                    }
+                }
+            }
+        }
+        return orderedLabels;
+    }
+
+    /**
+     * Depth first search to determine if the passed <i>possibleDependency</i> is a direct or transitive dependency of
+     * the pass <i>label</i>
+     *
+     * @param label
+     * @param possibleDependency
+     * @return
+     */
+    @Override
+    public boolean isDependency(String label, String possibleDependency) {
+        return isDependency(label, possibleDependency, null, true);
+    }
+
+    /**
+     * Depth first search to determine if the passed <i>possibleDependency</i> is a direct or transitive dependency of
+     * the passed <i>label</i>. The cache is not used by this implementation, each search visits a label at most once.
+     *
+     * @param label
+     * @param possibleDependency
+     * @param depCache
+     */
+    @Override
+    public boolean isDependency(String label, String possibleDependency, Map<String, Boolean> depCache) {
+        return isDependency(label, possibleDependency, depCache, true);
+    }
+
+    /**
+     * Depth first search to determine if the passed <i>possibleDependency</i> is a direct or transitive dependency of
+     * the passed <i>label</i>. The cache is not used by this implementation, each search visits a label at most once.
+     *
+     * @param label
+     * @param possibleDependency
+     * @param depCache
+     * @param followExternalTransitives
+     *            if false, will not look for the possibleDependency if it is a transitive of an external dependency
+     *            (e.g. //abc depends on @maven//:foo which depends on @maven//:bar; this method will return false for
+     *            label=//abc and possibleDependency=@maven//:bar). This is a performance optimization.
+     */
+    @Override
+    public boolean isDependency(String label, String possibleDependency, Map<String, Boolean> depCache,
+            boolean followExternalTransitives) {
+        Index idx = getIndex();
+        Integer sourceId = getId(label, idx);
+        Integer targetId = getId(possibleDependency, idx);
+        if ((sourceId == null) || (targetId == null)) {
+            return false;
+        }
+        if (!followExternalTransitives && externalLabels.get(sourceId)) {
+            return false;
+        }
+        if (idx.usedByOffsets[targetId] == idx.usedByOffsets[targetId + 1]) {
+            // nothing depends on it
+            return false;
+        }
+        if (reachabilityIndexEnabled) {
+            return getReachabilityIndex(idx, followExternalTransitives).isReachable(sourceId, targetId);
+        }
+
+        BitSet visited = new BitSet(idx.size);
+        int[] stack = new int[16];
+        int depth = 0;
+        visited.set(sourceId);
+        stack[depth++] = sourceId;
+        while (depth > 0) {
+            int id = stack[--depth];
+            for (int i = idx.dependsOnOffsets[id]; i < idx.dependsOnOffsets[id + 1]; i++) {
+                int depId = idx.dependsOn[i];
+                if (depId == targetId) {
+                    return true;
+                }
+                if (!visited.get(depId)) {
+                    visited.set(depId);
+                    if (followExternalTransitives || !externalLabels.get(depId)) {
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, depth * 2);
+                        }
+                        stack[depth++] = depId;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // INTERNALS
+
+    private int getOrAssignId(String label) {
+        Integer id = labelIds.get(label);
+        if (id != null) {
+            return id;
+        }
+        if (labelCount == labels.length) {
+            labels = Arrays.copyOf(labels, labelCount * 2);
+        }
+        int newId = labelCount++;
+        labels[newId] = label;
+        labelIds.put(label, newId);
+        if (label.startsWith("@")) {
+            externalLabels.set(newId);
+        }
+        return newId;
+    }
+
+    /**
+     * Returns the id of the label, or null if the label is not part of the indexed graph.
+     */
+    private Integer getId(String label, Index idx) {
+        Integer id;
+        synchronized (this) {
+            id = labelIds.get(label);
+        }
+        return ((id != null) && (id < idx.size)) ? id : null;
+    }
+
+    private Index getIndex() {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    idx = buildIndex();
+                    index = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Compacts the edge journal into the CSR arrays. Duplicate edges are removed from the journal as well, so adding
+     * the same edges over and over does not grow the graph.
+     */
+    private Index buildIndex() {
+        int size = labelCount;
+
+        // forward: bucket the edges by source, then sort and dedupe the deps of each source
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[edgeSources[i] + 1]++;
+        }
+        for (int id = 0; id < size; id++) {
+            offsets[id + 1] += offsets[id];
+        }
+        int[] deps = new int[edgeCount];
+        int[] fill = Arrays.copyOf(offsets, size);
+        for (int i = 0; i < edgeCount; i++) {
+            deps[fill[edgeSources[i]]++] = edgeDeps[i];
+        }
+        int[] dependsOnOffsets = new int[size + 1];
+        int distinct = 0;
+        for (int id = 0; id < size; id++) {
+            Arrays.sort(deps, offsets[id], offsets[id + 1]);
+            dependsOnOffsets[id] = distinct;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if ((i == offsets[id]) || (deps[i] != deps[i - 1])) {
+                    deps[distinct++] = deps[i];
+                }
+            }
+        }
+        dependsOnOffsets[size] = distinct;
+        int[] dependsOn = Arrays.copyOf(deps, distinct);
+
+        // rewrite the journal without the duplicates
+        edgeSources = new int[Math.max(distinct, 256)];
+        edgeDeps = new int[edgeSources.length];
+        edgeCount = 0;
+        for (int id = 0; id < size; id++) {
+            for (int i = dependsOnOffsets[id]; i < dependsOnOffsets[id + 1]; i++) {
+                edgeSources[edgeCount] = id;
+                edgeDeps[edgeCount++] = dependsOn[i];
+            }
+        }
+
+        // reverse: since sources are visited in id order, the sources of each dep come out sorted
+        int[] usedByOffsets = new int[size + 1];
+        for (int depId : dependsOn) {
+            usedByOffsets[depId + 1]++;
+        }
+        for (int id = 0; id < size; id++) {
+            usedByOffsets[id + 1] += usedByOffsets[id];
+        }
+        int[] usedBy = new int[distinct];
+        fill = Arrays.copyOf(usedByOffsets, size);
+        for (int id = 0; id < size; id++) {
+            for (int i = dependsOnOffsets[id]; i < dependsOnOffsets[id + 1]; i++) {
+                usedBy[fill[dependsOn[i]]++] = id;
+            }
+        }
+
+        // ids are assigned in the order the labels are first seen, which keeps the sets in the same order as the
+        // InMemoryDependencyGraph
+        Set<String> rootLabels = new LinkedHashSet<>();
+        Set<String> leafLabels = new LinkedHashSet<>();
+        Set<String> leafLabelsIgnoreExternals = new LinkedHashSet<>();
+        for (int id = 0; id < size; id++) {
+            boolean hasDeps = dependsOnOffsets[id] < dependsOnOffsets[id + 1];
+            boolean isDep = usedByOffsets[id] < usedByOffsets[id + 1];
+            if (hasDeps && !isDep) {
+                rootLabels.add(labels[id]);
+            } else if (isDep && !hasDeps) {
+                leafLabels.add(labels[id]);
+            }
+            if (isDep && !externalLabels.get(id) && !hasInternalDep(id, dependsOnOffsets, dependsOn)) {
+                leafLabelsIgnoreExternals.add(labels[id]);
+            }
+        }
+        LOG.debug("Indexed dependency graph with {} labels and {} edges", size, distinct);
+
+        return new Index(size, labels, dependsOnOffsets, dependsOn, usedByOffsets, usedBy,
+                Collections.unmodifiableSet(rootLabels), Collections.unmodifiableSet(leafLabels),
+                Collections.unmodifiableSet(leafLabelsIgnoreExternals));
+    }
+
+    private boolean hasInternalDep(int id, int[] dependsOnOffsets, int[] dependsOn) {
+        for (int i = dependsOnOffsets[id]; i < dependsOnOffsets[id + 1]; i++) {
+            if (!externalLabels.get(dependsOn[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ReachabilityIndex getReachabilityIndex(Index idx, boolean followExternalTransitives) {
+        synchronized (idx) {
+            if (followExternalTransitives) {
+                if (idx.followingExternals == null) {
+                    idx.followingExternals = ReachabilityIndex.build(toDepArrays(idx, true));
+                }
+                return idx.followingExternals;
+            }
+            if (idx.notFollowingExternals == null) {
+                idx.notFollowingExternals = ReachabilityIndex.build(toDepArrays(idx, false));
+            }
+            return idx.notFollowingExternals;
+        }
+    }
+
+    private int[][] toDepArrays(Index idx, boolean followExternalTransitives) {
+        int[][] deps = new int[idx.size][];
+        for (int id = 0; id < idx.size; id++) {
+            if (!followExternalTransitives && externalLabels.get(id)) {
+                // the deps of external labels are not searched
+                deps[id] = new int[0];
+            } else {
+                deps[id] = Arrays.copyOfRange(idx.dependsOn, idx.dependsOnOffsets[id], idx.dependsOnOffsets[id + 1]);
+            }
+        }
+        return deps;
+    }
+
+    private static Map<String, Set<String>> toLabelMap(Index idx, int[] offsets, int[] edges) {
+        Map<String, Set<String>> map = new TreeMap<>();
+        for (int id = 0; id < idx.size; id++) {
+            if (offsets[id] == offsets[id + 1]) {
+                continue;
+            }
+            Set<String> edgeLabels = new LinkedHashSet<>();
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                edgeLabels.add(idx.labels[edges[i]]);
+            }
+            map.put(idx.labels[id], Collections.unmodifiableSet(edgeLabels));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Immutable CSR index of the graph. The edges of label id are in dependsOn[dependsOnOffsets[id]] up to (not
+     * including) dependsOn[dependsOnOffsets[id + 1]], the same applies to usedBy.
+     */
+    private static class Index {
+        final int size;
+        // only ids below size are read, so later additions to the array do not affect the index
+        final String[] labels;
+        final int[] dependsOnOffsets;
+        final int[] dependsOn;
+        final int[] usedByOffsets;
+        final int[] usedBy;
+        final Set<String> rootLabels;
+        final Set<String> leafLabels;
+        final Set<String> leafLabelsIgnoreExternals;
+        // built on first use, one for each value of followExternalTransitives
+        ReachabilityIndex followingExternals;
+        ReachabilityIndex notFollowingExternals;
+
+        Index(int size, String[] labels, int[] dependsOnOffsets, int[] dependsOn, int[] usedByOffsets, int[] usedBy,
+                Set<String> rootLabels, Set<String> leafLabels, Set<String> leafLabelsIgnoreExternals) {
+            this.size = size;
+            this.labels = labels;
+            this.dependsOnOffsets = dependsOnOffsets;
+            this.dependsOn = dependsOn;
+            this.usedByOffsets = usedByOffsets;
+            this.usedBy = usedBy;
+            this.rootLabels = rootLabels;
+            this.leafLabels = leafLabels;
+            this.leafLabelsIgnoreExternals = leafLabelsIgnoreExternals;
+        }
+    }
+}
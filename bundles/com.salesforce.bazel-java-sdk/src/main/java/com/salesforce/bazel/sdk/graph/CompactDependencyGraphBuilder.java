@@ -0,0 +1,31 @@
+package com.salesforce.bazel.sdk.graph;
+
+import java.util.Map;
+
+/**
+ * BazelDependencyGraphBuilder that builds CompactDependencyGraph instances. It only builds a graph if the options
+ * select it with {@link BazelDependencyGraphFactory#OPTION_GRAPH_IMPL} set to {@link #GRAPH_IMPL_COMPACT}, otherwise it
+ * abstains.
+ */
+public class CompactDependencyGraphBuilder implements BazelDependencyGraphBuilder {
+
+    /**
+     * Value of the BazelDependencyGraphFactory.OPTION_GRAPH_IMPL option that selects the CompactDependencyGraph.
+     */
+    public static final String GRAPH_IMPL_COMPACT = "compact";
+
+    @Override
+    public BazelDependencyGraph build(String caller, Map<String, String> options) {
+        if (options == null) {
+            return null;
+        }
+        if (GRAPH_IMPL_COMPACT.equals(options.get(BazelDependencyGraphFactory.OPTION_GRAPH_IMPL))) {
+            CompactDependencyGraph graph = new CompactDependencyGraph();
+            graph.setReachabilityIndexEnabled(
+                "true".equals(options.get(BazelDependencyGraphFactory.OPTION_REACHABILITY_INDEX)));
+            return graph;
+        }
+        return null;
+    }
+
+}
@@ -1,7 +1,10 @@
 package com.salesforce.bazel.sdk.graph;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -67,6 +70,11 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
     // USED BY map in which the key is a label, and the value is the set of label that depend on the label
     Map<String, Set<String>> usedByMap = new TreeMap<>();
 
+    // optional index that answers isDependency() without crawling the graph, built on the first query after a change;
+    // the flag is read without the lock by every isDependency() call, the index is only accessed with the lock held
+    volatile boolean reachabilityIndexEnabled = false;
+    LabelReachability reachability; // guarded by this
+
     /**
      * Callers should use the factories to construct the graph.
      */
@@ -128,6 +136,24 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
         }
         usedbySources.add(sourceLabel);
 
+        synchronized (this) {
+            reachability = null;
+        }
+    }
+
+    /**
+     * Enables the ReachabilityIndex for isDependency() queries. The index is built on the first query after the graph
+     * was changed, which costs about as much as a few hundred (small graphs) to a few thousand (large graphs) crawls of
+     * the graph, and then answers each query without a crawl. Enable it if isDependency() will be called many times
+     * on a graph that is no longer changing.
+     */
+    public synchronized void setReachabilityIndexEnabled(boolean enabled) {
+        reachabilityIndexEnabled = enabled;
+        reachability = null;
+    }
+
+    public boolean isReachabilityIndexEnabled() {
+        return reachabilityIndexEnabled;
     }
 
     // ACCESSORS
@@ -224,57 +250,48 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
     @Override
     public List<BazelPackageLocation> orderLabels(List<BazelPackageLocation> selectedLabels,
             boolean followExternalTransitives) {
-        LinkedList<BazelPackageLocation> orderedLabels = null;
-
         /*
-         * This is a simple algorithm. It is based on the idea that this method will be used in cases
-         * in which the dependency graph can be HUGE (100,000+ edges, 10,000+ nodes) and COMPLEX (lots of overlap
-         * of trees). And the user is likely working on a small subset of that graph.
-         * For example, an IDE user wants to import a handful of related packages from a monorepo in which
-         * hundreds/thousands of packages live, and most of the dependency graph is not reachable by the
-         * imported packages. It still works if the selectedLabels reach most/all of the graph, it just is
-         * not the most efficient solution in those cases.
+         * This method is used in cases in which the dependency graph can be HUGE (100,000+ edges, 10,000+ nodes)
+         * and COMPLEX (lots of overlap of trees), and the selection can be large as well (an IDE user importing
+         * a thousand packages from a monorepo). So the ordering is a topological sort of the part of the graph
+         * that is reachable from the selected labels, which visits each label and edge of that part once. Among
+         * labels that do not depend on each other, the selection order is kept.
          */
 
-        Map<String, Boolean> depCache = new HashMap<>();
-        for (int i = 0; i < selectedLabels.size(); i++) {
-            /*
-             * Why do we do the ordering more than once? There are cases in which a single pass, or even two,
-             * will not be correct. Since we cache isDep() decisions (the expensive part) multiple passes are
-             * a cheap operation, so just do it as many times as there are elements in the selected array.
-             * In all known cases the answer will be correct. But this is not guaranteed. If you find a use case
-             * where this approach is not good enough, we will need to implement a more powerful solution.
-             */
-
-            orderedLabels = new LinkedList<>();
-            for (BazelPackageLocation currentLabel : selectedLabels) {
-                int currentIndex = 0;
-                boolean inserted = false;
-                for (BazelPackageLocation priorInsertedLabel : orderedLabels) {
-                    if (isDependency(priorInsertedLabel.getBazelPackageName(), currentLabel.getBazelPackageName(),
-                        depCache, followExternalTransitives)) {
-                        // the label is a dependency of an item already in the list, we need to insert
-                        orderedLabels.add(currentIndex, currentLabel);
-                        inserted = true;
-                        break;
-                    }
-                    currentIndex++;
-                }
-                if (!inserted) {
-                    // none of the previously seen labels depends on the current label, so just add it to the end
-                    orderedLabels.add(currentLabel);
-                }
-            }
-            selectedLabels = orderedLabels;
+        // the same package may be selected more than once, keep all of them
+        Map<String, List<BazelPackageLocation>> selectedByLabel = new LinkedHashMap<>();
+        for (BazelPackageLocation selectedLabel : selectedLabels) {
+            selectedByLabel.computeIfAbsent(selectedLabel.getBazelPackageName(), l -> new ArrayList<>(1))
+                    .add(selectedLabel);
+        }
+        List<String> distinctLabels = new ArrayList<>(selectedByLabel.keySet());
+
+        LabelTopologicalSorter sorter = new LabelTopologicalSorter(dependsOnMap::get, followExternalTransitives);
+        int[] order = sorter.order(distinctLabels);
+        for (List<String> cycle : sorter.getCycles()) {
+            LOG.warn("Found a dependency cycle between packages {}. This is probably not a bug, but a case where "
+                    + "Bazel packages reference each other, which is legal in Bazel but is not modeled by this "
+                    + "dependency graph. These packages are ordered as they were selected.", cycle);
         }
 
-        // just a reminder that the cache gets cleared to free up possibly a lot of memory if the graph is huge and the
-        // ordering required traversing a lot of it
-        depCache = null;
-
+        List<BazelPackageLocation> orderedLabels = new ArrayList<>(selectedLabels.size());
+        for (int position : order) {
+            orderedLabels.addAll(selectedByLabel.get(distinctLabels.get(position)));
+        }
         return orderedLabels;
     }
 
+    /**
+     * Finds the dependency cycles that can be reached from the passed labels. Each cycle is a strongly connected
+     * component of the graph: a set of labels that all (transitively) depend on each other, or a single label that
+     * depends on itself.
+     */
+    public List<List<String>> findCycles(Collection<String> labels, boolean followExternalTransitives) {
+        LabelTopologicalSorter sorter = new LabelTopologicalSorter(dependsOnMap::get, followExternalTransitives);
+        sorter.order(new ArrayList<>(new LinkedHashSet<>(labels)));
+        return sorter.getCycles();
+    }
+
     /**
      * Depth first search to determine if the passed <i>possibleDependency</i> is a direct or transitive dependency of
      * the pass <i>label</i>
@@ -285,6 +302,9 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
      */
     @Override
     public boolean isDependency(String label, String possibleDependency) {
+        if (reachabilityIndexEnabled) {
+            return isDependencyIndexed(label, possibleDependency, true);
+        }
         boolean isDep = isDependencyRecur(label, possibleDependency, null, new HashSet<>(), true);
         return isDep;
     }
@@ -301,6 +321,9 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
      */
     @Override
     public boolean isDependency(String label, String possibleDependency, Map<String, Boolean> depCache) {
+        if (reachabilityIndexEnabled) {
+            return isDependencyIndexed(label, possibleDependency, true);
+        }
         boolean isDep = isDependencyRecur(label, possibleDependency, depCache, new HashSet<>(), true);
         return isDep;
     }
@@ -322,6 +345,9 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
     @Override
     public boolean isDependency(String label, String possibleDependency, Map<String, Boolean> depCache,
             boolean followExternalTransitives) {
+        if (reachabilityIndexEnabled) {
+            return isDependencyIndexed(label, possibleDependency, followExternalTransitives);
+        }
         boolean isDep =
                 isDependencyRecur(label, possibleDependency, depCache, new HashSet<>(), followExternalTransitives);
         return isDep;
@@ -384,4 +410,79 @@ public class InMemoryDependencyGraph extends BazelDependencyGraph {
         }
         return retval;
     }
+
+    private boolean isDependencyIndexed(String label, String possibleDependency, boolean followExternalTransitives) {
+        if (!followExternalTransitives && label.startsWith("@")) {
+            return false;
+        }
+        LabelReachability current;
+        synchronized (this) {
+            if (reachability == null) {
+                reachability = new LabelReachability(dependsOnMap, usedByMap);
+            }
+            current = reachability;
+        }
+        return current.isDependency(label, possibleDependency, followExternalTransitives);
+    }
+
+    /**
+     * Assigns int ids to the labels of the graph, and holds a ReachabilityIndex for each value of
+     * followExternalTransitives, built when first needed.
+     */
+    private static class LabelReachability {
+        final Map<String, Integer> ids = new HashMap<>();
+        final int[][] deps;
+        ReachabilityIndex followingExternals;
+        ReachabilityIndex notFollowingExternals;
+
+        LabelReachability(Map<String, Set<String>> dependsOnMap, Map<String, Set<String>> usedByMap) {
+            for (String label : dependsOnMap.keySet()) {
+                ids.put(label, ids.size());
+            }
+            for (String label : usedByMap.keySet()) {
+                ids.putIfAbsent(label, ids.size());
+            }
+            deps = new int[ids.size()][];
+            for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+                Set<String> labelDeps = dependsOnMap.get(entry.getKey());
+                int[] depIds = new int[labelDeps == null ? 0 : labelDeps.size()];
+                int i = 0;
+                if (labelDeps != null) {
+                    for (String dep : labelDeps) {
+                        depIds[i++] = ids.get(dep);
+                    }
+                }
+                deps[entry.getValue()] = depIds;
+            }
+        }
+
+        boolean isDependency(String label, String possibleDependency, boolean followExternalTransitives) {
+            Integer labelId = ids.get(label);
+            Integer depId = ids.get(possibleDependency);
+            if ((labelId == null) || (depId == null)) {
+                return false;
+            }
+            return getIndex(followExternalTransitives).isReachable(labelId, depId);
+        }
+
+        synchronized ReachabilityIndex getIndex(boolean followExternalTransitives) {
+            if (followExternalTransitives) {
+                if (followingExternals == null) {
+                    followingExternals = ReachabilityIndex.build(deps);
+                }
+                return followingExternals;
+            }
+            if (notFollowingExternals == null) {
+                // the deps of external labels are not crawled
+                int[][] internalDeps = deps.clone();
+                for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+                    if (entry.getKey().startsWith("@")) {
+                        internalDeps[entry.getValue()] = new int[0];
+                    }
+                }
+                notFollowingExternals = ReachabilityIndex.build(internalDeps);
+            }
+            return notFollowingExternals;
+        }
+    }
 }
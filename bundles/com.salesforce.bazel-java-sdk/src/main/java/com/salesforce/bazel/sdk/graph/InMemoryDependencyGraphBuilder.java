@@ -9,7 +9,11 @@ public class InMemoryDependencyGraphBuilder implements BazelDependencyGraphBuild
 
     @Override
     public BazelDependencyGraph build(String caller, Map<String, String> options) {
-        return new InMemoryDependencyGraph();
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        if ((options != null) && "true".equals(options.get(BazelDependencyGraphFactory.OPTION_REACHABILITY_INDEX))) {
+            graph.setReachabilityIndexEnabled(true);
+        }
+        return graph;
     }
 
 }
@@ -0,0 +1,229 @@
+package com.salesforce.bazel.sdk.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Orders a selection of labels such that no label appears before a label it (transitively) depends on, in time linear
+ * to the part of the graph that is reachable from the selection.
+ * <p>
+ * The reachable labels are first grouped into strongly connected components (Tarjan). A component with more than one
+ * label, or a label that depends on itself, is a dependency cycle; these are reported rather than broken at an
+ * arbitrary edge. The components are then ordered with Kahn's algorithm. When several components are ready, the ones
+ * needed by the earliest selected label win, so the result is deterministic and keeps the selection order wherever the
+ * graph allows it. The labels of a cycle are returned together, in selection order.
+ */
+class LabelTopologicalSorter {
+
+    private final Function<String, Collection<String>> dependsOn;
+    private final boolean followExternalTransitives;
+
+    // the labels reachable from the selection, indexed by local id; the selected labels come first
+    private final List<String> labels = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int[][] deps;
+
+    // strongly connected component of each label, numbered in the order Tarjan completes them (deps first)
+    private int[] components;
+    private int componentCount;
+
+    /**
+     * @param dependsOn
+     *            returns the direct deps of a label, or null if it has none
+     * @param followExternalTransitives
+     *            if false, the deps of external labels (e.g. @maven//:foo) are not followed
+     */
+    LabelTopologicalSorter(Function<String, Collection<String>> dependsOn, boolean followExternalTransitives) {
+        this.dependsOn = dependsOn;
+        this.followExternalTransitives = followExternalTransitives;
+    }
+
+    /**
+     * Returns the positions of the passed (distinct) labels in dependency order.
+     */
+    int[] order(List<String> selectedLabels) {
+        index(selectedLabels);
+        int selectedCount = selectedLabels.size();
+
+        // the selected members of each component, and the lowest selection position in each (MAX_VALUE if none is
+        // selected); ids are visited in selection order, so the members are sorted by it
+        int[] selectedSizes = new int[componentCount];
+        int[] componentPriority = new int[componentCount];
+        Arrays.fill(componentPriority, Integer.MAX_VALUE);
+        for (int id = 0; id < selectedCount; id++) {
+            selectedSizes[components[id]]++;
+            componentPriority[components[id]] = Math.min(componentPriority[components[id]], id);
+        }
+        int[][] selectedMembers = new int[componentCount][];
+        int[] fill = new int[componentCount];
+        for (int id = 0; id < selectedCount; id++) {
+            int component = components[id];
+            if (selectedMembers[component] == null) {
+                selectedMembers[component] = new int[selectedSizes[component]];
+            }
+            selectedMembers[component][fill[component]++] = id;
+        }
+
+        // condensed graph: for each component, the number of deps on other components still to be emitted, and the
+        // components that depend on it
+        int[] pendingDeps = new int[componentCount];
+        int[] usedByOffsets = new int[componentCount + 1];
+        for (int id = 0; id < labels.size(); id++) {
+            for (int dep : deps[id]) {
+                if (components[dep] != components[id]) {
+                    pendingDeps[components[id]]++;
+                    usedByOffsets[components[dep] + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            usedByOffsets[c + 1] += usedByOffsets[c];
+        }
+        int[] usedBy = new int[usedByOffsets[componentCount]];
+        int[] usedByFill = Arrays.copyOf(usedByOffsets, componentCount);
+        for (int id = 0; id < labels.size(); id++) {
+            for (int dep : deps[id]) {
+                if (components[dep] != components[id]) {
+                    usedBy[usedByFill[components[dep]]++] = components[id];
+                }
+            }
+        }
+
+        // the priority of a component is the first selection position of it or of any component that depends on it,
+        // so the deps of the first selected label are emitted before anything else; components are numbered deps
+        // first, so the users of a component are final before it is visited
+        for (int c = componentCount - 1; c >= 0; c--) {
+            for (int i = usedByOffsets[c]; i < usedByOffsets[c + 1]; i++) {
+                componentPriority[c] = Math.min(componentPriority[c], componentPriority[usedBy[i]]);
+            }
+        }
+
+        // Kahn, with a bucket queue per priority; a component never has a lower priority than its deps, so the
+        // current bucket only moves forward
+        int[] bucketHeads = new int[selectedCount];
+        int[] bucketTails = new int[selectedCount];
+        Arrays.fill(bucketHeads, -1);
+        int[] nextInBucket = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            if (pendingDeps[c] == 0) {
+                enqueue(c, componentPriority[c], bucketHeads, bucketTails, nextInBucket);
+            }
+        }
+        int[] ordered = new int[selectedCount];
+        int orderedCount = 0;
+        for (int bucket = 0; bucket < selectedCount; bucket++) {
+            while (bucketHeads[bucket] >= 0) {
+                int c = bucketHeads[bucket];
+                bucketHeads[bucket] = nextInBucket[c];
+                if (selectedMembers[c] != null) {
+                    for (int id : selectedMembers[c]) {
+                        ordered[orderedCount++] = id;
+                    }
+                }
+                for (int i = usedByOffsets[c]; i < usedByOffsets[c + 1]; i++) {
+                    int user = usedBy[i];
+                    if (--pendingDeps[user] == 0) {
+                        enqueue(user, componentPriority[user], bucketHeads, bucketTails, nextInBucket);
+                    }
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the dependency cycles that are reachable from the passed labels, each as the labels of the cycle in the
+     * order they were found. Only valid after order() was called.
+     */
+    List<List<String>> getCycles() {
+        List<List<String>> members = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            members.add(null);
+        }
+        for (int id = 0; id < labels.size(); id++) {
+            int c = components[id];
+            if (members.get(c) == null) {
+                members.set(c, new ArrayList<>(1));
+            }
+            members.get(c).add(labels.get(id));
+        }
+        List<List<String>> cycles = new ArrayList<>();
+        for (int c = 0; c < componentCount; c++) {
+            List<String> cycle = members.get(c);
+            if ((cycle.size() > 1) || dependsOnItself(ids.get(cycle.get(0)))) {
+                cycles.add(Collections.unmodifiableList(cycle));
+            }
+        }
+        return cycles;
+    }
+
+    // INTERNALS
+
+    /**
+     * Assigns ids to the labels reachable from the selection, and computes the strongly connected components.
+     */
+    private void index(List<String> selectedLabels) {
+        for (String label : selectedLabels) {
+            id(label);
+        }
+
+        // breadth first discovery of the reachable labels; deps are sorted so the ids do not depend on hash order
+        List<int[]> depList = new ArrayList<>();
+        for (int id = 0; id < labels.size(); id++) {
+            String label = labels.get(id);
+            Collection<String> labelDeps = null;
+            if (followExternalTransitives || !label.startsWith("@")) {
+                labelDeps = dependsOn.apply(label);
+            }
+            if ((labelDeps == null) || labelDeps.isEmpty()) {
+                depList.add(new int[0]);
+                continue;
+            }
+            List<String> sortedDeps = new ArrayList<>(labelDeps);
+            Collections.sort(sortedDeps);
+            int[] depIds = new int[sortedDeps.size()];
+            for (int i = 0; i < depIds.length; i++) {
+                depIds[i] = id(sortedDeps.get(i));
+            }
+            depList.add(depIds);
+        }
+        deps = depList.toArray(new int[depList.size()][]);
+        components = new int[deps.length];
+        componentCount = StronglyConnectedComponents.compute(deps, components);
+    }
+
+    private int id(String label) {
+        Integer id = ids.get(label);
+        if (id == null) {
+            id = labels.size();
+            labels.add(label);
+            ids.put(label, id);
+        }
+        return id;
+    }
+
+    private static void enqueue(int component, int bucket, int[] bucketHeads, int[] bucketTails, int[] nextInBucket) {
+        nextInBucket[component] = -1;
+        if (bucketHeads[bucket] < 0) {
+            bucketHeads[bucket] = component;
+        } else {
+            nextInBucket[bucketTails[bucket]] = component;
+        }
+        bucketTails[bucket] = component;
+    }
+
+    private boolean dependsOnItself(int id) {
+        for (int dep : deps[id]) {
+            if (dep == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,331 @@
+package com.salesforce.bazel.sdk.graph;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed answers to "does node A (transitively) depend on node B" for a graph of int ids, so that isDependency()
+ * does not crawl the graph on each call.
+ * <p>
+ * The graph is first condensed into its strongly connected components, so the rest only deals with a DAG. Then:
+ * <ul>
+ * <li>small graphs (up to {@link #CLOSURE_MAX_COMPONENTS} components) store the transitive closure of each component
+ * as a bitset. A query is a single bit lookup, the memory is components^2 bits (8MB at the limit).
+ * <li>larger graphs use 2-hop labeling (pruned landmark labeling): each component gets a sorted list of the hubs it
+ * reaches and of the hubs that reach it, and A reaches B if the lists share a hub. Hubs are picked in order of degree,
+ * and the search from a hub stops at components that already share a hub with it, which keeps the lists short on
+ * Bazel graphs (most labels reach a handful of heavily used labels). A query is a merge of two short lists.
+ * </ul>
+ * The index is immutable. Graphs drop their index when a dependency is added, and build a new one on the next query.
+ */
+public class ReachabilityIndex {
+
+    /**
+     * Graphs with more components than this use 2-hop labeling rather than closure bitsets.
+     */
+    public static final int CLOSURE_MAX_COMPONENTS = 8192;
+
+    private final int[] components;
+    // true if the component is a cycle, meaning its nodes reach themselves
+    private final boolean[] cyclic;
+
+    // closure mode: bit d of closures[c] is set if component c reaches component d
+    private final long[][] closures;
+
+    // 2-hop mode: the hubs (by rank) reachable from each component, and the hubs that reach it, sorted
+    private final int[][] hubsOut;
+    private final int[][] hubsIn;
+
+    private ReachabilityIndex(int[] components, boolean[] cyclic, long[][] closures, int[][] hubsOut,
+            int[][] hubsIn) {
+        this.components = components;
+        this.cyclic = cyclic;
+        this.closures = closures;
+        this.hubsOut = hubsOut;
+        this.hubsIn = hubsIn;
+    }
+
+    // PUBLIC API
+
+    /**
+     * Builds the index, using closure bitsets or 2-hop labels depending on the size of the graph.
+     *
+     * @param deps
+     *            the ids of the direct deps of each node
+     */
+    public static ReachabilityIndex build(int[][] deps) {
+        return build(deps, CLOSURE_MAX_COMPONENTS);
+    }
+
+    /**
+     * Builds the index, using closure bitsets if the graph has at most closureMaxComponents strongly connected
+     * components, and 2-hop labels otherwise.
+     */
+    public static ReachabilityIndex build(int[][] deps, int closureMaxComponents) {
+        int[] components = new int[deps.length];
+        int componentCount = StronglyConnectedComponents.compute(deps, components);
+
+        // condense, dropping edges within a component and duplicate edges
+        boolean[] cyclic = new boolean[componentCount];
+        int[] componentSizes = new int[componentCount];
+        for (int id = 0; id < deps.length; id++) {
+            componentSizes[components[id]]++;
+        }
+        int[][] componentDeps = new int[componentCount][];
+        int[] lastSeen = new int[componentCount];
+        Arrays.fill(lastSeen, -1);
+        int[] buffer = new int[16];
+        int[][] members = membersOf(components, componentSizes);
+        for (int c = 0; c < componentCount; c++) {
+            cyclic[c] = componentSizes[c] > 1;
+            int count = 0;
+            for (int id : members[c]) {
+                for (int dep : deps[id]) {
+                    int depComponent = components[dep];
+                    if (dep == id) {
+                        cyclic[c] = true;
+                    }
+                    if ((depComponent != c) && (lastSeen[depComponent] != c)) {
+                        lastSeen[depComponent] = c;
+                        if (count == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, count * 2);
+                        }
+                        buffer[count++] = depComponent;
+                    }
+                }
+            }
+            componentDeps[c] = Arrays.copyOf(buffer, count);
+        }
+
+        if (componentCount <= closureMaxComponents) {
+            return new ReachabilityIndex(components, cyclic, closures(componentDeps), null, null);
+        }
+        int[][][] hubs = twoHopLabels(componentDeps);
+        return new ReachabilityIndex(components, cyclic, null, hubs[0], hubs[1]);
+    }
+
+    /**
+     * Returns true if there is a path of at least one edge from the node to the other node. A node only reaches itself
+     * if it is part of a cycle.
+     */
+    public boolean isReachable(int fromId, int toId) {
+        int from = components[fromId];
+        int to = components[toId];
+        if (from == to) {
+            return cyclic[from];
+        }
+        if (closures != null) {
+            return (closures[from][to >>> 6] & (1L << to)) != 0;
+        }
+        // both lists are sorted by hub rank
+        int[] out = hubsOut[from];
+        int[] in = hubsIn[to];
+        int i = 0;
+        int j = 0;
+        while ((i < out.length) && (j < in.length)) {
+            if (out[i] == in[j]) {
+                return true;
+            }
+            if (out[i] < in[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if the index stores closure bitsets, false if it stores 2-hop labels.
+     */
+    public boolean isClosureIndex() {
+        return closures != null;
+    }
+
+    public int getNodeCount() {
+        return components.length;
+    }
+
+    /**
+     * Estimate of the heap used by the index, in bytes.
+     */
+    public long getEstimatedMemoryBytes() {
+        long bytes = (4L * components.length) + cyclic.length;
+        if (closures != null) {
+            for (long[] closure : closures) {
+                bytes += 16 + (8L * closure.length);
+            }
+        } else {
+            for (int c = 0; c < hubsOut.length; c++) {
+                bytes += 32 + (4L * hubsOut[c].length) + (4L * hubsIn[c].length);
+            }
+        }
+        return bytes;
+    }
+
+    // INTERNALS
+
+    private static int[][] membersOf(int[] components, int[] componentSizes) {
+        int[][] members = new int[componentSizes.length][];
+        int[] fill = new int[componentSizes.length];
+        for (int c = 0; c < componentSizes.length; c++) {
+            members[c] = new int[componentSizes[c]];
+        }
+        for (int id = 0; id < components.length; id++) {
+            members[components[id]][fill[components[id]]++] = id;
+        }
+        return members;
+    }
+
+    /**
+     * Components are numbered deps first, so the closures of the deps are complete when a component is visited.
+     */
+    private static long[][] closures(int[][] componentDeps) {
+        int componentCount = componentDeps.length;
+        int words = (componentCount + 63) >>> 6;
+        long[][] closures = new long[componentCount][];
+        for (int c = 0; c < componentCount; c++) {
+            long[] closure = new long[words];
+            for (int dep : componentDeps[c]) {
+                closure[dep >>> 6] |= 1L << dep;
+                long[] depClosure = closures[dep];
+                for (int w = 0; w < words; w++) {
+                    closure[w] |= depClosure[w];
+                }
+            }
+            closures[c] = closure;
+        }
+        return closures;
+    }
+
+    /**
+     * Pruned landmark labeling of a DAG. Returns the out labels and the in labels of each component.
+     */
+    private static int[][][] twoHopLabels(int[][] componentDeps) {
+        int componentCount = componentDeps.length;
+
+        // reverse edges
+        int[] usedByCounts = new int[componentCount];
+        for (int[] deps : componentDeps) {
+            for (int dep : deps) {
+                usedByCounts[dep]++;
+            }
+        }
+        int[][] usedBy = new int[componentCount][];
+        for (int c = 0; c < componentCount; c++) {
+            usedBy[c] = new int[usedByCounts[c]];
+        }
+        int[] fill = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            for (int dep : componentDeps[c]) {
+                usedBy[dep][fill[dep]++] = c;
+            }
+        }
+
+        // hubs in order of decreasing (in + 1) * (out + 1), ties by component number so the index is deterministic
+        Integer[] byDegree = new Integer[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            byDegree[c] = c;
+        }
+        Arrays.sort(byDegree, (a, b) -> {
+            long degreeA = (usedBy[a].length + 1L) * (componentDeps[a].length + 1L);
+            long degreeB = (usedBy[b].length + 1L) * (componentDeps[b].length + 1L);
+            return degreeA != degreeB ? Long.compare(degreeB, degreeA) : Integer.compare(a, b);
+        });
+
+        IntLists hubsOut = new IntLists(componentCount);
+        IntLists hubsIn = new IntLists(componentCount);
+        int[] queue = new int[componentCount];
+        int[] visitedBy = new int[componentCount];
+        Arrays.fill(visitedBy, -1);
+        for (int rank = 0; rank < componentCount; rank++) {
+            int hub = byDegree[rank];
+
+            // forward: every component the hub reaches gets the hub as an in label, unless already covered
+            visitedBy[hub] = 2 * rank;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = hub;
+            while (head < tail) {
+                int c = queue[head++];
+                if ((c != hub) && hubsOut.intersects(hub, hubsIn, c)) {
+                    continue;
+                }
+                hubsIn.add(c, rank);
+                for (int dep : componentDeps[c]) {
+                    if (visitedBy[dep] != (2 * rank)) {
+                        visitedBy[dep] = 2 * rank;
+                        queue[tail++] = dep;
+                    }
+                }
+            }
+
+            // backward: every component that reaches the hub gets the hub as an out label, unless already covered
+            visitedBy[hub] = (2 * rank) + 1;
+            head = 0;
+            tail = 0;
+            queue[tail++] = hub;
+            while (head < tail) {
+                int c = queue[head++];
+                if ((c != hub) && hubsOut.intersects(c, hubsIn, hub)) {
+                    continue;
+                }
+                hubsOut.add(c, rank);
+                for (int user : usedBy[c]) {
+                    if (visitedBy[user] != ((2 * rank) + 1)) {
+                        visitedBy[user] = (2 * rank) + 1;
+                        queue[tail++] = user;
+                    }
+                }
+            }
+        }
+        return new int[][][] { hubsOut.toArrays(), hubsIn.toArrays() };
+    }
+
+    /**
+     * Growable sorted int lists, one per component. Ranks are added in increasing order, so they stay sorted.
+     */
+    private static class IntLists {
+        final int[][] lists;
+        final int[] sizes;
+
+        IntLists(int count) {
+            lists = new int[count][];
+            sizes = new int[count];
+        }
+
+        void add(int c, int value) {
+            if (lists[c] == null) {
+                lists[c] = new int[4];
+            } else if (sizes[c] == lists[c].length) {
+                lists[c] = Arrays.copyOf(lists[c], sizes[c] * 2);
+            }
+            lists[c][sizes[c]++] = value;
+        }
+
+        boolean intersects(int c, IntLists other, int otherC) {
+            int i = 0;
+            int j = 0;
+            while ((i < sizes[c]) && (j < other.sizes[otherC])) {
+                int a = lists[c][i];
+                int b = other.lists[otherC][j];
+                if (a == b) {
+                    return true;
+                }
+                if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return false;
+        }
+
+        int[][] toArrays() {
+            int[][] arrays = new int[lists.length][];
+            for (int c = 0; c < lists.length; c++) {
+                arrays[c] = sizes[c] == 0 ? new int[0] : Arrays.copyOf(lists[c], sizes[c]);
+            }
+            return arrays;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.salesforce.bazel.sdk.graph;
+
+import java.util.Arrays;
+
+/**
+ * Strongly connected components of a graph of int ids, using an iterative version of Tarjan's algorithm so deep graphs
+ * do not overflow the call stack. A component with more than one node is a dependency cycle.
+ */
+class StronglyConnectedComponents {
+
+    /**
+     * Computes the component of each node, and returns the number of components. Components are numbered in the order
+     * they are completed, so the deps of a component always have a lower number than the component itself.
+     *
+     * @param deps
+     *            the ids of the direct deps of each node
+     * @param components
+     *            receives the component of each node, must have the length of deps
+     */
+    static int compute(int[][] deps, int[] components) {
+        int size = deps.length;
+        int componentCount = 0;
+        int[] visitIndex = new int[size];
+        Arrays.fill(visitIndex, -1);
+        int[] lowLink = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] sccStack = new int[size];
+        int sccDepth = 0;
+        int[] callStack = new int[size];
+        int[] cursors = new int[size];
+        int nextIndex = 0;
+
+        for (int start = 0; start < size; start++) {
+            if (visitIndex[start] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = start;
+            cursors[depth++] = 0;
+            visitIndex[start] = lowLink[start] = nextIndex++;
+            sccStack[sccDepth++] = start;
+            onStack[start] = true;
+
+            while (depth > 0) {
+                int id = callStack[depth - 1];
+                if (cursors[depth - 1] < deps[id].length) {
+                    int dep = deps[id][cursors[depth - 1]++];
+                    if (visitIndex[dep] < 0) {
+                        visitIndex[dep] = lowLink[dep] = nextIndex++;
+                        sccStack[sccDepth++] = dep;
+                        onStack[dep] = true;
+                        callStack[depth] = dep;
+                        cursors[depth++] = 0;
+                    } else if (onStack[dep]) {
+                        lowLink[id] = Math.min(lowLink[id], visitIndex[dep]);
+                    }
+                    continue;
+                }
+
+                // all deps are done
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[id]);
+                }
+                if (lowLink[id] == visitIndex[id]) {
+                    int member;
+                    do {
+                        member = sccStack[--sccDepth];
+                        onStack[member] = false;
+                        components[member] = componentCount;
+                    } while (member != id);
+                    componentCount++;
+                }
+            }
+        }
+        return componentCount;
+    }
+}
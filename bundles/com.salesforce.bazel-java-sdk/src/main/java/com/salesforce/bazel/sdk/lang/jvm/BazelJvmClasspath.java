@@ -169,7 +169,7 @@ public class BazelJvmClasspath {
                 String targetType = bazelBuildFileModel.getRuleTypeForTarget(targetLabel);
                 boolean isTestTarget = "java_test".equals(targetType);
 
-                Set<AspectTargetInfo> targetInfos = targetLabelToAspectTargetInfos.get(new BazelLabel(targetLabel));
+                Set<AspectTargetInfo> targetInfos = targetLabelToAspectTargetInfos.get(BazelLabel.intern(targetLabel));
 
                 if (targetInfos == null) {
                     logger.warn("Failed to inspect target: " + targetLabel + ", skipping");
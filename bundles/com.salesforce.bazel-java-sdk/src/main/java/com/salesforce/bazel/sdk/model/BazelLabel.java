@@ -49,9 +49,25 @@ import com.salesforce.bazel.sdk.path.BazelPathHelper;
  */
 public class BazelLabel {
 
+    private static final BazelLabelInterner SHARED_INTERNER = new BazelLabelInterner();
+
     private final String localLabelPart;
     private final String repositoryName;
     private final String fullLabel;
+    // parsed once, labels are used as map keys and grouped by package all the time
+    private final String packagePath;
+    // computed on first use; a race only computes an equal instance twice
+    private BazelLabel defaultPackageLabel;
+
+    /**
+     * Returns the canonical BazelLabel instance for the label String, from a pool that is shared by the whole process.
+     * Use this instead of the constructor for labels that are created in bulk (for example when parsing aspect or query
+     * output): the label is only parsed once, and maps keyed by interned labels mostly compare by identity. Labels are
+     * held weakly, the pool does not keep them alive.
+     */
+    public static BazelLabel intern(String label) {
+        return SHARED_INTERNER.intern(label);
+    }
 
     /**
      * A BazelLabel instance can be created with any syntactically valid Bazel Label String.
@@ -81,6 +97,7 @@ public class BazelLabel {
         label = sanitizeLabel(label);
         localLabelPart = label;
         fullLabel = getFullLabel(repositoryName, localLabelPart);
+        packagePath = computePackagePath(localLabelPart);
     }
 
     /**
@@ -143,19 +160,6 @@ public class BazelLabel {
      * @return the package path of this label
      */
     public String getPackagePath() {
-        String packagePath = localLabelPart;
-        int i = packagePath.lastIndexOf(BazelPathHelper.BAZEL_WILDCARD_ALLPACKAGES);
-        if (i != -1) {
-            packagePath = packagePath.substring(0, i);
-            if (packagePath.endsWith(BazelPathHelper.BAZEL_SLASH)) {
-                packagePath = packagePath.substring(0, packagePath.length() - 1);
-            }
-        } else {
-            i = localLabelPart.lastIndexOf(BazelPathHelper.BAZEL_COLON);
-            if (i != -1) {
-                packagePath = packagePath.substring(0, i);
-            }
-        }
         return packagePath;
     }
 
@@ -170,7 +174,13 @@ public class BazelLabel {
      *             if this label is a root-level label (//...) and therefore doesn't have a package path.
      */
     public BazelLabel toDefaultPackageLabel() {
-        return withRepositoryNameAndLocalLabelPart(repositoryName, getPackagePath());
+        BazelLabel label = defaultPackageLabel;
+        if (label == null) {
+            label = packagePath.equals(localLabelPart) ? this
+                    : SHARED_INTERNER.intern(withRepositoryNameAndLocalLabelPart(repositoryName, packagePath));
+            defaultPackageLabel = label;
+        }
+        return label;
     }
 
     /**
@@ -270,6 +280,23 @@ public class BazelLabel {
                 : new BazelLabel("@" + repositoryName + BazelPathHelper.BAZEL_ROOT_SLASHES + localLabelPart);
     }
 
+    private static String computePackagePath(String localLabelPart) {
+        String packagePath = localLabelPart;
+        int i = packagePath.lastIndexOf(BazelPathHelper.BAZEL_WILDCARD_ALLPACKAGES);
+        if (i != -1) {
+            packagePath = packagePath.substring(0, i);
+            if (packagePath.endsWith(BazelPathHelper.BAZEL_SLASH)) {
+                packagePath = packagePath.substring(0, packagePath.length() - 1);
+            }
+        } else {
+            i = localLabelPart.lastIndexOf(BazelPathHelper.BAZEL_COLON);
+            if (i != -1) {
+                packagePath = packagePath.substring(0, i);
+            }
+        }
+        return packagePath;
+    }
+
     private static String sanitizePackagePath(String path) {
         if (path == null) {
             throw new IllegalAccessError(path);
@@ -0,0 +1,62 @@
+package com.salesforce.bazel.sdk.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of canonical BazelLabel instances. Interning a label String that is already in the pool in its canonical form
+ * (//a/b:c, @repo//a/b:c) costs a single hash lookup, without parsing the label again. Other forms of the same label
+ * (a/b:c) are parsed, and then resolved to the pooled instance.
+ * <p>
+ * The pool holds the labels weakly: an entry is dropped once nothing else references its label. This class is thread
+ * safe. Most code should use the pool shared by the whole process, via {@link BazelLabel#intern(String)}.
+ */
+public class BazelLabelInterner {
+
+    // canonical label string -> label; the key is the label's own string, so the entry lives as long as the label
+    private final Map<String, WeakReference<BazelLabel>> pool = new WeakHashMap<>();
+
+    // PUBLIC API
+
+    /**
+     * Returns the canonical instance of the label.
+     *
+     * @throws IllegalArgumentException
+     *             if the label is not valid, see {@link BazelLabel#BazelLabel(String)}
+     */
+    public BazelLabel intern(String label) {
+        BazelLabel pooled = get(label);
+        if (pooled != null) {
+            return pooled;
+        }
+        return intern(new BazelLabel(label));
+    }
+
+    /**
+     * Returns the canonical instance of the label, which is the passed instance if the label was not pooled yet.
+     */
+    public synchronized BazelLabel intern(BazelLabel label) {
+        WeakReference<BazelLabel> ref = pool.get(label.getLabel());
+        BazelLabel pooled = ref != null ? ref.get() : null;
+        if (pooled == null) {
+            pool.put(label.getLabel(), new WeakReference<>(label));
+            pooled = label;
+        }
+        return pooled;
+    }
+
+    /**
+     * The number of labels in the pool, including labels that were collected but whose entries were not purged yet.
+     */
+    public synchronized int size() {
+        return pool.size();
+    }
+
+    // INTERNALS
+
+    private synchronized BazelLabel get(String canonicalLabel) {
+        WeakReference<BazelLabel> ref = pool.get(canonicalLabel);
+        return ref != null ? ref.get() : null;
+    }
+}
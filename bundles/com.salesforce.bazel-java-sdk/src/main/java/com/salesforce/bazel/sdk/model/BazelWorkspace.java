@@ -3,7 +3,9 @@ package com.salesforce.bazel.sdk.model;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandOptions;
 import com.salesforce.bazel.sdk.logging.LogHelper;
@@ -59,6 +61,11 @@ public class BazelWorkspace {
      */
     private File bazelBinDirectory;
 
+    /**
+     * All the metadata key/value pairs of this workspace, as reported by <i>bazel info</i>.
+     */
+    private Map<String, String> bazelInfo;
+
     /**
      * The operating system running Bazel and our BEF: osx, linux, windows
      * https://github.com/bazelbuild/bazel/blob/c35746d7f3708acb0d39f3082341de0ff09bd95f/src/main/java/com/google/devtools/build/lib/util/OS.java#L21
@@ -155,6 +162,24 @@ public class BazelWorkspace {
         return bazelBinDirectory;
     }
 
+    /**
+     * Returns all the metadata key/value pairs of this workspace (execution_root, output_base, bazel-bin, release
+     * etc). They are read with a single <i>bazel info</i> command.
+     */
+    public Map<String, String> getBazelInfo() {
+        if ((bazelInfo == null) && (metadataStrategy != null)) {
+            bazelInfo = Collections.unmodifiableMap(metadataStrategy.computeBazelInfo());
+        }
+        return bazelInfo != null ? bazelInfo : Collections.emptyMap();
+    }
+
+    /**
+     * Returns the value of a <i>bazel info</i> key, or null if Bazel did not report it.
+     */
+    public String getBazelInfo(String key) {
+        return getBazelInfo().get(key);
+    }
+
     public String getOperatingSystem() {
         return operatingSystem;
     }
@@ -0,0 +1,597 @@
+package com.salesforce.bazel.sdk.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Pull style JSON reader. The caller walks the document token by token, and only the values it asks for are decoded;
+ * everything else is skipped without allocating strings or collections. This is much cheaper than the json-simple
+ * JSONParser when only a few fields of a document are interesting (e.g. the id of a BEP event).
+ * <p>
+ * When a full tree is needed, {@link #readValue()} builds the same json-simple JSONObject/JSONArray/String/Long/Double/
+ * Boolean structure that the JSONParser produces, so the result can be passed to existing code that works with
+ * json-simple objects. Like the JSONParser, trailing commas in arrays and objects are tolerated.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     if ("label".equals(name)) {
+ *         label = reader.nextString();
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * This class is not thread safe.
+ */
+public class JsonStreamReader implements Closeable {
+
+    /**
+     * The type of the next token in the document.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // scopes of the stack of nested structures
+    private static final int SCOPE_EMPTY_ARRAY = 1;
+    private static final int SCOPE_NONEMPTY_ARRAY = 2;
+    private static final int SCOPE_EMPTY_OBJECT = 3;
+    private static final int SCOPE_DANGLING_NAME = 4;
+    private static final int SCOPE_NONEMPTY_OBJECT = 5;
+    private static final int SCOPE_EMPTY_DOCUMENT = 6;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private char[] buffer;
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0; // chars consumed before the current buffer, for error messages
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+
+    // the next token, if peek() has been called, null otherwise
+    private Token peeked = null;
+
+    private final StringBuilder stringBuilder = new StringBuilder();
+
+    // CTORS
+
+    /**
+     * Reads the document from the passed reader. The reader is buffered internally, there is no need to wrap it in a
+     * BufferedReader.
+     */
+    public JsonStreamReader(Reader in) {
+        if (in == null) {
+            throw new IllegalArgumentException("Parameter [in] cannot be null.");
+        }
+        this.in = in;
+        buffer = new char[8192];
+        push(SCOPE_EMPTY_DOCUMENT);
+    }
+
+    /**
+     * Reads the document from the passed string. The chars of the string are copied once, into the buffer that the
+     * reader works on; no Reader is involved.
+     */
+    public JsonStreamReader(String json) {
+        if (json == null) {
+            throw new IllegalArgumentException("Parameter [json] cannot be null.");
+        }
+        in = null;
+        buffer = json.toCharArray();
+        limit = buffer.length;
+        push(SCOPE_EMPTY_DOCUMENT);
+    }
+
+    // TOKENS
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+        case SCOPE_EMPTY_ARRAY:
+            stack[stackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+            c = nextNonWhitespace(true);
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            pos--;
+            return peeked = peekValue();
+        case SCOPE_NONEMPTY_ARRAY:
+            c = nextNonWhitespace(true);
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            if (c != ',') {
+                throw syntaxError("Expected ',' or ']' in array");
+            }
+            c = nextNonWhitespace(true);
+            if (c == ']') {
+                // trailing comma, tolerated like json-simple does
+                return peeked = Token.END_ARRAY;
+            }
+            pos--;
+            return peeked = peekValue();
+        case SCOPE_EMPTY_OBJECT:
+        case SCOPE_NONEMPTY_OBJECT:
+            c = nextNonWhitespace(true);
+            if (c == '}') {
+                return peeked = Token.END_OBJECT;
+            }
+            if (scope == SCOPE_NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}' in object");
+                }
+                c = nextNonWhitespace(true);
+                if (c == '}') {
+                    // trailing comma, tolerated like json-simple does
+                    return peeked = Token.END_OBJECT;
+                }
+            }
+            if (c != '"') {
+                throw syntaxError("Expected a quoted name in object");
+            }
+            stack[stackSize - 1] = SCOPE_DANGLING_NAME;
+            return peeked = Token.NAME;
+        case SCOPE_DANGLING_NAME:
+            c = nextNonWhitespace(true);
+            if (c != ':') {
+                throw syntaxError("Expected ':' after name");
+            }
+            stack[stackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+            return peeked = peekValue();
+        case SCOPE_EMPTY_DOCUMENT:
+            stack[stackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+            return peeked = peekValue();
+        default:
+            c = nextNonWhitespace(false);
+            if (c != -1) {
+                throw syntaxError("Unexpected content after the end of the document");
+            }
+            return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return (token != Token.END_OBJECT) && (token != Token.END_ARRAY) && (token != Token.END_DOCUMENT);
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Consumes the next property name of the current object.
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readQuoted();
+    }
+
+    /**
+     * Consumes the next string value. Numbers are returned in their textual form.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+        expect(Token.STRING);
+        return readQuoted();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if ("true".equals(literal)) {
+            return true;
+        }
+        if ("false".equals(literal)) {
+            return false;
+        }
+        throw syntaxError("Invalid literal [" + literal + "]");
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        String literal = readLiteral();
+        if (!"null".equals(literal)) {
+            throw syntaxError("Invalid literal [" + literal + "]");
+        }
+    }
+
+    /**
+     * Consumes the next number. Like json-simple, integral numbers are returned as Long and others as Double.
+     */
+    public Number nextNumber() throws IOException {
+        expect(Token.NUMBER);
+        String literal = readLiteral();
+        try {
+            if ((literal.indexOf('.') >= 0) || (literal.indexOf('e') >= 0) || (literal.indexOf('E') >= 0)) {
+                return Double.valueOf(literal);
+            }
+            return Long.valueOf(literal);
+        } catch (NumberFormatException nfe) {
+            throw syntaxError("Invalid number [" + literal + "]");
+        }
+    }
+
+    /**
+     * Skips the next value, including all nested values if it is an object or array. If the next token is a name, the
+     * name and its value are skipped.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+            case BEGIN_OBJECT:
+                beginObject();
+                depth++;
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                depth++;
+                break;
+            case END_OBJECT:
+                endObject();
+                depth--;
+                break;
+            case END_ARRAY:
+                endArray();
+                depth--;
+                break;
+            case NAME:
+                peeked = null;
+                skipQuoted();
+                if (depth == 0) {
+                    // skip the value of the property as well
+                    skipValue();
+                }
+                break;
+            case STRING:
+                peeked = null;
+                skipQuoted();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                peeked = null;
+                skipLiteral();
+                break;
+            default:
+                throw syntaxError("Cannot skip past the end of the document");
+            }
+        } while (depth > 0);
+    }
+
+    // CONVENIENCE
+
+    /**
+     * Consumes the next value and returns it as json-simple objects: JSONObject, JSONArray, String, Long, Double,
+     * Boolean or null.
+     */
+    @SuppressWarnings("unchecked")
+    public Object readValue() throws IOException {
+        switch (peek()) {
+        case BEGIN_OBJECT:
+            JSONObject object = new JSONObject();
+            beginObject();
+            while (hasNext()) {
+                String name = nextName();
+                object.put(name, readValue());
+            }
+            endObject();
+            return object;
+        case BEGIN_ARRAY:
+            JSONArray array = new JSONArray();
+            beginArray();
+            while (hasNext()) {
+                array.add(readValue());
+            }
+            endArray();
+            return array;
+        case STRING:
+            return nextString();
+        case NUMBER:
+            return nextNumber();
+        case BOOLEAN:
+            return nextBoolean();
+        case NULL:
+            nextNull();
+            return null;
+        default:
+            throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    /**
+     * Consumes the next value, which must be an array of strings (or null), and returns the strings.
+     */
+    public List<String> readStringList() throws IOException {
+        List<String> list = new ArrayList<>();
+        if (peek() == Token.NULL) {
+            nextNull();
+            return list;
+        }
+        beginArray();
+        while (hasNext()) {
+            if (peek() == Token.NULL) {
+                nextNull();
+            } else {
+                list.add(nextString());
+            }
+        }
+        endArray();
+        return list;
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stackSize = 0;
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    // INTERNALS
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace(true);
+        switch (c) {
+        case '{':
+            return Token.BEGIN_OBJECT;
+        case '[':
+            return Token.BEGIN_ARRAY;
+        case '"':
+            return Token.STRING;
+        case 't':
+        case 'f':
+            pos--;
+            return Token.BOOLEAN;
+        case 'n':
+            pos--;
+            return Token.NULL;
+        default:
+            if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+                pos--;
+                return Token.NUMBER;
+            }
+            throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Reads the rest of a quoted string, the opening quote has already been consumed.
+     */
+    private String readQuoted() throws IOException {
+        stringBuilder.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    if (stringBuilder.length() == 0) {
+                        // common case, the string did not span buffers and has no escapes
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    stringBuilder.append(buffer, start, pos - start - 1);
+                    return stringBuilder.toString();
+                }
+                if (c == '\\') {
+                    stringBuilder.append(buffer, start, pos - start - 1);
+                    stringBuilder.append(readEscape());
+                    start = pos;
+                }
+            }
+            stringBuilder.append(buffer, start, pos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    readEscape();
+                }
+            }
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return (char) c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(read(), 16);
+                if (digit < 0) {
+                    throw syntaxError("Invalid unicode escape");
+                }
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        default:
+            throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Reads an unquoted literal (number, true, false, null).
+     */
+    private String readLiteral() throws IOException {
+        stringBuilder.setLength(0);
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                if (isLiteralEnd(buffer[pos])) {
+                    stringBuilder.append(buffer, start, pos - start);
+                    return stringBuilder.toString();
+                }
+                pos++;
+            }
+            stringBuilder.append(buffer, start, pos - start);
+            if (!fill()) {
+                return stringBuilder.toString();
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                if (isLiteralEnd(buffer[pos])) {
+                    return;
+                }
+                pos++;
+            }
+            if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isLiteralEnd(char c) {
+        switch (c) {
+        case ',':
+        case ':':
+        case '}':
+        case ']':
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\r':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private int nextNonWhitespace(boolean required) throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if ((c != ' ') && (c != '\t') && (c != '\n') && (c != '\r')) {
+                    return c;
+                }
+            }
+            if (!fill()) {
+                if (required) {
+                    throw syntaxError("Unexpected end of input");
+                }
+                return -1;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if ((pos == limit) && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Loads the next chunk of input into the buffer. Only called when the buffer has been fully consumed, so a single
+     * char of pushback (pos--) always stays valid.
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at offset " + (consumed + pos));
+    }
+}
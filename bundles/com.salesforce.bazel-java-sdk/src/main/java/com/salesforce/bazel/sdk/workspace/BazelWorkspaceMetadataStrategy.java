@@ -1,7 +1,9 @@
 package com.salesforce.bazel.sdk.workspace;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandOptions;
 
@@ -12,6 +14,14 @@ import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandOptions;
  */
 public interface BazelWorkspaceMetadataStrategy {
 
+    /**
+     * Returns all the metadata key/value pairs of the current Bazel workspace (execution_root, output_base, bazel-bin,
+     * release etc), as reported by a single <i>bazel info</i> command.
+     */
+    public default Map<String, String> computeBazelInfo() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Returns the execution root of the current Bazel workspace.
      */
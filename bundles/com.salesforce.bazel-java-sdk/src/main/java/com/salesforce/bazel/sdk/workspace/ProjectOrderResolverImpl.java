@@ -1,6 +1,8 @@
 package com.salesforce.bazel.sdk.workspace;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import com.salesforce.bazel.sdk.aspect.AspectDependencyGraphFactory;
 import com.salesforce.bazel.sdk.aspect.AspectTargetInfos;
@@ -14,7 +16,19 @@ import com.salesforce.bazel.sdk.model.BazelPackageLocation;
 public class ProjectOrderResolverImpl implements ProjectOrderResolver {
     private static final LogHelper LOG = LogHelper.log(ProjectOrderResolverImpl.class);
 
-    public ProjectOrderResolverImpl() {}
+    private final Map<String, String> graphOptions;
+
+    public ProjectOrderResolverImpl() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * Resolver that builds the dependency graph of the workspace with the passed BazelDependencyGraphFactory options,
+     * for example to select the graph implementation that suits the size of the workspace.
+     */
+    public ProjectOrderResolverImpl(Map<String, String> graphOptions) {
+        this.graphOptions = graphOptions;
+    }
 
     /**
      * Orders all of the packages for import such that no package is imported before any of modules that it depends on.
@@ -56,7 +70,7 @@ public class ProjectOrderResolverImpl implements ProjectOrderResolver {
         // first, generate the dependency graph for the entire workspace
         List<BazelPackageLocation> orderedModules = null;
         try {
-            BazelDependencyGraph workspaceDepGraph = AspectDependencyGraphFactory.build(aspects, false);
+            BazelDependencyGraph workspaceDepGraph = AspectDependencyGraphFactory.build(aspects, false, graphOptions);
             boolean followExternalTransitives = false;
             orderedModules = workspaceDepGraph.orderLabels(selectedPackages, followExternalTransitives);
 
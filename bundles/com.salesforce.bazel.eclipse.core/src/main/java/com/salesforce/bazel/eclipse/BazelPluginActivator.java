@@ -125,6 +125,11 @@ public class BazelPluginActivator extends AbstractUIPlugin {
      */
     private static BazelExternalJarRuleManager externalJarRuleManager;
 
+    /**
+     * Directory in which the aspect data cache is persisted between sessions, null if persistence is disabled (tests)
+     */
+    private static File aspectCacheDirectory;
+
     // LIFECYCLE
 
     /**
@@ -153,6 +158,9 @@ public class BazelPluginActivator extends AbstractUIPlugin {
         BazelJavaSDKInit.initialize("Bazel Eclipse", "bzleclipse");
         JvmRuleInit.initialize();
 
+        // persist the aspect data in the plugin state area, so that we can warm start after a restart
+        aspectCacheDirectory = new File(getStateLocation().toFile(), "aspects");
+
         startInternal(aspectLocation, commandBuilder, consoleFactory, projectMgr, eclipseResourceHelper,
             eclipseJavaCoreHelper, osEnvStrategy, configManager, externalJarRuleManager);
     }
@@ -282,6 +290,10 @@ public class BazelPluginActivator extends AbstractUIPlugin {
             }
             if (bazelWorkspace.hasBazelWorkspaceRootDirectory()) {
                 bazelWorkspaceCommandRunner = bazelCommandManager.getWorkspaceCommandRunner(bazelWorkspace);
+                if (aspectCacheDirectory != null) {
+                    bazelWorkspaceCommandRunner.getBazelWorkspaceAspectHelper()
+                            .setAspectCacheDirectory(aspectCacheDirectory);
+                }
             }
         }
         return bazelWorkspaceCommandRunner;
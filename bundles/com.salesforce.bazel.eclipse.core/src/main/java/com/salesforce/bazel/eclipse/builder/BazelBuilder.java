@@ -35,6 +35,7 @@
  */
 package com.salesforce.bazel.eclipse.builder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,6 +45,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.resources.IProject;
@@ -51,6 +58,7 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.ClasspathContainerInitializer;
 import org.eclipse.jdt.core.IJavaProject;
@@ -87,6 +95,9 @@ public class BazelBuilder extends IncrementalProjectBuilder {
 
     public static final String BUILDER_NAME = "com.salesforce.bazel.eclipse.builder";
 
+    // how often the errors found by a running build are published
+    private static final long ERROR_PUBLISH_INTERVAL_MS = 250;
+
     private static final AtomicBoolean REGISTERED_EL_CHANGE_LISTENER = new AtomicBoolean(false);
     private static final LogHelper LOG = LogHelper.log(BazelBuilder.class);
 
@@ -139,6 +150,10 @@ public class BazelBuilder extends IncrementalProjectBuilder {
             }
         } catch (BazelCommandLineToolConfigurationException e) {
             LOG.error("Bazel not found: {} ", e.getMessage());
+        } catch (CancellationException e) {
+            // the user canceled the build, the command already terminated bazel; let Eclipse handle the cancel
+            LOG.info("Bazel build was canceled: {}", e.getMessage());
+            throw new OperationCanceledException(e.getMessage());
         } catch (Exception e) {
             LOG.error("Failed to build: " + e.getMessage(), e);
         } finally {
@@ -153,6 +168,12 @@ public class BazelBuilder extends IncrementalProjectBuilder {
             // arguably we should refresh the classpath container by default in this case (?)
         } else {
             if (ResourceDeltaInspector.deltaHasChangedBuildFiles(delta)) {
+                // cached query results may depend on the changed BUILD file
+                if (project.getLocation() != null) {
+                    BazelPluginActivator.getBazelCommandManager().getResultCache()
+                            .notifyFileChanged(new File(project.getLocation().toFile(), "BUILD"));
+                }
+
                 // we request a classpath container update only if detect a BUILD file change
                 // this should also consider added or removed BUILD files (?)
                 IJavaProject javaProject = javaCoreHelper.getJavaProjectForProject(project);
@@ -209,17 +230,68 @@ public class BazelBuilder extends IncrementalProjectBuilder {
             return true;
         } else {
             List<String> bazelBuildFlags = getAllBazelBuildFlags(projects);
-            List<BazelProblem> errors = cmdRunner.runBazelBuild(bazelTargets, bazelBuildFlags, progressMonitor);
-            // publish errors (even if no errors, this must run so that previous errors are cleared)
             Map<BazelLabel, BazelProject> labelToProject = bazelProjectManager.getBazelLabelToProjectMap(bazelProjects);
             BazelErrorPublisher errorPublisher = new BazelErrorPublisher(rootProject, projects, labelToProject);
-            errorPublisher.publish(errors, monitor);
+            // clear the errors of the previous build (even if there are no errors now), then publish the errors as the
+            // build finds them
+            errorPublisher.clear(monitor);
+            List<BazelProblem> errors = runBazelBuild(cmdRunner, bazelTargets, bazelBuildFlags, progressMonitor,
+                errorPublisher, monitor);
             // also publish warnings
             warningPublisher.publish(projects, monitor);
             return errors.isEmpty();
         }
     }
 
+    /**
+     * Runs the Bazel build on a helper thread, and publishes the errors from this thread while the build is running.
+     * This thread runs the workspace build, so marker changes made by other threads would wait until it is done.
+     */
+    private static List<BazelProblem> runBazelBuild(BazelWorkspaceCommandRunner cmdRunner, Set<String> bazelTargets,
+            List<String> bazelBuildFlags, WorkProgressMonitor progressMonitor, BazelErrorPublisher errorPublisher,
+            IProgressMonitor monitor)
+            throws IOException, InterruptedException, BazelCommandLineToolConfigurationException {
+        BlockingQueue<BazelProblem> foundErrors = new LinkedBlockingQueue<>();
+        FutureTask<List<BazelProblem>> build = new FutureTask<>(
+                () -> cmdRunner.runBazelBuild(bazelTargets, bazelBuildFlags, progressMonitor, foundErrors::add));
+        Thread buildThread = new Thread(build, "Bazel build");
+        buildThread.setDaemon(true);
+        buildThread.start();
+
+        try {
+            List<BazelProblem> batch = new ArrayList<>();
+            boolean done = false;
+            while (!done) {
+                // check for completion before draining, so that the errors found just before the end are published
+                done = build.isDone();
+                BazelProblem error = done ? foundErrors.poll()
+                        : foundErrors.poll(ERROR_PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (error != null) {
+                    batch.add(error);
+                    foundErrors.drainTo(batch);
+                    errorPublisher.publishIncrementally(batch, monitor);
+                    batch.clear();
+                }
+            }
+            return build.get();
+        } catch (InterruptedException ie) {
+            build.cancel(true);
+            throw ie;
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof BazelCommandLineToolConfigurationException) {
+                throw (BazelCommandLineToolConfigurationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private static List<String> getAllBazelBuildFlags(Collection<IProject> projects) {
         List<String> buildFlags = new ArrayList<>();
         BazelProjectManager bazelProjectManager = BazelPluginActivator.getBazelProjectManager();
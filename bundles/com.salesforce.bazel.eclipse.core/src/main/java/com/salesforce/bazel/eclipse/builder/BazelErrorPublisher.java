@@ -42,6 +42,21 @@ class BazelErrorPublisher {
         publishToProblemsView(errors, monitor);
     }
 
+    /**
+     * Removes the errors published for the previous build, before the errors of a new build are published with
+     * publishIncrementally().
+     */
+    public void clear(IProgressMonitor monitor) {
+        clearProblemsView(monitor);
+    }
+
+    /**
+     * Publishes more errors of the running build, keeping the errors published before.
+     */
+    public void publishIncrementally(List<BazelProblem> errors, IProgressMonitor monitor) {
+        publishToProblemsView(errors, monitor);
+    }
+
     // maps the specified errors to the project instances they belong to, and returns that mapping
     static Map<IProject, List<BazelProblem>> assignErrorsToOwningProject(List<BazelProblem> errors,
             Map<BazelLabel, BazelProject> labelToProject, IProject rootProject) {
@@ -32,6 +32,7 @@ import java.util.Set;
 import org.eclipse.core.runtime.SubMonitor;
 
 import com.salesforce.bazel.eclipse.BazelPluginActivator;
+import com.salesforce.bazel.eclipse.runtime.impl.EclipseWorkProgressMonitor;
 import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
 import com.salesforce.bazel.sdk.aspect.AspectTargetInfos;
 import com.salesforce.bazel.sdk.command.BazelCommandManager;
@@ -56,6 +57,19 @@ public class LoadAspectsFlow implements ImportFlow {
         Objects.requireNonNull(ctx.getPackageLocationToTargets());
     }
 
+    @Override
+    public int getTotalWorkTicks(ImportContext ctx) {
+        int labelCount = 0;
+        Map<BazelPackageLocation, List<BazelLabel>> map = ctx.getPackageLocationToTargets();
+        for (BazelPackageLocation packageLocation : ctx.getSelectedBazelPackages()) {
+            List<BazelLabel> targets = map.get(packageLocation);
+            if (targets != null) {
+                labelCount += targets.size();
+            }
+        }
+        return labelCount;
+    }
+
     @Override
     public void run(ImportContext ctx, SubMonitor progressMonitor) {
         BazelWorkspace bazelWorkspace = BazelPluginActivator.getBazelWorkspace();
@@ -76,7 +90,8 @@ public class LoadAspectsFlow implements ImportFlow {
         // run the aspect for specified targets and get an AspectTargetInfo for each
         try {
             Map<BazelLabel, Set<AspectTargetInfo>> targetInfos =
-                    bazelWorkspaceCmdRunner.getAspectTargetInfos(labels, "importWorkspace");
+                    bazelWorkspaceCmdRunner.getAspectTargetInfos(labels, "importWorkspace",
+                        new EclipseWorkProgressMonitor(progressMonitor));
             List<AspectTargetInfo> allTargetInfos = new ArrayList<>();
             for (Set<AspectTargetInfo> targetTargetInfos : targetInfos.values()) {
                 allTargetInfos.addAll(targetTargetInfos);
@@ -0,0 +1,172 @@
+package com.salesforce.bazel.sdk.bep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.bep.BazelBuildEventAsyncSubscriber.OverflowPolicy;
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+
+public class BazelBuildEventAsyncSubscriberTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotBlockStream() throws Exception {
+        TestStream stream = new TestStream();
+        GatedSubscriber slow = new GatedSubscriber();
+        List<BEPEvent> fastEvents = Collections.synchronizedList(new ArrayList<>());
+        stream.setAsyncDispatch(executor, 10, OverflowPolicy.BLOCK);
+        BazelBuildEventAsyncSubscriber async = stream.subscribeAsync(slow, null, false);
+        stream.subscribe(fastEvents::add);
+
+        // the slow subscriber is stuck on the first event, the stream and the fast subscriber are not
+        for (int i = 0; i < 5; i++) {
+            stream.publish(event(i, false));
+        }
+        assertEquals(5, fastEvents.size());
+        assertTrue(async.getQueueDepth() >= 4);
+
+        slow.gate.countDown();
+        slow.awaitCount(5);
+        assertEquals(5, async.getDeliveredCount());
+        assertEquals(0, async.getDroppedCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, slow.events.get(i).getIndex());
+        }
+        assertTrue(async.getMaxQueueDepth() >= 4);
+        assertTrue(async.getMaxDispatchLatencyNanos() > 0);
+        assertTrue(async.getAverageDispatchLatencyNanos() <= async.getMaxDispatchLatencyNanos());
+
+        // no events after unsubscribing
+        stream.unsubscribe(async);
+        stream.publish(event(5, false));
+        assertEquals(6, fastEvents.size());
+        assertEquals(5, async.getDeliveredCount());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        GatedSubscriber slow = new GatedSubscriber();
+        BazelBuildEventAsyncSubscriber async =
+                new BazelBuildEventAsyncSubscriber(slow, executor, 2, OverflowPolicy.DROP_NEWEST);
+
+        async.onEvent(event(0, false));
+        slow.started.await(10, TimeUnit.SECONDS);
+        // event 0 is being delivered, 1 and 2 fill the queue, 3 and 4 are dropped
+        for (int i = 1; i < 5; i++) {
+            async.onEvent(event(i, false));
+        }
+        assertEquals(2, async.getDroppedCount());
+
+        slow.gate.countDown();
+        slow.awaitCount(3);
+        assertEquals(2, slow.events.get(2).getIndex());
+    }
+
+    @Test
+    public void testDropOldestKeepsLastMessage() throws Exception {
+        GatedSubscriber slow = new GatedSubscriber();
+        BazelBuildEventAsyncSubscriber async =
+                new BazelBuildEventAsyncSubscriber(slow, executor, 2, OverflowPolicy.DROP_OLDEST);
+
+        async.onEvent(event(0, false));
+        slow.started.await(10, TimeUnit.SECONDS);
+        for (int i = 1; i < 4; i++) {
+            async.onEvent(event(i, false));
+        }
+        // event 1 was dropped to make room for event 3
+        assertEquals(1, async.getDroppedCount());
+
+        slow.gate.countDown();
+        // the last message is queued even though the queue may be full
+        async.onEvent(event(4, true));
+        slow.awaitCount(4);
+        assertEquals(2, slow.events.get(1).getIndex());
+        assertEquals(4, slow.events.get(3).getIndex());
+        assertTrue(slow.events.get(3).isLastMessage());
+    }
+
+    @Test
+    public void testDropOldestDoesNotDropQueuedLastMessage() throws Exception {
+        GatedSubscriber slow = new GatedSubscriber();
+        BazelBuildEventAsyncSubscriber async =
+                new BazelBuildEventAsyncSubscriber(slow, executor, 3, OverflowPolicy.DROP_OLDEST);
+
+        async.onEvent(event(0, false));
+        slow.started.await(10, TimeUnit.SECONDS);
+        async.onEvent(event(1, false));
+        async.onEvent(event(2, true));
+        // flood the queue while the last message is waiting in it
+        for (int i = 3; i < 10; i++) {
+            async.onEvent(event(i, false));
+        }
+        // the oldest events other than the last message were dropped: 1, 3, 4, 5, 6, 7
+        assertEquals(6, async.getDroppedCount());
+
+        slow.gate.countDown();
+        slow.awaitCount(4);
+        assertEquals(0, slow.events.get(0).getIndex());
+        assertTrue(slow.events.get(1).isLastMessage());
+        assertEquals(8, slow.events.get(2).getIndex());
+        assertEquals(9, slow.events.get(3).getIndex());
+    }
+
+    // HELPERS
+
+    @SuppressWarnings("unchecked")
+    private static BEPEvent event(int index, boolean lastMessage) {
+        JSONObject json = new JSONObject();
+        if (lastMessage) {
+            json.put("lastMessage", Boolean.TRUE);
+        }
+        return new BEPEvent("progress", null, index, json);
+    }
+
+    private static class TestStream extends BazelBuildEventStream {
+        void publish(BEPEvent event) {
+            publishEventToSubscribers(event);
+        }
+    }
+
+    private static class GatedSubscriber implements BazelBuildEventSubscriber {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<BEPEvent> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onEvent(BEPEvent event) {
+            started.countDown();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+
+        void awaitCount(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((events.size() < count) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, events.size());
+        }
+    }
+}
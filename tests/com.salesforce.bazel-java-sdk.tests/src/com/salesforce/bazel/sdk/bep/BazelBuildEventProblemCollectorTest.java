@@ -0,0 +1,147 @@
+package com.salesforce.bazel.sdk.bep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.model.BazelProblem;
+
+public class BazelBuildEventProblemCollectorTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testProblems() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        new File(workspaceRoot, "libs/b").mkdirs();
+        new File(workspaceRoot, "libs/b/BUILD.bazel").createNewFile();
+
+        List<BazelProblem> published = new ArrayList<>();
+        BazelBuildEventProblemCollector collector =
+                new BazelBuildEventProblemCollector(workspaceRoot, published::add);
+        int index = 0;
+
+        // a compiler error, split across lines in the stderr of one progress event
+        collector.onEvent(progress("ERROR: /ws/libs/a/BUILD:1:1: Building liba.jar (2 source files) failed (Exit 1)\\n"
+                + "libs/a/src/main/java/demo/A.java:50: error: cannot find symbol\\n"
+                + "    this.numSeeds = numSeeds;\\n",
+            index++));
+        assertEquals(1, published.size());
+        assertEquals("libs/a/src/main/java/demo/A.java", published.get(0).getResourcePath());
+        assertEquals(50, published.get(0).getLineNumber());
+
+        // the failure of the target is explained by the compiler error
+        collector.onEvent(failed("//libs/a:a", "Building liba.jar failed", index++));
+        assertEquals(1, published.size());
+
+        // a target that failed without a parsable error gets a problem on its BUILD file
+        collector.onEvent(failed("//libs/b:b", "Executing genrule //libs/b:gen failed", index++));
+        assertEquals(2, published.size());
+        assertEquals("libs/b/BUILD.bazel", published.get(1).getResourcePath());
+        assertTrue(published.get(1).getDescription().contains("//libs/b:b"));
+        assertTrue(published.get(1).getDescription().contains("Executing genrule //libs/b:gen failed"));
+
+        collector.onEvent(succeeded("//libs/c:c", index++));
+        assertFalse(collector.isBuildFinished());
+        collector.onEvent(BazelBuildEventTypeManager.parseEvent(
+            "{\"id\":{\"buildFinished\":{}},\"finished\":{\"overallSuccess\":false,\"exitCode\":{\"name\":\"BUILD_FAILURE\",\"code\":1}}}",
+            index++));
+
+        assertTrue(collector.isBuildFinished());
+        assertFalse(collector.isBuildSuccessful());
+        assertEquals(published, collector.getProblems());
+        assertEquals(3, collector.getTargetResults().size());
+        assertFalse(collector.getTargetResults().get("//libs/a:a"));
+        assertFalse(collector.getTargetResults().get("//libs/b:b"));
+        assertTrue(collector.getTargetResults().get("//libs/c:c"));
+    }
+
+    @Test
+    public void testLineSplitAcrossEvents() {
+        List<BazelProblem> published = new ArrayList<>();
+        BazelBuildEventProblemCollector collector = new BazelBuildEventProblemCollector(null, published::add);
+
+        collector.onEvent(progress("ERROR: /ws/libs/a/BUILD:1:1: Building liba.jar failed (Exit 1)\\n"
+                + "libs/a/src/main/java/demo/A.ja",
+            0));
+        assertEquals(0, published.size());
+        collector.onEvent(progress("va:50: error: cannot find symbol\\n\\n", 1));
+        assertEquals(1, published.size());
+        assertEquals("libs/a/src/main/java/demo/A.java", published.get(0).getResourcePath());
+        assertEquals(50, published.get(0).getLineNumber());
+
+        // the last line is parsed when the build finishes, even without a line break
+        collector.onEvent(progress("libs/a/src/main/java/demo/B.java:7: error: ';' expected", 2));
+        assertEquals(1, published.size());
+        collector.onEvent(BazelBuildEventTypeManager.parseEvent(
+            "{\"id\":{\"buildFinished\":{}},\"finished\":{\"overallSuccess\":false}}", 3));
+        assertEquals(2, published.size());
+        assertEquals("libs/a/src/main/java/demo/B.java", published.get(1).getResourcePath());
+    }
+
+    @Test
+    public void testErrorInSubpackage() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        new File(workspaceRoot, "libs/a/b/src").mkdirs();
+        new File(workspaceRoot, "libs/a/BUILD").createNewFile();
+        new File(workspaceRoot, "libs/a/b/BUILD").createNewFile();
+
+        BazelBuildEventProblemCollector collector = new BazelBuildEventProblemCollector(workspaceRoot, null);
+        collector.onEvent(progress("ERROR: /ws/libs/a/b/BUILD:1:1: Building libb.jar failed (Exit 1)\\n"
+                + "libs/a/b/src/B.java:3: error: cannot find symbol\\n\\n",
+            0));
+        assertEquals(1, collector.getProblems().size());
+
+        // the error is in libs/a/b, it does not explain the failure of libs/a
+        collector.onEvent(failed("//libs/a:a", "Building liba.jar failed", 1));
+        assertEquals(2, collector.getProblems().size());
+        assertEquals("libs/a/BUILD", collector.getProblems().get(1).getResourcePath());
+
+        collector.onEvent(failed("//libs/a/b:b", "Building libb.jar failed", 2));
+        assertEquals(2, collector.getProblems().size());
+    }
+
+    @Test
+    public void testAbortedTarget() {
+        BazelBuildEventProblemCollector collector = new BazelBuildEventProblemCollector(null, null);
+        collector.onEvent(BazelBuildEventTypeManager.parseEvent(
+            "{\"id\":{\"targetCompleted\":{\"label\":\"//foo:foo\"}},\"aborted\":{\"reason\":\"ANALYSIS_FAILURE\","
+                    + "\"description\":\"Analysis of target '//foo:foo' failed\"}}",
+            0));
+
+        assertEquals(1, collector.getProblems().size());
+        BazelProblem problem = collector.getProblems().get(0);
+        assertEquals("foo/BUILD", problem.getResourcePath());
+        assertTrue(problem.getDescription().contains("Analysis of target '//foo:foo' failed"));
+        assertFalse(collector.getTargetResults().get("//foo:foo"));
+    }
+
+    // HELPERS
+
+    private static BEPEvent progress(String stderr, int index) {
+        String json = "{\"id\":{\"progress\":{\"opaqueCount\":" + index + "}},\"progress\":{\"stderr\":\"" + stderr
+                + "\"}}";
+        return BazelBuildEventTypeManager.parseEvent(json, index);
+    }
+
+    private static BEPEvent failed(String label, String message, int index) {
+        String json = "{\"id\":{\"targetCompleted\":{\"label\":\"" + label + "\"}},\"completed\":{\"success\":false,"
+                + "\"failureDetail\":{\"message\":\"" + message + "\",\"spawn\":{\"code\":\"NON_ZERO_EXIT\"}}}}";
+        return BazelBuildEventTypeManager.parseEvent(json, index);
+    }
+
+    private static BEPEvent succeeded(String label, int index) {
+        String json =
+                "{\"id\":{\"targetCompleted\":{\"label\":\"" + label + "\"}},\"completed\":{\"success\":true}}";
+        return BazelBuildEventTypeManager.parseEvent(json, index);
+    }
+}
@@ -0,0 +1,103 @@
+package com.salesforce.bazel.sdk.bep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.bep.BazelBuildEventTestAggregator.TestLabelSummary;
+import com.salesforce.bazel.sdk.bep.BazelBuildEventTestAggregator.TestOutcome;
+import com.salesforce.bazel.sdk.bep.BazelBuildEventTestAggregator.TestTotals;
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+
+public class BazelBuildEventTestAggregatorTest {
+
+    private static final String startedEvent =
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"b4fa160a\",\"startTimeMillis\":\"1622343691246\",\"command\":\"test\"}}";
+
+    @Test
+    public void testAggregation() {
+        BazelBuildEventTestAggregator aggregator = new BazelBuildEventTestAggregator();
+        int index = 0;
+        aggregator.onEvent(BazelBuildEventTypeManager.parseEvent(startedEvent, index++));
+
+        // a passing test
+        aggregator.onEvent(result("//foo:a-test", 1, 0, 1, "PASSED", 100, index++));
+
+        // a flaky sharded test: shard 1 fails once, then passes
+        aggregator.onEvent(result("//foo:b-test", 1, 0, 1, "PASSED", 200, index++));
+        aggregator.onEvent(result("//foo:b-test", 1, 1, 1, "FAILED", 300, index++));
+        TestLabelSummary b = aggregator.getLabelSummary("//foo:b-test");
+        assertEquals(TestOutcome.FAILED, b.getOutcome());
+        assertFalse(b.isComplete());
+        aggregator.onEvent(result("//foo:b-test", 1, 1, 2, "PASSED", 400, index++));
+        b = aggregator.getLabelSummary("//foo:b-test");
+        assertEquals(TestOutcome.FLAKY, b.getOutcome());
+        assertEquals(3, b.getAttemptCount());
+        assertEquals(1, b.getFailedAttemptCount());
+        assertEquals(Arrays.asList("FAILED", "PASSED"), b.getShardAttemptStatus().get(1));
+        assertEquals(Arrays.asList("PASSED"), b.getShardAttemptStatus().get(0));
+        assertEquals(300, b.getP50DurationMs());
+        assertEquals(400, b.getP95DurationMs());
+        assertEquals(900, b.getTotalDurationMs());
+
+        // a failing test
+        aggregator.onEvent(result("//foo:c-test", 1, 0, 1, "FAILED", 50, index++));
+        aggregator.onEvent(result("//foo:c-test", 1, 0, 2, "TIMEOUT", 60, index++));
+
+        TestTotals totals = aggregator.getTotals();
+        assertEquals(3, totals.getLabelCount());
+        assertEquals(0, totals.getCompleteCount());
+        assertEquals(1, totals.getPassedCount());
+        assertEquals(1, totals.getFlakyCount());
+        assertEquals(1, totals.getFailedCount());
+        assertEquals(6, totals.getAttemptCount());
+
+        // summaries make the outcomes final
+        aggregator.onEvent(summary("//foo:b-test", "FLAKY", index++));
+        aggregator.onEvent(summary("//foo:c-test", "FAILED", index++));
+        totals = aggregator.getTotals();
+        assertEquals(2, totals.getCompleteCount());
+        assertEquals(1, totals.getFlakyCount());
+        assertEquals(1, totals.getFailedCount());
+        assertTrue(aggregator.getLabelSummary("//foo:c-test").isComplete());
+        assertEquals(3, aggregator.getLabelSummaries().size());
+
+        // a new build starts over
+        aggregator.onEvent(BazelBuildEventTypeManager.parseEvent(startedEvent, 0));
+        assertNull(aggregator.getLabelSummary("//foo:a-test"));
+        assertEquals(0, aggregator.getTotals().getLabelCount());
+    }
+
+    @Test
+    public void testPercentiles() {
+        BazelBuildEventTestAggregator aggregator = new BazelBuildEventTestAggregator();
+        for (int i = 1; i <= 100; i++) {
+            aggregator.onEvent(result("//foo:a-test", i, 0, 1, "PASSED", i * 10, i));
+        }
+        TestLabelSummary a = aggregator.getLabelSummary("//foo:a-test");
+        assertEquals(500, a.getP50DurationMs());
+        assertEquals(950, a.getP95DurationMs());
+        assertEquals(TestOutcome.PASSED, a.getOutcome());
+    }
+
+    // HELPERS
+
+    private static BEPEvent result(String label, int run, int shard, int attempt, String status, int durationMs,
+            int index) {
+        String json = "{\"id\":{\"testResult\":{\"label\":\"" + label + "\",\"run\":" + run + ",\"shard\":" + shard
+                + ",\"attempt\":" + attempt + "}},\"testResult\":{\"testActionOutput\":[],"
+                + "\"testAttemptDurationMillis\":\"" + durationMs + "\",\"status\":\"" + status + "\"}}";
+        return BazelBuildEventTypeManager.parseEvent(json, index);
+    }
+
+    private static BEPEvent summary(String label, String status, int index) {
+        String json = "{\"id\":{\"testSummary\":{\"label\":\"" + label + "\"}},\"testSummary\":{\"overallStatus\":\""
+                + status + "\",\"totalRunCount\":1,\"runCount\":1}}";
+        return BazelBuildEventTypeManager.parseEvent(json, index);
+    }
+}
@@ -0,0 +1,59 @@
+package com.salesforce.bazel.sdk.bep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPProgressEvent;
+
+public class BazelBuildEventTypeManagerTest {
+
+    private static final String progressEvent =
+            "{\"id\":{\"progress\":{\"opaqueCount\":1}},\"progress\":{\"stderr\":\"Loading: 0 packages loaded\\n\"}}";
+    private static final String workspaceStatusEvent =
+            "{\"id\":{\"workspaceStatus\":{}},\"workspaceStatus\":{\"item\":[{\"key\":\"BUILD_USER\",\"value\":\"mbenioff\"}]}}";
+
+    @Test
+    public void testParseEvent() {
+        BEPEvent event = BazelBuildEventTypeManager.parseEvent(progressEvent, 3);
+        assertTrue(event instanceof BEPProgressEvent);
+        assertEquals(3, event.getIndex());
+
+        // unregistered types become placeholders that keep their index
+        event = BazelBuildEventTypeManager.parseEvent(workspaceStatusEvent, 4);
+        assertEquals(BazelBuildEventTypeManager.EVENTTYPE_IGNORED, event.getEventType());
+        assertEquals(4, event.getIndex());
+
+        // not json
+        assertNull(BazelBuildEventTypeManager.parseEvent("Loading: 0 packages loaded", 5));
+    }
+
+    @Test
+    public void testReadEventObject() throws Exception {
+        JSONObject eventObject = BazelBuildEventTypeManager.readEventObject(progressEvent);
+        assertTrue(((JSONObject) eventObject.get("id")).containsKey("progress"));
+        assertNotNull(eventObject.get("progress"));
+        // the reading stops at the id of an unregistered type
+        assertNull(BazelBuildEventTypeManager.readEventObject(workspaceStatusEvent));
+
+        // no id
+        assertNull(BazelBuildEventTypeManager.readEventObject("{\"progress\":{}}"));
+        assertNull(BazelBuildEventTypeManager.readEventObject("{\"id\":{}}"));
+        assertNull(BazelBuildEventTypeManager.readEventObject("{\"id\":\"progress\"}"));
+
+        // the children are only kept for the event types that use them, wherever the id is
+        String started = "{\"children\":[{\"progress\":{}}],\"id\":{\"started\":{}},\"started\":{}}";
+        eventObject = BazelBuildEventTypeManager.readEventObject(started);
+        assertTrue(((JSONObject) eventObject.get("id")).containsKey("started"));
+        assertNull(eventObject.get("children"));
+        assertNotNull(eventObject.get("started"));
+        String pattern = "{\"id\":{\"pattern\":{\"pattern\":[\"//...\"]}},\"children\":[{\"targetConfigured\":{}}]}";
+        eventObject = BazelBuildEventTypeManager.readEventObject(pattern);
+        assertNotNull(eventObject.get("children"));
+    }
+}
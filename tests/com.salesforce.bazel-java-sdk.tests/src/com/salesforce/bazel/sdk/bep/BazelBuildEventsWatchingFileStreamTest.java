@@ -0,0 +1,132 @@
+package com.salesforce.bazel.sdk.bep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.file.BEPFileWatcher;
+
+public class BazelBuildEventsWatchingFileStreamTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    // some platforms implement the WatchService by polling, which is slow
+    private static final long TIMEOUT_MS = 30000L;
+
+    private static final String startedEvent =
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"b4fa160a\",\"startTimeMillis\":\"1622343691246\",\"command\":\"build\"}}";
+    private static final String progressEvent =
+            "{\"id\":{\"progress\":{\"opaqueCount\":1}},\"progress\":{\"stderr\":\"Loading: 0 packages loaded\\n\"}}";
+
+    @Test
+    public void testAppendedEventsArePublished() throws Exception {
+        File bepFile = tmpFolder.newFile("bep_build.json");
+        append(bepFile, startedEvent + "\n");
+
+        BEPFileWatcher watcher = new BEPFileWatcher(10L);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        try (BazelBuildEventsWatchingFileStream stream = new BazelBuildEventsWatchingFileStream(watcher)) {
+            stream.subscribe(subscriber);
+            // the existing event is old, and should not be published
+            stream.addFileToMonitor(bepFile, false);
+            stream.activateStream();
+            assertEquals(0, subscriber.events.size());
+
+            append(bepFile, progressEvent + "\n");
+            subscriber.awaitEvents(1);
+            assertEquals(1, subscriber.events.size());
+            assertEquals("progress", subscriber.events.get(0).getEventType());
+        }
+        assertEquals(0, watcher.getWatchedFileCount());
+    }
+
+    @Test
+    public void testSharedWatcher() throws Exception {
+        File buildFile = tmpFolder.newFile("bep_build.json");
+        File testFile = new File(tmpFolder.getRoot(), "bep_test.json");
+
+        BEPFileWatcher watcher = new BEPFileWatcher(10L);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        BazelBuildEventsWatchingFileStream stream1 = new BazelBuildEventsWatchingFileStream(watcher);
+        BazelBuildEventsWatchingFileStream stream2 = new BazelBuildEventsWatchingFileStream(watcher);
+        stream1.subscribe(subscriber);
+        stream2.subscribe(subscriber);
+        stream1.addFileToMonitor(buildFile, true);
+        // this file does not exist yet
+        stream2.addFileToMonitor(testFile, true);
+        stream1.activateStream();
+        stream2.activateStream();
+        assertEquals(2, watcher.getWatchedFileCount());
+
+        append(buildFile, startedEvent + "\n");
+        Files.write(testFile.toPath(), (startedEvent + "\n" + progressEvent + "\n").getBytes(StandardCharsets.UTF_8));
+        subscriber.awaitEvents(3);
+        assertEquals(3, subscriber.events.size());
+
+        stream1.close();
+        assertEquals(1, watcher.getWatchedFileCount());
+        stream2.close();
+        assertEquals(0, watcher.getWatchedFileCount());
+    }
+
+    @Test
+    public void testCloseFromSubscriber() throws Exception {
+        File bepFile = tmpFolder.newFile("bep_build.json");
+
+        BEPFileWatcher watcher = new BEPFileWatcher(10L);
+        BazelBuildEventsWatchingFileStream stream = new BazelBuildEventsWatchingFileStream(watcher);
+        List<Boolean> interruptedAfterClose = new CopyOnWriteArrayList<>();
+        // the subscriber stops watching from the dispatcher thread, which must not interrupt it
+        stream.subscribe(event -> {
+            stream.close();
+            interruptedAfterClose.add(Thread.currentThread().isInterrupted());
+        });
+        stream.addFileToMonitor(bepFile, true);
+        stream.activateStream();
+
+        append(bepFile, startedEvent + "\n");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        while (interruptedAfterClose.isEmpty() && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, interruptedAfterClose.size());
+        assertFalse(interruptedAfterClose.get(0));
+        assertEquals(0, watcher.getWatchedFileCount());
+    }
+
+    private static void append(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static class RecordingSubscriber implements BazelBuildEventSubscriber {
+        final List<BEPEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onEvent(BEPEvent event) {
+            events.add(event);
+        }
+
+        void awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+            while ((events.size() < count) && (System.nanoTime() < deadline)) {
+                Thread.sleep(10);
+            }
+            assertTrue("timed out waiting for events", events.size() >= count);
+            // give the stream a moment to publish any unexpected extra events
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.salesforce.bazel.sdk.bep.event.BEPEvent;
+import com.salesforce.bazel.sdk.bep.event.BEPProgressEvent;
+
+public class BEPEventRetentionPolicyTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static final String startedEvent =
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"b4fa160a\",\"startTimeMillis\":\"1622343691246\",\"command\":\"build\"}}";
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        File spillDir = tmpFolder.newFolder("spill");
+        writeBuild(bepFile, 100, 20);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        parser.setRetentionPolicy(BEPEventRetentionPolicy.spillToDisk(10, 3, spillDir));
+        BEPFileTailReader reader = new BEPFileTailReader(bepFile);
+        List<BEPEvent> published = new ArrayList<>();
+        BEPFileContents contents = parser.readNewEvents("test", null, reader, published::add);
+
+        // every event is published, but only the recent ones are in memory; the limit is soft, the list is trimmed
+        // once it holds a quarter more than the limit
+        assertEquals(101, published.size());
+        assertEquals(101, contents.eventCount);
+        assertTrue(contents.events.size() <= 13);
+        assertEquals(100, contents.events.get(contents.events.size() - 1).getIndex());
+        assertEquals(1622343691246L, contents.startedEvent.getStartTimeMillis());
+        assertEquals(3, parser.getBuildErrorEvents().size());
+        assertEquals(100, parser.getBuildErrorEvents().get(2).getIndex());
+
+        // older events are read back from the spill file
+        BEPEvent event = contents.getEvent(5);
+        assertTrue(event instanceof BEPProgressEvent);
+        assertEquals(5, event.getIndex());
+        assertEquals("progress 4", ((BEPProgressEvent) event).getStderr().get(0));
+        assertEquals(100, contents.getEvent(100).getIndex());
+        assertNull(contents.getEvent(101));
+        assertEquals(1, spillDir.list().length);
+
+        // a new build replaces the spill file and the error events
+        writeBuild(bepFile, 5, 0);
+        BEPFileContents nextContents = parser.readNewEvents("test", contents, reader, null);
+        assertEquals(6, nextContents.eventCount);
+        assertEquals(0, parser.getBuildErrorEvents().size());
+        assertNull(contents.getEvent(50));
+        assertEquals(1, spillDir.list().length);
+        nextContents.releaseSpillFile();
+        assertEquals(0, spillDir.list().length);
+    }
+
+    @Test
+    public void testSummaryOnly() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        writeBuild(bepFile, 50, 10);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        parser.setRetentionPolicy(BEPEventRetentionPolicy.summaryOnly(100));
+        BEPFileContents contents = parser.readNewEvents("test", null, new BEPFileTailReader(bepFile));
+
+        assertEquals(51, contents.eventCount);
+        assertEquals(0, contents.events.size());
+        assertEquals(1622343691246L, contents.startedEvent.getStartTimeMillis());
+        assertEquals(5, parser.getBuildErrorEvents().size());
+        assertNull(contents.getEvent(3));
+    }
+
+    @Test
+    public void testKeepAllIsDefault() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        writeBuild(bepFile, 50, 10);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        BEPFileContents contents = parser.readNewEvents("test", null, new BEPFileTailReader(bepFile));
+
+        assertEquals(51, contents.events.size());
+        assertEquals(51, contents.eventCount);
+        assertEquals(0, contents.getFirstInMemoryIndex());
+        assertEquals(7, contents.getEvent(7).getIndex());
+    }
+
+    @Test
+    public void testReadEventsAppliesPolicy() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        File spillDir = tmpFolder.newFolder("spill");
+        writeBuild(bepFile, 100, 20);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        parser.setRetentionPolicy(BEPEventRetentionPolicy.spillToDisk(10, 3, spillDir));
+        BEPFileContents contents = parser.readEvents("test", null);
+        assertEquals(101, contents.eventCount);
+        // soft limit: 10 events, plus up to a quarter more before the list is trimmed
+        assertTrue(contents.events.size() <= 13);
+        assertEquals(3, parser.getBuildErrorEvents().size());
+        assertEquals(5, contents.getEvent(5).getIndex());
+
+        // the same build with more events: only the new lines are parsed, and added to the previous contents
+        writeBuild(bepFile, 110, 20);
+        BEPFileContents moreContents = parser.readEvents("test", contents);
+        assertTrue(moreContents == contents);
+        assertEquals(111, moreContents.eventCount);
+        assertEquals(110, moreContents.events.get(moreContents.events.size() - 1).getIndex());
+        assertEquals(105, moreContents.getEvent(105).getIndex());
+        assertEquals(1, spillDir.list().length);
+
+        // a new build releases the spill file of the previous one
+        Files.write(bepFile.toPath(), (startedEvent.replace("1622343691246", "1622343699999") + "\n"
+                + "{\"id\":{\"progress\":{\"opaqueCount\":0}},\"progress\":{\"stderr\":\"progress\"}}\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        BEPFileContents nextContents = parser.readEvents("test", contents);
+        assertEquals(2, nextContents.eventCount);
+        assertEquals(1622343699999L, nextContents.startedEvent.getStartTimeMillis());
+        assertNull(contents.getEvent(50));
+        nextContents.releaseSpillFile();
+        assertEquals(0, spillDir.list().length);
+    }
+
+    @Test
+    public void testReadEventsRereadsUnterminatedLine() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        writeBuild(bepFile, 10, 0);
+        String lastEvent =
+                "{\"id\":{\"progress\":{\"opaqueCount\":10}},\"progress\":{\"stderr\":\"progress 10\"}}\n";
+        // Bazel is still writing the last event
+        Files.write(bepFile.toPath(), lastEvent.substring(0, 30).getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        BEPFileContents contents = parser.readEvents("test", null);
+        assertEquals(11, contents.eventCount);
+
+        // the next pass reads the rest of the line, the event is not lost
+        Files.write(bepFile.toPath(), lastEvent.substring(30).getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+        BEPFileContents moreContents = parser.readEvents("test", contents);
+        assertTrue(moreContents == contents);
+        assertEquals(12, moreContents.eventCount);
+        assertEquals("progress 10",
+            ((BEPProgressEvent) moreContents.events.get(moreContents.events.size() - 1)).getStderr().get(0));
+    }
+
+    @Test
+    public void testReadEventsReleasesSpillFileOfTruncatedBuild() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        File spillDir = tmpFolder.newFolder("spill");
+        writeBuild(bepFile, 100, 0);
+
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        parser.setRetentionPolicy(BEPEventRetentionPolicy.spillToDisk(10, 3, spillDir));
+        BEPFileContents contents = parser.readEvents("test", null);
+        assertEquals(1, spillDir.list().length);
+
+        // a new build truncates the file
+        Files.write(bepFile.toPath(), new byte[0]);
+        BEPFileContents nextContents = parser.readEvents("test", contents);
+        assertEquals(0, nextContents.eventCount);
+        assertEquals(0, spillDir.list().length);
+
+        // the new build is still writing its started event
+        writeBuild(bepFile, 100, 0);
+        contents = parser.readEvents("test", null);
+        Files.write(bepFile.toPath(), startedEvent.substring(0, 102).getBytes(StandardCharsets.UTF_8));
+        nextContents = parser.readEvents("test", contents);
+        assertEquals(0, nextContents.eventCount);
+        assertEquals(0, spillDir.list().length);
+    }
+
+    // writes a started event and progress events, every errorInterval'th of them is an error
+    private static void writeBuild(File bepFile, int progressCount, int errorInterval) throws Exception {
+        StringBuilder sb = new StringBuilder(startedEvent).append("\n");
+        for (int i = 0; i < progressCount; i++) {
+            boolean error = (errorInterval > 0) && ((i + 1) % errorInterval == 0);
+            String stderr = error ? "ERROR: progress " + i : "progress " + i;
+            sb.append("{\"id\":{\"progress\":{\"opaqueCount\":").append(i).append("}},\"progress\":{\"stderr\":\"")
+                    .append(stderr).append("\"}}\n");
+        }
+        Files.write(bepFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
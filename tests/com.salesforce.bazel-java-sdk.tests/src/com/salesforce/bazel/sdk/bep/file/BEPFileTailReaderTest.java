@@ -0,0 +1,128 @@
+package com.salesforce.bazel.sdk.bep.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BEPFileTailReaderTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static final String startedEvent1 =
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"b4fa160a\",\"startTimeMillis\":\"1622343691246\",\"command\":\"build\"}}";
+    private static final String startedEvent2 =
+            "{\"id\":{\"started\":{}},\"started\":{\"uuid\":\"c6ab0e11\",\"startTimeMillis\":\"1622343699999\",\"command\":\"build\"}}";
+    private static final String progressEvent =
+            "{\"id\":{\"progress\":{\"opaqueCount\":1}},\"progress\":{\"stderr\":\"Loading: 0 packages loaded\\n\"}}";
+
+    @Test
+    public void testAppendedLines() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        BEPFileTailReader reader = new BEPFileTailReader(bepFile);
+        assertEquals(0, reader.readAppendedLines().size());
+
+        append(bepFile, "line1\nline2\n");
+        List<String> lines = reader.readAppendedLines();
+        assertEquals(2, lines.size());
+        assertEquals("line2", lines.get(1));
+        assertFalse(reader.wasTruncated());
+
+        // a partially written line is held back until the newline arrives
+        append(bepFile, "line3\nli");
+        lines = reader.readAppendedLines();
+        assertEquals(1, lines.size());
+        assertEquals("line3", lines.get(0));
+        append(bepFile, "ne4\n");
+        lines = reader.readAppendedLines();
+        assertEquals(1, lines.size());
+        assertEquals("line4", lines.get(0));
+        assertEquals(bepFile.length(), reader.getOffset());
+
+        // nothing new
+        assertEquals(0, reader.readAppendedLines().size());
+    }
+
+    @Test
+    public void testCarriageReturnSplitAcrossReads() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        BEPFileTailReader reader = new BEPFileTailReader(bepFile);
+
+        append(bepFile, "line1\r\nline2\r");
+        List<String> lines = reader.readAppendedLines();
+        assertEquals(1, lines.size());
+        assertEquals("line1", lines.get(0));
+        append(bepFile, "\nline3\r\n");
+        lines = reader.readAppendedLines();
+        assertEquals(2, lines.size());
+        assertEquals("line2", lines.get(0));
+        assertEquals("line3", lines.get(1));
+
+        // a \r that is not followed by a \n stays in the line
+        append(bepFile, "line4\r");
+        assertEquals(0, reader.readAppendedLines().size());
+        append(bepFile, "x\n");
+        assertEquals("line4\rx", reader.readAppendedLines().get(0));
+    }
+
+    @Test
+    public void testTruncation() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        BEPFileTailReader reader = new BEPFileTailReader(bepFile);
+        append(bepFile, "build1-line1\nbuild1-line2\n");
+        assertEquals(2, reader.readAppendedLines().size());
+
+        // new build truncates the file and writes less than before
+        Files.write(bepFile.toPath(), "build2-line1\n".getBytes(StandardCharsets.UTF_8));
+        List<String> lines = reader.readAppendedLines();
+        assertTrue(reader.wasTruncated());
+        assertEquals(1, lines.size());
+        assertEquals("build2-line1", lines.get(0));
+
+        // new build truncates the file and writes more than before, before the next read
+        Files.write(bepFile.toPath(), "build3-line1\nbuild3-line2\nbuild3-line3\n".getBytes(StandardCharsets.UTF_8));
+        lines = reader.readAppendedLines();
+        assertTrue(reader.wasTruncated());
+        assertEquals(3, lines.size());
+        assertEquals("build3-line1", lines.get(0));
+    }
+
+    @Test
+    public void testParserReadsOnlyNewEvents() throws Exception {
+        File bepFile = tmpFolder.newFile("bep.json");
+        BEPFileParser parser = new BEPFileParser(bepFile);
+        BEPFileTailReader reader = new BEPFileTailReader(bepFile);
+
+        append(bepFile, startedEvent1 + "\n" + progressEvent + "\n");
+        BEPFileContents contents = parser.readNewEvents("test", null, reader);
+        assertEquals(2, contents.events.size());
+        assertEquals(1622343691246L, contents.startedEvent.getStartTimeMillis());
+
+        // the appended event is added to the same results, with the next index
+        append(bepFile, progressEvent + "\n");
+        BEPFileContents nextContents = parser.readNewEvents("test", contents, reader);
+        assertSame(contents, nextContents);
+        assertEquals(3, nextContents.events.size());
+        assertEquals(2, nextContents.events.get(2).getIndex());
+
+        // a new build replaces the results
+        Files.write(bepFile.toPath(), (startedEvent2 + "\n").getBytes(StandardCharsets.UTF_8));
+        nextContents = parser.readNewEvents("test", contents, reader);
+        assertEquals(1, nextContents.events.size());
+        assertEquals(1622343699999L, nextContents.startedEvent.getStartTimeMillis());
+    }
+
+    private static void append(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
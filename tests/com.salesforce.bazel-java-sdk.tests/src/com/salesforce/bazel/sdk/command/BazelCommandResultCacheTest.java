@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BazelCommandResultCacheTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testHitAndNormalizedKey() throws Exception {
+        File workspace = createWorkspace();
+        BazelCommandResultCache cache = new BazelCommandResultCache(10, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<String> result = cache.computeIfAbsent(workspace, Arrays.asList("query", "kind(java_test, //a/b:*)"),
+            () -> load(loads, "//a/b:c-test"));
+        assertEquals(Collections.singletonList("//a/b:c-test"), result);
+
+        // same query, written differently
+        result = cache.computeIfAbsent(workspace, Arrays.asList("query", "  kind( java_test,  //a/b:*)  "),
+            () -> load(loads, "other"));
+        assertEquals(1, loads.get());
+        assertEquals(Collections.singletonList("//a/b:c-test"), result);
+
+        assertTrue(BazelCommandResultCache.isCacheable(Arrays.asList("info", "output_base")));
+        assertFalse(BazelCommandResultCache.isCacheable(Arrays.asList("build", "//a/b:c")));
+    }
+
+    @Test
+    public void testInvalidatedByFileChanges() throws Exception {
+        File workspace = createWorkspace();
+        BazelCommandResultCache cache = new BazelCommandResultCache(10, null);
+        List<String> query = Arrays.asList("query", "kind(java_test, //a/b:*)");
+        List<String> info = Arrays.asList("info", "output_base");
+        cache.put(workspace, query, Arrays.asList("//a/b:c-test"));
+        cache.put(workspace, info, Arrays.asList("/tmp/output_base"));
+
+        // the BUILD file of the queried package changes
+        Files.write(new File(workspace, "a/b/BUILD").toPath(), "java_test(name = 'c-test')\n".getBytes());
+        assertNull(cache.get(workspace, query));
+        assertEquals(Arrays.asList("/tmp/output_base"), cache.get(workspace, info));
+
+        // a .bazelrc is added
+        cache.put(workspace, query, Arrays.asList("//a/b:c-test"));
+        Files.write(new File(workspace, ".bazelrc").toPath(), "build --output_base=/x\n".getBytes());
+        assertNull(cache.get(workspace, query));
+        assertNull(cache.get(workspace, info));
+    }
+
+    @Test
+    public void testNotifyFileChanged() throws Exception {
+        File workspace = createWorkspace();
+        BazelCommandResultCache cache = new BazelCommandResultCache(10, null);
+        List<String> query = Arrays.asList("query", "//a/b:*");
+        List<String> info = Arrays.asList("info", "output_base");
+        cache.put(workspace, query, Arrays.asList("//a/b:c"));
+        cache.put(workspace, info, Arrays.asList("/tmp/output_base"));
+
+        // a change the cache cannot see has to be reported
+        cache.notifyFileChanged(new File(workspace, "tools/defs.bzl"));
+        assertNull(cache.get(workspace, query));
+        assertEquals(Arrays.asList("/tmp/output_base"), cache.get(workspace, info));
+
+        // files of other workspaces do not matter
+        cache.notifyFileChanged(new File(tmpFolder.getRoot(), "other/WORKSPACE"));
+        assertEquals(1, cache.size());
+        cache.notifyFileChanged(new File(workspace, "WORKSPACE"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testTransitiveQueriesAreNotCached() throws Exception {
+        File workspace = createWorkspace();
+        BazelCommandResultCache cache = new BazelCommandResultCache(10, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        // these depend on packages that are not named in the expression
+        for (String expression : new String[] { "deps(//a/b:c)", "rdeps(//..., //a/b:c)", "tests(//a/b:c)",
+                "//a/...", "somepath(//a/b:c, //d:e)" }) {
+            assertFalse(expression, BazelCommandResultCache.isCacheable(Arrays.asList("query", expression)));
+            cache.computeIfAbsent(workspace, Arrays.asList("query", expression), () -> load(loads, "x"));
+            cache.computeIfAbsent(workspace, Arrays.asList("query", expression), () -> load(loads, "x"));
+        }
+        assertEquals(10, loads.get());
+        assertEquals(0, cache.size());
+        assertTrue(BazelCommandResultCache.isCacheable(Arrays.asList("query", "attr(name, 'mydeps', //a/b:*)")));
+    }
+
+    @Test
+    public void testInvalidatedByLoadedFiles() throws Exception {
+        File workspace = createWorkspace();
+        File tools = new File(workspace, "tools");
+        tools.mkdirs();
+        File defs = new File(tools, "defs.bzl");
+        File macros = new File(tools, "macros.bzl");
+        Files.write(defs.toPath(), "load(\":macros.bzl\", \"macro\")\n".getBytes());
+        Files.write(macros.toPath(), "def macro(name):\n    pass\n".getBytes());
+        Files.write(new File(workspace, "a/b/BUILD").toPath(),
+            "load(\"//tools:defs.bzl\", \"macro\")\nload(\"@rules_java//java:defs.bzl\", \"java_library\")\n"
+                    .getBytes());
+
+        BazelCommandResultCache cache = new BazelCommandResultCache(10, null);
+        List<String> query = Arrays.asList("query", "//a/b:*");
+        cache.put(workspace, query, Arrays.asList("//a/b:c"));
+        assertEquals(Arrays.asList("//a/b:c"), cache.get(workspace, query));
+
+        // a .bzl file loaded through another .bzl file changes
+        Files.write(macros.toPath(), "def macro(name):\n    native.java_library(name = name)\n".getBytes());
+        assertNull(cache.get(workspace, query));
+    }
+
+    @Test
+    public void testLru() throws Exception {
+        File workspace = createWorkspace();
+        BazelCommandResultCache cache = new BazelCommandResultCache(2, null);
+        cache.put(workspace, Arrays.asList("info", "a"), Arrays.asList("1"));
+        cache.put(workspace, Arrays.asList("info", "b"), Arrays.asList("2"));
+        assertEquals(Arrays.asList("1"), cache.get(workspace, Arrays.asList("info", "a")));
+        cache.put(workspace, Arrays.asList("info", "c"), Arrays.asList("3"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(workspace, Arrays.asList("info", "b")));
+        assertEquals(Arrays.asList("1"), cache.get(workspace, Arrays.asList("info", "a")));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    // HELPERS
+
+    private File createWorkspace() throws Exception {
+        File workspace = tmpFolder.newFolder("ws");
+        Files.write(new File(workspace, "WORKSPACE").toPath(), "workspace(name = 'ws')\n".getBytes());
+        File pkg = new File(workspace, "a/b");
+        pkg.mkdirs();
+        Files.write(new File(pkg, "BUILD").toPath(), "\n".getBytes());
+        return workspace;
+    }
+
+    private static List<String> load(AtomicInteger loads, String result) {
+        loads.incrementAndGet();
+        return Collections.singletonList(result);
+    }
+}
@@ -34,7 +34,9 @@
 package com.salesforce.bazel.sdk.command;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -147,4 +149,25 @@ public class BazelOutputParserTest {
 
         assertEquals(0, errors.size());
     }
+
+    @Test
+    public void testStreamingProblems() {
+        List<BazelProblem> published = new ArrayList<>();
+        BazelProblemOutputSelector selector = new BazelProblemOutputSelector(published::add);
+
+        assertNull(selector.apply("INFO: Analyzed 19 targets (0 packages loaded, 1 target configured)."));
+        selector.apply(
+            "ERROR: /Users/stoens/bazel-demo/main_usecases/java/simplejava-mvnimport/projects/libs/banana/banana-api/BUILD:1:1: Building libbanana-api.jar (2 source files) failed (Exit 1)");
+        selector.apply(
+            "projects/libs/banana/banana-api/src/main/java/demo/banana/api/Banana.java:50: error: cannot find symbol");
+        assertEquals(0, published.size());
+
+        // the problem is published as soon as its details arrive, before the build finishes
+        selector.apply("    this.numSeeds = numSeeds;");
+        assertEquals(1, published.size());
+        assertEquals(50, published.get(0).getLineNumber());
+
+        selector.apply("INFO: Elapsed time: 0.146s, Critical Path: 0.00s");
+        assertEquals(published, selector.getProblems());
+    }
 }
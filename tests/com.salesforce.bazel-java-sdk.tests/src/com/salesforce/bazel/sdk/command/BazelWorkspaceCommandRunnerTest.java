@@ -120,4 +120,29 @@ public class BazelWorkspaceCommandRunnerTest {
         // run a clean, should not throw an exception
         workspaceRunner.runBazelClean(new MockWorkProgressMonitor());
     }
+
+    @Test
+    public void testWorkspaceRunner_bazelInfo() throws Exception {
+        File testDir = tmpFolder.newFolder();
+        File workspaceDir = new File(testDir, "bazel-workspace");
+        workspaceDir.mkdirs();
+        File outputbaseDir = new File(testDir, "outputbase");
+        outputbaseDir.mkdirs();
+
+        TestBazelWorkspaceDescriptor descriptor =
+                new TestBazelWorkspaceDescriptor(workspaceDir, outputbaseDir).javaPackages(1);
+        TestBazelWorkspaceFactory workspace = new TestBazelWorkspaceFactory(descriptor).build();
+        TestBazelCommandEnvironmentFactory env = new TestBazelCommandEnvironmentFactory();
+        env.createTestEnvironment(workspace, testDir, null);
+        BazelWorkspaceCommandRunner workspaceRunner = env.bazelWorkspaceCommandRunner;
+
+        Map<String, String> info = workspaceRunner.computeBazelInfo();
+        assertEquals("release 4.0.0", info.get("release"));
+        assertEquals(descriptor.dirExecRoot.getCanonicalFile(), workspaceRunner.computeBazelWorkspaceExecRoot());
+        assertEquals(descriptor.dirBazelBin.getCanonicalFile(), workspaceRunner.computeBazelWorkspaceBin());
+        workspaceRunner.computeBazelWorkspaceOutputBase();
+
+        // all the metadata came from a single bazel info command
+        assertEquals(1, workspaceRunner.getResultCache().getMissCount());
+    }
 }
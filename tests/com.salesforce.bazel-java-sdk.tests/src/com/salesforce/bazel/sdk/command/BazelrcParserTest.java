@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.salesforce.bazel.sdk.model.BazelWorkspace;
+
+public class BazelrcParserTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testParse() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File workspaceRc = new File(workspaceRoot, ".bazelrc");
+        write(workspaceRc, "# comment", "",
+            "common --isatty=1",
+            "build --javacopt=\"-source 8 -target 8\" --stamp \\",
+            "    --workspace_status_command tools/status.sh",
+            "build:ci --test_output=errors",
+            "test --config=ci --test_tag_filters=-flaky",
+            "query --output=label_kind",
+            "import %workspace%/tools/base.bazelrc",
+            "try-import %workspace%/user.bazelrc");
+        write(new File(workspaceRoot, "tools/base.bazelrc"), "test --test_timeout=45,180,300,360",
+            "build --stamp=false");
+        File userRc = tmpFolder.newFile("home.bazelrc");
+        write(userRc, "build --host_javabase=//tools/jdk:my-jdk11"); // $SLASH_OK bazel path
+
+        BazelWorkspaceCommandOptions options = parse(workspaceRoot, workspaceRc, userRc);
+
+        assertEquals("1", options.getContextualOption("common", "isatty"));
+        assertEquals("-source 8 -target 8", options.getContextualOption("build", "javacopt"));
+        assertEquals("tools/status.sh", options.getOption("workspace_status_command"));
+        assertEquals("//tools/jdk:my-jdk11", options.getOption("host_javabase")); // $SLASH_OK bazel path
+        assertEquals("45,180,300,360", options.getContextualOption("test", "test_timeout"));
+        assertEquals("-flaky", options.getOption("test_tag_filters"));
+
+        // the imported file comes after the line that set --stamp
+        assertEquals("false", options.getContextualOption("build", "stamp"));
+
+        // --config=ci pulls in the build:ci options
+        assertEquals("ci", options.getContextualOption("test", "config"));
+        assertEquals("errors", options.getContextualOption("test", "test_output"));
+
+        // options of other commands do not apply to 'bazel test'
+        assertNull(options.getOption("output"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingImport() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File workspaceRc = new File(workspaceRoot, ".bazelrc");
+        write(workspaceRc, "import %workspace%/missing.bazelrc");
+
+        parse(workspaceRoot, workspaceRc);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUndefinedConfig() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File workspaceRc = new File(workspaceRoot, ".bazelrc");
+        write(workspaceRc, "build --config=missing");
+
+        parse(workspaceRoot, workspaceRc);
+    }
+
+    @Test
+    public void testSeparateValues() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File workspaceRc = new File(workspaceRoot, ".bazelrc");
+        write(workspaceRc, "build --keep_going //foo --nostamp bar --incompatible_strict_action_env //... "
+                + "--jobs 8 --output_filter ^//java");
+
+        BazelWorkspaceCommandOptions options = parse(workspaceRoot, workspaceRc);
+        assertEquals("true", options.getContextualOption("build", "keep_going"));
+        assertEquals("true", options.getContextualOption("build", "nostamp"));
+        assertEquals("true", options.getContextualOption("build", "incompatible_strict_action_env"));
+        assertEquals("8", options.getContextualOption("build", "jobs"));
+        assertEquals("^//java", options.getContextualOption("build", "output_filter"));
+    }
+
+    @Test
+    public void testValueOptions() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File workspaceRc = new File(workspaceRoot, ".bazelrc");
+        write(workspaceRc, "build --copt -O2 --cxxopt -std=c++17 --test_arg --verbose --linkopt=-lm");
+
+        BazelWorkspaceCommandOptions options = parse(workspaceRoot, workspaceRc);
+        assertEquals("-O2", options.getContextualOption("build", "copt"));
+        assertEquals("-std=c++17", options.getContextualOption("build", "cxxopt"));
+        assertEquals("--verbose", options.getContextualOption("build", "test_arg"));
+        assertEquals("-lm", options.getContextualOption("build", "linkopt"));
+        assertNull(options.getOption("O2"));
+        assertNull(options.getOption("verbose"));
+    }
+
+    @Test
+    public void testDefaultRcFiles() throws Exception {
+        File workspaceRoot = tmpFolder.newFolder("ws");
+        File home = tmpFolder.newFolder("home");
+
+        List<File> rcFiles = BazelrcParser.getRcFiles(workspaceRoot, home);
+        assertEquals(3, rcFiles.size());
+        assertEquals(new File(workspaceRoot, ".bazelrc"), rcFiles.get(1));
+        assertEquals(new File(home, ".bazelrc"), rcFiles.get(2));
+
+        // the user's .bazelrc overrides the workspace .bazelrc
+        write(new File(workspaceRoot, ".bazelrc"), "build --jobs=4");
+        write(new File(home, ".bazelrc"), "build --jobs=6");
+        assertEquals("6", parse(workspaceRoot, rcFiles.toArray(new File[0])).getOption("jobs"));
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+        assertEquals(Arrays.asList("build", "--a=b c", "--d='e'", "f g"),
+            BazelrcParser.tokenize("build  --a=\"b c\" --d=\"'e'\" f\\ g"));
+    }
+
+    // HELPERS
+
+    private static BazelWorkspaceCommandOptions parse(File workspaceRoot, File... rcFiles) throws IOException {
+        BazelWorkspaceCommandOptions options = new BazelWorkspaceCommandOptions(Mockito.mock(BazelWorkspace.class));
+        new BazelrcParser(workspaceRoot, Arrays.asList(rcFiles)).parse(options);
+        return options;
+    }
+
+    private static void write(File file, String... lines) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
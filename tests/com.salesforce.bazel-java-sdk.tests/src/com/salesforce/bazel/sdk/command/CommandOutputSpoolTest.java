@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommandOutputSpoolTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadBack() throws Exception {
+        File dir = tmpFolder.newFolder();
+        CommandOutputSpool spool = new CommandOutputSpool(dir, "stdout-", 1024 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            spool.write(line, 0, line.length);
+        }
+
+        // readable before the spool is closed
+        try (BufferedReader reader = spool.openReader()) {
+            assertEquals("line 0", reader.readLine());
+        }
+        spool.close();
+        try (BufferedReader reader = spool.openReader()) {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("line " + i, reader.readLine());
+            }
+            assertNull(reader.readLine());
+        }
+        assertEquals(0, spool.getDiscardedBytes());
+
+        spool.delete();
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        File dir = tmpFolder.newFolder();
+        // 2 segments of 100 bytes
+        CommandOutputSpool spool = new CommandOutputSpool(dir, "stderr-", 100, 2);
+        for (int i = 0; i < 100; i++) {
+            // 10 bytes per line, written byte by byte and in bulk
+            spool.write('#');
+            byte[] line = String.format("line %03d\n", i).getBytes(StandardCharsets.UTF_8);
+            spool.write(line, 0, line.length);
+        }
+        spool.close();
+
+        assertEquals(1000, spool.getTotalBytes());
+        assertEquals(800, spool.getDiscardedBytes());
+        assertEquals(2, spool.getSegments().size());
+        assertEquals(2, dir.list().length);
+        try (BufferedReader reader = spool.openReader()) {
+            for (int i = 80; i < 100; i++) {
+                assertEquals(String.format("#line %03d", i), reader.readLine());
+            }
+            assertNull(reader.readLine());
+        }
+
+        File first = spool.getSegments().get(0);
+        spool.delete();
+        assertFalse(first.exists());
+    }
+
+    @Test
+    public void testLargeWrite() throws Exception {
+        File dir = tmpFolder.newFolder();
+        CommandOutputSpool spool = new CommandOutputSpool(dir, "stdout-", 64 * 1024, 4);
+        byte[] big = new byte[200 * 1024];
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (byte) ('a' + (i % 26));
+        }
+        spool.write(big, 0, big.length);
+        spool.close();
+
+        assertEquals(4, spool.getSegments().size());
+        assertEquals(0, spool.getDiscardedBytes());
+        try (BufferedReader reader = spool.openReader()) {
+            String all = reader.readLine();
+            assertEquals(big.length, all.length());
+            assertTrue(all.startsWith("abcdefghijklmnopqrstuvwxyz"));
+        }
+        spool.delete();
+    }
+}
@@ -38,13 +38,20 @@ package com.salesforce.bazel.sdk.command;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.function.Function;
 
 import org.junit.Before;
@@ -52,7 +59,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.salesforce.bazel.sdk.command.internal.BazelCommandExecutor;
 import com.salesforce.bazel.sdk.command.shell.ShellCommand;
+import com.salesforce.bazel.sdk.command.test.MockWorkProgressMonitor;
 import com.salesforce.bazel.sdk.console.CommandConsole;
 import com.salesforce.bazel.sdk.console.CommandConsoleFactory;
 
@@ -202,4 +211,135 @@ public class ShellCommandTest {
         assertEquals(1, cmd.getSelectedOutputLines().size());
         assertEquals(tempFolder.getRoot().getCanonicalPath(), cmd.getSelectedOutputLines().get(0));
     }
+
+    @Test
+    public void testBashCommandTimeout() throws IOException, InterruptedException {
+        if (isWindows) {
+            return; // no bash on Windows
+        }
+        CommandBuilder builder =
+                ShellCommand.builder(mockConsoleFactory).setConsoleName(null).setDirectory(tempFolder.getRoot());
+        builder.setStdoutLineSelector(NON_EMPTY_LINES_SELECTOR).setTimeout(500);
+        // the sleep is a child process of bash that also holds the output pipes
+        builder.addArguments("bash", "-c", "echo started; sleep 60; echo done");
+        Command cmd = builder.build();
+        long startTimeMS = System.currentTimeMillis();
+        try {
+            cmd.run();
+            fail("the command should have timed out");
+        } catch (InterruptedIOException expected) {}
+        assertTrue(System.currentTimeMillis() - startTimeMS < 10000);
+        assertEquals(1, cmd.getSelectedOutputLines().size());
+        assertEquals("started", cmd.getSelectedOutputLines().get(0));
+
+        // the next command runs normally
+        builder = ShellCommand.builder(mockConsoleFactory).setConsoleName(null).setDirectory(tempFolder.getRoot());
+        builder.setStdoutLineSelector(NON_EMPTY_LINES_SELECTOR).setTimeout(10000);
+        builder.addArguments("bash", "-c", "echo a");
+        cmd = builder.build();
+        assertEquals(0, cmd.run());
+        assertEquals("a", cmd.getSelectedOutputLines().get(0));
+    }
+
+    @Test
+    public void testBashCommandCancel() throws Exception {
+        if (isWindows) {
+            return; // no bash on Windows
+        }
+        MockWorkProgressMonitor monitor = new MockWorkProgressMonitor();
+        CommandBuilder builder =
+                ShellCommand.builder(mockConsoleFactory).setConsoleName(null).setDirectory(tempFolder.getRoot());
+        builder.setStdoutLineSelector(NON_EMPTY_LINES_SELECTOR).setProgressMonitor(monitor);
+        // the command cleans up when interrupted, like Bazel does
+        builder.addArguments("bash", "-c", "trap 'echo interrupted; exit 3' INT; echo started; while true; do sleep 0.1; done");
+        Command cmd = builder.build();
+
+        Thread canceler = new Thread(() -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException ignore) {}
+            monitor.setCanceled(true);
+        });
+        canceler.start();
+        long startTimeMS = System.currentTimeMillis();
+        try {
+            cmd.run();
+            fail("the command should have been canceled");
+        } catch (CancellationException expected) {}
+        canceler.join();
+
+        assertTrue(System.currentTimeMillis() - startTimeMS < 5000);
+        assertEquals(2, cmd.getSelectedOutputLines().size());
+        assertEquals("started", cmd.getSelectedOutputLines().get(0));
+        assertEquals("interrupted", cmd.getSelectedOutputLines().get(1));
+    }
+
+    @Test
+    public void testBashCommandSpool() throws Exception {
+        if (isWindows) {
+            return; // no bash on Windows
+        }
+        CommandBuilder builder =
+                ShellCommand.builder(mockConsoleFactory).setConsoleName(null).setDirectory(tempFolder.getRoot());
+        builder.setStdoutLineSelector(x -> x.startsWith(">>>") ? x.substring(3) : null);
+        builder.setOutputSpool(tempFolder.newFolder("spool"), 1024 * 1024);
+        builder.addArguments("bash", "-c", "for i in $(seq 1 1000); do echo line $i; done; echo '>>>result'; echo err >&2");
+        Command cmd = builder.build();
+        assertEquals(0, cmd.run());
+
+        // only the selected line is in memory, the full output is in the spool
+        assertEquals(1, cmd.getSelectedOutputLines().size());
+        assertEquals("result", cmd.getSelectedOutputLines().get(0));
+        try (BufferedReader reader = cmd.getOutputSpool().openReader()) {
+            for (int i = 1; i <= 1000; i++) {
+                assertEquals("line " + i, reader.readLine());
+            }
+            assertEquals(">>>result", reader.readLine());
+        }
+        try (BufferedReader reader = cmd.getErrorSpool().openReader()) {
+            assertEquals("err", reader.readLine());
+        }
+        cmd.getOutputSpool().delete();
+        cmd.getErrorSpool().delete();
+    }
+
+    @Test
+    public void testExecutorSpoolsBackgroundCommands() throws Exception {
+        if (isWindows) {
+            return; // no bash on Windows
+        }
+        // a fake bazel that prints its command on stdout and stderr, and exits with the code passed as the second argument
+        File bazel = tempFolder.newFile("bazel");
+        Files.write(bazel.toPath(), Arrays.asList("#!/bin/bash", "echo \"output of $1\"", "echo \"errors of $1\" >&2", "exit $2"),
+            StandardCharsets.UTF_8);
+        bazel.setExecutable(true);
+        File spoolDir = tempFolder.newFolder("spool");
+        BazelCommandExecutor executor =
+                new BazelCommandExecutor(bazel, ShellCommand.builder(mockConsoleFactory).setConsoleName(null));
+        executor.setOutputSpool(spoolDir, 1024 * 1024);
+
+        // the output of a successful build is deleted
+        executor.runBazelAndGetOutputLines(tempFolder.getRoot(), null, Arrays.asList("build", "0"), null, 0);
+        assertEquals(0, spoolDir.list().length);
+
+        // the output of a failed build is kept, one file for stdout and one for stderr
+        executor.runBazelAndGetOutputLines(tempFolder.getRoot(), null, Arrays.asList("build", "1"), null, 0);
+        assertEquals(2, spoolDir.list().length);
+
+        // interactive commands are not spooled
+        executor.runBazelAndGetOutputLines(tempFolder.getRoot(), null, Arrays.asList("info", "1"), null, 0);
+        assertEquals(2, spoolDir.list().length);
+
+        // the next failure replaces the kept output
+        executor.runBazelAndGetOutputLines(tempFolder.getRoot(), null, Arrays.asList("test", "1"), null, 0);
+        File[] kept = spoolDir.listFiles();
+        assertEquals(2, kept.length);
+        List<String> keptLines = new LinkedList<>();
+        for (File file : kept) {
+            keptLines.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        }
+        assertEquals(2, keptLines.size());
+        assertTrue(keptLines.contains("output of test"));
+        assertTrue(keptLines.contains("errors of test"));
+    }
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+public class AspectBatchSchedulerTest {
+
+    // the batch size used before the scheduler was introduced
+    private static final int LEGACY_BATCH_SIZE = 25;
+
+    @Test
+    public void testSmallImportRunsInOneInvocation() {
+        AspectBatchScheduler scheduler = new AspectBatchScheduler();
+        List<List<BazelLabel>> batches = scheduler.planBatches(createLabels(100));
+        assertEquals(1, batches.size());
+        assertEquals(100, batches.get(0).size());
+    }
+
+    @Test
+    public void testEmpty() {
+        AspectBatchScheduler scheduler = new AspectBatchScheduler();
+        assertEquals(0, scheduler.planBatches(new ArrayList<>()).size());
+    }
+
+    @Test
+    public void testLabelOrderIsPreserved() {
+        AspectBatchScheduler scheduler = new AspectBatchScheduler(1000, 0.05);
+        List<BazelLabel> labels = createLabels(500);
+        List<BazelLabel> flattened = new ArrayList<>();
+        for (List<BazelLabel> batch : scheduler.planBatches(labels)) {
+            flattened.addAll(batch);
+        }
+        assertEquals(labels, flattened);
+    }
+
+    @Test
+    public void testCommandLineLengthLimit() {
+        // each label is 36 chars plus a separator, so 27 fit in 1000 chars
+        AspectBatchScheduler scheduler = new AspectBatchScheduler(1000, 0.05);
+        List<List<BazelLabel>> batches = scheduler.planBatches(createLabels(100));
+        assertEquals(4, batches.size());
+        for (List<BazelLabel> batch : batches) {
+            int length = 0;
+            for (BazelLabel label : batch) {
+                length += label.getLabel().length() + 1;
+            }
+            assertTrue(length <= 1000);
+        }
+    }
+
+    @Test
+    public void testEstimatesAreRefinedFromMeasurements() {
+        AspectBatchScheduler scheduler = new AspectBatchScheduler();
+
+        // invocations with an overhead of 1s and a cost of 20ms per label
+        scheduler.recordInvocation(100, 1000 + (100 * 20));
+        scheduler.recordInvocation(300, 1000 + (300 * 20));
+        assertEquals(1000, scheduler.getInvocationOverheadMS());
+        assertEquals(20.0, scheduler.getPerLabelMS(), 0.001);
+
+        // with a single sample size the overhead estimate is kept, the rest is attributed to the labels
+        scheduler = new AspectBatchScheduler();
+        scheduler.recordInvocation(100, AspectBatchScheduler.DEFAULT_INVOCATION_OVERHEAD_MS + (100 * 50));
+        assertEquals(AspectBatchScheduler.DEFAULT_INVOCATION_OVERHEAD_MS, scheduler.getInvocationOverheadMS());
+        assertEquals(50.0, scheduler.getPerLabelMS(), 0.001);
+    }
+
+    /**
+     * Compares the simulated wall clock time of the legacy fixed batches of 25 with the scheduler, for imports of
+     * 100/1000/5000 labels. The cost of each invocation is simulated with a fixed overhead plus a per label cost. The
+     * command line length limit is lifted, it is covered by testCommandLineLengthLimit.
+     */
+    @Test
+    public void testSimulatedWallClockComparedToFixedBatches() {
+        long overheadMS = 3000;
+        long perLabelMS = 100;
+
+        for (int labelCount : new int[] { 100, 1000, 5000 }) {
+            AspectBatchScheduler scheduler = new AspectBatchScheduler(Integer.MAX_VALUE, 0.05);
+            List<List<BazelLabel>> batches = scheduler.planBatches(createLabels(labelCount));
+
+            long scheduledMS = 0;
+            for (List<BazelLabel> batch : batches) {
+                long elapsedMS = overheadMS + (batch.size() * perLabelMS);
+                scheduler.recordInvocation(batch.size(), elapsedMS);
+                scheduledMS += elapsedMS;
+            }
+            int legacyInvocations = (labelCount + LEGACY_BATCH_SIZE - 1) / LEGACY_BATCH_SIZE;
+            long legacyMS = (legacyInvocations * overheadMS) + (labelCount * perLabelMS);
+
+            // 100 labels: 1 vs 4 invocations, 1000 labels: 1 vs 40, 5000 labels: 8 vs 200
+            assertTrue(batches.size() < legacyInvocations);
+            assertTrue(scheduledMS < legacyMS);
+            // the overhead stays within the configured budget (or a single invocation)
+            long scheduledOverheadMS = batches.size() * overheadMS;
+            assertTrue((batches.size() == 1) || (scheduledOverheadMS <= (0.05 * labelCount * perLabelMS)));
+        }
+    }
+
+    // HELPERS
+
+    private List<BazelLabel> createLabels(int count) {
+        List<BazelLabel> labels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            labels.add(new BazelLabel(String.format("//projects/libs/javalib%05d:javalib", i))); // $SLASH_OK bazel path
+        }
+        return labels;
+    }
+}
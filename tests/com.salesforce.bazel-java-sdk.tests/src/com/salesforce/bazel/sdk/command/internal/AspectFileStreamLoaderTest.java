@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceDescriptor;
+import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceFactory;
+
+public class AspectFileStreamLoaderTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testSelector() {
+        AspectFileStreamLoader loader = new AspectFileStreamLoader(null);
+        Function<String, String> selector = loader.createSelector();
+
+        assertNull(selector.apply("INFO: Build completed successfully"));
+        assertEquals("", selector.apply(">>>/tmp/bazel-out/javalib0.jar"));
+        assertEquals("/tmp/missing.bzljavasdk-data.json", selector.apply(">>>/tmp/missing.bzljavasdk-data.json"));
+    }
+
+    @Test
+    public void testStreamingLoad() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<String> aspectFilePaths = createAspectFiles();
+            AspectFileStreamLoader loader = new AspectFileStreamLoader(executor);
+
+            // simulate bazel writing the paths to stderr, the selector starts the parsing
+            Function<String, String> selector = loader.createSelector();
+            List<String> selectedPaths = new ArrayList<>();
+            for (String aspectFilePath : aspectFilePaths) {
+                selectedPaths.add(selector.apply(">>>" + aspectFilePath));
+            }
+            selectedPaths.add(selector.apply(">>>/tmp/bazel-out/javalib0.jar"));
+
+            Map<BazelLabel, AspectTargetInfo> results = loader.awaitResults(selectedPaths);
+            assertEquals(aspectFilePaths.size(), results.size());
+            for (AspectTargetInfo info : results.values()) {
+                assertNotNull(info.getKind());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPathsNotSeenBySelectorAreLoaded() throws Exception {
+        List<String> aspectFilePaths = createAspectFiles();
+        AspectFileStreamLoader loader = new AspectFileStreamLoader(null);
+
+        // the command output was not streamed through the selector (e.g. a mock command)
+        Map<BazelLabel, AspectTargetInfo> results = loader.awaitResults(aspectFilePaths);
+        assertEquals(aspectFilePaths.size(), results.size());
+    }
+
+    @Test
+    public void testMissingFileIsSkipped() throws Exception {
+        AspectFileStreamLoader loader = new AspectFileStreamLoader(null);
+        List<String> paths = new ArrayList<>();
+        paths.add(new File(tmpFolder.getRoot(), "missing.bzljavasdk-data.json").getAbsolutePath());
+
+        assertEquals(0, loader.awaitResults(paths).size());
+    }
+
+    // HELPERS
+
+    private List<String> createAspectFiles() throws Exception {
+        File workspaceDir = tmpFolder.newFolder("bazel-workspace");
+        File outputbaseDir = tmpFolder.newFolder("outputbase");
+        TestBazelWorkspaceDescriptor descriptor =
+                new TestBazelWorkspaceDescriptor(workspaceDir, outputbaseDir).javaPackages(2);
+        new TestBazelWorkspaceFactory(descriptor).build();
+
+        List<String> aspectFilePaths = new ArrayList<>();
+        for (Set<String> packageAspectFiles : descriptor.aspectFileSets.values()) {
+            for (String aspectFilePath : packageAspectFiles) {
+                if (!aspectFilePaths.contains(aspectFilePath)) {
+                    aspectFilePaths.add(aspectFilePath);
+                }
+            }
+        }
+        return aspectFilePaths;
+    }
+}
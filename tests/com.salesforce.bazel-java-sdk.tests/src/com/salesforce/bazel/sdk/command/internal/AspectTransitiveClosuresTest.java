@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+
+public class AspectTransitiveClosuresTest {
+
+    @Test
+    public void testDiamond() {
+        Map<BazelLabel, AspectTargetInfo> infos = new LinkedHashMap<>();
+        AspectTargetInfo a = add(infos, "//a:a", "//b:b", "//c:c");
+        AspectTargetInfo b = add(infos, "//b:b", "//d:d");
+        AspectTargetInfo c = add(infos, "//c:c", "//d:d");
+        AspectTargetInfo d = add(infos, "//d:d", "@maven//:not_analyzed");
+
+        AspectTransitiveClosures closures = new AspectTransitiveClosures(infos);
+        assertEquals(new HashSet<>(Arrays.asList(b, c, d)), closures.getTransitiveClosure(a));
+        assertEquals(Collections.singleton(d), closures.getTransitiveClosure(b));
+        assertTrue(closures.getTransitiveClosure(d).isEmpty());
+        assertTrue(closures.getTransitiveClosure(a).contains(d));
+
+        // targets with the same closure share the result
+        assertSame(closures.getTransitiveClosure(b), closures.getTransitiveClosure(c));
+    }
+
+    @Test
+    public void testLargeGraph() {
+        // 2,000 packages of 10 targets, each target depends on a few targets of nearby packages
+        int packageCount = 2000;
+        int targetsPerPackage = 10;
+        Random random = new Random(42);
+        List<String> labels = new ArrayList<>();
+        List<List<String>> deps = new ArrayList<>();
+        for (int p = 0; p < packageCount; p++) {
+            for (int t = 0; t < targetsPerPackage; t++) {
+                labels.add("//pkg" + p + ":t" + t);
+                List<String> targetDeps = new ArrayList<>();
+                if (p > 0) {
+                    for (int i = 0; i < 4; i++) {
+                        int depPackage = Math.max(0, p - 1 - random.nextInt(20));
+                        targetDeps.add("//pkg" + depPackage + ":t" + random.nextInt(targetsPerPackage));
+                    }
+                }
+                deps.add(targetDeps);
+            }
+        }
+        // insert in random order, so that the map order is not a topological order
+        List<Integer> insertionOrder = new ArrayList<>();
+        for (int i = 0; i < labels.size(); i++) {
+            insertionOrder.add(i);
+        }
+        Collections.shuffle(insertionOrder, random);
+        Map<BazelLabel, AspectTargetInfo> infos = new LinkedHashMap<>();
+        for (int i : insertionOrder) {
+            add(infos, labels.get(i), deps.get(i).toArray(new String[0]));
+        }
+
+        // deps only point to earlier packages, so no target is in its own closure
+        AspectTransitiveClosures closures = new AspectTransitiveClosures(infos);
+        for (AspectTargetInfo info : infos.values()) {
+            assertFalse(closures.getTransitiveClosure(info).contains(info));
+        }
+
+        // spot check against a plain breadth first search
+        for (int i = 0; i < labels.size(); i += 997) {
+            AspectTargetInfo info = infos.get(new BazelLabel(labels.get(i)));
+            assertEquals(breadthFirstClosure(info, infos), closures.getTransitiveClosure(info));
+        }
+    }
+
+    // HELPERS
+
+    private static AspectTargetInfo add(Map<BazelLabel, AspectTargetInfo> infos, String label, String... deps) {
+        AspectTargetInfo info = new AspectTargetInfo(new File(""), "some/path", "java_library", label,
+                Arrays.asList(deps), new ArrayList<>()) {};
+        infos.put(new BazelLabel(label), info);
+        return info;
+    }
+
+    private static Set<AspectTargetInfo> breadthFirstClosure(AspectTargetInfo start,
+            Map<BazelLabel, AspectTargetInfo> infos) {
+        Set<AspectTargetInfo> closure = new HashSet<>();
+        Deque<AspectTargetInfo> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            for (String label : queue.remove().getDeps()) {
+                AspectTargetInfo dep = infos.get(new BazelLabel(label));
+                if ((dep != null) && closure.add(dep)) {
+                    queue.add(dep);
+                }
+            }
+        }
+        return closure;
+    }
+}
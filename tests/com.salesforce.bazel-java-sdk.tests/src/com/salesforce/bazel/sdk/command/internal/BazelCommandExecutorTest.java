@@ -24,10 +24,17 @@
 package com.salesforce.bazel.sdk.command.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -92,6 +99,43 @@ public class BazelCommandExecutorTest {
         assertEquals("result line 2", result.get(1));
     }
 
+    @Test
+    public void testInteractiveCommandDoesNotWaitForBuild() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnv();
+        CountDownLatch buildRelease = new CountDownLatch(1);
+        env.commandBuilder.holdCommands("build", buildRelease);
+
+        BazelCommandExecutor executor =
+                new BazelCommandExecutor(env.bazelExecutable.bazelExecutableFile, env.commandBuilder);
+        File workspaceDir = env.bazelWorkspaceCommandRunner.getBazelWorkspaceRootDirectory();
+
+        ExecutorService buildThread = Executors.newSingleThreadExecutor();
+        try {
+            // start a long running build
+            Future<List<String>> build = buildThread.submit(() -> executor.runBazelAndGetErrorLines(workspaceDir,
+                new MockWorkProgressMonitor(), Arrays.asList("build", "//projects/libs/javalib0"), (t) -> t, 0)); // $SLASH_OK bazel path
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((env.commandBuilder.heldCommandCount.get() == 0) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, env.commandBuilder.heldCommandCount.get());
+
+            // the info command completes while the build is still running
+            List<String> result = executor.runBazelAndGetOutputLines(workspaceDir, new MockWorkProgressMonitor(),
+                Arrays.asList("info", "workspace"), (t) -> t, 0);
+            assertEquals(workspaceDir.getAbsolutePath(), result.get(result.size() - 1));
+            assertEquals(1, env.commandBuilder.heldCommandCount.get());
+
+            buildRelease.countDown();
+            build.get(10, TimeUnit.SECONDS);
+            assertEquals(0, env.commandBuilder.heldCommandCount.get());
+        } finally {
+            buildRelease.countDown();
+            buildThread.shutdown();
+            assertTrue(buildThread.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
     @Test
     public void testStripInfo() {
         List<String> outputLines = new ArrayList<>();
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.command.internal.BazelCommandScheduler.CommandClass;
+import com.salesforce.bazel.sdk.command.test.MockWorkProgressMonitor;
+
+public class BazelCommandSchedulerTest {
+
+    @Test
+    public void testClassify() {
+        assertEquals(CommandClass.INTERACTIVE, BazelCommandScheduler.classify(Arrays.asList("info", "workspace")));
+        assertEquals(CommandClass.INTERACTIVE,
+            BazelCommandScheduler.classify(Arrays.asList("--max_idle_secs=10", "query", "//...")));
+        assertEquals(CommandClass.BACKGROUND, BazelCommandScheduler.classify(Arrays.asList("build", "//a:b")));
+        assertEquals(CommandClass.BACKGROUND, BazelCommandScheduler.classify(Arrays.asList("test", "//a:b")));
+    }
+
+    @Test
+    public void testTimeouts() {
+        BazelCommandScheduler scheduler = new BazelCommandScheduler();
+        // no class is limited by default
+        assertEquals(0, scheduler.getEffectiveTimeout(CommandClass.INTERACTIVE, 0));
+        assertEquals(5000, scheduler.getEffectiveTimeout(CommandClass.INTERACTIVE, 5000));
+
+        scheduler.setTimeout(CommandClass.INTERACTIVE, 1000);
+        assertEquals(1000, scheduler.getEffectiveTimeout(CommandClass.INTERACTIVE, 0));
+        assertEquals(500, scheduler.getEffectiveTimeout(CommandClass.INTERACTIVE, 500));
+        assertEquals(1000, scheduler.getEffectiveTimeout(CommandClass.INTERACTIVE, 5000));
+
+        // background commands are still not limited
+        assertEquals(0, scheduler.getEffectiveTimeout(CommandClass.BACKGROUND, 0));
+        assertEquals(5000, scheduler.getEffectiveTimeout(CommandClass.BACKGROUND, 5000));
+    }
+
+    @Test
+    public void testClassLimits() throws Exception {
+        BazelCommandScheduler scheduler = new BazelCommandScheduler(2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            // the background slot is taken by a long command, a second background command waits
+            threads.submit(() -> scheduler.run(CommandClass.BACKGROUND, null, () -> release.await(10, TimeUnit.SECONDS)));
+            waitFor(() -> scheduler.getRunningCount(CommandClass.BACKGROUND) == 1);
+            Future<Integer> waitingBuild = threads.submit(() -> scheduler.run(CommandClass.BACKGROUND, null, () -> 2));
+            waitFor(() -> scheduler.getWaitingCount(CommandClass.BACKGROUND) == 1);
+
+            // interactive commands still run right away
+            assertEquals(Integer.valueOf(1), scheduler.run(CommandClass.INTERACTIVE, null, () -> 1));
+            assertEquals(1, scheduler.getWaitingCount(CommandClass.BACKGROUND));
+
+            release.countDown();
+            assertEquals(Integer.valueOf(2), waitingBuild.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCancelWhileWaiting() throws Exception {
+        BazelCommandScheduler scheduler = new BazelCommandScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            threads.submit(() -> scheduler.run(CommandClass.BACKGROUND, null, () -> release.await(10, TimeUnit.SECONDS)));
+            waitFor(() -> scheduler.getRunningCount(CommandClass.BACKGROUND) == 1);
+
+            MockWorkProgressMonitor monitor = new MockWorkProgressMonitor();
+            Future<Integer> waitingBuild =
+                    threads.submit(() -> scheduler.run(CommandClass.BACKGROUND, monitor, () -> 2));
+            waitFor(() -> scheduler.getWaitingCount(CommandClass.BACKGROUND) == 1);
+            monitor.setCanceled(true);
+            try {
+                waitingBuild.get(10, TimeUnit.SECONDS);
+                fail("the waiting command should have been canceled");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof CancellationException);
+            }
+            assertEquals(0, scheduler.getWaitingCount(CommandClass.BACKGROUND));
+            assertEquals(1, scheduler.getRunningCount(CommandClass.BACKGROUND));
+        } finally {
+            release.countDown();
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    // HELPERS
+
+    private interface Condition {
+        boolean isTrue();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for the scheduler");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.salesforce.bazel.sdk.command.BazelWorkspaceCommandRunner;
+import com.salesforce.bazel.sdk.command.test.MockCommand;
+import com.salesforce.bazel.sdk.command.test.TestBazelCommandEnvironmentFactory;
+import com.salesforce.bazel.sdk.model.BazelBuildFile;
+import com.salesforce.bazel.sdk.model.BazelLabel;
+import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceDescriptor;
+import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceFactory;
+import com.salesforce.bazel.sdk.workspace.test.TestOptions;
+
+public class BazelQueryHelperTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentQueriesAreMerged() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnvironment(4);
+        BazelWorkspaceCommandRunner runner = env.bazelWorkspaceCommandRunner;
+        BazelQueryHelper queryHelper = runner.getBazelQueryHelper();
+
+        CountDownLatch release = new CountDownLatch(1);
+        env.commandBuilder.holdCommands("query", release);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            // the first query is held, the requests that arrive in the meantime are queued
+            List<Future<Collection<BazelBuildFile>>> results = new ArrayList<>();
+            results.add(threads.submit(() -> query(runner, 0)));
+            waitFor(() -> env.commandBuilder.heldCommandCount.get() == 1);
+            for (int i = 1; i < 4; i++) {
+                int packageIndex = i;
+                results.add(threads.submit(() -> query(runner, packageIndex)));
+            }
+            waitFor(() -> queryHelper.getPendingQueryCount() == 3);
+            release.countDown();
+
+            // each caller gets the build file of its own package
+            for (int i = 0; i < 4; i++) {
+                Collection<BazelBuildFile> buildFiles = results.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(1, buildFiles.size());
+                assertEquals("//projects/libs/javalib" + i, buildFiles.iterator().next().getLabel());
+            }
+        } finally {
+            release.countDown();
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // the three queued requests ran as a single query
+        assertEquals(4, queryHelper.getQueryRequestCount());
+        assertEquals(2, queryHelper.getQueryCount());
+        assertEquals(2, queryHelper.getSavedClientLaunches());
+
+        // cached packages do not need a query
+        query(runner, 2);
+        assertEquals(4, queryHelper.getQueryRequestCount());
+    }
+
+    @Test
+    public void testInterruptOnlyFailsTheInterruptedCaller() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnvironment(4);
+        BazelWorkspaceCommandRunner runner = env.bazelWorkspaceCommandRunner;
+        BazelQueryHelper queryHelper = runner.getBazelQueryHelper();
+
+        CountDownLatch firstRelease = new CountDownLatch(1);
+        CountDownLatch mergedRelease = new CountDownLatch(1);
+        env.commandBuilder.holdCommands("query", firstRelease);
+        Object[] results = new Object[4];
+        List<Thread> threads = new ArrayList<>();
+        try {
+            threads.add(startQuery(runner, 0, results));
+            waitFor(() -> env.commandBuilder.heldCommandCount.get() == 1);
+            for (int i = 1; i < 4; i++) {
+                threads.add(startQuery(runner, i, results));
+            }
+            waitFor(() -> queryHelper.getPendingQueryCount() == 3);
+
+            // the three queued requests are merged into the next query, which is held as well
+            env.commandBuilder.holdCommands("query", mergedRelease);
+            firstRelease.countDown();
+            waitFor(() -> (results[0] != null) && (env.commandBuilder.heldCommandCount.get() == 1));
+
+            // interrupt the thread that runs the merged query; it waits on the latch, the others wait for the lock
+            Thread mergedRunner = null;
+            for (Thread thread : threads.subList(1, 4)) {
+                if (thread.getState() == Thread.State.WAITING) {
+                    mergedRunner = thread;
+                }
+            }
+            env.commandBuilder.holdCommands(null, null);
+            mergedRunner.interrupt();
+            for (Thread thread : threads) {
+                thread.join(10000);
+            }
+        } finally {
+            firstRelease.countDown();
+            mergedRelease.countDown();
+        }
+
+        // only the interrupted caller failed, the other two requests were run again
+        int interrupted = 0;
+        for (int i = 0; i < 4; i++) {
+            if (results[i] instanceof InterruptedException) {
+                interrupted++;
+                assertTrue(i > 0);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Collection<BazelBuildFile> buildFiles = (Collection<BazelBuildFile>) results[i];
+            assertEquals(1, buildFiles.size());
+            assertEquals("//projects/libs/javalib" + i, buildFiles.iterator().next().getLabel());
+        }
+        assertEquals(1, interrupted);
+        assertEquals(3, queryHelper.getQueryRequestCount());
+        assertEquals(2, queryHelper.getQueryCount());
+    }
+
+    @Test
+    public void testBadLabelDoesNotFailMergedRequests() throws Exception {
+        TestOptions testOptions = new TestOptions();
+        testOptions.put(MockCommand.TESTOPTION_FAILTESTFORUNKNOWNTARGET, "false");
+        TestBazelCommandEnvironmentFactory env = createEnvironment(4, testOptions);
+        BazelWorkspaceCommandRunner runner = env.bazelWorkspaceCommandRunner;
+        BazelQueryHelper queryHelper = runner.getBazelQueryHelper();
+
+        CountDownLatch release = new CountDownLatch(1);
+        env.commandBuilder.holdCommands("query", release);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            Future<Collection<BazelBuildFile>> first = threads.submit(() -> query(runner, 0));
+            waitFor(() -> env.commandBuilder.heldCommandCount.get() == 1);
+            Future<Collection<BazelBuildFile>> good1 = threads.submit(() -> query(runner, 1));
+            Future<Collection<BazelBuildFile>> bad = threads.submit(() -> runner.queryBazelTargetsInBuildFile(
+                Collections.singletonList(new BazelLabel("//projects/libs/nosuchlib:*")))); // $SLASH_OK bazel path
+            Future<Collection<BazelBuildFile>> good2 = threads.submit(() -> query(runner, 2));
+            waitFor(() -> queryHelper.getPendingQueryCount() == 3);
+            env.commandBuilder.holdCommands(null, null);
+            release.countDown();
+
+            assertEquals(1, first.get(10, TimeUnit.SECONDS).size());
+            // the merged query failed on the bad label, the requests were run again one by one
+            assertEquals("//projects/libs/javalib1", good1.get(10, TimeUnit.SECONDS).iterator().next().getLabel());
+            assertEquals("//projects/libs/javalib2", good2.get(10, TimeUnit.SECONDS).iterator().next().getLabel());
+            try {
+                bad.get(10, TimeUnit.SECONDS);
+                fail("the query of the bad label should have failed");
+            } catch (ExecutionException expected) {
+                assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof IOException);
+            }
+        } finally {
+            release.countDown();
+            threads.shutdown();
+            assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // the good packages were cached with their targets, the bad one was not cached at all
+        int requestCount = queryHelper.getQueryRequestCount();
+        assertTrue(query(runner, 1).iterator().next().getAllTargetLabels().size() > 0);
+        assertTrue(query(runner, 2).iterator().next().getAllTargetLabels().size() > 0);
+        assertEquals(requestCount, queryHelper.getQueryRequestCount());
+        try {
+            runner.queryBazelTargetsInBuildFile(
+                Collections.singletonList(new BazelLabel("//projects/libs/nosuchlib:*"))); // $SLASH_OK bazel path
+            fail("the bad label should not have been cached as an empty build file");
+        } catch (IOException expected) {}
+    }
+
+    // HELPERS
+
+    private static Thread startQuery(BazelWorkspaceCommandRunner runner, int packageIndex, Object[] results) {
+        Thread thread = new Thread(() -> {
+            Object result;
+            try {
+                result = query(runner, packageIndex);
+            } catch (Exception anyE) {
+                result = anyE;
+            }
+            synchronized (results) {
+                results[packageIndex] = result;
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private TestBazelCommandEnvironmentFactory createEnvironment(int packageCount) throws Exception {
+        return createEnvironment(packageCount, null);
+    }
+
+    private TestBazelCommandEnvironmentFactory createEnvironment(int packageCount, TestOptions testOptions)
+            throws Exception {
+        File testDir = tmpFolder.newFolder();
+        File workspaceDir = new File(testDir, "bazel-workspace");
+        workspaceDir.mkdirs();
+        File outputbaseDir = new File(testDir, "outputbase");
+        outputbaseDir.mkdirs();
+
+        TestBazelWorkspaceDescriptor descriptor =
+                new TestBazelWorkspaceDescriptor(workspaceDir, outputbaseDir).javaPackages(packageCount);
+        TestBazelWorkspaceFactory workspace = new TestBazelWorkspaceFactory(descriptor).build();
+        TestBazelCommandEnvironmentFactory env = new TestBazelCommandEnvironmentFactory();
+        env.createTestEnvironment(workspace, testDir, testOptions);
+        return env;
+    }
+
+    private static Collection<BazelBuildFile> query(BazelWorkspaceCommandRunner runner, int packageIndex)
+            throws Exception {
+        BazelLabel label = new BazelLabel("//projects/libs/javalib" + packageIndex + ":*");
+        return runner.queryBazelTargetsInBuildFile(Collections.singletonList(label));
+    }
+
+    private interface Condition {
+        boolean isTrue();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.isTrue()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("timed out waiting for the queries");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
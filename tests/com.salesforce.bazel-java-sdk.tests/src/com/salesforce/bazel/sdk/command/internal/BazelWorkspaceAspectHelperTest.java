@@ -25,9 +25,14 @@ package com.salesforce.bazel.sdk.command.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +43,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.salesforce.bazel.sdk.aspect.AspectTargetInfo;
+import com.salesforce.bazel.sdk.command.test.MockWorkProgressMonitor;
 import com.salesforce.bazel.sdk.command.test.TestBazelCommandEnvironmentFactory;
 import com.salesforce.bazel.sdk.model.BazelLabel;
 import com.salesforce.bazel.sdk.workspace.test.TestBazelWorkspaceDescriptor;
@@ -148,9 +154,103 @@ public class BazelWorkspaceAspectHelperTest {
         assertEquals(1, aspectHelper.numberCacheHits); // the entries all came from cache
     }
 
+    @Test
+    public void testAspectPersistentCache() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnv();
+        BazelWorkspaceAspectProcessor aspectHelper = env.bazelWorkspaceCommandRunner.getBazelWorkspaceAspectHelper();
+        aspectHelper.setAspectCacheDirectory(tmpFolder.newFolder("aspectcache"));
+        BazelLabel label = new BazelLabel("//projects/libs/javalib0:*"); // $SLASH_OK bazel path
+
+        // retrieve the aspects for the target, this populates the persistent cache
+        List<BazelLabel> targets = Collections.singletonList(label);
+        Map<BazelLabel, Set<AspectTargetInfo>> aspectMap =
+                aspectHelper.getAspectTargetInfos(targets, "testAspectPersistentCache");
+        assertEquals(4, aspectMap.get(label).size());
+        Set<String> warmLabels = getLabels(aspectMap.get(label));
+        assertEquals(0, aspectHelper.numberCacheHits);
+        // javalib0:javalib0, javalib0:javalib0-test, javalib0:*
+        assertEquals(3, aspectHelper.aspectInfoCache_persistent.size());
+
+        // simulate a restart of the IDE by dropping the in memory cache, the persistent cache is used instead
+        aspectHelper.aspectInfoCache_current.clear();
+        aspectHelper.setAspectCacheDirectory(new File(tmpFolder.getRoot(), "aspectcache"));
+        aspectMap = aspectHelper.getAspectTargetInfos(targets, "testAspectPersistentCache");
+        // the persisted wildcard holds the same set as the in memory one
+        assertEquals(warmLabels, getLabels(aspectMap.get(label)));
+        assertEquals(1, aspectHelper.numberCacheHits);
+
+        // change the BUILD file of the package, which invalidates the persisted entry
+        aspectHelper.aspectInfoCache_current.clear();
+        File buildFile = new File(env.bazelWorkspaceCommandRunner.getBazelWorkspaceRootDirectory(),
+                "projects/libs/javalib0/BUILD"); // $SLASH_OK bazel path
+        Files.write(buildFile.toPath(), "# changed\n".getBytes(), StandardOpenOption.APPEND);
+        aspectMap = aspectHelper.getAspectTargetInfos(targets, "testAspectPersistentCache");
+        assertEquals(4, aspectMap.get(label).size());
+        assertEquals(1, aspectHelper.numberCacheHits); // ran the aspect again
+
+        // flush the cache (clean) also clears the persistent cache
+        aspectHelper.flushAspectInfoCache();
+        assertEquals(0, aspectHelper.aspectInfoCache_persistent.size());
+    }
+
+    @Test
+    public void testAspectPersistentCacheIsPerPackage() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnv(2);
+        BazelWorkspaceAspectProcessor aspectHelper = env.bazelWorkspaceCommandRunner.getBazelWorkspaceAspectHelper();
+        aspectHelper.setAspectCacheDirectory(tmpFolder.newFolder("aspectcache"));
+        List<BazelLabel> targets = new ArrayList<>();
+        targets.add(new BazelLabel("//projects/libs/javalib0:*")); // $SLASH_OK bazel path
+        targets.add(new BazelLabel("//projects/libs/javalib1:*")); // $SLASH_OK bazel path
+        aspectHelper.getAspectTargetInfos(targets, "testAspectPersistentCacheIsPerPackage");
+        assertEquals(0, aspectHelper.numberCacheHits);
+
+        // a change to the BUILD file of one package does not invalidate the entries of the other package
+        aspectHelper.aspectInfoCache_current.clear();
+        File buildFile = new File(env.bazelWorkspaceCommandRunner.getBazelWorkspaceRootDirectory(),
+                "projects/libs/javalib1/BUILD"); // $SLASH_OK bazel path
+        Files.write(buildFile.toPath(), "# changed\n".getBytes(), StandardOpenOption.APPEND);
+        aspectHelper.getAspectTargetInfos(targets, "testAspectPersistentCacheIsPerPackage");
+        assertEquals(1, aspectHelper.numberCacheHits);
+        assertTrue(aspectHelper.aspectInfoCache_current.containsKey(targets.get(0)));
+    }
+
+    @Test
+    public void testAspectLoadingMultiplePackages() throws Exception {
+        TestBazelCommandEnvironmentFactory env = createEnv(3);
+        BazelWorkspaceAspectProcessor aspectHelper = env.bazelWorkspaceCommandRunner.getBazelWorkspaceAspectHelper();
+        List<BazelLabel> targets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            targets.add(new BazelLabel("//projects/libs/javalib" + i + ":*")); // $SLASH_OK bazel path
+        }
+
+        // all the packages are computed in a single invocation, and progress is reported per label
+        MockWorkProgressMonitor progressMonitor = new MockWorkProgressMonitor();
+        Map<BazelLabel, Set<AspectTargetInfo>> aspectMap =
+                aspectHelper.getAspectTargetInfos(targets, "testAspectLoadingMultiplePackages", progressMonitor);
+        assertEquals(3, aspectMap.size());
+        for (BazelLabel target : targets) {
+            assertNotNull(aspectMap.get(target));
+            assertTrue(aspectMap.get(target).size() >= 4);
+        }
+        assertEquals(3, progressMonitor.worked);
+        assertEquals(3 * 3, aspectHelper.aspectInfoCache_current.size());
+    }
+
     // INTERNAL
 
+    private static Set<String> getLabels(Set<AspectTargetInfo> infos) {
+        Set<String> labels = new HashSet<>();
+        for (AspectTargetInfo info : infos) {
+            labels.add(info.getLabel());
+        }
+        return labels;
+    }
+
     private TestBazelCommandEnvironmentFactory createEnv() throws Exception {
+        return createEnv(1);
+    }
+
+    private TestBazelCommandEnvironmentFactory createEnv(int numberJavaPackages) throws Exception {
         File testDir = tmpFolder.newFolder();
         File workspaceDir = new File(testDir, "bazel-workspace");
         workspaceDir.mkdirs();
@@ -158,7 +258,7 @@ public class BazelWorkspaceAspectHelperTest {
         outputbaseDir.mkdirs();
 
         TestBazelWorkspaceDescriptor descriptor =
-                new TestBazelWorkspaceDescriptor(workspaceDir, outputbaseDir).javaPackages(1);
+                new TestBazelWorkspaceDescriptor(workspaceDir, outputbaseDir).javaPackages(numberJavaPackages);
         TestBazelWorkspaceFactory workspace = new TestBazelWorkspaceFactory(descriptor).build();
         TestBazelCommandEnvironmentFactory env = new TestBazelCommandEnvironmentFactory();
         env.createTestEnvironment(workspace, testDir, null);
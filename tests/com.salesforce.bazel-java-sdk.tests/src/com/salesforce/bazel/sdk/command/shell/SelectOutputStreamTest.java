@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2021, Salesforce.com, Inc. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following
+ * disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ * following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.bazel.sdk.command.shell;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class SelectOutputStreamTest {
+
+    private static final Function<String, String> ARTIFACT_SELECTOR =
+            line -> line.startsWith(">>>") ? line.substring(3) : null;
+
+    @Test
+    public void testChunkedWritesMatchSingleByteWrites() throws Exception {
+        byte[] capture = createCapture();
+
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        SelectOutputStream expected = new SelectOutputStream(expectedOutput, ARTIFACT_SELECTOR);
+        for (byte b : capture) {
+            expected.write(b);
+        }
+        expected.close();
+        assertEquals(200, expected.getLines().size());
+        assertEquals("/tmp/bazel-out/k8-fastbuild/bin/foo/lib7.jar", expected.getLines().get(7));
+
+        // lines (and multi byte characters) are split across chunks for most chunk sizes
+        for (int chunkSize : new int[] { 1, 2, 3, 7, 64, 4096, capture.length }) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            SelectOutputStream stream = new SelectOutputStream(output, ARTIFACT_SELECTOR);
+            for (int off = 0; off < capture.length; off += chunkSize) {
+                stream.write(capture, off, Math.min(chunkSize, capture.length - off));
+            }
+            stream.close();
+
+            assertEquals("chunk size " + chunkSize, expected.getLines(), stream.getLines());
+            assertEquals("chunk size " + chunkSize, expectedOutput.toString(StandardCharsets.UTF_8.name()),
+                output.toString(StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    @Test
+    public void testNoSelector() throws Exception {
+        byte[] capture = createCapture();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SelectOutputStream stream = new SelectOutputStream(output, null);
+        stream.write(capture, 0, capture.length);
+        stream.close();
+
+        assertEquals(Collections.emptyList(), stream.getLines());
+        assertEquals(Arrays.toString(capture), Arrays.toString(output.toByteArray()));
+    }
+
+    @Test
+    public void testLastLineWithoutNewLine() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SelectOutputStream stream = new SelectOutputStream(output, line -> line.isEmpty() ? null : line);
+        byte[] bytes = "first\n\nlast".getBytes(StandardCharsets.UTF_8);
+        stream.write(bytes, 0, bytes.length);
+        stream.close();
+
+        assertEquals(Arrays.asList("first", "last"), stream.getLines());
+        assertEquals("\n", output.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    // HELPERS
+
+    // resembles the stderr of an aspect build: progress output mixed with artifact lines
+    private static byte[] createCapture() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("INFO: Analyzed target //foo:lib").append(i).append(" (\u00fc\u00f1\u00ef\u00e7\u00f8d\u00e9)\n");
+            sb.append(">>>/tmp/bazel-out/k8-fastbuild/bin/foo/lib").append(i).append(".jar\n");
+        }
+        sb.append("INFO: Build completed successfully, 201 total actions\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+package com.salesforce.bazel.sdk.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.model.BazelPackageLocation;
+
+public class CompactDependencyGraphTest {
+
+    @Test
+    public void testSingleTree() {
+        CompactDependencyGraph graph = new CompactDependencyGraph();
+
+        graph.addDependency("rootA", "midA1");
+        graph.addDependency("rootA", "midA2");
+        graph.addDependency("midA1", "leafA1");
+        graph.addDependency("midA1", "leafA1b");
+        graph.addDependency("midA2", "leafA2");
+        // duplicate edges are collapsed
+        graph.addDependency("midA2", "leafA2");
+
+        Set<String> roots = graph.getRootLabels();
+        assertEquals(1, roots.size());
+        assertTrue(roots.contains("rootA"));
+
+        Set<String> leaves = graph.getLeafLabels();
+        assertEquals(3, leaves.size());
+        assertTrue(leaves.contains("leafA1"));
+        assertTrue(leaves.contains("leafA1b"));
+        assertTrue(leaves.contains("leafA2"));
+        assertEquals(6, graph.getLabelCount());
+        assertEquals(5, graph.getEdgeCount());
+
+        assertTrue(graph.isDependency("rootA", "leafA2"));
+        assertTrue(graph.isDependency("midA1", "leafA1b"));
+        assertFalse(graph.isDependency("midA1", "leafA2"));
+        assertFalse(graph.isDependency("leafA2", "rootA"));
+        assertFalse(graph.isDependency("rootA", "unknown"));
+
+        Set<BazelPackageLocation> selectedLabels = new LinkedHashSet<>();
+        selectedLabels.add(new InMemoryPackageLocation("midA2"));
+        selectedLabels.add(new InMemoryPackageLocation("rootA"));
+        selectedLabels.add(new InMemoryPackageLocation("leafA2"));
+        List<BazelPackageLocation> orderedLabels = graph.orderLabels(selectedLabels);
+        assertEquals(3, orderedLabels.size());
+        assertEquals("leafA2", orderedLabels.get(0).getBazelPackageName());
+        assertEquals("midA2", orderedLabels.get(1).getBazelPackageName());
+        assertEquals("rootA", orderedLabels.get(2).getBazelPackageName());
+
+        // the graph can still grow after it was queried
+        graph.addDependency("leafA2", "leafA1");
+        assertTrue(graph.isDependency("midA2", "leafA1"));
+        assertFalse(graph.getLeafLabels().contains("leafA2"));
+        assertEquals(2, graph.getDependsOnMap().get("midA1").size());
+        assertEquals(2, graph.getUsedByMap().get("leafA1").size());
+    }
+
+    @Test
+    public void testExternalDeps() {
+        CompactDependencyGraph graph = new CompactDependencyGraph();
+
+        graph.addDependency("rootA", "midA1");
+        graph.addDependency("rootA", "midA2");
+        graph.addDependency("midA1", "leafA1");
+        graph.addDependency("midA1", "leafA1b");
+        graph.addDependency("midA2", "leafA2");
+        graph.addDependency("leafA2", "@maven//:com_springframework_spring");
+        graph.addDependency("@maven//:com_springframework_spring", "@maven//:com_foo_bar");
+
+        Set<String> leaves = graph.getLeafLabels();
+        assertEquals(3, leaves.size());
+        assertTrue(leaves.contains("leafA1"));
+        assertTrue(leaves.contains("leafA1b"));
+        assertTrue(leaves.contains("@maven//:com_foo_bar"));
+
+        leaves = graph.getLeafLabels(true);
+        assertEquals(3, leaves.size());
+        assertTrue(leaves.contains("leafA1"));
+        assertTrue(leaves.contains("leafA1b"));
+        assertTrue(leaves.contains("leafA2"));
+
+        assertTrue(graph.isDependency("rootA", "@maven//:com_foo_bar", null, true));
+        assertFalse(graph.isDependency("rootA", "@maven//:com_foo_bar", null, false));
+        assertTrue(graph.isDependency("rootA", "@maven//:com_springframework_spring", null, false));
+    }
+
+    @Test
+    public void testFactorySelection() {
+        Map<String, String> options = new HashMap<>();
+        BazelDependencyGraph graph = BazelDependencyGraphFactory.build("testFactorySelection", options);
+        assertTrue(graph instanceof InMemoryDependencyGraph);
+
+        options.put(BazelDependencyGraphFactory.OPTION_GRAPH_IMPL, CompactDependencyGraphBuilder.GRAPH_IMPL_COMPACT);
+        graph = BazelDependencyGraphFactory.build("testFactorySelection", options);
+        assertTrue(graph instanceof CompactDependencyGraph);
+    }
+
+    @Test
+    public void testSameAnswersAsInMemoryGraph() {
+        Random random = new Random(23);
+        CompactDependencyGraph compact = new CompactDependencyGraph();
+        InMemoryDependencyGraph inMemory = new InMemoryDependencyGraph();
+
+        // a random DAG: edges only go from lower to higher numbered labels, some of which are external
+        int labelCount = 300;
+        for (int edge = 0; edge < 1200; edge++) {
+            int source = random.nextInt(labelCount - 1);
+            int dep = source + 1 + random.nextInt(Math.min(40, labelCount - source - 1));
+            compact.addDependency(label(source), label(dep));
+            inMemory.addDependency(label(source), label(dep));
+        }
+
+        assertEquals(inMemory.getRootLabels(), compact.getRootLabels());
+        assertEquals(inMemory.getLeafLabels(), compact.getLeafLabels());
+        assertEquals(inMemory.getDependsOnMap(), compact.getDependsOnMap());
+        assertEquals(inMemory.getUsedByMap(), compact.getUsedByMap());
+
+        for (int i = 0; i < 2000; i++) {
+            String source = label(random.nextInt(labelCount));
+            String dep = label(random.nextInt(labelCount));
+            boolean follow = random.nextBoolean();
+            assertEquals(source + " -> " + dep,
+                inMemory.isDependency(source, dep, new HashMap<>(), follow),
+                compact.isDependency(source, dep, null, follow));
+        }
+
+        List<BazelPackageLocation> selectedLabels = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            selectedLabels.add(new InMemoryPackageLocation(label(random.nextInt(labelCount))));
+        }
+        List<BazelPackageLocation> orderedLabels = compact.orderLabels(selectedLabels);
+        assertEquals(selectedLabels.size(), orderedLabels.size());
+        assertTrue(selectedLabels.containsAll(orderedLabels));
+        for (int i = 0; i < orderedLabels.size(); i++) {
+            for (int j = i + 1; j < orderedLabels.size(); j++) {
+                assertFalse(compact.isDependency(orderedLabels.get(i).getBazelPackageName(),
+                    orderedLabels.get(j).getBazelPackageName()));
+            }
+        }
+    }
+
+    // HELPERS
+
+    // no leading slashes, so that the labels match the package names of the InMemoryPackageLocations
+    private static String label(int i) {
+        return (i % 10 == 9 ? "@maven//:lib" : "pkg") + i;
+    }
+}
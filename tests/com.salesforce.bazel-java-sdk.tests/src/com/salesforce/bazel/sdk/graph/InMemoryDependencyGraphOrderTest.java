@@ -0,0 +1,241 @@
+package com.salesforce.bazel.sdk.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.model.BazelPackageLocation;
+
+/**
+ * Compares the topological orderLabels() with the insertion sort it replaced, which is kept below.
+ */
+public class InMemoryDependencyGraphOrderTest {
+
+    @Test
+    public void testSameOrderAsInsertionSortForChains() {
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        for (int i = 0; i < 20; i++) {
+            graph.addDependency(label(i), label(i + 1));
+        }
+        // a chain has exactly one valid order
+        List<BazelPackageLocation> selected = select(7, 3, 15, 0, 20, 11);
+        assertEquals(names(insertionSortOrder(graph, selected, true)), names(graph.orderLabels(selected)));
+        assertEquals(Arrays.asList("pkg20", "pkg15", "pkg11", "pkg7", "pkg3", "pkg0"),
+            names(graph.orderLabels(selected)));
+    }
+
+    @Test
+    public void testValidOrdersOnRandomGraphs() {
+        Random random = new Random(24);
+        for (int round = 0; round < 20; round++) {
+            InMemoryDependencyGraph graph = randomDag(random, 200, 600);
+            List<BazelPackageLocation> selected = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                selected.add(new InMemoryPackageLocation(label(random.nextInt(200))));
+            }
+            boolean follow = random.nextBoolean();
+
+            List<BazelPackageLocation> expected = insertionSortOrder(graph, selected, follow);
+            List<BazelPackageLocation> actual = graph.orderLabels(selected, follow);
+
+            // both are valid orders of the same labels, but there may be many valid orders
+            assertEquals(sortedNames(expected), sortedNames(actual));
+            assertValidOrder(graph, expected, follow);
+            assertValidOrder(graph, actual, follow);
+        }
+    }
+
+    @Test
+    public void testSelectionOrderIsKeptForIndependentLabels() {
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        graph.addDependency(label(1), label(2));
+        graph.addDependency(label(3), label(4));
+        graph.addDependency(label(5), label(6));
+
+        List<BazelPackageLocation> selected = select(5, 1, 3, 6);
+        assertEquals(names(insertionSortOrder(graph, selected, true)), names(graph.orderLabels(selected)));
+        assertEquals(Arrays.asList("pkg6", "pkg5", "pkg1", "pkg3"), names(graph.orderLabels(selected)));
+    }
+
+    @Test
+    public void testDeterministicOrder() {
+        List<int[]> edges = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            int source = random.nextInt(149);
+            edges.add(new int[] { source, source + 1 + random.nextInt(149 - source) });
+        }
+        List<BazelPackageLocation> selected = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            selected.add(new InMemoryPackageLocation(label(random.nextInt(150))));
+        }
+
+        // the order does not depend on the order in which the edges were added
+        List<String> firstOrder = null;
+        for (int round = 0; round < 5; round++) {
+            Collections.shuffle(edges, random);
+            InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+            for (int[] edge : edges) {
+                graph.addDependency(label(edge[0]), label(edge[1]));
+            }
+            List<String> order = names(graph.orderLabels(selected));
+            if (firstOrder == null) {
+                firstOrder = order;
+            }
+            assertEquals(firstOrder, order);
+        }
+    }
+
+    @Test
+    public void testCycles() {
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        graph.addDependency(label(1), label(2));
+        graph.addDependency(label(2), label(3));
+        graph.addDependency(label(3), label(1));
+        graph.addDependency(label(0), label(1));
+        graph.addDependency(label(3), label(4));
+        graph.addDependency(label(5), label(5));
+
+        // the cycle is ordered after its deps and before the labels that depend on it
+        List<BazelPackageLocation> ordered = graph.orderLabels(select(0, 3, 1, 4, 2));
+        assertEquals(Arrays.asList("pkg4", "pkg3", "pkg1", "pkg2", "pkg0"), names(ordered));
+
+        List<List<String>> cycles = graph.findCycles(Arrays.asList(label(0), label(5)), true);
+        assertEquals(2, cycles.size());
+        assertEquals(3, cycles.get(0).size());
+        assertTrue(cycles.get(0).containsAll(Arrays.asList(label(1), label(2), label(3))));
+        assertEquals(Arrays.asList(label(5)), cycles.get(1));
+        assertTrue(graph.findCycles(Arrays.asList(label(4)), true).isEmpty());
+    }
+
+    @Test
+    public void testExternalTransitives() {
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        graph.addDependency(label(1), "@maven//:a");
+        graph.addDependency("@maven//:a", label(2));
+
+        // pkg2 is only reachable through the external label
+        List<BazelPackageLocation> selected = select(2, 1);
+        selected.add(0, new InMemoryPackageLocation("@maven//:a"));
+        assertEquals(Arrays.asList("pkg2", "@maven//:a", "pkg1"), names(graph.orderLabels(selected, true)));
+        assertEquals(Arrays.asList("@maven//:a", "pkg2", "pkg1"), names(graph.orderLabels(selected, false)));
+        assertEquals(names(insertionSortOrder(graph, selected, false)), names(graph.orderLabels(selected, false)));
+    }
+
+    @Test
+    public void testLargeSelection() {
+        Random random = new Random(1500);
+        InMemoryDependencyGraph graph = randomDag(random, 10000, 60000);
+        List<BazelPackageLocation> small = new ArrayList<>();
+        List<BazelPackageLocation> large = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            BazelPackageLocation location = new InMemoryPackageLocation(label(random.nextInt(10000)));
+            large.add(location);
+            if (i < 100) {
+                small.add(location);
+            }
+        }
+
+        List<BazelPackageLocation> expected = insertionSortOrder(graph, small, true);
+        List<BazelPackageLocation> actual = graph.orderLabels(small);
+        assertEquals(sortedNames(expected), sortedNames(actual));
+        assertValidOrder(graph, actual, true);
+
+        // the insertion sort is too slow for this many labels
+        List<BazelPackageLocation> largeOrder = graph.orderLabels(large);
+        assertEquals(sortedNames(large), sortedNames(largeOrder));
+    }
+
+    // HELPERS
+
+    private static String label(int i) {
+        return "pkg" + i;
+    }
+
+    private static List<BazelPackageLocation> select(int... ids) {
+        List<BazelPackageLocation> selected = new ArrayList<>();
+        for (int id : ids) {
+            selected.add(new InMemoryPackageLocation(label(id)));
+        }
+        return selected;
+    }
+
+    private static List<String> names(List<BazelPackageLocation> locations) {
+        List<String> names = new ArrayList<>();
+        for (BazelPackageLocation location : locations) {
+            names.add(location.getBazelPackageName());
+        }
+        return names;
+    }
+
+    private static List<String> sortedNames(List<BazelPackageLocation> locations) {
+        List<String> names = names(locations);
+        Collections.sort(names);
+        return names;
+    }
+
+    // edges only go from lower to higher numbered labels, so the graph has no cycles
+    private static InMemoryDependencyGraph randomDag(Random random, int labelCount, int edgeCount) {
+        InMemoryDependencyGraph graph = new InMemoryDependencyGraph();
+        for (int i = 0; i < edgeCount; i++) {
+            int source = random.nextInt(labelCount - 1);
+            int dep = source + 1 + random.nextInt(Math.min(50, labelCount - source - 1));
+            graph.addDependency(label(source), label(dep));
+        }
+        return graph;
+    }
+
+    private static void assertValidOrder(BazelDependencyGraph graph, List<BazelPackageLocation> ordered,
+            boolean follow) {
+        Map<String, Boolean> depCache = new HashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            for (int j = i + 1; j < ordered.size(); j++) {
+                String earlier = ordered.get(i).getBazelPackageName();
+                String later = ordered.get(j).getBazelPackageName();
+                assertFalse(earlier + " is ordered before its dep " + later,
+                    graph.isDependency(earlier, later, depCache, follow));
+            }
+        }
+    }
+
+    /**
+     * The insertion sort that InMemoryDependencyGraph.orderLabels() used to implement, for comparison.
+     */
+    private static List<BazelPackageLocation> insertionSortOrder(BazelDependencyGraph graph,
+            List<BazelPackageLocation> selectedLabels, boolean followExternalTransitives) {
+        LinkedList<BazelPackageLocation> orderedLabels = null;
+        Map<String, Boolean> depCache = new HashMap<>();
+        for (int i = 0; i < selectedLabels.size(); i++) {
+            orderedLabels = new LinkedList<>();
+            for (BazelPackageLocation currentLabel : selectedLabels) {
+                int currentIndex = 0;
+                boolean inserted = false;
+                for (BazelPackageLocation priorInsertedLabel : orderedLabels) {
+                    if (graph.isDependency(priorInsertedLabel.getBazelPackageName(),
+                        currentLabel.getBazelPackageName(), depCache, followExternalTransitives)) {
+                        orderedLabels.add(currentIndex, currentLabel);
+                        inserted = true;
+                        break;
+                    }
+                    currentIndex++;
+                }
+                if (!inserted) {
+                    orderedLabels.add(currentLabel);
+                }
+            }
+            selectedLabels = orderedLabels;
+        }
+        return orderedLabels;
+    }
+}
@@ -0,0 +1,189 @@
+package com.salesforce.bazel.sdk.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReachabilityIndexTest {
+
+    @Test
+    public void testCycles() {
+        // 0 -> 1 -> 2 -> 1, 2 -> 3, 4 -> 4
+        int[][] deps = { { 1 }, { 2 }, { 1, 3 }, {}, { 4 } };
+        for (int closureMax : new int[] { ReachabilityIndex.CLOSURE_MAX_COMPONENTS, 0 }) {
+            ReachabilityIndex index = ReachabilityIndex.build(deps, closureMax);
+            assertEquals(closureMax > 0, index.isClosureIndex());
+            assertTrue(index.isReachable(0, 3));
+            assertTrue(index.isReachable(2, 1));
+            assertTrue(index.isReachable(1, 1));
+            assertTrue(index.isReachable(4, 4));
+            assertFalse(index.isReachable(0, 0));
+            assertFalse(index.isReachable(3, 3));
+            assertFalse(index.isReachable(3, 0));
+            assertFalse(index.isReachable(0, 4));
+        }
+    }
+
+    @Test
+    public void testSameAnswersAsSearch() {
+        Random random = new Random(25);
+        for (int round = 0; round < 10; round++) {
+            int[][] deps = randomGraph(random, 400, 4, round % 2 == 0);
+            ReachabilityIndex closureIndex = ReachabilityIndex.build(deps);
+            ReachabilityIndex twoHopIndex = ReachabilityIndex.build(deps, 0);
+            assertTrue(closureIndex.isClosureIndex());
+            assertFalse(twoHopIndex.isClosureIndex());
+            for (int from = 0; from < deps.length; from++) {
+                BitSet reachable = search(deps, from);
+                for (int to = 0; to < deps.length; to++) {
+                    assertEquals(from + " -> " + to, reachable.get(to), closureIndex.isReachable(from, to));
+                    assertEquals(from + " -> " + to, reachable.get(to), twoHopIndex.isReachable(from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInMemoryGraphWithIndex() {
+        Random random = new Random(26);
+        InMemoryDependencyGraph searched = new InMemoryDependencyGraph();
+        InMemoryDependencyGraph indexed = new InMemoryDependencyGraph();
+        indexed.setReachabilityIndexEnabled(true);
+        // no cycles, as the search with a cache does not always find the deps of labels in a cycle
+        int[][] deps = randomGraph(random, 300, 3, false);
+        for (int id = 0; id < deps.length; id++) {
+            for (int dep : deps[id]) {
+                searched.addDependency(label(id), label(dep));
+                indexed.addDependency(label(id), label(dep));
+            }
+        }
+
+        Map<String, Boolean> depCache = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            String label = label(random.nextInt(deps.length));
+            String dep = label(random.nextInt(deps.length));
+            boolean follow = random.nextBoolean();
+            assertEquals(searched.isDependency(label, dep, depCache, follow),
+                indexed.isDependency(label, dep, null, follow));
+        }
+
+        // adding a dependency drops the index
+        String root = label(deps.length);
+        assertFalse(indexed.isDependency(root, label(0)));
+        indexed.addDependency(root, label(1));
+        assertTrue(indexed.isDependency(root, label(1)));
+    }
+
+    @Test
+    public void testCompactGraphWithIndex() {
+        CompactDependencyGraph indexed = new CompactDependencyGraph();
+        indexed.setReachabilityIndexEnabled(true);
+        CompactDependencyGraph searched = new CompactDependencyGraph();
+
+        Random random = new Random(27);
+        int[][] deps = randomGraph(random, 300, 3, false);
+        for (int id = 0; id < deps.length; id++) {
+            for (int dep : deps[id]) {
+                searched.addDependency(label(id), label(dep));
+                indexed.addDependency(label(id), label(dep));
+            }
+        }
+        for (int i = 0; i < 3000; i++) {
+            String label = label(random.nextInt(deps.length));
+            String dep = label(random.nextInt(deps.length));
+            boolean follow = random.nextBoolean();
+            assertEquals(searched.isDependency(label, dep, null, follow),
+                indexed.isDependency(label, dep, null, follow));
+        }
+
+        String root = label(deps.length);
+        indexed.addDependency(root, label(2));
+        assertTrue(indexed.isDependency(root, label(2)));
+    }
+
+    /**
+     * Checks the index against a graph search at 1k/10k/50k labels. Closure bitsets are also checked at 10k labels
+     * (above the default limit), but not at 50k where they would take 300MB; there the 2-hop labels must be smaller.
+     */
+    @Test
+    public void testLargeGraphs() {
+        Random random = new Random(1000);
+        for (int size : new int[] { 1000, 10000, 50000 }) {
+            int[][] deps = randomGraph(random, size, 6, false);
+            ReachabilityIndex twoHopIndex = ReachabilityIndex.build(deps, 0);
+            ReachabilityIndex closureIndex = size <= 10000 ? ReachabilityIndex.build(deps, Integer.MAX_VALUE) : null;
+            if (closureIndex == null) {
+                long closureBytes = (long) size * ((size + 63) / 64) * 8;
+                assertTrue(twoHopIndex.getEstimatedMemoryBytes() < closureBytes);
+            }
+
+            for (int i = 0; i < 200; i++) {
+                int from = random.nextInt(size);
+                BitSet reachable = search(deps, from);
+                for (int j = 0; j < 10; j++) {
+                    int to = random.nextInt(size);
+                    assertEquals(from + " -> " + to, reachable.get(to), twoHopIndex.isReachable(from, to));
+                    if (closureIndex != null) {
+                        assertEquals(from + " -> " + to, reachable.get(to), closureIndex.isReachable(from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    // HELPERS
+
+    private static String label(int i) {
+        return (i % 10 == 9 ? "@maven//:lib" : "//pkg") + i;
+    }
+
+    /**
+     * A Bazel like graph: each label depends on labels with a higher id (a few nearby, and some of the widely used
+     * ones at the end), optionally with some back edges that create cycles.
+     */
+    private static int[][] randomGraph(Random random, int size, int depCount, boolean withCycles) {
+        int[][] deps = new int[size][];
+        int hubs = Math.max(1, size / 100);
+        for (int id = 0; id < size; id++) {
+            int count = Math.min(size - id - 1, random.nextInt(depCount + 1));
+            int[] labelDeps = new int[count + (withCycles && (random.nextInt(20) == 0) ? 1 : 0)];
+            for (int i = 0; i < count; i++) {
+                if (random.nextInt(4) == 0) {
+                    labelDeps[i] = Math.max(id + 1, size - 1 - random.nextInt(hubs));
+                } else {
+                    labelDeps[i] = id + 1 + random.nextInt(Math.min(100, size - id - 1));
+                }
+            }
+            if (labelDeps.length > count) {
+                labelDeps[count] = random.nextInt(id + 1);
+            }
+            deps[id] = Arrays.stream(labelDeps).distinct().toArray();
+        }
+        return deps;
+    }
+
+    private static BitSet search(int[][] deps, int from) {
+        BitSet reachable = new BitSet(deps.length);
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            for (int dep : deps[queue.poll()]) {
+                if (!reachable.get(dep)) {
+                    reachable.set(dep);
+                    queue.add(dep);
+                }
+            }
+        }
+        return reachable;
+    }
+}
@@ -0,0 +1,128 @@
+package com.salesforce.bazel.sdk.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BazelLabelInternerTest {
+
+    @Test
+    public void testIntern() {
+        BazelLabelInterner interner = new BazelLabelInterner();
+        BazelLabel label = interner.intern("//a/b:c"); // $SLASH_OK bazel path
+        assertSame(label, interner.intern("//a/b:c")); // $SLASH_OK bazel path
+        // other spellings of the same label resolve to the pooled instance
+        assertSame(label, interner.intern("a/b:c"));
+        assertSame(label, interner.intern(" //a/b:c ")); // $SLASH_OK bazel path
+        assertSame(label, interner.intern(new BazelLabel("//a/b:c"))); // $SLASH_OK bazel path
+        assertEquals(1, interner.size());
+
+        BazelLabel external = interner.intern("@repo//a/b:c"); // $SLASH_OK bazel path
+        assertNotSame(label, external);
+        assertEquals("repo", external.getRepositoryName());
+        assertEquals(2, interner.size());
+
+        // the shared pool
+        assertSame(BazelLabel.intern("//a/b:c"), BazelLabel.intern("//a/b:c")); // $SLASH_OK bazel path
+    }
+
+    @Test
+    public void testDefaultPackageLabel() {
+        BazelLabel label = BazelLabel.intern("//a/b:c"); // $SLASH_OK bazel path
+        assertEquals("a/b", label.getPackagePath());
+        BazelLabel packageLabel = label.toDefaultPackageLabel();
+        assertEquals(new BazelLabel("//a/b"), packageLabel); // $SLASH_OK bazel path
+        // computed once, and shared with the other labels of the package
+        assertSame(packageLabel, label.toDefaultPackageLabel());
+        assertSame(packageLabel, BazelLabel.intern("//a/b:d").toDefaultPackageLabel()); // $SLASH_OK bazel path
+        assertSame(packageLabel, packageLabel.toDefaultPackageLabel());
+    }
+
+    /**
+     * The label heavy operations of an aspect run (building maps keyed by labels from strings, then grouping them by
+     * package) allocate less with interning, since the labels and their package labels are reused.
+     */
+    @Test
+    public void testAllocation() {
+        List<String> labels = new ArrayList<>();
+        for (int p = 0; p < 2000; p++) {
+            for (int t = 0; t < 10; t++) {
+                labels.add("//projects/libs/lib" + p + ":target" + t); // $SLASH_OK bazel path
+            }
+        }
+        BazelLabelInterner interner = new BazelLabelInterner();
+        List<BazelLabel> keepAlive = new ArrayList<>();
+        for (String label : labels) {
+            keepAlive.add(interner.intern(label));
+        }
+
+        // the first rounds warm up the JIT
+        long constructedBytes = -1;
+        long internedBytes = -1;
+        for (int round = 0; round < 3; round++) {
+            constructedBytes = measureAllocatedBytes(labels, null);
+            internedBytes = measureAllocatedBytes(labels, interner);
+        }
+        if ((constructedBytes >= 0) && (internedBytes >= 0)) {
+            assertTrue(internedBytes + " >= " + constructedBytes, internedBytes < constructedBytes);
+        }
+        assertEquals(labels.size(), interner.size());
+        assertEquals(labels.size(), keepAlive.size());
+    }
+
+    // HELPERS
+
+    // returns the allocated bytes, -1 if not supported by the JVM
+    private static long measureAllocatedBytes(List<String> labels, BazelLabelInterner interner) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Method allocatedBytesMethod = getAllocatedBytesMethod(threadBean);
+        long startBytes = allocatedBytes(threadBean, allocatedBytesMethod);
+        for (int i = 0; i < 10; i++) {
+            Map<BazelLabel, String> map = new HashMap<>();
+            for (String label : labels) {
+                BazelLabel bazelLabel = interner != null ? interner.intern(label) : new BazelLabel(label);
+                map.put(bazelLabel, label);
+            }
+            BazelLabelUtil.groupByPackage(map.keySet());
+        }
+        long endBytes = allocatedBytes(threadBean, allocatedBytesMethod);
+        return startBytes >= 0 ? endBytes - startBytes : -1;
+    }
+
+    // the per thread allocation counter is a JVM specific extension of ThreadMXBean, it is looked up by name on the
+    // interfaces of the bean so that the test does not depend on a JVM specific package
+    private static Method getAllocatedBytesMethod(ThreadMXBean threadBean) {
+        for (Class<?> type : threadBean.getClass().getInterfaces()) {
+            try {
+                return type.getMethod("getThreadAllocatedBytes", long.class);
+            } catch (NoSuchMethodException nsme) {
+                // not this interface
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threadBean, Method allocatedBytesMethod) {
+        if (allocatedBytesMethod == null) {
+            return -1;
+        }
+        try {
+            Object bytes = allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+            return bytes instanceof Long ? (Long) bytes : -1;
+        } catch (Exception anyE) {
+            // not supported or not accessible
+            return -1;
+        }
+    }
+}
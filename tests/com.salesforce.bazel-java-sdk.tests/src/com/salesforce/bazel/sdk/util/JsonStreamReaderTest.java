@@ -0,0 +1,123 @@
+package com.salesforce.bazel.sdk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import com.salesforce.bazel.sdk.util.JsonStreamReader.Token;
+
+public class JsonStreamReaderTest {
+
+    private static final String aspectJson = "{\n" + "  \"build_file_artifact_location\":\"helloworld/BUILD\",\n"
+            + "  \"dependencies\":[\"//proto:helloworld_java_proto\", \"@maven//:com_google_guava_guava\"],\n"
+            + "  \"generated_jars\":[],\n" + "  \"jars\":[\n"
+            + "    {\"interface_jar\":\"bazel-out/darwin-fastbuild/bin/helloworld/libhelloworld-hjar.jar\",\n"
+            + "     \"jar\":\"bazel-out/darwin-fastbuild/bin/helloworld/libhelloworld.jar\",\n"
+            + "     \"source_jar\":\"bazel-out/darwin-fastbuild/bin/helloworld/libhelloworld-src.jar\"\n" + "    }\n"
+            + "  ],\n" + "  \"kind\":\"java_library\",\n" + "  \"label\":\"//helloworld:helloworld\",\n"
+            + "  \"sources\":[\"helloworld/src/main/java/helloworld/HelloWorld.java\"]\n" + "}";
+
+    private static final String bepJson = "{\"id\":{\"testSummary\":{\"label\":\"//foo:foo-test\","
+            + "\"configuration\":{\"id\":\"63cc040e\"}}},\"testSummary\":{\"totalRunCount\":1,"
+            + "\"overallStatus\":\"PASSED\",\"firstStartTimeMillis\":\"1622353495424\",\"ratio\":0.5,"
+            + "\"cached\":false,\"missing\":null,\"escaped\":\"tab\\there \\\"quoted\\\" \\u00e9\"}}";
+
+    @Test
+    public void testPullFields() throws Exception {
+        String label = null;
+        List<String> deps = null;
+        try (JsonStreamReader reader = new JsonStreamReader(aspectJson)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("label".equals(name)) {
+                    label = reader.nextString();
+                } else if ("dependencies".equals(name)) {
+                    deps = reader.readStringList();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            assertEquals(Token.END_DOCUMENT, reader.peek());
+        }
+        assertEquals("//helloworld:helloworld", label);
+        assertEquals(2, deps.size());
+        assertEquals("@maven//:com_google_guava_guava", deps.get(1));
+    }
+
+    @Test
+    public void testReadValueMatchesJsonSimple() throws Exception {
+        for (String json : new String[] { aspectJson, bepJson, "[]", "{}", "[1, -2.5e3, true, null, \"x\"]",
+                "{\"trailing\":[1,2,],}" }) {
+            Object expected = new JSONParser().parse(json);
+            Object actual = new JsonStreamReader(json).readValue();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testTypes() throws Exception {
+        JSONObject event = (JSONObject) new JsonStreamReader(bepJson).readValue();
+        JSONObject summary = (JSONObject) event.get("testSummary");
+        assertEquals(Long.valueOf(1), summary.get("totalRunCount"));
+        assertEquals(Double.valueOf(0.5), summary.get("ratio"));
+        assertEquals(Boolean.FALSE, summary.get("cached"));
+        assertNull(summary.get("missing"));
+        assertTrue(summary.containsKey("missing"));
+        assertEquals("tab\there \"quoted\" \u00e9", summary.get("escaped"));
+    }
+
+    @Test
+    public void testSmallBufferReads() throws Exception {
+        // strings and literals that span the internal buffer boundaries
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            sb.append(i == 0 ? "" : ",").append("\"value\\n").append(i).append("\",").append(i * 1000L);
+        }
+        sb.append("]");
+        Object expected = new JSONParser().parse(sb.toString());
+        Object actual = new JsonStreamReader(new StringReader(sb.toString())).readValue();
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSkipNestedValue() throws Exception {
+        JsonStreamReader reader = new JsonStreamReader(bepJson);
+        reader.beginObject();
+        assertEquals("id", reader.nextName());
+        reader.beginObject();
+        // the first key of the id object is the event type
+        assertEquals("testSummary", reader.nextName());
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        // skip the name and value of the payload
+        reader.skipValue();
+        reader.endObject();
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        for (String json : new String[] { "{\"a\" 1}", "[1 2]", "{\"a\":\"unterminated}", "[1,]x", "{} {}" }) {
+            try {
+                new JsonStreamReader(json).readValue();
+                JsonStreamReader reader = new JsonStreamReader(json);
+                reader.readValue();
+                reader.peek();
+                fail("Expected a syntax error for: " + json);
+            } catch (IOException expected) {}
+        }
+    }
+}